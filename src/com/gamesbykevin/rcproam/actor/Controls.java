@@ -0,0 +1,80 @@
+package com.gamesbykevin.rcproam.actor;
+
+import java.awt.event.KeyEvent;
+
+/**
+ * The keys used by a player to control a human car
+ * @author GOD
+ */
+public final class Controls
+{
+    //the keys for each player when sharing a keyboard, the first player uses the original keys
+    private static final Controls[] DEFAULTS =
+    {
+        new Controls(KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_A, KeyEvent.VK_S),
+        new Controls(KeyEvent.VK_J, KeyEvent.VK_L, KeyEvent.VK_K, KeyEvent.VK_I),
+        new Controls(KeyEvent.VK_F, KeyEvent.VK_H, KeyEvent.VK_G, KeyEvent.VK_T),
+        new Controls(KeyEvent.VK_NUMPAD4, KeyEvent.VK_NUMPAD6, KeyEvent.VK_NUMPAD5, KeyEvent.VK_NUMPAD8),
+    };
+    
+    //the key codes
+    private final int left, right, accelerate, horn;
+    
+    /**
+     * Create the controls
+     * @param left Key to turn left
+     * @param right Key to turn right
+     * @param accelerate Key to accelerate
+     * @param horn Key to honk the horn
+     */
+    public Controls(final int left, final int right, final int accelerate, final int horn)
+    {
+        this.left = left;
+        this.right = right;
+        this.accelerate = accelerate;
+        this.horn = horn;
+    }
+    
+    /**
+     * Get the default controls of the player
+     * @param player The player number (starting at 0)
+     * @return The keys for the player
+     * @throws Exception if there are no default keys for the player
+     */
+    public static Controls getDefault(final int player) throws Exception
+    {
+        if (player < 0 || player >= DEFAULTS.length)
+            throw new Exception("There are no default controls for player " + (player + 1));
+        
+        return DEFAULTS[player];
+    }
+    
+    /**
+     * Get the number of players that have default controls
+     * @return The most players that can share a keyboard
+     */
+    public static int getDefaultCount()
+    {
+        return DEFAULTS.length;
+    }
+    
+    public int getLeft()
+    {
+        return this.left;
+    }
+    
+    public int getRight()
+    {
+        return this.right;
+    }
+    
+    public int getAccelerate()
+    {
+        return this.accelerate;
+    }
+    
+    public int getHorn()
+    {
+        return this.horn;
+    }
+}
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.gamesbykevin.rcproam.actor;
 import com.gamesbykevin.rcproam.car.Attributes;
 import com.gamesbykevin.rcproam.car.Car;
 import com.gamesbykevin.rcproam.engine.Engine;
+import com.gamesbykevin.rcproam.map.RecoveryPlanner;
 import com.gamesbykevin.rcproam.map.Track;
 
 import com.gamesbykevin.framework.base.Cell;
@@ -31,15 +32,15 @@ public final class Cpu extends Car
     //the speed while turning will be a fraction of the max road speed
     private static final double TURN_SPEED_RATIO = .75;
     
-    //the optional amount of updates required to perform a 15 degree turn (must be a multiple of 2)
+    //the optional amount of reference updates required to perform a 15 degree turn (must be a multiple of 2)
     private static int[] TURN_COUNT_OPTIONS = {2, 4, 6, 8};
     
-    //the min/max angle difference that the AI has to be within the targeted checkpoint
-    private static final double ACCURATE_TURN_INTERVAL_MIN = Car.TURN_INTERVAL * .33;
-    private static final double ACCURATE_TURN_INTERVAL_MAX = Car.TURN_INTERVAL * .5;
+    //the min/max angle difference that the AI has to be within the targeted checkpoint, more than half a turn so the car settles instead of turning back and forth
+    private static final double ACCURATE_TURN_INTERVAL_MIN = Car.TURN_INTERVAL * .55;
+    private static final double ACCURATE_TURN_INTERVAL_MAX = Car.TURN_INTERVAL * .8;
     
-    private static final double RELAXED_TURN_INTERVAL_MIN = Car.TURN_INTERVAL * .5;
-    private static final double RELAXED_TURN_INTERVAL_MAX = Car.TURN_INTERVAL * .75;
+    private static final double RELAXED_TURN_INTERVAL_MIN = Car.TURN_INTERVAL * .8;
+    private static final double RELAXED_TURN_INTERVAL_MAX = Car.TURN_INTERVAL * 1.2;
     
     //this is the degree limit we have to be within when facing the assigned checkpoint
     private double accurateTurnInterval;
@@ -50,6 +51,27 @@ public final class Cpu extends Car
     //when so close to the checkpoint, make the car face more torwards the checkpoint
     private static final double ACCURATE_TURN_INTERVAL_PROGRESS = .4;
     
+    //when off road we steer at the cell this far ahead on the route back to the road
+    private static final int ROUTE_LOOK_AHEAD = 2;
+    
+    //how many cells ahead on the route we look for the cell of the car before asking for a new route
+    private static final int ROUTE_SEARCH = 4;
+    
+    //the route back to the road while off road
+    private final int[] route = new int[RecoveryPlanner.MAX_ROUTE_LENGTH];
+    
+    //the number of cells in the route, 0 if there is none
+    private int routeLength = 0;
+    
+    //the check point targeted when the route was planned
+    private int routeTarget;
+    
+    //the position of the car along the route
+    private int routeIndex;
+    
+    //the location to steer at while following the route
+    private final Cell routeLocation = new Cell();
+    
     public Cpu(final Random random) throws Exception
     {
         super(false);
@@ -74,7 +96,7 @@ public final class Cpu extends Car
         if (RELAXED_TURN_INTERVAL_MIN > RELAXED_TURN_INTERVAL_MAX)
             throw new Exception("The minimum turn interval can't be greater than the maximum");
         
-        //set the amount of updates required to turn the car 15 degrees
+        //set the amount of reference updates required to turn the car 15 degrees
         getAttributes().setTurnCount(TURN_COUNT_OPTIONS[random.nextInt(TURN_COUNT_OPTIONS.length)]);
         
         //pick a random accelerate rate for each cpu
@@ -171,20 +193,38 @@ public final class Cpu extends Car
     @Override
     public void update(final Engine engine) throws Exception
     {
-        //create track reference variable to simplify the code
-        final Track track = engine.getManager().getMaps().getMap().getTrack();
-        
-        //update basic elements for car: gravity, speed, race progress, etc...
-        updateBasicElements(track, engine.getMain().getTime());
-        
+        //update the cpu on the current track
+        update(engine.getManager().getMaps().getMap().getTrack(), engine.getMain().getTime());
+    }
+    
+    /**
+     * Move the cpu car.<br>
+     * This does not require the engine so the cpu can also be simulated offline.<br>
+     * The cpu decides where to steer once every car has moved and the race progress is updated, see steer()
+     * @param track The track we are racing on
+     * @param time The number of nanoseconds per update
+     * @throws Exception
+     */
+    public void update(final Track track, final long time) throws Exception
+    {
+        //update basic elements for car: gravity, speed, etc...
+        updateBasicElements(track, time);
+    }
+    
+    /**
+     * Decide where to steer for the next update, from where the car ended up and the check point it is driving towards
+     * @param track The track we are racing on
+     */
+    public void steer(final Track track)
+    {
         //always accelerate, for now
         super.setAccelerate(true);
         
         //get the facing angle in degrees
         final double degrees = getFacingAngle();
         
-        //the location of the waypoint we want to head towards
-        final Cell goal = super.getWayPointLocation(track);
+        //the location of the waypoint we want to head towards, unless we are following a route back to the road
+        final Cell goal = track.isRoad(this) ? getWayPointLocation(track) : getRecoveryLocation(track);
         
         //the angle we should be facing
         final double destination = getDestination(goal);
@@ -218,6 +258,81 @@ public final class Cpu extends Car
         }
     }
     
+    /**
+     * Get the location to steer at while off road.<br>
+     * The car follows a route back to the road instead of driving straight at the way point through the grass
+     * @param track The track we are racing on
+     * @return The location on the route back to the road, or the way point if there is no route
+     */
+    private Cell getRecoveryLocation(final Track track)
+    {
+        final RecoveryPlanner planner = track.getRecovery();
+        
+        final int target = getTracker().getCheckPointTarget();
+        
+        //the cell of the car
+        final int col = (int)getCol();
+        final int row = (int)getRow();
+        
+        //check if we are still on the current route
+        if (routeLength > 0 && routeTarget == target)
+        {
+            final int index = getRouteIndex(planner, col, row);
+            
+            if (index < 0)
+            {
+                routeLength = 0;
+            }
+            else
+            {
+                routeIndex = index;
+            }
+        }
+        else
+        {
+            routeLength = 0;
+        }
+        
+        //plan a new route from where we are
+        if (routeLength == 0)
+        {
+            routeLength = planner.getRoute(col, row, target, route);
+            
+            //there is no route or none could be planned during this update
+            if (routeLength == 0)
+                return getWayPointLocation(track);
+            
+            routeTarget = target;
+            routeIndex = 0;
+        }
+        
+        //steer at the center of a cell ahead on the route
+        final int cell = route[Math.min(routeLength - 1, routeIndex + ROUTE_LOOK_AHEAD)];
+        
+        routeLocation.setCol(planner.getCol(cell) + 0.5);
+        routeLocation.setRow(planner.getRow(cell) + 0.5);
+        
+        return routeLocation;
+    }
+    
+    /**
+     * Find the cell of the car on the current route
+     * @param planner The planner that created the route
+     * @param col The column of the car
+     * @param row The row of the car
+     * @return The position of the cell on the route, or -1 if the car is not near its position on the route
+     */
+    private int getRouteIndex(final RecoveryPlanner planner, final int col, final int row)
+    {
+        for (int i = routeIndex; i < routeLength && i <= routeIndex + ROUTE_SEARCH; i++)
+        {
+            if (planner.getCol(route[i]) == col && planner.getRow(route[i]) == row)
+                return i;
+        }
+        
+        return -1;
+    }
+    
     /**
      * Perform turn in the most efficient way.
      * @param facing The angle we are facing (in degrees)
@@ -1,18 +1,23 @@
 package com.gamesbykevin.rcproam.actor;
 
-import com.gamesbykevin.framework.input.Keyboard;
 import com.gamesbykevin.framework.util.Timer;
 import com.gamesbykevin.framework.util.Timers;
 
 import com.gamesbykevin.rcproam.car.Car;
 import com.gamesbykevin.rcproam.engine.Engine;
+import com.gamesbykevin.rcproam.event.GameEvents;
+import com.gamesbykevin.rcproam.input.KeyState;
 import com.gamesbykevin.rcproam.map.Track;
 import com.gamesbykevin.rcproam.resources.GameAudio;
 
-import java.awt.event.KeyEvent;
-
 public final class Human extends Car
 {
+    //the input bits used when the car is controlled without a keyboard, such as over a network
+    public static final int INPUT_LEFT = 1;
+    public static final int INPUT_RIGHT = 2;
+    public static final int INPUT_ACCELERATE = 4;
+    public static final int INPUT_HORN = 8;
+    
     //timer used to determine which engine sound to play
     private Timer timer;
     
@@ -28,12 +33,71 @@ public final class Human extends Car
     //flag to determine if we started turning (used to determine when to play "turn" sound effect)
     private boolean turn = false;
     
+    //the keys used to control this car
+    private Controls controls;
+    
+    //does this car play sound effects, when players share a screen only 1 car plays the engine sounds
+    private boolean sound = true;
+    
     public Human() throws Exception
     {
         super(true);
         
         //create timer
         this.timer = new Timer(ACCELERATE_DELAY);
+        
+        //use the original keys by default
+        this.controls = Controls.getDefault(0);
+    }
+    
+    /**
+     * Assign the keys used to control this car
+     * @param controls The keys
+     */
+    public void setControls(final Controls controls)
+    {
+        this.controls = controls;
+    }
+    
+    /**
+     * Does this car play sound effects
+     * @param sound true if the sound effects are played, false otherwise
+     */
+    public void setSound(final boolean sound)
+    {
+        this.sound = sound;
+    }
+    
+    /**
+     * Does this car play sound effects
+     * @return true if the sound effects are played, false otherwise
+     */
+    public boolean hasSound()
+    {
+        return this.sound;
+    }
+    
+    /**
+     * Play the sound effect if this car plays sound effects
+     * @param engine Object containing all game elements
+     * @param key The sound effect
+     * @param loop Do we loop the sound effect
+     */
+    private void playAudio(final Engine engine, final GameAudio.Keys key, final boolean loop)
+    {
+        if (sound)
+            engine.getResources().playGameAudio(key, loop);
+    }
+    
+    /**
+     * Stop the sound effect if this car plays sound effects
+     * @param engine Object containing all game elements
+     * @param key The sound effect
+     */
+    private void stopAudio(final Engine engine, final GameAudio.Keys key)
+    {
+        if (sound)
+            engine.getResources().stopGameAudio(key);
     }
     
     @Override
@@ -47,25 +111,11 @@ public final class Human extends Car
         //update basic elements for car: gravity, speed, etc...
         updateBasicElements(track, engine.getMain().getTime());
         
-        //if we were on the road and are no longer
-        if (hasRoad && !track.isRoad(this))
-        {
-            //stop any engine accelerating sound
-            engine.getResources().stopGameAudio(GameAudio.Keys.Engine);
-            engine.getResources().stopGameAudio(GameAudio.Keys.EngineLoop);
-            
-            //stop turn sound effect
-            engine.getResources().stopGameAudio(GameAudio.Keys.Turn);
-                
-            //play engine slow down effect
-            engine.getResources().playGameAudio(GameAudio.Keys.EngineSlow);
-        }
-        
-        //get keyboard input object
-        final Keyboard keyboard = engine.getKeyboard();
+        //get the state of each key for this update
+        final KeyState keys = engine.getKeyState();
         
         //can only do one or the other
-        if (keyboard.hasKeyPressed(KeyEvent.VK_RIGHT))
+        if (keys.isDown(controls.getRight()))
         {
             //if we arent turning yet, store the facing angle
             if (!super.isTurningRight())
@@ -74,7 +124,7 @@ public final class Human extends Car
             setTurnRight(true);
             setTurnLeft(false);
         }
-        else if (keyboard.hasKeyPressed(KeyEvent.VK_LEFT))
+        else if (keys.isDown(controls.getLeft()))
         {
             //if we arent turning yet, store the facing angle
             if (!super.isTurningLeft())
@@ -88,8 +138,8 @@ public final class Human extends Car
         if (isTurningLeft() || isTurningRight())
         {
             //check if the difference is enough to play the turn car angle
-            if (facingAngle - getFacingAngle() > TURN_INTERVAL ||
-                getFacingAngle() - facingAngle > TURN_INTERVAL)
+            if (facingAngle - getFacingAngle() > TURN_COUNT_INTERVAL ||
+                getFacingAngle() - facingAngle > TURN_COUNT_INTERVAL)
             {
                 //make sure we are on the road as well
                 if (track.isRoad(this))
@@ -101,7 +151,7 @@ public final class Human extends Car
                         turn = true;
 
                         //play turn sound effect
-                        engine.getResources().playGameAudio(GameAudio.Keys.Turn, true);
+                        playAudio(engine, GameAudio.Keys.Turn, true);
                     }
                 }
             }
@@ -115,11 +165,11 @@ public final class Human extends Car
                 turn = false;
                 
                 //stop sound effect
-                engine.getResources().stopGameAudio(GameAudio.Keys.Turn);
+                stopAudio(engine, GameAudio.Keys.Turn);
             }
         }
         
-        if (keyboard.hasKeyPressed(KeyEvent.VK_A))
+        if (keys.isDown(controls.getAccelerate()))
         {
             /*
              * 1. If we previously were not accelerating or
@@ -130,7 +180,7 @@ public final class Human extends Car
             if (!hasAccelerate() || !hasRoad && track.isRoad(this))
             {
                 //play engine accelerate sound effect
-                engine.getResources().playGameAudio(GameAudio.Keys.Engine);
+                playAudio(engine, GameAudio.Keys.Engine, false);
                 
                 //reset timer
                 timer.reset();
@@ -147,7 +197,7 @@ public final class Human extends Car
                 if (!passed && timer.hasTimePassed())
                 {
                     //play engine loop
-                    engine.getResources().playGameAudio(GameAudio.Keys.EngineLoop, true);
+                    playAudio(engine, GameAudio.Keys.EngineLoop, true);
                 }
             }
             
@@ -155,13 +205,13 @@ public final class Human extends Car
             setAccelerate(true);
         }
         
-        if (keyboard.hasKeyPressed(KeyEvent.VK_S))
+        if (keys.isDown(controls.getHorn()))
         {
             //if not already honking horn
             if (!horn)
             {
-                //play sound effect
-                engine.getResources().playGameAudio(GameAudio.Keys.Horn);
+                //every player can honk the horn
+                engine.getManager().getCars().getEvents().publish(GameEvents.TYPE_HORN, getNumber(), 0);
 
                 //flag effect is played
                 horn = true;
@@ -169,27 +219,26 @@ public final class Human extends Car
         }
         
         //if we previously were turning and released the turn key
-        if (keyboard.hasKeyReleased(KeyEvent.VK_LEFT) || keyboard.hasKeyReleased(KeyEvent.VK_RIGHT))
+        if (keys.hasReleased(controls.getLeft()) || keys.hasReleased(controls.getRight()))
         {
-            setTurnLeft(false);
-            setTurnRight(false);
-            
-            keyboard.removeKeyPressed(KeyEvent.VK_LEFT);
-            keyboard.removeKeyReleased(KeyEvent.VK_LEFT);
-            keyboard.removeKeyPressed(KeyEvent.VK_RIGHT);
-            keyboard.removeKeyReleased(KeyEvent.VK_RIGHT);
+            //only stop turning if neither turn key is still held down
+            if (!keys.isDown(controls.getLeft()) && !keys.isDown(controls.getRight()))
+            {
+                setTurnLeft(false);
+                setTurnRight(false);
+            }
         }
         
-        if (keyboard.hasKeyReleased(KeyEvent.VK_A))
+        if (keys.hasReleased(controls.getAccelerate()))
         {
             if (hasAccelerate())
             {
                 //stop any engine accelerate noise
-                engine.getResources().stopGameAudio(GameAudio.Keys.Engine);
-                engine.getResources().stopGameAudio(GameAudio.Keys.EngineLoop);
+                stopAudio(engine, GameAudio.Keys.Engine);
+                stopAudio(engine, GameAudio.Keys.EngineLoop);
                 
                 //play engine slow down effect
-                engine.getResources().playGameAudio(GameAudio.Keys.EngineSlow);
+                playAudio(engine, GameAudio.Keys.EngineSlow, false);
                 
                 //reset timer
                 timer.reset();
@@ -198,10 +247,36 @@ public final class Human extends Car
             setAccelerate(false);
         }
         
-        if (keyboard.hasKeyReleased(KeyEvent.VK_S))
+        if (keys.hasReleased(controls.getHorn()))
         {
             //no longer playing sound effect
             horn = false;
         }
     }
+    
+    /**
+     * Update the car from the input bits instead of the keyboard, no sound effects are played.<br>
+     * This is used when the car is controlled over a network, and the same input will always produce the same result
+     * @param track The current track in play
+     * @param time The number of nanoseconds per update
+     * @param input The input bits (INPUT_LEFT, INPUT_RIGHT, INPUT_ACCELERATE, INPUT_HORN)
+     */
+    public void update(final Track track, final long time, final int input)
+    {
+        //update basic elements for car: gravity, speed, etc...
+        updateBasicElements(track, time);
+        
+        //can only do one or the other
+        final boolean right = (input & INPUT_RIGHT) == INPUT_RIGHT;
+        final boolean left = !right && (input & INPUT_LEFT) == INPUT_LEFT;
+        
+        setTurnRight(right);
+        setTurnLeft(left);
+        
+        //are we accelerating
+        setAccelerate((input & INPUT_ACCELERATE) == INPUT_ACCELERATE);
+        
+        //are we honking the horn
+        horn = (input & INPUT_HORN) == INPUT_HORN;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,365 @@
+package com.gamesbykevin.rcproam.benchmark;
+
+import com.gamesbykevin.framework.base.Cell;
+
+import com.gamesbykevin.rcproam.car.Car;
+import com.gamesbykevin.rcproam.car.Cars;
+import com.gamesbykevin.rcproam.manager.Manager;
+import com.gamesbykevin.rcproam.map.Camera;
+import com.gamesbykevin.rcproam.map.MapLoader;
+import com.gamesbykevin.rcproam.map.Maps;
+import com.gamesbykevin.rcproam.map.StaticMap;
+import com.gamesbykevin.rcproam.render.RenderState;
+import com.gamesbykevin.rcproam.resources.GameImages;
+import com.gamesbykevin.rcproam.shared.Shared;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Offline tool that measures how long it takes to draw each part of the race, without the game window.<br>
+ * Everything is drawn to an image the size of the screen, compatible with the display when there is one.
+ * Each benchmark is drawn for a number of warm up frames first, so the code is compiled before it is measured,
+ * then the average time and the bytes allocated for each frame are reported.<br>
+ * The benchmarks are the map of each track at several locations along the track, the cars with a different number visible,
+ * the mini-map, and the entire frame with the detail screen on and off.
+ * This is used to compare different ways of drawing, by running it before and after a change.<br><br>
+ * Usage: RenderBenchmark [source directory] [frames]
+ * @author GOD
+ */
+public final class RenderBenchmark
+{
+    //default directory containing the resources
+    private static final String DEFAULT_SOURCE_DIR = "src";
+    
+    //default number of frames measured for each benchmark
+    private static final int DEFAULT_FRAMES = 2000;
+    
+    //the number of frames drawn before measuring
+    private static final int WARM_UP_FRAMES = 1000;
+    
+    //the number of laps of each track
+    private static final int LAPS = 3;
+    
+    //nanoseconds per update, the same as the game
+    private static final long TIME = (long)(1000000000.0 / Shared.DEFAULT_UPS);
+    
+    //the number of locations along each track the map is drawn at, including the start
+    private static final int LOCATIONS = 4;
+    
+    //the number of cars visible for the car benchmarks
+    private static final int[] CAR_COUNTS = {1, 4, 8};
+    
+    //the sprite sheet for the cars
+    private static final GameImages.Keys CAR_KEY = GameImages.Keys.RaceCarRed;
+    
+    //the directory containing the resources
+    private final File source;
+    
+    //the number of frames measured
+    private final int frames;
+    
+    //the image everything is drawn to
+    private final BufferedImage image;
+    
+    //graphics object to draw to the image
+    private final Graphics2D graphics;
+    
+    //where gameplay occurs, the info screen is below
+    private final Rectangle window;
+    
+    //the sprite sheet for the cars
+    private final Image sheet;
+    
+    //used to measure the bytes allocated, null if not supported
+    private final com.sun.management.ThreadMXBean allocations;
+    
+    /**
+     * Something that is drawn each frame
+     */
+    private abstract static class Frame
+    {
+        protected abstract void render() throws Exception;
+    }
+    
+    /**
+     * Create the benchmark
+     * @param source The directory containing the resources
+     * @param frames The number of frames measured for each benchmark
+     * @throws Exception
+     */
+    private RenderBenchmark(final File source, final int frames) throws Exception
+    {
+        this.source = source;
+        this.frames = frames;
+        
+        if (GraphicsEnvironment.isHeadless())
+        {
+            this.image = new BufferedImage(Shared.ORIGINAL_WIDTH, Shared.ORIGINAL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        }
+        else
+        {
+            //create an image compatible with the display, the same as the game draws to
+            this.image = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().createCompatibleImage(Shared.ORIGINAL_WIDTH, Shared.ORIGINAL_HEIGHT);
+        }
+        
+        this.graphics = image.createGraphics();
+        
+        //the height will be smaller to make room for the info screen, the same as the game
+        this.window = new Rectangle(0, 0, Shared.ORIGINAL_WIDTH, Shared.ORIGINAL_HEIGHT - Manager.INFO_HEIGHT);
+        
+        this.sheet = loadSheet(source);
+        
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        
+        if (threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported())
+        {
+            this.allocations = (com.sun.management.ThreadMXBean)threads;
+            this.allocations.setThreadAllocatedMemoryEnabled(true);
+        }
+        else
+        {
+            this.allocations = null;
+        }
+    }
+    
+    public static void main(String[] args)
+    {
+        try
+        {
+            //the directory containing the resources
+            final File source = new File(args.length > 0 ? args[0] : DEFAULT_SOURCE_DIR);
+            
+            //how many frames to measure
+            final int frames = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_FRAMES;
+            
+            final RenderBenchmark benchmark = new RenderBenchmark(source, frames);
+            
+            System.out.println(String.format("%-32s %8s %12s %12s", "Benchmark", "Frames", "ns/frame", "bytes/frame"));
+            
+            for (int trackNo = 0; trackNo < MapLoader.TOTAL_MAPS; trackNo++)
+            {
+                benchmark.run(trackNo);
+            }
+            
+            benchmark.dispose();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Load the sprite sheet for the cars, the same sheet the game uses
+     * @param source The directory containing the resources
+     * @return The sprite sheet
+     * @throws Exception if the sprite sheet could not be found
+     */
+    private static Image loadSheet(final File source) throws Exception
+    {
+        return MapLoader.loadImage(source, CAR_KEY.toString());
+    }
+    
+    /**
+     * Run each benchmark for a track
+     * @param trackNo The track
+     * @throws Exception
+     */
+    private void run(final int trackNo) throws Exception
+    {
+        final StaticMap map = MapLoader.loadMap(source, trackNo, LAPS);
+        
+        //the most cars we need visible at once
+        final Cars cars = createCars(CAR_COUNTS[CAR_COUNTS.length - 1]);
+        
+        //place the cars at the start
+        cars.reset(new Random(0));
+        map.placeCars(cars);
+        
+        //where each car is placed from the human, so the cars stay together as we move along the track
+        final Car human = cars.getHuman();
+        final Cell[] offsets = new Cell[cars.getSize()];
+        
+        for (int i = 0; i < cars.getSize(); i++)
+        {
+            offsets[i] = new Cell(cars.get(i).getCol() - human.getCol(), cars.get(i).getRow() - human.getRow());
+        }
+        
+        final Camera camera = new Camera(human, window);
+        
+        final Maps maps = new Maps(null);
+        final RenderState state = new RenderState();
+        
+        for (int location = 0; location < LOCATIONS; location++)
+        {
+            //the start, then check points spread evenly along the track
+            if (location > 0)
+            {
+                final Cell checkPoint = map.getTrack().getCheckPoint((location * map.getTrack().getCheckPointCount()) / LOCATIONS);
+                
+                for (int i = 0; i < cars.getSize(); i++)
+                {
+                    cars.get(i).setCol(checkPoint.getCol() + offsets[i].getCol());
+                    cars.get(i).setRow(checkPoint.getRow() + offsets[i].getRow());
+                }
+            }
+            
+            //move the camera and map to the human
+            camera.reset();
+            camera.update(map, TIME);
+            map.updateLocation(camera);
+            cars.adjustCars(camera);
+            
+            measure("map " + (trackNo + 1) + " location " + (location + 1), new Frame()
+            {
+                @Override
+                protected void render() throws Exception
+                {
+                    map.render(graphics);
+                }
+            });
+        }
+        
+        //the cars are drawn at the start where they are all visible
+        for (int count : CAR_COUNTS)
+        {
+            final Cars visible = createCars(count);
+            
+            visible.reset(new Random(0));
+            map.placeCars(visible);
+            
+            final Camera tmp = new Camera(visible.getHuman(), window);
+            tmp.update(map, TIME);
+            
+            measure("cars " + (trackNo + 1) + " visible " + count, new Frame()
+            {
+                @Override
+                protected void render() throws Exception
+                {
+                    visible.render(graphics, tmp);
+                }
+            });
+            
+            visible.dispose();
+        }
+        
+        //everything else is drawn at the start
+        cars.reset(new Random(0));
+        map.placeCars(cars);
+        camera.reset();
+        camera.update(map, TIME);
+        map.updateLocation(camera);
+        cars.adjustCars(camera);
+        cars.capture(state, LAPS);
+        
+        final int x = window.x + (window.width / 2) - (Maps.MINIMAP_WIDTH / 3);
+        final int y = window.y + window.height + (Manager.INFO_HEIGHT / 2) - (Maps.MINIMAP_HEIGHT / 2);
+        
+        state.setMap(map, trackNo, true);
+        
+        measure("minimap " + (trackNo + 1), new Frame()
+        {
+            @Override
+            protected void render() throws Exception
+            {
+                maps.renderMiniMap(graphics, state, x, y);
+            }
+        });
+        
+        measure("frame " + (trackNo + 1) + " detail on", new Frame()
+        {
+            @Override
+            protected void render() throws Exception
+            {
+                Manager.render(graphics, state, maps, cars, window);
+            }
+        });
+        
+        state.setMap(map, trackNo, false);
+        
+        measure("frame " + (trackNo + 1) + " detail off", new Frame()
+        {
+            @Override
+            protected void render() throws Exception
+            {
+                Manager.render(graphics, state, maps, cars, window);
+            }
+        });
+        
+        state.dispose();
+        maps.dispose();
+        cars.dispose();
+        map.dispose();
+    }
+    
+    /**
+     * Create the cars, the first car is the human the camera follows
+     * @param count The number of cars
+     * @return The cars
+     * @throws Exception
+     */
+    private Cars createCars(final int count) throws Exception
+    {
+        final Cars cars = new Cars();
+        
+        final Random random = new Random(0);
+        
+        cars.setFrames(cars.addHuman(Color.RED, "Player"), CAR_KEY, sheet);
+        
+        for (int i = 1; i < count; i++)
+        {
+            cars.setFrames(cars.addCpu(Color.BLUE, "Cpu " + i, random), CAR_KEY, sheet);
+        }
+        
+        return cars;
+    }
+    
+    /**
+     * Draw the frame to warm up, then measure the time and bytes allocated
+     * @param name The name of the benchmark
+     * @param frame What is drawn each frame
+     * @throws Exception
+     */
+    private void measure(final String name, final Frame frame) throws Exception
+    {
+        for (int i = 0; i < WARM_UP_FRAMES; i++)
+        {
+            frame.render();
+        }
+        
+        final long thread = Thread.currentThread().getId();
+        
+        final long bytes = (allocations != null) ? allocations.getThreadAllocatedBytes(thread) : 0;
+        final long start = System.nanoTime();
+        
+        for (int i = 0; i < frames; i++)
+        {
+            frame.render();
+        }
+        
+        final long duration = System.nanoTime() - start;
+        
+        //the bytes allocated for each frame, -1 if they can't be measured
+        final long allocated = (allocations != null) ? (allocations.getThreadAllocatedBytes(thread) - bytes) / frames : -1;
+        
+        System.out.println(String.format("%-32s %8d %12d %12d", name, frames, duration / frames, allocated));
+    }
+    
+    /**
+     * Release the image everything is drawn to
+     */
+    private void dispose()
+    {
+        graphics.dispose();
+        image.flush();
+    }
+}
\ No newline at end of file
@@ -10,9 +10,37 @@ import com.gamesbykevin.rcproam.map.Track;
  */
 public class Attributes 
 {
-    //the number of updates needed to turn the car 15 degrees (default to 4)
+    /**
+     * The motion constants below were tuned for this many updates per second.<br>
+     * They are scaled by the actual time of each update, so changing the updates per second does not change how the game plays
+     */
+    public static final int REFERENCE_UPS = 60;
+    
+    //the duration of 1 update the constants were tuned for (in nanoseconds)
+    public static final double REFERENCE_TIME = 1000000000.0 / REFERENCE_UPS;
+    
+    //the number of reference updates needed to turn the car 15 degrees (default to 4)
     private int turnCount = 4;
     
+    //the time the rates below were calculated for (in nanoseconds)
+    private long time = 0;
+    
+    //the number of reference updates that pass in the time of 1 update
+    private double scale = 1;
+    
+    //the rates applied over the time of 1 update
+    private double velocityDecreaseRate = VELOCITY_DECREASE_RATE;
+    private double velocityDecreaseRateOther = VELOCITY_DECREASE_RATE_OTHER;
+    private double speedDecelerate = SPEED_DECELERATE;
+    
+    //the distance travelled over the time of 1 update for each unit of velocity at the start, while accelerating and not
+    private double velocityDistance = 1;
+    private double velocityDistanceOther = 1;
+    
+    //the velocity and distance gained over the time of 1 update for each unit of push while accelerating
+    private double accelerateVelocity = VELOCITY_DECREASE_RATE;
+    private double accelerateDistance = 1;
+    
     //speed at which we are moving
     private double speed = 0;
     
@@ -38,13 +66,13 @@ public class Attributes
     //speed at which we will accelerate
     private double accelerateRate = DEFAULT_ACCELERATE_SPEED;
     
-    //the rate we slow down the velocity while accelerating
+    //the rate we slow down the velocity while accelerating (per reference update)
     protected static final double VELOCITY_DECREASE_RATE = 0.9;
     
-    //the rate we slow down the velocity when not accelerating
+    //the rate we slow down the velocity when not accelerating (per reference update)
     protected static final double VELOCITY_DECREASE_RATE_OTHER = 0.98;
     
-    //when not accelerating slow down the momentum so it will take the car longer to accelerate back to max speed
+    //when not accelerating slow down the momentum so it will take the car longer to accelerate back to max speed (per reference update)
     protected static final double SPEED_DECELERATE = 0.975;
     
     //the decrease to apply if handicap mode is enabled
@@ -54,14 +82,125 @@ public class Attributes
     private boolean handicap = false;
     
     /**
-     * Get the amount of updates required to turn the car 15 degrees
-     * @return The number of updates turning in a given direction to turn 15 degrees
+     * Get the amount of reference updates required to turn the car 15 degrees
+     * @return The number of reference updates turning in a given direction to turn 15 degrees
      */
     protected int getTurnCount()
     {
         return this.turnCount;
     }
     
+    /**
+     * Get the time required to turn the car 15 degrees.<br>
+     * The car turns on the update after the turn count has been reached
+     * @return The time turning in a given direction to turn 15 degrees (in nanoseconds)
+     */
+    protected double getTurnTime()
+    {
+        return (getTurnCount() + 1) * REFERENCE_TIME;
+    }
+    
+    /**
+     * Calculate the rates for the time of 1 update.<br>
+     * The rates are only calculated again if the time changes
+     * @param time The number of nanoseconds per update
+     */
+    protected void setTime(final long time)
+    {
+        //if the time has not changed the rates are still correct
+        if (this.time == time)
+            return;
+        
+        this.time = time;
+        
+        //how many reference updates pass in this time
+        this.scale = time / REFERENCE_TIME;
+        
+        //apply the rates for each reference update that has passed
+        this.velocityDecreaseRate = Math.pow(VELOCITY_DECREASE_RATE, scale);
+        this.velocityDecreaseRateOther = Math.pow(VELOCITY_DECREASE_RATE_OTHER, scale);
+        this.speedDecelerate = Math.pow(SPEED_DECELERATE, scale);
+        
+        //each reference update the push is added to the velocity, the car moves by the velocity, then the velocity decreases
+        //adding these up over the reference updates that pass gives the totals below, for 1 reference update each distance is 1
+        this.velocityDistance = (1 - velocityDecreaseRate) / (1 - VELOCITY_DECREASE_RATE);
+        this.velocityDistanceOther = (1 - velocityDecreaseRateOther) / (1 - VELOCITY_DECREASE_RATE_OTHER);
+        this.accelerateVelocity = VELOCITY_DECREASE_RATE * velocityDistance;
+        this.accelerateDistance = (scale - accelerateVelocity) / (1 - VELOCITY_DECREASE_RATE);
+    }
+    
+    /**
+     * Get the number of reference updates that pass in the time of 1 update
+     * @return The amount to scale anything measured per reference update
+     */
+    protected double getScale()
+    {
+        return this.scale;
+    }
+    
+    /**
+     * Get the rate we slow down the velocity while accelerating
+     * @return The rate applied over the time of 1 update
+     */
+    protected double getVelocityDecreaseRate()
+    {
+        return this.velocityDecreaseRate;
+    }
+    
+    /**
+     * Get the rate we slow down the velocity when not accelerating
+     * @return The rate applied over the time of 1 update
+     */
+    protected double getVelocityDecreaseRateOther()
+    {
+        return this.velocityDecreaseRateOther;
+    }
+    
+    /**
+     * Get the distance travelled while accelerating for each unit of velocity at the start of the update
+     * @return The distance travelled over the time of 1 update
+     */
+    protected double getVelocityDistance()
+    {
+        return this.velocityDistance;
+    }
+    
+    /**
+     * Get the distance travelled when not accelerating for each unit of velocity at the start of the update
+     * @return The distance travelled over the time of 1 update
+     */
+    protected double getVelocityDistanceOther()
+    {
+        return this.velocityDistanceOther;
+    }
+    
+    /**
+     * Get the velocity gained while accelerating for each unit of push
+     * @return The velocity gained over the time of 1 update
+     */
+    protected double getAccelerateVelocity()
+    {
+        return this.accelerateVelocity;
+    }
+    
+    /**
+     * Get the distance travelled while accelerating for each unit of push
+     * @return The distance travelled over the time of 1 update
+     */
+    protected double getAccelerateDistance()
+    {
+        return this.accelerateDistance;
+    }
+    
+    /**
+     * Get the rate we slow down the speed when not accelerating
+     * @return The rate applied over the time of 1 update
+     */
+    protected double getSpeedDecelerate()
+    {
+        return this.speedDecelerate;
+    }
+    
     /**
      * Reset the attributes.<br>
      * Currently this will only turn handicap mode off and reset the speed
@@ -76,8 +215,8 @@ public class Attributes
     }
     
     /**
-     * Set the amount of updates required to turn the car 15 degrees
-     * @param turnCount The number of updates needed to turn 15 degrees in a given direction
+     * Set the amount of reference updates required to turn the car 15 degrees
+     * @param turnCount The number of reference updates needed to turn 15 degrees in a given direction
      * @throws Exception The number must be at least 2 and a multiple of 2
      */
     public void setTurnCount(final int turnCount) throws Exception
@@ -151,8 +290,8 @@ public class Attributes
      */
     public void checkSpeed()
     {
-        //accelerate speed
-        setSpeed(getSpeed() + getAccelerateRate());
+        //accelerate speed for the time that has passed
+        setSpeed(getSpeed() + (getAccelerateRate() * getScale()));
 
         //make sure we don't go over the maximum speed, only when accelerating
         if (getSpeed() > getMaxSpeed())
@@ -1,18 +1,19 @@
 package com.gamesbykevin.rcproam.car;
 
-import com.gamesbykevin.framework.base.Animation;
 import com.gamesbykevin.framework.base.Cell;
 import com.gamesbykevin.framework.base.Sprite;
 import com.gamesbykevin.framework.resources.Disposable;
 
 import com.gamesbykevin.rcproam.engine.Engine;
 import com.gamesbykevin.rcproam.map.Track;
+import com.gamesbykevin.rcproam.render.IntegerScaleRenderer;
 import com.gamesbykevin.rcproam.shared.IElement;
-import com.gamesbykevin.rcproam.shared.Shared;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Image;
 import java.awt.Rectangle;
+import java.nio.ByteBuffer;
 
 public abstract class Car extends Sprite implements Disposable, IElement
 {
@@ -22,15 +23,24 @@ public abstract class Car extends Sprite implements Disposable, IElement
     //the angle the object should be facing in radians NOT degrees, the facing direction here is WEST
     private double angle = Math.toRadians(START_ANGLE);
     
-    //each turn will be 15 degrees
-    protected static final double TURN_INTERVAL = 15;
+    //each turn will be 5 degrees
+    protected static final double TURN_INTERVAL = 5;
     
-    //the current count
-    private int count = 0;
+    //the turn count of the car attributes is the time needed to turn this many degrees, see Attributes.getTurnTime()
+    protected static final double TURN_COUNT_INTERVAL = 15;
+    
+    //the facing angle when the car is displayed facing 0 degrees
+    private static final double FACING_000 = 90;
+    
+    //the time spent turning since the last turn (in nanoseconds)
+    private double turnTime = 0;
     
     //the car rank in a race 1st, 2nd, 3rd, etc...
     private int rank = 0;
     
+    //the number of the car, this is the order the car was added and does not change
+    private int number = 0;
+    
     //things a car can do
     private boolean turnLeft = false;
     private boolean turnRight = false;
@@ -42,10 +52,6 @@ public abstract class Car extends Sprite implements Disposable, IElement
     //is the car controlled by a human
     private final boolean human;
     
-    //dimensions of car
-    private static final int WIDTH = 32;
-    private static final int HEIGHT = 32;
-    
     //object used to measure progress for a given race
     private TrackProgress tracker;
     
@@ -55,18 +61,23 @@ public abstract class Car extends Sprite implements Disposable, IElement
     //the attributes of the car speed, accelerate, etc...
     private Attributes attributes;
     
-    public enum Direction
-    {
-        Facing000, 
-        Facing015, Facing030, Facing045, Facing060, Facing075, Facing090, 
-        Facing105, Facing120, Facing135, Facing150, Facing165, Facing180, 
-        Facing195, Facing210, Facing225, Facing240, Facing255, Facing270, 
-        Facing285, Facing300, Facing315, Facing330, Facing345, Crash
-    }
-    
     //the color of the car to be displayed on the mini map
     private Color carColor;
     
+    //the direction the car is currently displayed facing, see CarFrames.getFrame()
+    private int direction;
+    
+    //the animation frames of the car, shared with every car using the same sprite sheet
+    private CarFrames frames;
+    
+    //the size of the car state (in bytes), see writeState()
+    public static final int STATE_SIZE = (7 * 8) + 1;
+    
+    //the bits of the flags in the car state
+    private static final byte STATE_TURN_LEFT = 1;
+    private static final byte STATE_TURN_RIGHT = 2;
+    private static final byte STATE_ACCELERATE = 4;
+    
     /**
      * Create a new car
      * @param human Is the car human
@@ -85,38 +96,8 @@ public abstract class Car extends Sprite implements Disposable, IElement
         //create new track tracker
         this.tracker = new TrackProgress();
         
-        //create sprite sheet
-        super.createSpriteSheet();
-        
-        addAnimation(Direction.Facing000, 0, 0);
-        addAnimation(Direction.Facing015, 1, 0);
-        addAnimation(Direction.Facing030, 2, 0);
-        addAnimation(Direction.Facing045, 3, 0);
-        addAnimation(Direction.Facing060, 4, 0);
-        addAnimation(Direction.Facing075, 5, 0);
-        
-        addAnimation(Direction.Facing090, 0, 1);
-        addAnimation(Direction.Facing105, 1, 1);
-        addAnimation(Direction.Facing120, 2, 1);
-        addAnimation(Direction.Facing135, 3, 1);
-        addAnimation(Direction.Facing150, 4, 1);
-        addAnimation(Direction.Facing165, 5, 1);
-        
-        addAnimation(Direction.Facing180, 0, 2);
-        addAnimation(Direction.Facing195, 1, 2);
-        addAnimation(Direction.Facing210, 2, 2);
-        addAnimation(Direction.Facing225, 3, 2);
-        addAnimation(Direction.Facing240, 4, 2);
-        addAnimation(Direction.Facing255, 5, 2);
-        
-        addAnimation(Direction.Facing270, 0, 3);
-        addAnimation(Direction.Facing285, 1, 3);
-        addAnimation(Direction.Facing300, 2, 3);
-        addAnimation(Direction.Facing315, 3, 3);
-        addAnimation(Direction.Facing330, 4, 3);
-        addAnimation(Direction.Facing345, 5, 3);
-        
-        addAnimation(Direction.Crash, 1, 4);
+        //set the size of the car, which is the size of each frame
+        super.setDimensions(CarFrames.WIDTH, CarFrames.HEIGHT);
         
         //make sure appropriate animation is displayed
         correctAnimation();
@@ -147,8 +128,8 @@ public abstract class Car extends Sprite implements Disposable, IElement
         //reset velocity
         resetVelocity();
         
-        //reset turn count
-        this.count = 0;
+        //reset turn time
+        this.turnTime = 0;
     }
     
     /**
@@ -160,6 +141,24 @@ public abstract class Car extends Sprite implements Disposable, IElement
         this.rank = rank;
     }
     
+    /**
+     * Set the number of the car
+     * @param number The order the car was added
+     */
+    protected void setNumber(final int number)
+    {
+        this.number = number;
+    }
+    
+    /**
+     * Get the number of the car
+     * @return The order the car was added, this does not change when the cars are sorted
+     */
+    public int getNumber()
+    {
+        return this.number;
+    }
+    
     /**
      * Get the car rank
      * @return The position the car is in 1st, 2nd, 3rd represented as an Integer
@@ -210,7 +209,7 @@ public abstract class Car extends Sprite implements Disposable, IElement
      * Do we render this car?
      * @return true if yes, false otherwise
      */
-    protected boolean hasRender()
+    public boolean hasRender()
     {
         return this.render;
     }
@@ -244,24 +243,57 @@ public abstract class Car extends Sprite implements Disposable, IElement
         return this.turnRight;
     }
     
-    protected void turnLeft()
+    /**
+     * Turn left once enough time has passed
+     * @param time The number of nanoseconds per update
+     */
+    protected void turnLeft(final long time)
     {
-        if (count++ == getAttributes().getTurnCount())
+        //turn for each interval of time that has passed
+        for (int i = getTurns(time); i > 0; i--)
         {
             turn(-Math.toRadians(TURN_INTERVAL));
-            count = 0;
         }
     }
     
-    protected void turnRight()
+    /**
+     * Turn right once enough time has passed
+     * @param time The number of nanoseconds per update
+     */
+    protected void turnRight(final long time)
     {
-        if (count++ == getAttributes().getTurnCount())
+        //turn for each interval of time that has passed
+        for (int i = getTurns(time); i > 0; i--)
         {
             turn(Math.toRadians(TURN_INTERVAL));
-            count = 0;
         }
     }
     
+    /**
+     * Add the time spent turning and determine how many turns to make
+     * @param time The number of nanoseconds per update
+     * @return The number of times to turn
+     */
+    private int getTurns(final long time)
+    {
+        //add the time spent turning
+        turnTime += time;
+        
+        //the number of turns
+        int turns = 0;
+        
+        //the time of each turn, the turn rate stays the same no matter how far each turn is
+        final double interval = getAttributes().getTurnTime() * (TURN_INTERVAL / TURN_COUNT_INTERVAL);
+        
+        while (turnTime >= interval)
+        {
+            turnTime -= interval;
+            turns++;
+        }
+        
+        return turns;
+    }
+    
     /**
      * Assign car color which will be shown on mini map
      * @param carColor The desired car color
@@ -276,31 +308,21 @@ public abstract class Car extends Sprite implements Disposable, IElement
         return this.carColor;
     }
     
-    protected final void addAnimation(final Direction direction, final int col, final int row)
+    /**
+     * Assign the animation frames
+     * @param frames The animation frames of the car
+     */
+    protected void setFrames(final CarFrames frames)
     {
-        try
-        {
-            if (getSpriteSheet().hasAnimation(direction))
-                throw new Exception("Animation has already been added: " + direction.toString());
-            
-            getSpriteSheet().add(new Animation(col * WIDTH, row * HEIGHT, WIDTH, HEIGHT, 0), direction);
-            
-            //default an animation if one is not set
-            if (getSpriteSheet().getCurrent() == null)
-            {
-                getSpriteSheet().setCurrent(direction);
-                setDimensions();
-            }
-        }
-        catch (Exception e)
-        {
-            e.printStackTrace();
-        }
+        this.frames = frames;
     }
     
     @Override
     public void dispose()
     {
+        //the frames are shared with other cars so only remove the reference
+        frames = null;
+        
         super.dispose();
     }
     
@@ -333,21 +355,42 @@ public abstract class Car extends Sprite implements Disposable, IElement
     }
     
     /**
-     * Determine the direction based on the existing velocity, facing angle and speed of car.
+     * Move the car and determine the velocity based on the existing velocity, facing angle and speed of car.<br>
+     * The velocity decreases after each reference update, so the distance and velocity are added up over the time that has passed
      */
     private void calculateVelocity()
     {
+        //the velocity at the start of the update
+        final double velocityX = getVelocityX();
+        final double velocityY = getVelocityY();
+        
         //if we are moving calculate velocity
         if (hasAccelerate())
         {
-            //set the direction to head in
-            setVelocityX(getVelocityX() + (getAttributes().getSpeed() * Math.cos(getAngle())));
-            setVelocityY(getVelocityY() + (getAttributes().getSpeed() * Math.sin(getAngle())));
+            //the push added each reference update in the direction to head
+            final double pushX = getAttributes().getSpeed() * Math.cos(getAngle());
+            final double pushY = getAttributes().getSpeed() * Math.sin(getAngle());
+            
+            //update location on mini-map for the time that has passed
+            super.setCol(getCol() + (velocityX * getAttributes().getVelocityDistance()) + (pushX * getAttributes().getAccelerateDistance()));
+            super.setRow(getRow() + (velocityY * getAttributes().getVelocityDistance()) + (pushY * getAttributes().getAccelerateDistance()));
+            
+            //apply gravity to slow down the velocity
+            setVelocityX((velocityX * getAttributes().getVelocityDecreaseRate()) + (pushX * getAttributes().getAccelerateVelocity()));
+            setVelocityY((velocityY * getAttributes().getVelocityDecreaseRate()) + (pushY * getAttributes().getAccelerateVelocity()));
         }
         else
         {
             //if not accelerating slow down speed
-            getAttributes().setSpeed(getAttributes().getSpeed() * Attributes.SPEED_DECELERATE);
+            getAttributes().setSpeed(getAttributes().getSpeed() * getAttributes().getSpeedDecelerate());
+            
+            //update location on mini-map for the time that has passed
+            super.setCol(getCol() + (velocityX * getAttributes().getVelocityDistanceOther()));
+            super.setRow(getRow() + (velocityY * getAttributes().getVelocityDistanceOther()));
+            
+            //apply less gravity when not accelerating
+            setVelocityX(velocityX * getAttributes().getVelocityDecreaseRateOther());
+            setVelocityY(velocityY * getAttributes().getVelocityDecreaseRateOther());
         }
     }
     
@@ -378,7 +421,7 @@ public abstract class Car extends Sprite implements Disposable, IElement
      * Get the current facing angle
      * @return The facing angle in degrees rounded to the nearest degree.
      */
-    protected double getFacingAngle()
+    public double getFacingAngle()
     {
         return Math.round(Math.toDegrees(getAngle()));
     }
@@ -388,122 +431,13 @@ public abstract class Car extends Sprite implements Disposable, IElement
      */
     private void correctAnimation()
     {
-        //round to nearest degree
-        final double degrees = getFacingAngle();
+        //the first frame is displayed when the facing angle is 90 degrees
+        final double degrees = getFacingAngle() - FACING_000;
         
-        try
-        {
-            if (degrees == 0)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing270);
-            }
-            else if (degrees == 15)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing285);
-            }
-            else if (degrees == 30)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing300);
-            }
-            else if (degrees == 45)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing315);
-            }
-            else if (degrees == 60)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing330);
-            }
-            else if (degrees == 75)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing345);
-            }
-            else if (degrees == 90)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing000);
-            }
-            else if (degrees == 105)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing015);
-            }
-            else if (degrees == 120)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing030);
-            }
-            else if (degrees == 135)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing045);
-            }
-            else if (degrees == 150)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing060);
-            }
-            else if (degrees == 165)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing075);
-            }
-            else if (degrees == 180)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing090);
-            }
-            else if (degrees == 195)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing105);
-            }
-            else if (degrees == 210)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing120);
-            }
-            else if (degrees == 225)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing135);
-            }
-            else if (degrees == 240)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing150);
-            }
-            else if (degrees == 255)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing165);
-            }
-            else if (degrees == 270)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing180);
-            }
-            else if (degrees == 285)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing195);
-            }
-            else if (degrees == 300)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing210);
-            }
-            else if (degrees == 315)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing225);
-            }
-            else if (degrees == 330)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing240);
-            }
-            else if (degrees == 345)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing255);
-            }
-            else if (degrees == 360)
-            {
-                getSpriteSheet().setCurrent(Direction.Facing270);
-            }
-            else
-            {
-                //if the angle isn't caught and we are debgging, we will throw an exception
-                if (Shared.DEBUG)
-                    throw new Exception("angle not caught here: " + degrees);
-            }
-        }
-        catch (Exception e)
-        {
-            e.printStackTrace();
-        }
+        //round to the nearest direction, the angle is always a whole number of turns unless the state came from elsewhere
+        final int direction = (int)Math.round(degrees / TURN_INTERVAL) % CarFrames.DIRECTIONS;
+        
+        setDirection((direction < 0) ? direction + CarFrames.DIRECTIONS : direction);
     }
     
     /**
@@ -519,13 +453,9 @@ public abstract class Car extends Sprite implements Disposable, IElement
         //update the angle as it should be on mini-map
         setAngle(getAngle() + Math.toRadians(135));
         
-        //calculate velocity
+        //move the car and calculate velocity
         calculateVelocity();
         
-        //update location on mini-map
-        super.setCol(getCol() + getVelocityX());
-        super.setRow(getRow() + getVelocityY());
-        
         //make sure the car stays within the track boundary
         if (getCol() < 0)
             setCol(0);
@@ -546,28 +476,18 @@ public abstract class Car extends Sprite implements Disposable, IElement
      * 1. Mini-map location<br>
      * 2. Maximum Speed depending on mini-map location<br>
      * 3. Basic turning functions<br>
-     * 4. Manage track progress for this car in a race
+     * The track progress is managed by the cars once every car has moved and any collision is resolved
      * @param track The current track in play
      * @param time The number of nanoseconds per update
      */
     protected void updateBasicElements(final Track track, final long time)
     {
+        //the motion rates depend on the time of each update
+        getAttributes().setTime(time);
+        
         //update location of the car
         updateLocation(track.getColumns(), track.getRows());
         
-        if (hasAccelerate())
-        {
-            //apply gravity to slow down the velocity
-            setVelocityX(getVelocityX() * Attributes.VELOCITY_DECREASE_RATE);
-            setVelocityY(getVelocityY() * Attributes.VELOCITY_DECREASE_RATE);
-        }
-        else
-        {
-            //apply less gravity when not accelerating
-            setVelocityX(getVelocityX() * Attributes.VELOCITY_DECREASE_RATE_OTHER);
-            setVelocityY(getVelocityY() * Attributes.VELOCITY_DECREASE_RATE_OTHER);
-        }
-        
         //set maximum speed based on car location
         getAttributes().setMaxSpeed(track, this);
         
@@ -578,15 +498,52 @@ public abstract class Car extends Sprite implements Disposable, IElement
         //manage direction turning
         if (isTurningRight())
         {
-            turnRight();
+            turnRight(time);
         }
         else if (isTurningLeft())
         {
-            turnLeft();
+            turnLeft(time);
         }
+    }
+    
+    /**
+     * Write everything needed to continue moving the car from this point.<br>
+     * Location, velocity, angle, turn time, speed and the turn/accelerate flags
+     * @param buffer The buffer to write to, STATE_SIZE bytes are written
+     */
+    public void writeState(final ByteBuffer buffer)
+    {
+        buffer.putDouble(getCol());
+        buffer.putDouble(getRow());
+        buffer.putDouble(getVelocityX());
+        buffer.putDouble(getVelocityY());
+        buffer.putDouble(getAngle());
+        buffer.putDouble(turnTime);
+        buffer.putDouble(getAttributes().getSpeed());
+        buffer.put((byte)((isTurningLeft() ? STATE_TURN_LEFT : 0) | (isTurningRight() ? STATE_TURN_RIGHT : 0) | (hasAccelerate() ? STATE_ACCELERATE : 0)));
+    }
+    
+    /**
+     * Restore the car from a state written by writeState()
+     * @param buffer The buffer to read from, STATE_SIZE bytes are read
+     */
+    public void readState(final ByteBuffer buffer)
+    {
+        setCol(buffer.getDouble());
+        setRow(buffer.getDouble());
+        setVelocityX(buffer.getDouble());
+        setVelocityY(buffer.getDouble());
+        setAngle(buffer.getDouble());
+        this.turnTime = buffer.getDouble();
+        getAttributes().setSpeed(buffer.getDouble());
+        
+        final byte flags = buffer.get();
+        setTurnLeft((flags & STATE_TURN_LEFT) == STATE_TURN_LEFT);
+        setTurnRight((flags & STATE_TURN_RIGHT) == STATE_TURN_RIGHT);
+        setAccelerate((flags & STATE_ACCELERATE) == STATE_ACCELERATE);
         
-        //manage the race progress for this car
-        getTracker().updateProgress(track, this, time);
+        //make sure appropriate animation is displayed for the angle
+        correctAnimation();
     }
     
     /**
@@ -622,10 +579,42 @@ public abstract class Car extends Sprite implements Disposable, IElement
         correctAnimation();
     }
     
+    /**
+     * Display the car facing the specified direction
+     * @param direction The direction of the animation to display
+     */
+    private void setDirection(final int direction)
+    {
+        this.direction = direction;
+    }
+    
+    /**
+     * Get the image of the current frame
+     * @return The image of the frame for the direction the car is facing
+     */
+    protected Image getFrame()
+    {
+        return frames.getFrame(direction);
+    }
+    
     @Override
     public void render(final Graphics graphics) throws Exception
     {
-        //draw car animation
-        super.draw(graphics);
+        //the image of the current frame
+        final Image frame = getFrame();
+        
+        if (IntegerScaleRenderer.isScaled(graphics))
+        {
+            final int x = (int)getX();
+            final int y = (int)getY();
+            
+            //copy the frame from the scaled image
+            IntegerScaleRenderer.drawImage(graphics, frame, x, y, x + CarFrames.WIDTH, y + CarFrames.HEIGHT, 0, 0, CarFrames.WIDTH, CarFrames.HEIGHT);
+        }
+        else
+        {
+            //draw the entire frame
+            graphics.drawImage(frame, (int)getX(), (int)getY(), null);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,351 @@
+package com.gamesbykevin.rcproam.car;
+
+import com.gamesbykevin.framework.resources.Disposable;
+
+import com.gamesbykevin.rcproam.map.Track;
+import com.gamesbykevin.rcproam.event.GameEvents;
+
+import java.util.List;
+
+/**
+ * This class will resolve collision between cars after each car has moved for the update.<br>
+ * Each car is a circle that sweeps from where it started the update to where it ended.
+ * A broad phase sorts the swept bounds of each car by column and only flags the pairs whose bounds overlap.<br>
+ * Only the flagged pairs are sub-stepped, so fast cars can't pass through each other.
+ * At the first contact the cars are separated, the velocity pushing them together is removed,
+ * and the rest of the movement slides along the contact.
+ * @author GOD
+ */
+final class CarCollision implements Disposable
+{
+    //the distance between the center of 2 cars when they touch
+    private final double distance;
+    
+    //the most the distance between 2 cars can change during a sub-step, as a fraction of the collision distance
+    private static final double SUB_STEP_RATE = 0.5;
+    
+    //the most sub-steps for a single pair
+    private static final int MAX_SUB_STEPS = 16;
+    
+    //how much of the velocity pushing the cars together is returned as a bounce
+    private static final double RESTITUTION = 0.25;
+    
+    //the speed of each car is reduced by this rate when it collides
+    private static final double SPEED_RATE = 0.5;
+    
+    //a small gap left between the cars after they are separated
+    private static final double SEPARATION = 0.001;
+    
+    //the location of each car before it moved, indexed by the order of the cars
+    private double[] startCols, startRows;
+    
+    //the swept bounds of each car
+    private double[] minCols, maxCols, minRows, maxRows;
+    
+    //the cars sorted by the start of their swept bounds
+    private int[] order;
+    
+    //the number of pairs flagged by the broad phase during the last update
+    private int flagged = 0;
+    
+    /**
+     * Create the collision
+     * @param distance The distance between the center of 2 cars when they touch
+     */
+    protected CarCollision(final double distance)
+    {
+        this.distance = distance;
+        
+        allocate(0);
+    }
+    
+    /**
+     * Make sure we can store the location of every car, the arrays are only created when the number of cars changes
+     * @param count The number of cars
+     */
+    private void allocate(final int count)
+    {
+        if (order != null && order.length == count)
+            return;
+        
+        this.startCols = new double[count];
+        this.startRows = new double[count];
+        this.minCols = new double[count];
+        this.maxCols = new double[count];
+        this.minRows = new double[count];
+        this.maxRows = new double[count];
+        this.order = new int[count];
+        
+        for (int i = 0; i < count; i++)
+        {
+            this.order[i] = i;
+        }
+    }
+    
+    /**
+     * Store the location of each car before it moves, this is called before the cars are updated
+     * @param cars The cars
+     */
+    protected void begin(final List<Car> cars)
+    {
+        allocate(cars.size());
+        
+        for (int i = 0; i < cars.size(); i++)
+        {
+            startCols[i] = cars.get(i).getCol();
+            startRows[i] = cars.get(i).getRow();
+        }
+    }
+    
+    /**
+     * Resolve collision between the cars, this is called after every car has moved
+     * @param cars The cars
+     * @param track The track we are racing on, the cars will stay within its bounds
+     * @param events Where each collision is published
+     */
+    protected void update(final List<Car> cars, final Track track, final GameEvents events)
+    {
+        final int count = cars.size();
+        
+        //the radius of each car
+        final double radius = distance / 2;
+        
+        //calculate the swept bounds of each car
+        for (int i = 0; i < count; i++)
+        {
+            final Car car = cars.get(i);
+            
+            minCols[i] = Math.min(startCols[i], car.getCol()) - radius;
+            maxCols[i] = Math.max(startCols[i], car.getCol()) + radius;
+            minRows[i] = Math.min(startRows[i], car.getRow()) - radius;
+            maxRows[i] = Math.max(startRows[i], car.getRow()) + radius;
+        }
+        
+        //sort by the start of the bounds, the order barely changes between updates so this is close to linear
+        for (int i = 1; i < count; i++)
+        {
+            final int index = order[i];
+            
+            int j = i - 1;
+            
+            while (j >= 0 && minCols[order[j]] > minCols[index])
+            {
+                order[j + 1] = order[j];
+                j--;
+            }
+            
+            order[j + 1] = index;
+        }
+        
+        flagged = 0;
+        
+        //sweep through the sorted bounds, only pairs that overlap are checked
+        for (int i = 0; i < count; i++)
+        {
+            final int a = order[i];
+            
+            for (int j = i + 1; j < count; j++)
+            {
+                final int b = order[j];
+                
+                //every remaining car starts after this one ends
+                if (minCols[b] > maxCols[a])
+                    break;
+                
+                //the rows don't overlap
+                if (minRows[b] > maxRows[a] || minRows[a] > maxRows[b])
+                    continue;
+                
+                flagged++;
+                
+                if (resolve(cars.get(a), cars.get(b), a, b, track))
+                {
+                    //publish the collision
+                    events.publish(GameEvents.TYPE_COLLISION, cars.get(a).getNumber(), cars.get(b).getNumber());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Sub-step the movement of 2 cars to find the first contact, and resolve it
+     * @param car1 The first car
+     * @param car2 The second car
+     * @param index1 The index of the first car
+     * @param index2 The index of the second car
+     * @param track The track we are racing on
+     * @return true if the cars collided, false otherwise
+     */
+    private boolean resolve(final Car car1, final Car car2, final int index1, final int index2, final Track track)
+    {
+        //the movement of each car during this update
+        final double moveCol1 = car1.getCol() - startCols[index1];
+        final double moveRow1 = car1.getRow() - startRows[index1];
+        final double moveCol2 = car2.getCol() - startCols[index2];
+        final double moveRow2 = car2.getRow() - startRows[index2];
+        
+        //the location of the first car compared to the second at the start, and how that changes
+        final double startCol = startCols[index1] - startCols[index2];
+        final double startRow = startRows[index1] - startRows[index2];
+        final double moveCol = moveCol1 - moveCol2;
+        final double moveRow = moveRow1 - moveRow2;
+        
+        //split the movement so the cars can't move past each other within a sub-step
+        final double length = Math.sqrt((moveCol * moveCol) + (moveRow * moveRow));
+        final int steps = Math.max(1, Math.min(MAX_SUB_STEPS, (int)Math.ceil(length / (distance * SUB_STEP_RATE))));
+        
+        //the fraction of the update when the cars first touch
+        double time = -1;
+        
+        for (int step = 0; step <= steps; step++)
+        {
+            final double t = (double)step / steps;
+            
+            final double col = startCol + (moveCol * t);
+            final double row = startRow + (moveRow * t);
+            
+            if ((col * col) + (row * row) < distance * distance)
+            {
+                //find exactly when they touch between the previous sub-step and this one
+                time = (step == 0) ? 0 : getContactTime(startCol, startRow, moveCol, moveRow, (double)(step - 1) / steps, t);
+                break;
+            }
+        }
+        
+        //the cars never touched
+        if (time < 0)
+            return false;
+        
+        //the location of each car when they touch
+        double col1 = startCols[index1] + (moveCol1 * time);
+        double row1 = startRows[index1] + (moveRow1 * time);
+        double col2 = startCols[index2] + (moveCol2 * time);
+        double row2 = startRows[index2] + (moveRow2 * time);
+        
+        //the direction from the second car to the first
+        double normalCol = col1 - col2;
+        double normalRow = row1 - row2;
+        double normalLength = Math.sqrt((normalCol * normalCol) + (normalRow * normalRow));
+        
+        if (normalLength == 0)
+        {
+            //the cars are in the same place, so push them apart against the direction they were moving
+            normalCol = -moveCol;
+            normalRow = -moveRow;
+            normalLength = Math.sqrt((normalCol * normalCol) + (normalRow * normalRow));
+            
+            if (normalLength == 0)
+            {
+                normalCol = 1;
+                normalRow = 0;
+                normalLength = 1;
+            }
+        }
+        
+        normalCol /= normalLength;
+        normalRow /= normalLength;
+        
+        //separate the cars evenly so they are no longer touching
+        final double overlap = (distance + SEPARATION - Math.min(normalLength, distance)) / 2;
+        col1 += normalCol * overlap;
+        row1 += normalRow * overlap;
+        col2 -= normalCol * overlap;
+        row2 -= normalRow * overlap;
+        
+        //the rest of the movement slides along the contact, without moving into the other car
+        final double remaining = 1 - time;
+        
+        final double dot1 = Math.min(0, ((moveCol1 * normalCol) + (moveRow1 * normalRow)));
+        final double dot2 = Math.max(0, ((moveCol2 * normalCol) + (moveRow2 * normalRow)));
+        
+        col1 += (moveCol1 - (normalCol * dot1)) * remaining;
+        row1 += (moveRow1 - (normalRow * dot1)) * remaining;
+        col2 += (moveCol2 - (normalCol * dot2)) * remaining;
+        row2 += (moveRow2 - (normalRow * dot2)) * remaining;
+        
+        setLocation(car1, col1, row1, track);
+        setLocation(car2, col2, row2, track);
+        
+        //the velocity of the first car compared to the second along the contact
+        final double velocity = ((car1.getVelocityX() - car2.getVelocityX()) * normalCol) + ((car1.getVelocityY() - car2.getVelocityY()) * normalRow);
+        
+        //if the cars are moving towards each other, both cars share the change in velocity
+        if (velocity < 0)
+        {
+            final double impulse = -(1 + RESTITUTION) * velocity / 2;
+            
+            car1.setVelocityX(car1.getVelocityX() + (normalCol * impulse));
+            car1.setVelocityY(car1.getVelocityY() + (normalRow * impulse));
+            car2.setVelocityX(car2.getVelocityX() - (normalCol * impulse));
+            car2.setVelocityY(car2.getVelocityY() - (normalRow * impulse));
+        }
+        
+        //the cars lose speed from the collision
+        car1.getAttributes().setSpeed(car1.getAttributes().getSpeed() * SPEED_RATE);
+        car2.getAttributes().setSpeed(car2.getAttributes().getSpeed() * SPEED_RATE);
+        
+        return true;
+    }
+    
+    /**
+     * Calculate when the distance between 2 moving circles is equal to the collision distance
+     * @param col The column of the first car compared to the second at the start
+     * @param row The row of the first car compared to the second at the start
+     * @param moveCol The change in column during the update
+     * @param moveRow The change in row during the update
+     * @param start The fraction of the update when the cars are not touching
+     * @param end The fraction of the update when the cars are touching
+     * @return The fraction of the update when the cars first touch
+     */
+    private double getContactTime(final double col, final double row, final double moveCol, final double moveRow, final double start, final double end)
+    {
+        //solve |location + (move * t)| = distance
+        final double a = (moveCol * moveCol) + (moveRow * moveRow);
+        final double b = 2 * ((col * moveCol) + (row * moveRow));
+        final double c = (col * col) + (row * row) - (distance * distance);
+        
+        final double discriminant = (b * b) - (4 * a * c);
+        
+        //this should not happen since the cars touch at the end, but use the end to be safe
+        if (a == 0 || discriminant < 0)
+            return end;
+        
+        final double t = (-b - Math.sqrt(discriminant)) / (2 * a);
+        
+        return Math.max(start, Math.min(end, t));
+    }
+    
+    /**
+     * Move the car, making sure it stays within the track boundary
+     * @param car The car
+     * @param col The column
+     * @param row The row
+     * @param track The track we are racing on
+     */
+    private static void setLocation(final Car car, final double col, final double row, final Track track)
+    {
+        car.setCol(Math.max(0, Math.min(track.getColumns() - 1, col)));
+        car.setRow(Math.max(0, Math.min(track.getRows() - 1, row)));
+    }
+    
+    /**
+     * Get the number of pairs of cars that the broad phase flagged during the last update
+     * @return The number of pairs that were sub-stepped
+     */
+    protected int getFlagged()
+    {
+        return this.flagged;
+    }
+    
+    @Override
+    public void dispose()
+    {
+        startCols = null;
+        startRows = null;
+        minCols = null;
+        maxCols = null;
+        minRows = null;
+        maxRows = null;
+        order = null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.gamesbykevin.rcproam.car;
+
+import com.gamesbykevin.framework.resources.Disposable;
+
+import com.gamesbykevin.rcproam.lifecycle.Lifecycle;
+import com.gamesbykevin.rcproam.lifecycle.Tracked;
+import com.gamesbykevin.rcproam.render.IntegerScaleRenderer;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * The animation frames of a car sprite sheet.<br>
+ * Each frame is copied from the sprite sheet once into its own image,
+ * so every car using the same sprite sheet can share the frames and draw the entire frame image.<br>
+ * The sprite sheet only has a frame every 15 degrees, while a car can face every 5 degrees.
+ * The frames in between are created here by rotating the nearest frame on the sprite sheet,
+ * so no rotation is needed when the car is drawn.
+ * @author GOD
+ */
+public final class CarFrames implements Disposable
+{
+    //dimensions of each frame
+    public static final int WIDTH = 32;
+    public static final int HEIGHT = 32;
+    
+    //the column and row of each frame on the sprite sheet, a frame every 15 degrees clockwise
+    private static final int[][] LAYOUT =
+    {
+        {0, 0},
+        {1, 0}, {2, 0}, {3, 0}, {4, 0}, {5, 0}, {0, 1},
+        {1, 1}, {2, 1}, {3, 1}, {4, 1}, {5, 1}, {0, 2},
+        {1, 2}, {2, 2}, {3, 2}, {4, 2}, {5, 2}, {0, 3},
+        {1, 3}, {2, 3}, {3, 3}, {4, 3}, {5, 3}
+    };
+    
+    /**
+     * The number of directions a car can face, one for each turn
+     */
+    public static final int DIRECTIONS = (int)(360 / Car.TURN_INTERVAL);
+    
+    //the number of directions between each frame on the sprite sheet
+    private static final int DIRECTIONS_PER_FRAME = DIRECTIONS / LAYOUT.length;
+    
+    //the image for each direction
+    private Image[] frames;
+    
+    //the image for each direction registered with the lifecycle
+    private Tracked[] tracked;
+    
+    /**
+     * Copy each frame from the sprite sheet
+     * @param sheet The sprite sheet containing the frames
+     * @throws Exception if the turn interval does not divide the frames evenly
+     */
+    protected CarFrames(final Image sheet) throws Exception
+    {
+        if (DIRECTIONS % LAYOUT.length != 0)
+            throw new Exception("The turn interval must divide the frames on the sprite sheet evenly");
+        
+        this.frames = new Image[DIRECTIONS];
+        this.tracked = new Tracked[DIRECTIONS];
+        
+        for (int i = 0; i < DIRECTIONS; i++)
+        {
+            //the nearest frame on the sprite sheet and how many directions we are past it
+            int index = i / DIRECTIONS_PER_FRAME;
+            int offset = i % DIRECTIONS_PER_FRAME;
+            
+            //if we are closer to the next frame, rotate that frame back instead
+            if (offset > DIRECTIONS_PER_FRAME / 2)
+            {
+                index = (index + 1) % LAYOUT.length;
+                offset -= DIRECTIONS_PER_FRAME;
+            }
+            
+            frames[i] = createFrame(sheet, LAYOUT[index][0] * WIDTH, LAYOUT[index][1] * HEIGHT, Math.toRadians(offset * Car.TURN_INTERVAL));
+            tracked[i] = Lifecycle.register(Lifecycle.Subsystem.Cars, frames[i], "Car frame");
+        }
+    }
+    
+    /**
+     * Copy a single frame from the sprite sheet
+     * @param sheet The sprite sheet
+     * @param x x-coordinate of the frame
+     * @param y y-coordinate of the frame
+     * @param angle The angle to rotate the frame clockwise around the center (in radians), 0 to copy the frame as is
+     * @return An image containing only the frame
+     */
+    private static BufferedImage createFrame(final Image sheet, final int x, final int y, final double angle)
+    {
+        final BufferedImage frame;
+        
+        if (GraphicsEnvironment.isHeadless())
+        {
+            frame = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        }
+        else
+        {
+            //create an image compatible with the display so it can be drawn quickly
+            frame = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().createCompatibleImage(WIDTH, HEIGHT, Transparency.BITMASK);
+        }
+        
+        final Graphics2D graphics = frame.createGraphics();
+        
+        if (angle != 0)
+        {
+            //keep the pixels sharp, the same as the frames on the sprite sheet
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            graphics.rotate(angle, WIDTH / 2.0, HEIGHT / 2.0);
+        }
+        
+        graphics.drawImage(sheet, 0, 0, WIDTH, HEIGHT, x, y, x + WIDTH, y + HEIGHT, null);
+        graphics.dispose();
+        
+        return frame;
+    }
+    
+    /**
+     * Get the frame for the direction
+     * @param direction The direction the car is facing (0 - DIRECTIONS), each is Car.TURN_INTERVAL degrees clockwise from the first frame
+     * @return The image of the frame
+     */
+    public Image getFrame(final int direction)
+    {
+        return this.frames[direction];
+    }
+    
+    @Override
+    public void dispose()
+    {
+        if (frames != null)
+        {
+            for (int i = 0; i < frames.length; i++)
+            {
+                if (frames[i] != null)
+                {
+                    //release the scaled copies of the frame as well
+                    IntegerScaleRenderer.evict(frames[i]);
+                    
+                    frames[i].flush();
+                    frames[i] = null;
+                    tracked[i].dispose();
+                }
+            }
+            
+            frames = null;
+            tracked = null;
+        }
+    }
+}
\ No newline at end of file
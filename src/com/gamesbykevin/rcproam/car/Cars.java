@@ -1,36 +1,47 @@
 package com.gamesbykevin.rcproam.car;
 
-import com.gamesbykevin.framework.base.Cell;
 import com.gamesbykevin.framework.resources.Disposable;
 import com.gamesbykevin.framework.util.Timer;
 import com.gamesbykevin.framework.util.Timers;
 
 import com.gamesbykevin.rcproam.actor.*;
 import com.gamesbykevin.rcproam.engine.Engine;
+import com.gamesbykevin.rcproam.event.GameEventListener;
+import com.gamesbykevin.rcproam.event.GameEvents;
+import com.gamesbykevin.rcproam.map.Camera;
 import com.gamesbykevin.rcproam.map.StaticMap;
-import com.gamesbykevin.rcproam.resources.GameAudio;
+import com.gamesbykevin.rcproam.map.Track;
+import com.gamesbykevin.rcproam.render.IntegerScaleRenderer;
+import com.gamesbykevin.rcproam.render.RenderState;
+import com.gamesbykevin.rcproam.resources.GameImages;
+import com.gamesbykevin.rcproam.resources.Resources;
+import com.gamesbykevin.rcproam.results.RaceResult;
 import com.gamesbykevin.rcproam.shared.IElement;
 import com.gamesbykevin.rcproam.shared.Shared;
+import com.gamesbykevin.rcproam.telemetry.Recorder;
+import com.gamesbykevin.rcproam.telemetry.Telemetry;
 
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 /**
  * This class will be the container for all the cars in the game
  * @author GOD
  */
-public class Cars implements Disposable, IElement
+public class Cars implements Disposable, IElement, GameEventListener
 {
     //the container for the cars
     private List<Car> cars;
     
     //the distance between cars to detect collision
-    private static final double COLLISION_DISTANCE = 0.5;
+    public static final double COLLISION_DISTANCE = 0.5;
     
     //the amount of checkpoints allowed before applying handicap 
     private static final int HANDICAP_LIMIT = 2;
@@ -47,10 +58,103 @@ public class Cars implements Disposable, IElement
     //does the human continue to the next race, if false the game is over
     private boolean win = false;
     
+    //the car controlled by the human, stored so we don't have to search each update
+    private Car human;
+    
+    //the cars in the order they were last displayed on the leaderboard
+    private Car[] leaderboardCars;
+    
+    //the description of each position on the leaderboard
+    private String[] leaderboardDesc;
+    
+    //the description of each car in each position, indexed by position then number of the car, only created the first time it is shown
+    private String[][] leaderboardText;
+    
+    //was each car on the road at the start of the update, indexed by number of the car
+    private boolean[] road;
+    
+    //the most positions shown on the leaderboard
+    private static final int LEADERBOARD_SIZE = 4;
+    
+    //the title of the leaderboard
+    private static final String LEADERBOARD_TITLE = "Leaderboard:";
+    
+    //the height of font, archive to save resources
+    private int fontHeight = 0;
+    
+    //the events published during the race (lap, collision, etc...)
+    private GameEvents events;
+    
+    //object used to record race telemetry, null if not recording
+    private Telemetry telemetry;
+    
+    //the number of updates since the race started, used to identify telemetry records
+    private long tick = 0;
+    
+    //the animation frames for each sprite sheet, shared by every car using the sprite sheet
+    private Map<GameImages.Keys, CarFrames> frames;
+    
+    //object used to resolve collision between cars
+    private CarCollision carCollision;
+    
     public Cars()
     {
         //create new list to hold the cars
         this.cars = new ArrayList<>();
+        
+        //create the container for the animation frames
+        this.frames = new EnumMap<>(GameImages.Keys.class);
+        
+        //create the object used to resolve collision
+        this.carCollision = new CarCollision(COLLISION_DISTANCE);
+        
+        //create the events, we record the events in telemetry
+        this.events = new GameEvents(GameEvents.DEFAULT_CAPACITY);
+        this.events.subscribe(this);
+    }
+    
+    /**
+     * Get the number of updates since the race started
+     * @return The update number
+     */
+    public long getTick()
+    {
+        return this.tick;
+    }
+    
+    /**
+     * Get the events published during the race
+     * @return The events, subscribe to receive them
+     */
+    public GameEvents getEvents()
+    {
+        return this.events;
+    }
+    
+    /**
+     * Record the lap and collision events in telemetry
+     */
+    @Override
+    public void onEvent(final int type, final long tick, final int number, final long value)
+    {
+        if (telemetry == null)
+            return;
+        
+        final Car car = getCar(number);
+        
+        switch (type)
+        {
+            case GameEvents.TYPE_LAP:
+                telemetry.event(Telemetry.TYPE_LAP, tick, number, car.getCol(), car.getRow(), car.getTracker().getLaps(), value);
+                break;
+            
+            case GameEvents.TYPE_COLLISION:
+                telemetry.event(Telemetry.TYPE_COLLISION, tick, number, car.getCol(), car.getRow(), car.getTracker().getLaps(), value);
+                break;
+            
+            default:
+                break;
+        }
     }
     
     /**
@@ -63,6 +167,12 @@ public class Cars implements Disposable, IElement
         //we have not completed race
         this.setRaceComplete(false);
         
+        //start counting updates again
+        this.tick = 0;
+        
+        //the events of the previous race are no longer needed
+        this.events.clear();
+        
         //reset track progress for the cars, etc...
         for (int i = 0; i < cars.size(); i++)
         {
@@ -78,6 +188,30 @@ public class Cars implements Disposable, IElement
         }
     }
     
+    /**
+     * Assign the object used to record race telemetry
+     * @param telemetry The telemetry, null if we are not recording
+     */
+    public void setTelemetry(final Telemetry telemetry)
+    {
+        this.telemetry = telemetry;
+    }
+    
+    /**
+     * Did any human car finish well enough to qualify for the next race
+     * @return true if at least 1 human car did not finish last, false otherwise
+     */
+    private boolean hasQualified()
+    {
+        for (int i = 0; i < cars.size(); i++)
+        {
+            if (cars.get(i).isHuman() && cars.get(i).getRank() < getSize())
+                return true;
+        }
+        
+        return false;
+    }
+    
     /**
      * Get the car at the specified index.
      * @param index The car that we want
@@ -88,6 +222,22 @@ public class Cars implements Disposable, IElement
         return this.cars.get(index);
     }
     
+    /**
+     * Get the car with the specified number, the cars are sorted by rank so the index of a car changes
+     * @param number The number of the car
+     * @return The car, null if there is no car with the number
+     */
+    public Car getCar(final int number)
+    {
+        for (int i = 0; i < cars.size(); i++)
+        {
+            if (cars.get(i).getNumber() == number)
+                return cars.get(i);
+        }
+        
+        return null;
+    }
+    
     /**
      * Set the race as completed
      * @param raceComplete true - race completed, false otherwise
@@ -173,18 +323,75 @@ public class Cars implements Disposable, IElement
     }
     
     /**
-     * Add human controlled car.<br>Note there can only be 1 human car
-     * @param image The sprite sheet for the car
+     * Get the animation frames for the sprite sheet.<br>
+     * The frames are only created the first time the sprite sheet is used
+     * @param resources Object containing all resources
+     * @param key The key of the sprite sheet
+     * @return The animation frames
+     * @throws Exception
+     */
+    private CarFrames getFrames(final Resources resources, final GameImages.Keys key) throws Exception
+    {
+        return getFrames(key, resources.getGameImage(key));
+    }
+    
+    /**
+     * Get the animation frames for the sprite sheet.<br>
+     * The frames are only created the first time the sprite sheet is used
+     * @param key The key of the sprite sheet
+     * @param sheet The sprite sheet
+     * @return The animation frames
+     * @throws Exception
+     */
+    private CarFrames getFrames(final GameImages.Keys key, final Image sheet) throws Exception
+    {
+        if (frames.get(key) == null)
+            frames.put(key, new CarFrames(sheet));
+        
+        return frames.get(key);
+    }
+    
+    /**
+     * Assign the animation frames to a car added without any.<br>
+     * This does not require the game resources so the cars can also be drawn offline
+     * @param car The car
+     * @param key The key of the sprite sheet
+     * @param sheet The sprite sheet
+     * @throws Exception
+     */
+    public void setFrames(final Car car, final GameImages.Keys key, final Image sheet) throws Exception
+    {
+        car.setFrames(getFrames(key, sheet));
+    }
+    
+    /**
+     * Add human controlled car.<br>
+     * The first human car added is the car the screen will follow
+     * @param resources Object containing all resources
+     * @param key The key of the sprite sheet for the car
      * @param color The color of the car to be displayed on mini map
      * @param name The name to identify this car to the user
-     * @throws Exception If more than 1 human car is added an exception will be thrown
+     * @return The car added
+     * @throws Exception
      */
-    public void addHuman(final Image image, final Color color, final String name) throws Exception
+    public Car addHuman(final Resources resources, final GameImages.Keys key, final Color color, final String name) throws Exception
+    {
+        //add the car and assign the animation frames
+        final Car car = addHuman(color, name);
+        car.setFrames(getFrames(resources, key));
+        return car;
+    }
+    
+    /**
+     * Add human controlled car without any animation frames, this car can't be drawn.<br>
+     * The first human car added is the car the screen will follow
+     * @param color The color of the car to be displayed on mini map
+     * @param name The name to identify this car to the user
+     * @return The car added
+     * @throws Exception
+     */
+    public Car addHuman(final Color color, final String name) throws Exception
     {
-        //if we already have a human car and are attemtping to add another
-        if (hasHuman())
-            throw new Exception("Only 1 human car is allowed");
-        
         //create human controlled car
         Car car = new Human();
         
@@ -193,22 +400,44 @@ public class Cars implements Disposable, IElement
 
         //set the car name
         car.setName(name);
-        
-        //assign spite image
-        car.setImage(image);
 
         //add car to list
         add(car);
+        
+        //store the first human car
+        if (!hasHuman())
+            this.human = car;
+        
+        return car;
     }
     
     /**
      * Add CPU controlled car
-     * @param image The sprite sheet for the car
+     * @param resources Object containing all resources
+     * @param key The key of the sprite sheet for the car
+     * @param color The color of the car to be displayed on mini map
+     * @param name The name to identify this car to the user
+     * @param random Object used to make random decisions
+     * @return The car added
+     * @throws Exception
+     */
+    public Car addCpu(final Resources resources, final GameImages.Keys key, final Color color, final String name, final Random random) throws Exception
+    {
+        //add the car and assign the animation frames
+        final Car car = addCpu(color, name, random);
+        car.setFrames(getFrames(resources, key));
+        return car;
+    }
+    
+    /**
+     * Add CPU controlled car without any animation frames, this car can't be drawn
      * @param color The color of the car to be displayed on mini map
      * @param name The name to identify this car to the user
      * @param random Object used to make random decisions
+     * @return The car added
+     * @throws Exception
      */
-    public void addCpu(final Image image, final Color color, final String name, final Random random) throws Exception
+    public Car addCpu(final Color color, final String name, final Random random) throws Exception
     {
         //create AI controlled car
         Car car = new Cpu(random);
@@ -218,12 +447,11 @@ public class Cars implements Disposable, IElement
 
         //set the car name
         car.setName(name);
-        
-        //assign spite image
-        car.setImage(image);
 
         //add car to list
         add(car);
+        
+        return car;
     }
     
     /**
@@ -232,32 +460,21 @@ public class Cars implements Disposable, IElement
      */
     public boolean hasHuman()
     {
-        for (int i = 0; i < cars.size(); i++)
-        {
-            //if this car is controlled by human return true
-            if (cars.get(i).isHuman())
-                return true;
-        }
-        
-        return false;
+        return (this.human != null);
     }
     
     /**
-     * Get the car controlled by a human
+     * Get the car controlled by a human, if there is more than 1 this is the first human car added
      * @return Car controlled by human, if there are no human cars null will be returned
      * @throws Exception if there are no human cars
      */
     public Car getHuman() throws Exception
     {
-        for (int i = 0; i < cars.size(); i++)
-        {
-            //if this car is controlled by human we found our car
-            if (cars.get(i).isHuman())
-                return cars.get(i);
-        }
-        
         //no human cars were found, throw exception
-        throw new Exception("There are no human cars");
+        if (!hasHuman())
+            throw new Exception("There are no human cars");
+        
+        return this.human;
     }
     
     /**
@@ -270,7 +487,17 @@ public class Cars implements Disposable, IElement
         if (car.getName() == null || car.getName().trim().length() < 1)
             throw new Exception("Car must have a name assigned before adding to the list");
         
+        //assign the number before adding so it matches the order
+        car.setNumber(cars.size());
+        
         cars.add(car);
+        
+        //make room on the leaderboard for the new car
+        leaderboardCars = new Car[cars.size()];
+        leaderboardDesc = new String[cars.size()];
+        leaderboardText = new String[cars.size()][cars.size()];
+        
+        road = new boolean[cars.size()];
     }
     
     @Override
@@ -287,6 +514,36 @@ public class Cars implements Disposable, IElement
             cars.clear();
             cars = null;
         }
+        
+        if (telemetry != null)
+        {
+            telemetry.dispose();
+            telemetry = null;
+        }
+        
+        human = null;
+        events = null;
+        leaderboardCars = null;
+        leaderboardDesc = null;
+        leaderboardText = null;
+        road = null;
+        
+        if (frames != null)
+        {
+            for (CarFrames tmp : frames.values())
+            {
+                tmp.dispose();
+            }
+            
+            frames.clear();
+            frames = null;
+        }
+        
+        if (carCollision != null)
+        {
+            carCollision.dispose();
+            carCollision = null;
+        }
     }
     
     @Override
@@ -295,112 +552,148 @@ public class Cars implements Disposable, IElement
         //adjust the car locations, etc...
         adjustCars(engine);
         
-        //did at least 1 car complete a lap
-        boolean lapCompleted = false;
-
-        //has at least 1 car collided with another
-        boolean collision = false;
-
+        //the current map we are racing
+        final StaticMap map = engine.getManager().getMaps().getMap();
+        
+        final long start = Recorder.begin();
+        
+        //update the cars, the events are dispatched by the manager
+        updateRace(engine, map.getTrack(), map.getLaps(), engine.getMain().getTime(), null);
+        
+        Recorder.tick(start, tick, cars.size(), doCheckCollision() ? carCollision.getFlagged() : 0);
+    }
+    
+    /**
+     * Update the cars without an engine, such as a server hosting the race.<br>
+     * The human cars are controlled by the input provided, and the rank of each car is updated
+     * @param track The track we are racing on
+     * @param laps The number of laps required to complete the race
+     * @param time The number of nanoseconds per update
+     * @param inputs The input for each human car, indexed by the car number (see Human.INPUT_LEFT, etc...)
+     * @throws Exception
+     */
+    public void update(final Track track, final int laps, final long time, final int[] inputs) throws Exception
+    {
+        final long start = Recorder.begin();
+        
+        updateRace(null, track, laps, time, inputs);
+        
+        //update the rank of each car
+        sortCars(false);
+        
+        Recorder.tick(start, tick, cars.size(), doCheckCollision() ? carCollision.getFlagged() : 0);
+        
+        //send the events of this update
+        events.dispatch();
+    }
+    
+    /**
+     * Update each car, check for collision and if the race has completed.<br>
+     * The events that happen are published (lap, collision, off road, check point, race finish)
+     * @param engine Our game engine, null if the cars are updated without an engine
+     * @param track The track we are racing on
+     * @param required The number of laps required to complete the race
+     * @param time The number of nanoseconds per update
+     * @param inputs The input for each human car when there is no engine
+     * @throws Exception
+     */
+    private void updateRace(final Engine engine, final Track track, final int required, final long time, final int[] inputs) throws Exception
+    {
+        //count the updates
+        tick++;
+        
+        //the events published are part of this update
+        events.setTick(tick);
+        
+        //the cpu cars can search for routes back to the road again
+        track.getRecovery().begin();
+        
+        //store where each car starts so collision can follow the path of each car
+        if (doCheckCollision())
+            carCollision.begin(cars);
+        
         for (int i = 0; i < cars.size(); i++)
         {
             Car car = cars.get(i);
-
-            //get the amount of laps the car has completed
-            final int laps = car.getTracker().getLaps();
-
-            //store the previous location of the car
-            final double col = car.getCol();
-            final double row = car.getRow();
+            
+            //is the car on the road
+            road[car.getNumber()] = track.isRoad(car);
 
             //update the car
-            car.update(engine);
-
-            //are we checking for collision
-            if (doCheckCollision())
+            if (engine != null)
             {
-                //if we have collision
-                if (hasCollision(car))
-                {
-                    //only flag collisions that are rendered on screen
-                    if (car.hasRender())
-                        collision = true;
-
-                    //move the car back to the previous place
-                    car.setCol(col);
-                    car.setRow(row);
-                }
+                car.update(engine);
             }
-
+            else if (car.isHuman())
+            {
+                ((Human)car).update(track, time, inputs[car.getNumber()]);
+            }
+            else
+            {
+                ((Cpu)car).update(track, time);
+            }
+        }
+        
+        //now that every car has moved, resolve any collision along the way
+        if (doCheckCollision())
+            carCollision.update(cars, track, events);
+        
+        //the progress is measured from where each car ended up, so a car can't reach a check point or finish by passing through another car
+        for (int i = 0; i < cars.size(); i++)
+        {
+            Car car = cars.get(i);
+            
+            //get the amount of laps the car has completed
+            final int laps = car.getTracker().getLaps();
+            
+            //the check point the car is driving towards
+            final int target = car.getTracker().getCheckPointTarget();
+            
+            //manage the race progress for this car
+            car.getTracker().updateProgress(track, car, time);
+            
+            //the cpu decides where to steer from where it ended up
+            if (!car.isHuman())
+                ((Cpu)car).steer(track);
+            
+            //if the car left or returned to the road
+            if (road[car.getNumber()] != track.isRoad(car))
+                events.publish(road[car.getNumber()] ? GameEvents.TYPE_OFF_ROAD : GameEvents.TYPE_ON_ROAD, car.getNumber(), 0);
+            
+            //if the car reached the check point
+            if (car.getTracker().getCheckPointTarget() != target)
+                events.publish(GameEvents.TYPE_CHECK_POINT, car.getNumber(), target);
+            
             //if the current number of laps has increased we have completed a lap
             if (car.getTracker().getLaps() > laps)
             {
-                //get the number of laps required for the current map we are racing
-                final int required = engine.getManager().getMaps().getMap().getLaps();
-
-                //if this car has completed the required amoun of laps for the race
-                if (car.getTracker().getLaps() >= required)
+                //record the lap time
+                events.publish(GameEvents.TYPE_LAP, car.getNumber(), car.getTracker().getLapTime(laps));
+                
+                //if this is the first car to complete the required amount of laps for the race
+                if (car.getTracker().getLaps() >= required && !hasRaceCompleted())
                 {
-                    //stop all sound
-                    engine.getResources().stopAllSound();
-
                     //mark the race complete
                     this.setRaceComplete(true);
 
-                    //did the human finish well enough to qualify for the next race
-                    setWin(getHuman().getRank() < getSize());
+                    //did a human finish well enough to qualify for the next race
+                    setWin(hasQualified());
                     
-                    //don't continue since race completed
-                    return;
+                    events.publish(GameEvents.TYPE_RACE_FINISH, car.getNumber(), hasWin() ? 1 : 0);
                 }
-                else
-                {
-                    //only play the sound effect for the human
-                    if (car.isHuman())
-                    {
-                        //a car has completed a lap
-                        lapCompleted = true;
-                    }
-                }
-
-                //if a car has completed the race exit method
-                if (hasRaceCompleted())
-                    return;
             }
         }
-
-        //if a car completed a lap play sound effect
-        if (lapCompleted)
-            engine.getResources().playGameAudio(GameAudio.Keys.Lap);
-
-        //if collision honk car horn
-        if (collision)
-            engine.getResources().playGameAudio(GameAudio.Keys.Horn);
-    }
-    
-    /**
-     * Do any of the cars collide with the current car?
-     * 
-     * @param car Car we want to check for collision
-     * @return true if a car is close enough to the car, false otherwise
-     */
-    private boolean hasCollision(final Car tmp)
-    {
-        for (int i = 0; i < cars.size(); i++)
+        
+        //record where each car is
+        if (telemetry != null)
         {
-            //get the current car
-            Car car = cars.get(i);
-            
-            //don't check self
-            if (car.getId() == tmp.getId())
-                continue;
-            
-            //if the car is close enough we have collision
-            if (Cell.getDistance(car, tmp) <= COLLISION_DISTANCE)
-                return true;
+            for (int i = 0; i < cars.size(); i++)
+            {
+                Car car = cars.get(i);
+                
+                telemetry.sample(tick, car.getNumber(), car.getCol(), car.getRow(), car.getFacingAngle(), car.getAttributes().getSpeed(), car.getRank(), car.getTracker().getLaps());
+            }
         }
-        
-        //no collision was found
-        return false;
     }
     
     /**
@@ -414,18 +707,24 @@ public class Cars implements Disposable, IElement
      */
     public void adjustCars(final Engine engine) throws Exception
     {
-        //the current map used
-        final StaticMap map = engine.getManager().getMaps().getMap();
-
-        //the screen where gameplay will take place
-        final Rectangle screen = engine.getManager().getWindow();
-        
-        //get the human controlled car
-        final Car human = getHuman();
+        //the camera following the human
+        adjustCars(engine.getManager().getCamera());
+    }
+    
+    /**
+     * Adjust the cars for the camera following the human.<br>
+     * This does not require the engine so the cars can also be drawn offline
+     * @param camera The camera following the human, already updated for the map we are racing on
+     * @throws Exception If there is no human car an exception will be thrown
+     */
+    public void adjustCars(final Camera camera) throws Exception
+    {
+        //make sure we have a human car
+        if (!hasHuman())
+            throw new Exception("There are no human cars");
         
-        //get the coordinates of the human car so we can determine where the cpu should be rendered
-        final double humanX = map.getAdjustedX(human, screen);
-        final double humanY = map.getAdjustedY(human, screen);
+        //project every car onto the screen at once
+        camera.project(cars);
         
         //do we apply the handicap to the human car, if the mode is enabled, default to true
         boolean applyHumanHandicap = (handicap) ? true : false;
@@ -434,19 +733,12 @@ public class Cars implements Disposable, IElement
         {
             Car car = cars.get(i);
             
+            //place the car where the camera projected it
+            car.setX(camera.getScreenX(car.getNumber()));
+            car.setY(camera.getScreenY(car.getNumber()));
+            
             if (!car.isHuman())
             {
-                //get the coordinates of the specified cpu car
-                final double x = map.getAdjustedX(car, screen);
-                final double y = map.getAdjustedY(car, screen);
-                
-                //temporary place the car where the human is
-                car.setLocation(human);
-                
-                //now set the x,y based on the difference from the human
-                car.setX(car.getX() + (humanX - x));
-                car.setY(car.getY() + (humanY - y));
-                
                 //if handicap is enabled
                 if (handicap)
                 {
@@ -479,8 +771,8 @@ public class Cars implements Disposable, IElement
                 }
             }
             
-            //we only want to draw the car if it is on the screen
-            car.setRender(screen.contains(car.getX(), car.getY()));
+            //we only want to draw the car if any part of it is on the screen
+            car.setRender(camera.isVisible(car.getNumber()));
         }
         
         //do we need to apply the handicap to the human
@@ -509,6 +801,48 @@ public class Cars implements Disposable, IElement
         }
     }
     
+    /**
+     * Draw the cars within the viewport of the camera.<br>
+     * Cars outside of the viewport are skipped, and cars on the edge are cut off so they don't overlap the other viewports
+     * @param graphics Graphics object
+     * @param camera The camera of the viewport, already updated for the map we are racing on
+     */
+    public void render(final Graphics graphics, final Camera camera)
+    {
+        //first order the cars to be rendered in the appropriate order
+        sortCars(true);
+        
+        final Rectangle window = camera.getWindow();
+        
+        //project every car into this viewport at once
+        camera.project(cars);
+        
+        for (int i = 0; i < cars.size(); i++)
+        {
+            final Car car = cars.get(i);
+            
+            //the car is not within the viewport
+            if (!camera.isVisible(car.getNumber()))
+                continue;
+            
+            //where the car is in this viewport
+            final int x = (int)camera.getScreenX(car.getNumber());
+            final int y = (int)camera.getScreenY(car.getNumber());
+            
+            //the part of the car within the viewport
+            final int x1 = Math.max(x, window.x);
+            final int y1 = Math.max(y, window.y);
+            final int x2 = Math.min(x + CarFrames.WIDTH, window.x + window.width);
+            final int y2 = Math.min(y + CarFrames.HEIGHT, window.y + window.height);
+            
+            //the car is not within the viewport
+            if (x1 >= x2 || y1 >= y2)
+                continue;
+            
+            IntegerScaleRenderer.drawImage(graphics, car.getFrame(), x1, y1, x2, y2, x1 - x, y1 - y, x2 - x, y2 - y);
+        }
+    }
+    
     /**
      * Sort the cars.<br>
      * @param byLocation If true, the cars will be sorted by location, else sort by rank
@@ -599,32 +933,142 @@ public class Cars implements Disposable, IElement
      */
     public void renderTimeInfo(final Graphics graphics, final int x, final int y, final int laps)
     {
-        try
-        {
-            getHuman().getTracker().renderLapDescription(graphics, x, y, laps);
-        }
-        catch(Exception e)
-        {
-            e.printStackTrace();
-        }
+        //only draw if there is a human car
+        if (hasHuman())
+            human.getTracker().renderLapDescription(graphics, x, y, laps);
     }
     
+    /**
+     * Draw the cars in order of their rank.<br>
+     * The description for each position is only created when the car in that position changes
+     * @param graphics Graphics object
+     * @param x starting x-coordinate
+     * @param y starting y-coordinate
+     */
     public void renderLeaderboard(final Graphics graphics, final int x, final int y)
     {
         //sort the cars by rank
-        sortCars(false);
+        updateLeaderboard();
         
+        //draw the descriptions
+        renderLeaderboard(graphics, x, y, leaderboardDesc, cars.size());
+    }
+    
+    /**
+     * Draw the leaderboard descriptions
+     * @param graphics Graphics object
+     * @param x starting x-coordinate
+     * @param y starting y-coordinate
+     * @param descriptions The description of each position
+     * @param count The number of positions
+     */
+    public void renderLeaderboard(final Graphics graphics, final int x, final int y, final String[] descriptions, final int count)
+    {
         //the color of the text is white
         graphics.setColor(Color.WHITE);
         
         //get the font height
-        final int fontHeight = graphics.getFontMetrics().getHeight();
+        if (fontHeight == 0)
+            fontHeight = graphics.getFontMetrics().getHeight();
+        
+        graphics.drawString(LEADERBOARD_TITLE, x, y);
         
-        graphics.drawString("Leaderboard:", x, y);
+        //only show the leading positions
+        for (int i = 0; i < Math.min(count, LEADERBOARD_SIZE); i++)
+        {
+            graphics.drawString(descriptions[i], x, y + (fontHeight * (i+1)));
+        }
+    }
+    
+    /**
+     * Sort the cars by rank and update the description of each position on the leaderboard
+     */
+    private void updateLeaderboard()
+    {
+        //sort the cars by rank
+        sortCars(false);
         
         for (int i = 0; i < cars.size(); i++)
         {
-            graphics.drawString((i+1) + " - " + cars.get(i).getName(), x, y + (fontHeight * (i+1)));
+            //if a different car is now in this position, update the description
+            if (leaderboardCars[i] != cars.get(i))
+            {
+                leaderboardCars[i] = cars.get(i);
+                
+                final int number = cars.get(i).getNumber();
+                
+                //the description is kept so the cars can swap positions back and forth without creating it again
+                if (leaderboardText[i][number] == null)
+                    leaderboardText[i][number] = (i+1) + " - " + cars.get(i).getName();
+                
+                leaderboardDesc[i] = leaderboardText[i][number];
+            }
+        }
+    }
+    
+    /**
+     * Copy everything needed to draw the cars to the render state
+     * @param state The render state
+     * @param laps The number of laps required to complete the race
+     */
+    public void capture(final RenderState state, final int laps)
+    {
+        state.setCount(cars.size());
+        
+        //sort the cars by rank and copy the leaderboard
+        updateLeaderboard();
+        
+        for (int i = 0; i < cars.size(); i++)
+        {
+            state.setLeaderboard(i, leaderboardDesc[i]);
+        }
+        
+        //then order the cars to be rendered in the appropriate order
+        sortCars(true);
+        
+        for (int i = 0; i < cars.size(); i++)
+        {
+            final Car car = cars.get(i);
+            
+            //only draw the cars that are on the screen
+            state.setCar(i, car.hasRender() ? car.getFrame() : null, (int)car.getX(), (int)car.getY(), (int)car.getCol(), (int)car.getRow(), car.getCarColor());
         }
+        
+        //copy the progress of the human
+        if (hasHuman())
+            state.getProgress().set(human.getTracker());
+        
+        state.setHuman(hasHuman(), laps);
+    }
+    
+    /**
+     * Get the result of the race, each car is stored in finishing order with the time of each lap completed
+     * @param track The index of the track
+     * @param carType The type of car raced
+     * @param seed The seed of the Random object used during the race
+     * @return The result of the race
+     */
+    public RaceResult getResult(final int track, final int carType, final long seed)
+    {
+        //sort the cars by race progress, this is the finishing order
+        sortCars(false);
+        
+        final RaceResult result = new RaceResult(track, carType, seed, System.currentTimeMillis(), cars.size());
+        
+        for (int i = 0; i < cars.size(); i++)
+        {
+            final Car car = cars.get(i);
+            
+            final long[] lapTimes = new long[car.getTracker().getLaps()];
+            
+            for (int lap = 0; lap < lapTimes.length; lap++)
+            {
+                lapTimes[lap] = car.getTracker().getLapTime(lap);
+            }
+            
+            result.setCar(i, car.getNumber(), car.isHuman(), car.getTracker().getRaceTime(), lapTimes);
+        }
+        
+        return result;
     }
 }
\ No newline at end of file
@@ -2,14 +2,11 @@ package com.gamesbykevin.rcproam.car;
 
 import com.gamesbykevin.framework.base.Cell;
 import com.gamesbykevin.framework.resources.Disposable;
-import com.gamesbykevin.framework.util.Timer;
-import com.gamesbykevin.framework.util.Timers;
 import com.gamesbykevin.rcproam.map.Track;
 import java.awt.Color;
 
 import java.awt.Graphics;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * This class will keep track of a cars progress for a given track.<br>
@@ -36,28 +33,44 @@ public class TrackProgress implements Disposable
     //the current way point a car are targeting
     private int target = 0;
 
-    //timer used to track the time of each lap
-    private Timer timer;
+    //the time of the current lap (in nanoseconds)
+    private long lapTime = 0;
     
-    //timer user to track entire race time
-    private Timer stopWatch;
+    //the time of the entire race (in nanoseconds)
+    private long raceTime = 0;
     
-    //the text description of each lap
-    private List<String> lapDescription;
+    //the time of each completed lap (in nanoseconds)
+    private long[] lapTimes;
+    
+    //the default number of lap times we can store before we need to grow the array
+    private static final int DEFAULT_LAP_CAPACITY = 8;
+    
+    //the text of each line is written here so no new objects are created while rendering
+    private char[] text;
+    
+    //the maximum length of a line of text
+    private static final int TEXT_LENGTH = 32;
+    
+    //the text displayed for each lap/total time
+    private static final char[] LAP_DESC = "Lap ".toCharArray();
+    private static final char[] TIME_DESC = " - ".toCharArray();
+    private static final char[] TOTAL_DESC = "Total - ".toCharArray();
+    
+    //time conversions used to display the time
+    private static final long NANO_SECONDS_PER_MILLISECOND = 1000000L;
+    private static final long MILLISECONDS_PER_SECOND = 1000L;
+    private static final long SECONDS_PER_MINUTE = 60L;
     
     //the height of font, archive to save resources
     private int fontHeight = 0;
     
     public TrackProgress()
     {
-        //create new timer
-        this.timer = new Timer();
-        
-        //create new timer
-        this.stopWatch = new Timer();
+        //create array which will contain each lap time
+        this.lapTimes = new long[DEFAULT_LAP_CAPACITY];
         
-        //create list which will contain each lap time
-        this.lapDescription = new ArrayList<>();
+        //create the array where the text will be written
+        this.text = new char[TEXT_LENGTH];
         
         //reset 
         reset();
@@ -66,13 +79,28 @@ public class TrackProgress implements Disposable
     @Override
     public void dispose()
     {
-        timer = null;
+        lapTimes = null;
+        text = null;
+    }
+    
+    /**
+     * Copy the progress of another car, this is used to draw the progress while the car continues to update
+     * @param progress The progress to copy
+     */
+    public void set(final TrackProgress progress)
+    {
+        //make room for the lap times if needed
+        if (progress.lapTimes.length > lapTimes.length)
+            lapTimes = new long[progress.lapTimes.length];
         
-        if (lapDescription != null)
-        {
-            lapDescription.clear();
-            lapDescription = null;
-        }
+        System.arraycopy(progress.lapTimes, 0, lapTimes, 0, progress.getLaps());
+        
+        this.laps = progress.laps;
+        this.checkPoints = progress.checkPoints;
+        this.raceProgress = progress.raceProgress;
+        this.target = progress.target;
+        this.lapTime = progress.lapTime;
+        this.raceTime = progress.raceTime;
     }
     
     /**
@@ -83,11 +111,11 @@ public class TrackProgress implements Disposable
      */
     public void updateProgress(final Track track, final Car car, final long time)
     {
-        //update timer
-        timer.update(time);
+        //update lap time
+        lapTime += time;
         
-        //update timer
-        stopWatch.update(time);
+        //update race time
+        raceTime += time;
         
         //get the location of the current targeted way point
         final Cell goal = getCheckPointLocation(track);
@@ -124,14 +152,14 @@ public class TrackProgress implements Disposable
                     //reset the way point target back to the beginning
                     resetCheckPointTarget();
 
+                    //store the time of the lap just completed
+                    addLapTime(lapTime);
+                    
                     //increase laps completed
                     addLap();
                     
-                    //add lap description to list
-                    lapDescription.add("Lap " + getLaps() + " - " + timer.getDescPassed(Timers.FORMAT_6));
-                    
-                    //reset timer
-                    timer.reset();
+                    //reset lap time
+                    lapTime = 0;
                     
                     //check point has been completed, add to total
                     this.checkPoints++;
@@ -172,14 +200,11 @@ public class TrackProgress implements Disposable
         //reset the number of laps completed
         resetLaps();
         
-        //reset timer
-        timer.reset();
+        //reset lap time
+        lapTime = 0;
         
-        //reset timer
-        stopWatch.reset();
-        
-        //clear list of lap descriptions
-        lapDescription.clear();
+        //reset race time
+        raceTime = 0;
         
         //reset checkpoints completed back to 0
         checkPoints = 0;
@@ -234,6 +259,48 @@ public class TrackProgress implements Disposable
         this.laps = 0;
     }
     
+    /**
+     * Store the time of a completed lap
+     * @param time The time of the lap (in nanoseconds)
+     */
+    private void addLapTime(final long time)
+    {
+        //make room for the lap time if needed
+        if (getLaps() >= lapTimes.length)
+            lapTimes = Arrays.copyOf(lapTimes, lapTimes.length * 2);
+        
+        lapTimes[getLaps()] = time;
+    }
+    
+    /**
+     * Make room for the time of each lap of the race, so the lap times don't need to grow while racing
+     * @param laps The number of laps required to complete the race
+     */
+    public void setLapCapacity(final int laps)
+    {
+        if (laps > lapTimes.length)
+            lapTimes = Arrays.copyOf(lapTimes, laps);
+    }
+    
+    /**
+     * Get the time of a completed lap
+     * @param lap The lap we want the time for (starting at 0)
+     * @return The time of the lap (in nanoseconds)
+     */
+    public long getLapTime(final int lap)
+    {
+        return this.lapTimes[lap];
+    }
+    
+    /**
+     * Get the time of the entire race so far
+     * @return The time of the race (in nanoseconds)
+     */
+    public long getRaceTime()
+    {
+        return this.raceTime;
+    }
+    
     /**
      * Add 1 lap completed to the total
      */
@@ -256,27 +323,14 @@ public class TrackProgress implements Disposable
     
     /**
      * Get the progress from the previous checkpoint to the next one.<br>
-     * Progress will range from 0.0 - 1.0
+     * The car location is projected onto the line between the checkpoints, so progress will range from 0.0 - 1.0
      * @param track The current track we are racing on
      * @param carLocation The current location of the car
-     * @return 
+     * @return The progress completed towards the next checkpoint
      */
     public double getCurrentCheckPointProgress(final Track track, final Cell carLocation)
     {
-        //location of previous checkpoint
-        Cell previous = (getCheckPointTarget() <= 0) ? track.getCheckPoint(track.getCheckPointCount() - 1) : track.getCheckPoint(getCheckPointTarget() - 1);
-        
-        //location of current checkpoint
-        Cell current = track.getCheckPoint(getCheckPointTarget());
-        
-        //full distance between previous and current checkpoint
-        final double fullDistance = Cell.getDistance(previous, current);
-        
-        //the progress completed towards next check point
-        final double progressDistance = fullDistance - Cell.getDistance(carLocation, current);
-        
-        //return the progress completed towards the next checkpoint
-        return (double)(progressDistance / fullDistance);
+        return track.getSegmentProgress(getCheckPointTarget(), carLocation.getCol(), carLocation.getRow());
     }
     
     /**
@@ -288,6 +342,14 @@ public class TrackProgress implements Disposable
         return this.raceProgress;
     }
     
+    /**
+     * Draw the time of each lap as well as the total race time.<br>
+     * The text is written to a reusable array so no new objects are created each frame
+     * @param graphics Graphics object
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @param laps The number of laps required to complete the race
+     */
     public void renderLapDescription(final Graphics graphics, final int x, final int y, final int laps)
     {
         //text will be white
@@ -300,48 +362,110 @@ public class TrackProgress implements Disposable
         //draw all lap times
         for (int i = 0; i <= laps; i++)
         {
-            //empty description
-            final String emptyDesc = "Lap " + (i+1);
-            
-            //current time description
-            final String timedDesc = emptyDesc + " - " + timer.getDescPassed(Timers.FORMAT_6);
-            
             //y-ccordinate to display info
             final int drawY = y + (fontHeight * i);
             
-            //if there are no descriptions we can only show current progress
-            if (lapDescription.isEmpty())
+            //the length of the text for this line
+            int length = 0;
+            
+            if (i == laps)
             {
-                if (i == 0)
-                {
-                    graphics.drawString(timedDesc, x, drawY);
-                }
-                else if (i < laps)
-                {
-                    graphics.drawString(emptyDesc, x, drawY);
-                }
+                //the last line is the total race time
+                length = append(TOTAL_DESC, length);
+                length = appendTime(raceTime, length);
             }
             else
             {
-                if (i < lapDescription.size())
+                //every lap will have a description
+                length = append(LAP_DESC, length);
+                length = appendNumber(i + 1, length);
+                
+                if (i < getLaps())
                 {
-                    graphics.drawString(lapDescription.get(i), x, drawY);
+                    //this lap is complete, show the lap time
+                    length = append(TIME_DESC, length);
+                    length = appendTime(lapTimes[i], length);
                 }
-                else
+                else if (i == getLaps())
                 {
-                    if (i == lapDescription.size() && i < laps)
-                    {
-                        graphics.drawString(timedDesc, x, drawY);
-                    }
-                    else if (i < laps)
-                    {
-                        graphics.drawString(emptyDesc, x, drawY);
-                    }
+                    //this is the current lap, show the current time
+                    length = append(TIME_DESC, length);
+                    length = appendTime(lapTime, length);
                 }
             }
             
-            if (i == laps)
-                graphics.drawString("Total - " + stopWatch.getDescPassed(Timers.FORMAT_6), x, drawY);
+            graphics.drawChars(text, 0, length, x, drawY);
+        }
+    }
+    
+    /**
+     * Add characters to the text
+     * @param characters The characters to add
+     * @param index Where to start adding
+     * @return The length of the text
+     */
+    private int append(final char[] characters, final int index)
+    {
+        System.arraycopy(characters, 0, text, index, characters.length);
+        
+        return (index + characters.length);
+    }
+    
+    /**
+     * Add a positive number to the text
+     * @param number The number to add
+     * @param index Where to start adding
+     * @return The length of the text
+     */
+    private int appendNumber(final long number, final int index)
+    {
+        //count the digits
+        int digits = 1;
+        
+        for (long tmp = number / 10; tmp > 0; tmp /= 10)
+        {
+            digits++;
         }
+        
+        return appendNumber(number, index, digits);
+    }
+    
+    /**
+     * Add a positive number to the text, padding with 0's to the number of digits
+     * @param number The number to add
+     * @param index Where to start adding
+     * @param digits The number of digits to display
+     * @return The length of the text
+     */
+    private int appendNumber(long number, final int index, final int digits)
+    {
+        //write the digits starting at the end
+        for (int i = index + digits - 1; i >= index; i--)
+        {
+            text[i] = (char)('0' + (number % 10));
+            number /= 10;
+        }
+        
+        return (index + digits);
+    }
+    
+    /**
+     * Add the time to the text formatted as minutes:seconds.milliseconds
+     * @param time The time (in nanoseconds)
+     * @param index Where to start adding
+     * @return The length of the text
+     */
+    private int appendTime(final long time, int index)
+    {
+        final long milliseconds = time / NANO_SECONDS_PER_MILLISECOND;
+        final long seconds = milliseconds / MILLISECONDS_PER_SECOND;
+        
+        index = appendNumber(seconds / SECONDS_PER_MINUTE, index, 2);
+        text[index++] = ':';
+        index = appendNumber(seconds % SECONDS_PER_MINUTE, index, 2);
+        text[index++] = '.';
+        index = appendNumber(milliseconds % MILLISECONDS_PER_SECOND, index, 3);
+        
+        return index;
     }
 }
\ No newline at end of file
@@ -1,15 +1,21 @@
 package com.gamesbykevin.rcproam.engine;
 
+import com.gamesbykevin.rcproam.input.InputQueue;
+import com.gamesbykevin.rcproam.input.KeyState;
+import com.gamesbykevin.rcproam.lifecycle.Lifecycle;
 import com.gamesbykevin.rcproam.main.Main;
 import com.gamesbykevin.rcproam.manager.Manager;
 import com.gamesbykevin.rcproam.menu.CustomMenu;
+import com.gamesbykevin.rcproam.render.RenderState;
 import com.gamesbykevin.rcproam.resources.*;
 import com.gamesbykevin.rcproam.shared.Shared;
+import com.gamesbykevin.rcproam.telemetry.Recorder;
 
 import com.gamesbykevin.framework.input.*;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
 import java.util.Random;
 
 public final class Engine implements KeyListener, MouseMotionListener, MouseListener, IEngine 
@@ -29,6 +35,12 @@ public final class Engine implements KeyListener, MouseMotionListener, MouseList
     //keyboard object that will be recording key input
     private Keyboard keyboard;
     
+    //the key events waiting for the next update
+    private InputQueue input;
+    
+    //the state of each key for the current update
+    private KeyState keys;
+    
     //object containing all of the game elements
     private Manager manager;
     
@@ -61,9 +73,21 @@ public final class Engine implements KeyListener, MouseMotionListener, MouseList
         //object used to track keyboard input
         this.keyboard = new Keyboard();
         
+        //key events are queued until the start of each update
+        this.input = new InputQueue();
+        this.keys = new KeyState();
+        
         //create new Random object
         random = new Random(seed);
         
+        //record how long each phase takes if enabled, this is started first so loading is recorded
+        if (Shared.PROFILE)
+            Recorder.start(new File(Shared.PROFILE_FILE));
+        
+        //start loading the resources in the background while the menu is shown
+        this.resources = new Resources();
+        this.resources.start(main.getContainerClass());
+        
         //display seed if debugging
         if (Shared.DEBUG)
             System.out.println("Seed = " + seed);
@@ -101,6 +125,9 @@ public final class Engine implements KeyListener, MouseMotionListener, MouseList
                 keyboard = null;
             }
             
+            input = null;
+            keys = null;
+            
             if (manager != null)
             {
                 manager.dispose();
@@ -108,6 +135,12 @@ public final class Engine implements KeyListener, MouseMotionListener, MouseList
             }
             
             random = null;
+            
+            //write the remaining profile records
+            Recorder.stop();
+            
+            //everything should be disposed now, so log anything that wasn't
+            Lifecycle.reportUndisposed();
         }
         catch(Exception e)
         {
@@ -120,6 +153,9 @@ public final class Engine implements KeyListener, MouseMotionListener, MouseList
     {
         try
         {
+            //apply the key events received since the previous update
+            input.update(keys, keyboard);
+            
             if (menu == null)
             {
                 //create new menu
@@ -184,19 +220,17 @@ public final class Engine implements KeyListener, MouseMotionListener, MouseList
     }
     
     /**
-     * Flag the engine to reset the game
+     * Flag the engine to reset the game.<br>
+     * The resources stay loaded so the next game can start right away, they are only disposed with the engine
      */
     public void setReset()
     {
         //reset mouse and keyboard input
         resetInput();
         
+        //the resources are kept loaded for the next game, they are only disposed when the engine is
         if (this.resources != null)
-        {
             this.resources.stopAllSound();
-            this.resources.dispose();
-            this.resources = null;
-        }
         
         if (this.manager != null)
         {
@@ -210,6 +244,7 @@ public final class Engine implements KeyListener, MouseMotionListener, MouseList
         //reset mouse and keyboard input
         getMouse().reset();
         getKeyboard().reset();
+        getKeyState().clear();
     }
     
     public Main getMain()
@@ -269,6 +304,47 @@ public final class Engine implements KeyListener, MouseMotionListener, MouseList
         }
     }
     
+    /**
+     * Copy everything needed to draw the race to the render state.<br>
+     * The race can only be drawn from a render state once the menu is finished and the resources are loaded
+     * @param state The render state
+     * @return true if the race was copied, false if the game needs to be drawn by the update thread
+     */
+    public boolean capture(final RenderState state)
+    {
+        //the menu has to be finished
+        if (menu == null || !menu.hasFinished() || !menu.hasFocus())
+            return false;
+        
+        //the mouse is drawn by the menu
+        if (!Shared.HIDE_MOUSE)
+            return false;
+        
+        //the resources have to be loaded
+        if (resources == null || resources.isLoading() || manager == null)
+            return false;
+        
+        return manager.capture(state);
+    }
+    
+    /**
+     * Draw the race from the render state
+     * @param graphics Graphics object where the race will be drawn to
+     * @param state The render state
+     * @throws Exception
+     */
+    public void render(final Graphics graphics, final RenderState state) throws Exception
+    {
+        //get default font
+        if (font == null)
+            font = graphics.getFont().deriveFont(Font.BOLD, GAME_FONT_SIZE);
+        
+        //set default font
+        graphics.setFont(font);
+        
+        manager.render(graphics, state);
+    }
+    
     /**
      * Draw the Game Menu
      * 
@@ -311,13 +387,13 @@ public final class Engine implements KeyListener, MouseMotionListener, MouseList
     @Override
     public void keyReleased(KeyEvent e)
     {
-        keyboard.addKeyReleased(e.getKeyCode());
+        input.add(e.getKeyCode(), false, System.nanoTime());
     }
     
     @Override
     public void keyPressed(KeyEvent e)
     {
-        keyboard.addKeyPressed(e.getKeyCode());
+        input.add(e.getKeyCode(), true, System.nanoTime());
     }
     
     @Override
@@ -378,4 +454,13 @@ public final class Engine implements KeyListener, MouseMotionListener, MouseList
     {
         return keyboard;
     }
+    
+    /**
+     * Get the state of each key for the current update
+     * @return The key state
+     */
+    public KeyState getKeyState()
+    {
+        return keys;
+    }
 }
\ No newline at end of file
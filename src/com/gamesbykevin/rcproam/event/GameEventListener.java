@@ -0,0 +1,17 @@
+package com.gamesbykevin.rcproam.event;
+
+/**
+ * Receives the events published during the race, such as audio, the HUD or telemetry
+ * @author GOD
+ */
+public interface GameEventListener
+{
+    /**
+     * Handle an event, this is called on the game thread when the events are dispatched
+     * @param type The type of event (see GameEvents.TYPE_LAP, etc...)
+     * @param tick The update number when the event happened
+     * @param car The number of the car, -1 if the event is not for a single car
+     * @param value The value of the event, see each type
+     */
+    public void onEvent(final int type, final long tick, final int car, final long value);
+}
\ No newline at end of file
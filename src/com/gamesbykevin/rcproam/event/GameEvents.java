@@ -0,0 +1,189 @@
+package com.gamesbykevin.rcproam.event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The events that happen during the race.<br>
+ * The simulation publishes events without knowing who receives them, so the race can be updated without audio or a screen.
+ * Each event is stored in a ring buffer that is allocated once, so publishing an event is only a few stores.
+ * The events are dispatched to each listener later in the same update.<br>
+ * If more events are published than the ring can hold before they are dispatched, the oldest events are dropped.
+ * Events are only published and dispatched by the thread updating the race.
+ * @author GOD
+ */
+public final class GameEvents
+{
+    /**
+     * A car completed a lap, the value is the lap time (in nanoseconds)
+     */
+    public static final int TYPE_LAP = 0;
+    
+    /**
+     * A car collided with another, the value is the number of the other car
+     */
+    public static final int TYPE_COLLISION = 1;
+    
+    /**
+     * A car left the road
+     */
+    public static final int TYPE_OFF_ROAD = 2;
+    
+    /**
+     * A car returned to the road
+     */
+    public static final int TYPE_ON_ROAD = 3;
+    
+    /**
+     * A car reached a check point, the value is the check point reached
+     */
+    public static final int TYPE_CHECK_POINT = 4;
+    
+    /**
+     * A human honked the horn
+     */
+    public static final int TYPE_HORN = 5;
+    
+    /**
+     * The race has started
+     */
+    public static final int TYPE_RACE_START = 6;
+    
+    /**
+     * The race has finished, the value is 1 if a human qualified for the next race, 0 otherwise
+     */
+    public static final int TYPE_RACE_FINISH = 7;
+    
+    /**
+     * The finish has been shown and the result is announced, the value is 1 if a human qualified for the next race, 0 otherwise
+     */
+    public static final int TYPE_RACE_RESULT = 8;
+    
+    //the default number of events the ring can hold
+    public static final int DEFAULT_CAPACITY = 256;
+    
+    //the fields of each event
+    private final int[] types;
+    private final long[] ticks;
+    private final int[] cars;
+    private final long[] values;
+    
+    //used to find the location of an event in the ring, the capacity is a power of 2
+    private final int mask;
+    
+    //the number of events published and dispatched
+    private long head = 0, tail = 0;
+    
+    //the number of events dropped because the ring was full
+    private long dropped = 0;
+    
+    //the update number assigned to each event published
+    private long tick = 0;
+    
+    //the objects receiving the events
+    private final List<GameEventListener> listeners = new ArrayList<>();
+    
+    /**
+     * Create the events
+     * @param capacity The number of events the ring can hold, this is rounded up to a power of 2
+     */
+    public GameEvents(final int capacity)
+    {
+        final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        
+        this.types = new int[size];
+        this.ticks = new long[size];
+        this.cars = new int[size];
+        this.values = new long[size];
+        this.mask = size - 1;
+    }
+    
+    /**
+     * Add a listener that will receive every event dispatched
+     * @param listener The listener
+     */
+    public void subscribe(final GameEventListener listener)
+    {
+        if (!listeners.contains(listener))
+            listeners.add(listener);
+    }
+    
+    /**
+     * Remove a listener
+     * @param listener The listener
+     */
+    public void unsubscribe(final GameEventListener listener)
+    {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Set the update number assigned to the events published from now on
+     * @param tick The update number
+     */
+    public void setTick(final long tick)
+    {
+        this.tick = tick;
+    }
+    
+    /**
+     * Publish an event, it will be received by each listener when the events are dispatched
+     * @param type The type of event (TYPE_LAP, etc...)
+     * @param car The number of the car, -1 if the event is not for a single car
+     * @param value The value of the event, see each type
+     */
+    public void publish(final int type, final int car, final long value)
+    {
+        //the ring is full, drop the oldest event
+        if (head - tail > mask)
+        {
+            tail++;
+            dropped++;
+        }
+        
+        final int index = (int)head & mask;
+        
+        types[index] = type;
+        ticks[index] = tick;
+        cars[index] = car;
+        values[index] = value;
+        
+        head++;
+    }
+    
+    /**
+     * Send each event published since the last dispatch to every listener, in the order they were published
+     */
+    public void dispatch()
+    {
+        while (tail < head)
+        {
+            final int index = (int)tail & mask;
+            
+            //the event is removed first in case a listener publishes another event
+            tail++;
+            
+            for (int i = 0; i < listeners.size(); i++)
+            {
+                listeners.get(i).onEvent(types[index], ticks[index], cars[index], values[index]);
+            }
+        }
+    }
+    
+    /**
+     * Remove the events that have not been dispatched
+     */
+    public void clear()
+    {
+        tail = head;
+    }
+    
+    /**
+     * Get the number of events dropped because they were not dispatched in time
+     * @return The number of events dropped
+     */
+    public long getDropped()
+    {
+        return this.dropped;
+    }
+}
\ No newline at end of file
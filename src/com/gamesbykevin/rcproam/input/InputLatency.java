@@ -0,0 +1,78 @@
+package com.gamesbykevin.rcproam.input;
+
+/**
+ * This class will measure the time from receiving a key event until the first frame that includes it is displayed.<br>
+ * The time is recorded by whichever thread displays the frame, only one thread displays frames at a time.
+ * @author GOD
+ */
+public final class InputLatency
+{
+    //the latency of the most recent frame (in nanoseconds)
+    private volatile long last = 0;
+    
+    //the highest latency (in nanoseconds)
+    private volatile long max = 0;
+    
+    //the total latency and number of frames
+    private volatile long total = 0;
+    private volatile int count = 0;
+    
+    /**
+     * Record the latency of a frame that was displayed
+     * @param time The time of the first key event included in the frame (in nanoseconds), 0 if there were none
+     * @param presented The time the frame was displayed (in nanoseconds)
+     */
+    public void record(final long time, final long presented)
+    {
+        //there were no key events in this frame
+        if (time == 0)
+            return;
+        
+        final long latency = presented - time;
+        
+        this.last = latency;
+        this.total = total + latency;
+        this.count = count + 1;
+        
+        if (latency > max)
+            this.max = latency;
+    }
+    
+    /**
+     * Get the latency of the most recent frame with a key event
+     * @return The latency (in nanoseconds)
+     */
+    public long getLast()
+    {
+        return this.last;
+    }
+    
+    /**
+     * Get the highest latency
+     * @return The latency (in nanoseconds)
+     */
+    public long getMax()
+    {
+        return this.max;
+    }
+    
+    /**
+     * Get the average latency
+     * @return The latency (in nanoseconds), 0 if there were no key events
+     */
+    public long getAverage()
+    {
+        final int count = this.count;
+        
+        return (count == 0) ? 0 : total / count;
+    }
+    
+    /**
+     * Get the number of frames with a key event
+     * @return The number of frames
+     */
+    public int getCount()
+    {
+        return this.count;
+    }
+}
\ No newline at end of file
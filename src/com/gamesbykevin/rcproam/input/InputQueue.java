@@ -0,0 +1,133 @@
+package com.gamesbykevin.rcproam.input;
+
+import com.gamesbykevin.framework.input.Keyboard;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class will queue key events until the game thread is ready for them.<br>
+ * The AWT event thread adds each event with the time it was received to a ring buffer that is allocated once,
+ * and the game thread applies every waiting event at the start of each update.<br>
+ * Neither thread ever locks, and if the game thread falls behind new events are dropped and counted.
+ * @author GOD
+ */
+public final class InputQueue
+{
+    //the default number of events the ring buffer can hold
+    public static final int DEFAULT_CAPACITY = 256;
+    
+    //the key code of each event
+    private final int[] keys;
+    
+    //is each event a key press, otherwise it is a key release
+    private final boolean[] pressed;
+    
+    //the time each event was received (in nanoseconds)
+    private final long[] times;
+    
+    //the number of events the ring can hold
+    private final int capacity;
+    
+    //the number of events added by the AWT event thread
+    private final AtomicLong head = new AtomicLong();
+    
+    //the number of events applied by the game thread
+    private final AtomicLong tail = new AtomicLong();
+    
+    //the number of events dropped because the ring was full
+    private volatile long dropped = 0;
+    
+    public InputQueue()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Create the queue
+     * @param capacity The number of events the ring buffer can hold
+     */
+    public InputQueue(final int capacity)
+    {
+        this.capacity = capacity;
+        this.keys = new int[capacity];
+        this.pressed = new boolean[capacity];
+        this.times = new long[capacity];
+    }
+    
+    /**
+     * Add a key event, this is only called by the AWT event thread
+     * @param key The key code
+     * @param pressed true if the key was pressed, false if it was released
+     * @param time The time the event was received (in nanoseconds)
+     */
+    public void add(final int key, final boolean pressed, final long time)
+    {
+        final long current = head.get();
+        
+        //the ring is full
+        if (current - tail.get() >= capacity)
+        {
+            dropped++;
+            return;
+        }
+        
+        final int index = (int)(current % capacity);
+        
+        this.keys[index] = key;
+        this.pressed[index] = pressed;
+        this.times[index] = time;
+        
+        //make the event available to the game thread
+        head.lazySet(current + 1);
+    }
+    
+    /**
+     * Apply every waiting event, this is only called by the game thread at the start of each update
+     * @param state The key state for this update, the key presses and releases from the previous update will be cleared
+     * @param keyboard The keyboard used by the menu, each event is added to it as well
+     */
+    public void update(final KeyState state, final Keyboard keyboard)
+    {
+        //start the new update
+        state.reset();
+        
+        final long start = tail.get();
+        final long end = head.get();
+        
+        for (long i = start; i < end; i++)
+        {
+            final int index = (int)(i % capacity);
+            
+            state.apply(keys[index], pressed[index], times[index]);
+            
+            if (pressed[index])
+            {
+                keyboard.addKeyPressed(keys[index]);
+            }
+            else
+            {
+                keyboard.addKeyReleased(keys[index]);
+            }
+        }
+        
+        //the events have been applied, so the AWT event thread can reuse them
+        tail.lazySet(end);
+    }
+    
+    /**
+     * Remove every waiting event without applying them, this is only called by the game thread
+     */
+    public void clear()
+    {
+        tail.lazySet(head.get());
+    }
+    
+    /**
+     * Get the number of events dropped because the game thread fell behind
+     * @return The number of events dropped
+     */
+    public long getDropped()
+    {
+        return this.dropped;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,172 @@
+package com.gamesbykevin.rcproam.input;
+
+/**
+ * The state of each key for a single update.<br>
+ * Each key has a bit for: is it held down, was it pressed during this update, and was it released during this update.<br>
+ * If a key is pressed and released within the same update the release is applied at the start of the next update,
+ * so every key press is seen for at least one update.
+ * @author GOD
+ */
+public final class KeyState
+{
+    //the number of key codes we track, key codes outside of this range are ignored
+    public static final int KEYS = 256;
+    
+    //the number of bits in each word
+    private static final int WORD_SIZE = 64;
+    
+    //the keys held down
+    private final long[] down;
+    
+    //the keys pressed during this update
+    private final long[] pressed;
+    
+    //the keys released during this update
+    private final long[] released;
+    
+    //the keys that were pressed and released during the previous update, waiting to be released
+    private final long[] pending;
+    
+    //the time of the first event applied during this update (in nanoseconds), 0 if there were none
+    private long time = 0;
+    
+    public KeyState()
+    {
+        this.down = new long[KEYS / WORD_SIZE];
+        this.pressed = new long[KEYS / WORD_SIZE];
+        this.released = new long[KEYS / WORD_SIZE];
+        this.pending = new long[KEYS / WORD_SIZE];
+    }
+    
+    /**
+     * Start a new update.<br>
+     * The key presses and releases are cleared, and any release waiting from the previous update is applied
+     */
+    protected void reset()
+    {
+        for (int i = 0; i < down.length; i++)
+        {
+            pressed[i] = 0;
+            released[i] = pending[i];
+            down[i] &= ~pending[i];
+            pending[i] = 0;
+        }
+        
+        time = 0;
+    }
+    
+    /**
+     * Apply a key event
+     * @param key The key code
+     * @param press true if the key was pressed, false if it was released
+     * @param time The time the event was received (in nanoseconds)
+     */
+    protected void apply(final int key, final boolean press, final long time)
+    {
+        //we don't track this key
+        if (key < 0 || key >= KEYS)
+            return;
+        
+        //keep the time of the first event
+        if (this.time == 0)
+            this.time = time;
+        
+        final int index = key / WORD_SIZE;
+        final long bit = 1L << (key % WORD_SIZE);
+        
+        if (press)
+        {
+            //the key is held down again, so cancel any release waiting for the next update
+            pending[index] &= ~bit;
+            
+            //ignore repeated presses while the key is held down
+            if ((down[index] & bit) == 0)
+            {
+                down[index] |= bit;
+                pressed[index] |= bit;
+            }
+        }
+        else
+        {
+            if ((pressed[index] & bit) != 0)
+            {
+                //the key was pressed during this update, so release it during the next update
+                pending[index] |= bit;
+            }
+            else
+            {
+                down[index] &= ~bit;
+                released[index] |= bit;
+            }
+        }
+    }
+    
+    /**
+     * Release every key
+     */
+    public void clear()
+    {
+        for (int i = 0; i < down.length; i++)
+        {
+            down[i] = 0;
+            pressed[i] = 0;
+            released[i] = 0;
+            pending[i] = 0;
+        }
+        
+        time = 0;
+    }
+    
+    /**
+     * Is the key held down
+     * @param key The key code
+     * @return true if the key is held down during this update, false otherwise
+     */
+    public boolean isDown(final int key)
+    {
+        return hasBit(down, key);
+    }
+    
+    /**
+     * Was the key pressed
+     * @param key The key code
+     * @return true if the key was pressed during this update, false otherwise
+     */
+    public boolean hasPressed(final int key)
+    {
+        return hasBit(pressed, key);
+    }
+    
+    /**
+     * Was the key released
+     * @param key The key code
+     * @return true if the key was released during this update, false otherwise
+     */
+    public boolean hasReleased(final int key)
+    {
+        return hasBit(released, key);
+    }
+    
+    /**
+     * Is the key bit set
+     * @param bits The bits
+     * @param key The key code
+     * @return true if set, false otherwise
+     */
+    private static boolean hasBit(final long[] bits, final int key)
+    {
+        if (key < 0 || key >= KEYS)
+            return false;
+        
+        return ((bits[key / WORD_SIZE] & (1L << (key % WORD_SIZE))) != 0);
+    }
+    
+    /**
+     * Get the time of the first event applied during this update
+     * @return The time (in nanoseconds), 0 if no events were applied
+     */
+    public long getTime()
+    {
+        return this.time;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,230 @@
+package com.gamesbykevin.rcproam.lifecycle;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class will track the resources that hold native memory: image buffers, Graphics contexts, audio and back buffers.<br>
+ * Each resource is registered with the subsystem that owns it and its estimated size, and the owner disposes the returned
+ * Tracked object when it releases the resource. This keeps a count and size of the live resources for each subsystem.<br>
+ * The resources are watched with phantom references instead of finalizers, so they are allocated and collected normally.
+ * A resource collected without being disposed is counted as a leak, and any resource not disposed when the
+ * engine is disposed is reported.
+ * @author GOD
+ */
+public final class Lifecycle
+{
+    /**
+     * The subsystems that own resources
+     */
+    public enum Subsystem
+    {
+        Resources, Cars, Maps, Render, Audio
+    }
+    
+    //the resources that have not been disposed, the tracked objects must be kept reachable until then
+    private static final Set<Tracked> TRACKED = Collections.newSetFromMap(new IdentityHashMap<Tracked, Boolean>());
+    
+    //where each tracked object is added once its resource is collected
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+    
+    //the number and size of the live resources for each subsystem
+    private static final int[] COUNTS = new int[Subsystem.values().length];
+    private static final long[] BYTES = new long[Subsystem.values().length];
+    
+    //the number of resources collected without being disposed for each subsystem
+    private static final int[] LEAKS = new int[Subsystem.values().length];
+    
+    private Lifecycle()
+    {
+        //utility class
+    }
+    
+    /**
+     * Register a resource
+     * @param subsystem The subsystem that owns the resource
+     * @param resource The resource
+     * @param description What the resource is, used when reporting
+     * @param bytes The estimated size of the resource (in bytes)
+     * @return The tracked resource, this is disposed by the owner when the resource is released
+     */
+    public static synchronized Tracked register(final Subsystem subsystem, final Object resource, final String description, final long bytes)
+    {
+        //check for resources that were collected since the last time
+        poll();
+        
+        final Tracked tracked = new Tracked(resource, QUEUE, subsystem, description, bytes);
+        
+        TRACKED.add(tracked);
+        
+        COUNTS[subsystem.ordinal()]++;
+        BYTES[subsystem.ordinal()] += bytes;
+        
+        return tracked;
+    }
+    
+    /**
+     * Register an image
+     * @param subsystem The subsystem that owns the image
+     * @param image The image
+     * @param description What the image is, used when reporting
+     * @return The tracked resource, this is disposed by the owner when the image is flushed
+     */
+    public static Tracked register(final Subsystem subsystem, final Image image, final String description)
+    {
+        return register(subsystem, image, description, getBytes(image));
+    }
+    
+    /**
+     * Estimate the size of the image
+     * @param image The image
+     * @return The size of the pixels (in bytes), 0 if unknown
+     */
+    public static long getBytes(final Image image)
+    {
+        if (!(image instanceof BufferedImage))
+            return 0;
+        
+        final BufferedImage buffered = (BufferedImage)image;
+        
+        return ((long)buffered.getWidth() * buffered.getHeight() * buffered.getColorModel().getPixelSize()) / 8;
+    }
+    
+    /**
+     * Remove the resource from the live resources, this is called when the resource is disposed
+     * @param tracked The tracked resource
+     */
+    protected static synchronized void release(final Tracked tracked)
+    {
+        if (!TRACKED.remove(tracked))
+            return;
+        
+        COUNTS[tracked.getSubsystem().ordinal()]--;
+        BYTES[tracked.getSubsystem().ordinal()] -= tracked.getBytes();
+    }
+    
+    /**
+     * Count every resource that was collected without being disposed
+     * @return The number of leaks found
+     */
+    public static synchronized int poll()
+    {
+        int count = 0;
+        
+        Reference<?> reference;
+        
+        while ((reference = QUEUE.poll()) != null)
+        {
+            final Tracked tracked = (Tracked)reference;
+            
+            //the resource was disposed before it was collected
+            if (tracked.isDisposed())
+                continue;
+            
+            release(tracked);
+            
+            LEAKS[tracked.getSubsystem().ordinal()]++;
+            
+            count++;
+        }
+        
+        return count;
+    }
+    
+    /**
+     * Get the number of live resources
+     * @param subsystem The subsystem
+     * @return The number of resources registered and not yet disposed
+     */
+    public static synchronized int getCount(final Subsystem subsystem)
+    {
+        return COUNTS[subsystem.ordinal()];
+    }
+    
+    /**
+     * Get the size of the live resources
+     * @param subsystem The subsystem
+     * @return The estimated size (in bytes)
+     */
+    public static synchronized long getBytes(final Subsystem subsystem)
+    {
+        return BYTES[subsystem.ordinal()];
+    }
+    
+    /**
+     * Get the number of resources collected without being disposed
+     * @param subsystem The subsystem
+     * @return The number of leaks
+     */
+    public static synchronized int getLeaks(final Subsystem subsystem)
+    {
+        return LEAKS[subsystem.ordinal()];
+    }
+    
+    /**
+     * Get the count and size of the live resources for each subsystem
+     * @return A single line description
+     */
+    public static synchronized String getReport()
+    {
+        final StringBuilder report = new StringBuilder();
+        
+        for (Subsystem subsystem : Subsystem.values())
+        {
+            if (report.length() > 0)
+                report.append(", ");
+            
+            report.append(subsystem).append(' ').append(getCount(subsystem)).append(" (").append(getBytes(subsystem) / 1024).append(" KB");
+            
+            if (getLeaks(subsystem) > 0)
+                report.append(", ").append(getLeaks(subsystem)).append(" leaked");
+            
+            report.append(')');
+        }
+        
+        return report.toString();
+    }
+    
+    /**
+     * Log every resource that has not been disposed, this is called once everything should have been disposed
+     * @return The resources that have not been disposed
+     */
+    public static synchronized List<Tracked> reportUndisposed()
+    {
+        poll();
+        
+        final List<Tracked> undisposed = new ArrayList<>(TRACKED);
+        
+        for (Tracked tracked : undisposed)
+        {
+            System.out.println("Not disposed: " + tracked.getSubsystem() + " - " + tracked.getDescription() + " (" + tracked.getBytes() + " bytes)");
+        }
+        
+        if (!undisposed.isEmpty() || hasLeaks())
+            System.out.println("Resources: " + getReport());
+        
+        return undisposed;
+    }
+    
+    /**
+     * Was any resource collected without being disposed
+     * @return true if at least 1 resource leaked, false otherwise
+     */
+    private static boolean hasLeaks()
+    {
+        for (int i = 0; i < LEAKS.length; i++)
+        {
+            if (LEAKS[i] > 0)
+                return true;
+        }
+        
+        return false;
+    }
+}
\ No newline at end of file
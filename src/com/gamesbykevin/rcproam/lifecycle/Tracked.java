@@ -0,0 +1,85 @@
+package com.gamesbykevin.rcproam.lifecycle;
+
+import com.gamesbykevin.framework.resources.Disposable;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+
+/**
+ * A resource registered with the lifecycle.<br>
+ * The resource is only referenced by a phantom reference, so tracking it never keeps it from being collected.
+ * The owner keeps this object and disposes it when the resource is released.
+ * @author GOD
+ */
+public final class Tracked extends PhantomReference<Object> implements Disposable
+{
+    //the subsystem that owns the resource
+    private final Lifecycle.Subsystem subsystem;
+    
+    //what the resource is, used when reporting
+    private final String description;
+    
+    //the estimated size of the resource (in bytes)
+    private final long bytes;
+    
+    //has the resource been disposed
+    private boolean disposed = false;
+    
+    /**
+     * Create the tracked resource
+     * @param resource The resource
+     * @param queue Where the reference is added once the resource is collected
+     * @param subsystem The subsystem that owns the resource
+     * @param description What the resource is
+     * @param bytes The estimated size of the resource (in bytes)
+     */
+    protected Tracked(final Object resource, final ReferenceQueue<Object> queue, final Lifecycle.Subsystem subsystem, final String description, final long bytes)
+    {
+        super(resource, queue);
+        
+        this.subsystem = subsystem;
+        this.description = description;
+        this.bytes = bytes;
+    }
+    
+    public Lifecycle.Subsystem getSubsystem()
+    {
+        return this.subsystem;
+    }
+    
+    public String getDescription()
+    {
+        return this.description;
+    }
+    
+    public long getBytes()
+    {
+        return this.bytes;
+    }
+    
+    /**
+     * Has the resource been disposed
+     * @return true if disposed, false otherwise
+     */
+    protected boolean isDisposed()
+    {
+        return this.disposed;
+    }
+    
+    /**
+     * Mark the resource disposed, this is called by the owner once it has released the resource
+     */
+    @Override
+    public void dispose()
+    {
+        if (disposed)
+            return;
+        
+        disposed = true;
+        
+        Lifecycle.release(this);
+        
+        //the resource no longer needs to be watched
+        clear();
+    }
+}
\ No newline at end of file
@@ -1,14 +1,22 @@
 package com.gamesbykevin.rcproam.main;
 
 import java.awt.*;
+import java.lang.management.ManagementFactory;
 import javax.swing.*;
 
 import com.gamesbykevin.framework.resources.Disposable;
 
 import com.gamesbykevin.rcproam.engine.Engine;
+import com.gamesbykevin.rcproam.input.InputLatency;
+import com.gamesbykevin.rcproam.lifecycle.Lifecycle;
+import com.gamesbykevin.rcproam.lifecycle.Tracked;
+import com.gamesbykevin.rcproam.render.IntegerScaleRenderer;
+import com.gamesbykevin.rcproam.render.RenderPipeline;
+import com.gamesbykevin.rcproam.render.RenderState;
 import com.gamesbykevin.rcproam.shared.Shared;
+import com.gamesbykevin.rcproam.telemetry.Recorder;
 
-public final class Main extends Thread implements Disposable
+public final class Main extends Thread implements Disposable, RenderPipeline.Target
 {
     //image where all game/menu elements will be written to
     private Image bufferedImage;
@@ -16,6 +24,15 @@ public final class Main extends Thread implements Disposable
     //Graphics object used to draw buffered image
     private Graphics bufferedImageGraphics;
     
+    //Graphics object used to draw buffered image at the output resolution, only used when scaling by a whole number
+    private Graphics outputImageGraphics;
+    
+    //the whole number the buffered image is scaled by
+    private int scale = 1;
+    
+    //do the borders around the buffered image need to be cleared
+    private boolean clearBorders = true;
+    
     //our dimensions for the original screen window
     private Rectangle originalSizeWindow;
     
@@ -46,6 +63,21 @@ public final class Main extends Thread implements Disposable
     //cache this graphics object so we aren't constantly creating it
     private Graphics graphics;
     
+    //the buffered image and each Graphics object registered with the lifecycle
+    private Tracked bufferedImageTracked, bufferedImageGraphicsTracked, outputImageGraphicsTracked, graphicsTracked;
+    
+    //the thread that draws the race while the next update happens, null if not enabled
+    private RenderPipeline pipeline;
+    
+    //was the last update drawn by the render thread
+    private boolean pipelined = false;
+    
+    //object used to measure the memory allocated by the game thread, only used when debugging
+    private com.sun.management.ThreadMXBean threadBean;
+    
+    //measures the time from a key event until it is displayed
+    private final InputLatency latency = new InputLatency();
+    
     public Main(final int ups, final JApplet applet)
     {
         this(ups);
@@ -81,22 +113,24 @@ public final class Main extends Thread implements Disposable
     @Override
     public void dispose()
     {
-        if (bufferedImage != null)
+        //stop the render thread first since it draws the buffered image
+        if (pipeline != null)
         {
-            bufferedImage.flush();
-            bufferedImage = null;
+            pipeline.dispose();
+            pipeline = null;
         }
         
-        if (bufferedImageGraphics != null)
-        {
-            bufferedImageGraphics.dispose();
-            bufferedImageGraphics = null;
-        }
+        //remove the buffered image and the Graphics objects that draw to it
+        disposeBufferedImage();
+        
+        //remove the scaled images
+        IntegerScaleRenderer.getRenderer().dispose();
         
         if (graphics != null)
         {
             graphics.dispose();
             graphics = null;
+            graphicsTracked.dispose();
         }
         
         if (engine != null)
@@ -156,6 +190,16 @@ public final class Main extends Thread implements Disposable
         //store the time to track ups (updates per second)
         long previous = System.nanoTime();
         
+        //store the bytes allocated by this thread so we can display the amount allocated per update
+        long allocated = getAllocatedBytes();
+        
+        //start the render thread if enabled
+        if (Shared.PIPELINED_RENDER)
+        {
+            pipeline = new RenderPipeline(this);
+            pipeline.start();
+        }
+        
         while (active)
         {
             try
@@ -166,11 +210,39 @@ public final class Main extends Thread implements Disposable
                 //update game
                 engine.update(this);
                 
-                //render image
-                renderImage();
+                //if the race can be drawn by the render thread
+                if (pipeline != null && engine.capture(pipeline.getRenderState()))
+                {
+                    //the render thread will measure the input latency once this update is displayed
+                    pipeline.getRenderState().setInputTime(engine.getKeyState().getTime());
+                    
+                    //let the render thread draw this update while we continue
+                    pipeline.publish();
+                    
+                    pipelined = true;
+                }
+                else
+                {
+                    //make sure the render thread is done before we draw
+                    if (pipelined)
+                    {
+                        pipeline.pause();
+                        pipelined = false;
+                    }
+                    
+                    final long start = Recorder.begin();
+                    
+                    //render image
+                    renderImage();
 
-                //draw image
-                drawScreen();
+                    //draw image
+                    drawScreen();
+                    
+                    Recorder.frame(start, false);
+                    
+                    //measure the time from the first key event in this update until it was displayed
+                    latency.record(engine.getKeyState().getTime(), System.nanoTime());
+                }
                 
                 //keep track of the number of updates
                 updates++;
@@ -184,8 +256,17 @@ public final class Main extends Thread implements Disposable
                     //if 1 second has passed display ups
                     if (after - previous >= NANO_SECONDS_PER_SECOND)
                     {
-                        //display updates per second
-                        System.out.println("UPS = " + updates);
+                        //get the bytes allocated by this thread
+                        final long current = getAllocatedBytes();
+                        
+                        //display updates per second and the memory allocated, once a race is running this should be 0
+                        System.out.println("UPS = " + updates + ", Bytes allocated per update = " + ((current - allocated) / updates) + ", Input latency (ms) = " + (latency.getAverage() / NANO_SECONDS_PER_MILLISECOND) + " avg, " + (latency.getMax() / NANO_SECONDS_PER_MILLISECOND) + " max");
+                        
+                        //display the live resources of each subsystem
+                        System.out.println("Resources: " + Lifecycle.getReport());
+                        
+                        //store the bytes allocated
+                        allocated = current;
 
                         //reset count
                         updates = 0;
@@ -225,6 +306,28 @@ public final class Main extends Thread implements Disposable
         }
     }
     
+    /**
+     * Get the total number of bytes allocated by this thread.<br>
+     * This is only measured when debugging and if supported by the JVM
+     * @return The total number of bytes allocated, 0 if not measured
+     */
+    private long getAllocatedBytes()
+    {
+        if (!Shared.DEBUG)
+            return 0;
+        
+        if (threadBean == null)
+        {
+            //this is not available on every JVM
+            if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+                return 0;
+            
+            threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        }
+        
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    
     public JApplet getApplet()
     {
         return applet;
@@ -253,14 +356,69 @@ public final class Main extends Thread implements Disposable
     {
         if (applet != null)
         {
-            bufferedImage = applet.createImage(originalSizeWindow.width, originalSizeWindow.height);
+            bufferedImage = applet.createImage(originalSizeWindow.width * scale, originalSizeWindow.height * scale);
         }
         else
         {
-            bufferedImage = panel.createImage(originalSizeWindow.width, originalSizeWindow.height);
+            bufferedImage = panel.createImage(originalSizeWindow.width * scale, originalSizeWindow.height * scale);
+        }
+        
+        if (bufferedImage != null)
+            bufferedImageTracked = Lifecycle.register(Lifecycle.Subsystem.Render, bufferedImage, "Back buffer");
+    }
+    
+    /**
+     * Remove the buffered image and the Graphics objects that draw to it
+     */
+    private void disposeBufferedImage()
+    {
+        if (bufferedImage != null)
+        {
+            bufferedImage.flush();
+            bufferedImage = null;
+            bufferedImageTracked.dispose();
+        }
+        
+        if (bufferedImageGraphics != null)
+        {
+            bufferedImageGraphics.dispose();
+            bufferedImageGraphics = null;
+            bufferedImageGraphicsTracked.dispose();
+        }
+        
+        if (outputImageGraphics != null)
+        {
+            outputImageGraphics.dispose();
+            outputImageGraphics = null;
+            outputImageGraphicsTracked.dispose();
         }
     }
     
+    /**
+     * Check if the largest whole number we can scale the game by has changed.<br>
+     * If it has changed the buffered image will be removed so it can be created at the new size
+     */
+    private void checkScale()
+    {
+        //make sure current window dimensions are set
+        if (currentWindow == null)
+            setFullScreen();
+        
+        final int current = IntegerScaleRenderer.getScale(originalSizeWindow.width, originalSizeWindow.height, currentWindow.width, currentWindow.height);
+        
+        //if the scale has not changed there is nothing to do
+        if (current == scale)
+            return;
+        
+        scale = current;
+        
+        //remove the buffered image and the Graphics objects that draw to it
+        disposeBufferedImage();
+        
+        //the image will be a different size so clear the borders
+        clearBorders = true;
+    }
+    
     /**
      * Get the size of the original window
      * @return Rectangle
@@ -287,6 +445,9 @@ public final class Main extends Thread implements Disposable
         //set the current window size
         currentWindow = new Rectangle(fullSizeWindow);
         
+        //the window size changed so clear the borders
+        clearBorders = true;
+        
         //since full screen switched on/off create a new graphics object
         createGraphicsObject();
     }
@@ -308,16 +469,53 @@ public final class Main extends Thread implements Disposable
      */
     private void renderImage() throws Exception
     {
+        renderImage(null);
+    }
+    
+    /**
+     * Writes all game/menu elements to our single bufferedImage.
+     *
+     * @param state The render state to draw, if null the engine is drawn directly
+     * @throws Exception
+     */
+    private void renderImage(final RenderState state) throws Exception
+    {
+        //make sure the buffered image is the correct size if scaling by a whole number
+        if (Shared.INTEGER_SCALE)
+            checkScale();
+        
         if (bufferedImage != null)
         {
             if (bufferedImageGraphics == null)
+            {
                 bufferedImageGraphics = bufferedImage.getGraphics();
+                bufferedImageGraphicsTracked = Lifecycle.register(Lifecycle.Subsystem.Render, bufferedImageGraphics, "Back buffer graphics", 0);
+                
+                if (Shared.INTEGER_SCALE)
+                {
+                    //images will be copied from the renderer at the output resolution
+                    outputImageGraphics = bufferedImage.getGraphics();
+                    outputImageGraphicsTracked = Lifecycle.register(Lifecycle.Subsystem.Render, outputImageGraphics, "Output graphics", 0);
+                    
+                    //everything else is drawn at the original size and scaled
+                    ((Graphics2D)bufferedImageGraphics).scale(scale, scale);
+                    
+                    IntegerScaleRenderer.getRenderer().setGraphics(bufferedImageGraphics, outputImageGraphics, scale);
+                }
+            }
             
             //background by itself will be a black rectangle
             bufferedImageGraphics.setColor(Color.BLACK);
             bufferedImageGraphics.fillRect(0, 0, Shared.ORIGINAL_WIDTH, Shared.ORIGINAL_HEIGHT);
 
-            engine.render(bufferedImageGraphics);
+            if (state != null)
+            {
+                engine.render(bufferedImageGraphics, state);
+            }
+            else
+            {
+                engine.render(bufferedImageGraphics);
+            }
         }
         else
         {
@@ -326,6 +524,37 @@ public final class Main extends Thread implements Disposable
         }
     }
     
+    /**
+     * Draw the race from the render state, this is called by the render thread
+     * @param state The render state
+     * @throws Exception
+     */
+    @Override
+    public void render(final RenderState state) throws Exception
+    {
+        final long start = Recorder.begin();
+        
+        //render image
+        renderImage(state);
+        
+        //draw image
+        drawScreen();
+        
+        Recorder.frame(start, true);
+        
+        //measure the time from the first key event in this update until it was displayed
+        latency.record(state.getInputTime(), System.nanoTime());
+    }
+    
+    /**
+     * Get the time from receiving a key event until the first frame that includes it is displayed
+     * @return The input latency
+     */
+    public InputLatency getInputLatency()
+    {
+        return this.latency;
+    }
+    
     /**
      * Does the applet have focus, if this is a JPanel it will always return true
      * @return boolean
@@ -348,11 +577,22 @@ public final class Main extends Thread implements Disposable
      */
     private void createGraphicsObject()
     {
+        //release the previous graphics object
+        if (graphics != null)
+        {
+            graphics.dispose();
+            graphics = null;
+            graphicsTracked.dispose();
+        }
+        
         if (applet != null)
             graphics = applet.getGraphics();
         
         if (panel != null)
             graphics = panel.getGraphics();
+        
+        if (graphics != null)
+            graphicsTracked = Lifecycle.register(Lifecycle.Subsystem.Render, graphics, "Screen graphics", 0);
     }
     
     /**
@@ -374,6 +614,26 @@ public final class Main extends Thread implements Disposable
         
         try
         {
+            if (Shared.INTEGER_SCALE)
+            {
+                if (clearBorders)
+                {
+                    //the window outside of the image will be black
+                    graphics.setColor(Color.BLACK);
+                    graphics.fillRect(currentWindow.x, currentWindow.y, currentWindow.width, currentWindow.height);
+                    
+                    clearBorders = false;
+                }
+                
+                //the image is already at the output resolution, so center it in the window
+                final int x = currentWindow.x + ((currentWindow.width - bufferedImage.getWidth(null)) / 2);
+                final int y = currentWindow.y + ((currentWindow.height - bufferedImage.getHeight(null)) / 2);
+                
+                graphics.drawImage(bufferedImage, x, y, null);
+                
+                return;
+            }
+            
             //the destination will be the size of the window
             int dx1 = currentWindow.x;
             int dy1 = currentWindow.y;
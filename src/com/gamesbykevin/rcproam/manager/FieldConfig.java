@@ -0,0 +1,117 @@
+package com.gamesbykevin.rcproam.manager;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * The configuration of the cars in a race, loaded from a properties file.<br>
+ * cpus: the number of cpu cars, by default the field is filled to 4 cars<br>
+ * car.N.name: the name of car N (starting at 1, the human cars are first)<br>
+ * car.N.color: the color of car N on the mini-map (example #0000FF)<br>
+ * Any car without a name or color will use a default.
+ * @author GOD
+ */
+public final class FieldConfig
+{
+    //the most cars allowed in a race
+    public static final int MAX_CARS = 64;
+    
+    //the default number of cars in a race
+    private static final int DEFAULT_CARS = 4;
+    
+    //the default names and colors of the first cars
+    private static final String[] DEFAULT_NAMES = {"Red", "Blue", "Green", "Orange"};
+    private static final Color[] DEFAULT_COLORS = {Color.RED, Color.BLUE, Color.GREEN, Color.ORANGE};
+    
+    //the property keys
+    private static final String KEY_CPUS = "cpus";
+    private static final String KEY_CAR = "car.";
+    private static final String KEY_NAME = ".name";
+    private static final String KEY_COLOR = ".color";
+    
+    //the configured properties
+    private final Properties properties;
+    
+    private FieldConfig(final Properties properties)
+    {
+        this.properties = properties;
+    }
+    
+    /**
+     * Load the configuration
+     * @param file The properties file, if it does not exist the defaults are used
+     * @return The configuration
+     * @throws IOException if the file exists but can't be read
+     */
+    public static FieldConfig load(final File file) throws IOException
+    {
+        final Properties properties = new Properties();
+        
+        if (file.exists())
+        {
+            try (InputStream input = new FileInputStream(file))
+            {
+                properties.load(input);
+            }
+        }
+        
+        return new FieldConfig(properties);
+    }
+    
+    /**
+     * Get the number of cpu cars
+     * @param humans The number of human cars
+     * @return The number of cpu cars
+     * @throws Exception if the total number of cars is more than the limit
+     */
+    public int getCpuCount(final int humans) throws Exception
+    {
+        final String value = properties.getProperty(KEY_CPUS);
+        
+        //by default fill the field
+        final int cpus = (value == null) ? Math.max(0, DEFAULT_CARS - humans) : Integer.parseInt(value.trim());
+        
+        if (cpus < 0 || humans + cpus > MAX_CARS)
+            throw new Exception("The number of cars has to be between " + humans + " and " + MAX_CARS);
+        
+        return cpus;
+    }
+    
+    /**
+     * Get the name of the car
+     * @param index The index of the car (starting at 0)
+     * @return The name
+     */
+    public String getName(final int index)
+    {
+        final String value = properties.getProperty(KEY_CAR + (index + 1) + KEY_NAME);
+        
+        if (value != null && value.trim().length() > 0)
+            return value.trim();
+        
+        return (index < DEFAULT_NAMES.length) ? DEFAULT_NAMES[index] : "Car " + (index + 1);
+    }
+    
+    /**
+     * Get the color of the car on the mini-map
+     * @param index The index of the car (starting at 0)
+     * @return The color
+     */
+    public Color getColor(final int index)
+    {
+        final String value = properties.getProperty(KEY_CAR + (index + 1) + KEY_COLOR);
+        
+        if (value != null && value.trim().length() > 0)
+            return Color.decode(value.trim());
+        
+        if (index < DEFAULT_COLORS.length)
+            return DEFAULT_COLORS[index];
+        
+        //spread the hue of the remaining cars so they are easy to tell apart
+        return Color.getHSBColor((float)((index * 0.618033988749895) % 1.0), 0.8f, 1.0f);
+    }
+}
\ No newline at end of file
@@ -4,17 +4,28 @@ import com.gamesbykevin.framework.input.Keyboard;
 import com.gamesbykevin.framework.menu.Menu;
 import com.gamesbykevin.framework.util.*;
 
+import com.gamesbykevin.rcproam.actor.Controls;
+import com.gamesbykevin.rcproam.actor.Human;
 import com.gamesbykevin.rcproam.car.Cars;
 import com.gamesbykevin.rcproam.engine.Engine;
+import com.gamesbykevin.rcproam.event.GameEvents;
+import com.gamesbykevin.rcproam.map.Camera;
 import com.gamesbykevin.rcproam.map.Maps;
 import com.gamesbykevin.rcproam.menu.CustomMenu;
 import com.gamesbykevin.rcproam.menu.CustomMenu.*;
+import com.gamesbykevin.rcproam.render.RenderState;
 import com.gamesbykevin.rcproam.resources.*;
+import com.gamesbykevin.rcproam.results.ResultStore;
+import com.gamesbykevin.rcproam.shared.Shared;
+import com.gamesbykevin.rcproam.telemetry.Recorder;
+import com.gamesbykevin.rcproam.telemetry.Telemetry;
 import java.awt.Color;
 
 import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Rectangle;
+import java.io.File;
+import java.util.Random;
 
 /**
  * The parent class that contains all of the game elements
@@ -35,13 +46,28 @@ public final class Manager implements IManager
     private boolean enableDetail = false;
     
     //the size of the info screen at the bottom
-    private static final int INFO_WIDTH = 256;
-    private static final int INFO_HEIGHT = 64;
+    public static final int INFO_WIDTH = 256;
+    public static final int INFO_HEIGHT = 64;
     
-    //different car types
-    private static final int CAR_TYPE_TRUCK = 0;
-    private static final int CAR_TYPE_SUV = 1;
-    private static final int CAR_TYPE_RACE_CAR = 2;
+    //the sprite sheet of each car for each car type (truck, suv, race car), in the order the cars are added
+    private static final GameImages.Keys[][] CAR_KEYS =
+    {
+        {GameImages.Keys.TruckRed, GameImages.Keys.TruckBlue, GameImages.Keys.TruckGreen, GameImages.Keys.TruckOrange},
+        {GameImages.Keys.SuvRed, GameImages.Keys.SuvBlue, GameImages.Keys.SuvGreen, GameImages.Keys.SuvOrange},
+        {GameImages.Keys.RaceCarRed, GameImages.Keys.RaceCarBlue, GameImages.Keys.RaceCarGreen, GameImages.Keys.RaceCarOrange},
+    };
+    
+    //the camera of each player when sharing the screen, null if there is only 1 player
+    private Camera[] cameras;
+    
+    //the camera following the first human across the entire window
+    private Camera camera;
+    
+    //the type of car we are racing
+    private int carType;
+    
+    //where the result of each race is stored, null if not storing results
+    private ResultStore results;
     
     //the start delay is 5 seconds
     private static final long START_DELAY = Timers.toNanoSeconds(5000L);
@@ -85,6 +111,10 @@ public final class Manager implements IManager
         //do we hide the detail screen
         setEnableDetailScreen(Toggle.values()[engine.getMenu().getOptionSelectionIndex(CustomMenu.LayerKey.Options, CustomMenu.OptionKey.EnableDetail)] == Toggle.Off);
         
+        //start loading the personal bests in the background
+        if (Shared.RESULTS)
+            this.results = ResultStore.create(new File(Shared.RESULTS_FILE));
+        
         //store these images
         win = engine.getResources().getGameImage(GameImages.Keys.Win);
         lose = engine.getResources().getGameImage(GameImages.Keys.GameOver);
@@ -102,53 +132,47 @@ public final class Manager implements IManager
     {
         if (this.cars == null)
         {
-            //create new container for cars
-            this.cars = new Cars();
+            //the type of car we are racing
+            this.carType = engine.getMenu().getOptionSelectionIndex(LayerKey.Options, OptionKey.CarType);
+            
+            //the number of players sharing the screen
+            final int players = Math.max(1, Math.min(Shared.PLAYERS, Controls.getDefaultCount()));
             
-            //set the handicap setting
-            this.cars.setHandicap(Toggle.values()[engine.getMenu().getOptionSelectionIndex(LayerKey.Options, OptionKey.Handicap)] == Toggle.On);
+            //the number of cars, names and colors
+            final FieldConfig field = FieldConfig.load(new File(Shared.FIELD_FILE));
+            
+            //the handicap setting
+            final boolean handicap = Toggle.values()[engine.getMenu().getOptionSelectionIndex(LayerKey.Options, OptionKey.Handicap)] == Toggle.On;
             
             //are we checking for collision
-            this.cars.setCheckCollision(Toggle.values()[engine.getMenu().getOptionSelectionIndex(LayerKey.Options, OptionKey.Collision)] == Toggle.On);
+            final boolean collision = Toggle.values()[engine.getMenu().getOptionSelectionIndex(LayerKey.Options, OptionKey.Collision)] == Toggle.On;
+            
+            //record race telemetry if enabled, if the dashboard isn't listening the race continues without it
+            final Telemetry telemetry = (Shared.TELEMETRY) ? Telemetry.create(Shared.TELEMETRY_PORT, new File(Shared.TELEMETRY_FILE)) : null;
+            
+            //create new container for cars
+            this.cars = createCars(engine.getResources(), carType, players, field, handicap, collision, telemetry, engine.getRandom());
             
-            switch (engine.getMenu().getOptionSelectionIndex(LayerKey.Options, OptionKey.CarType))
+            //when sharing the screen each player has a viewport
+            if (players > 1)
             {
-                case CAR_TYPE_SUV:
-                    //add human car first
-                    this.cars.addHuman(engine.getResources().getGameImage(GameImages.Keys.SuvRed), Color.RED, "Red");
-
-                    //add cpu car(s)
-                    this.cars.addCpu(engine.getResources().getGameImage(GameImages.Keys.SuvBlue), Color.BLUE, "Blue", engine.getRandom());
-                    this.cars.addCpu(engine.getResources().getGameImage(GameImages.Keys.SuvGreen), Color.GREEN, "Green", engine.getRandom());
-                    this.cars.addCpu(engine.getResources().getGameImage(GameImages.Keys.SuvOrange), Color.ORANGE, "Orange", engine.getRandom());
-                    break;
-                    
-                case CAR_TYPE_TRUCK:
-                    //add human car first
-                    this.cars.addHuman(engine.getResources().getGameImage(GameImages.Keys.TruckRed), Color.RED, "Red");
-
-                    //add cpu car(s)
-                    this.cars.addCpu(engine.getResources().getGameImage(GameImages.Keys.TruckBlue), Color.BLUE, "Blue", engine.getRandom());
-                    this.cars.addCpu(engine.getResources().getGameImage(GameImages.Keys.TruckGreen), Color.GREEN, "Green", engine.getRandom());
-                    this.cars.addCpu(engine.getResources().getGameImage(GameImages.Keys.TruckOrange), Color.ORANGE, "Orange", engine.getRandom());
-                    break;
-                    
-                case CAR_TYPE_RACE_CAR:
-                    //add human car first
-                    this.cars.addHuman(engine.getResources().getGameImage(GameImages.Keys.RaceCarRed), Color.RED, "Red");
-
-                    //add cpu car(s)
-                    this.cars.addCpu(engine.getResources().getGameImage(GameImages.Keys.RaceCarBlue), Color.BLUE, "Blue", engine.getRandom());
-                    this.cars.addCpu(engine.getResources().getGameImage(GameImages.Keys.RaceCarGreen), Color.GREEN, "Green", engine.getRandom());
-                    this.cars.addCpu(engine.getResources().getGameImage(GameImages.Keys.RaceCarOrange), Color.ORANGE, "Orange", engine.getRandom());
-                    break;
-                    
-                default:
-                    throw new Exception("Car Type not setup here");
+                final Rectangle[] layout = Camera.getLayout(getWindow(), players);
+                
+                this.cameras = new Camera[players];
+                
+                for (int i = 0; i < players; i++)
+                {
+                    this.cameras[i] = new Camera(this.cars.get(i), layout[i]);
+                    this.cameras[i].setSmooth(Shared.SMOOTH_CAMERA);
+                }
             }
             
             //set human in center of screen
             this.cars.getHuman().setLocation(getWindow());
+            
+            //the camera for the entire window follows the human
+            this.camera = new Camera(this.cars.getHuman(), getWindow());
+            this.camera.setSmooth(Shared.SMOOTH_CAMERA);
         }
         
         if (this.timers == null)
@@ -174,6 +198,69 @@ public final class Manager implements IManager
             this.maps = new Maps(engine.getResources());
     }
     
+    /**
+     * Create the cars for a new game, the human cars are added first and each car uses the next sprite sheet of the car type.<br>
+     * This does not require the engine so a game can also be set up offline
+     * @param resources Object containing all resources
+     * @param type The type of car we are racing (truck, suv, race car)
+     * @param players The number of players sharing the screen
+     * @param field The number of cars, names and colors
+     * @param handicap Is handicap mode enabled
+     * @param collision Are we checking for collision
+     * @param telemetry Where the race telemetry is recorded, null if not recording
+     * @param random Object used to make random decisions
+     * @return The cars
+     * @throws Exception if the car type is not setup or there are too many cars
+     */
+    public static Cars createCars(final Resources resources, final int type, final int players, final FieldConfig field, final boolean handicap, final boolean collision, final Telemetry telemetry, final Random random) throws Exception
+    {
+        if (type < 0 || type >= CAR_KEYS.length)
+            throw new Exception("Car Type not setup here");
+        
+        //create new container for cars
+        final Cars cars = new Cars();
+        
+        //set the handicap setting
+        cars.setHandicap(handicap);
+        
+        //record the race telemetry
+        cars.setTelemetry(telemetry);
+        
+        //play the sound effects for the race events
+        cars.getEvents().subscribe(new AudioCues(resources, cars));
+        
+        //are we checking for collision
+        cars.setCheckCollision(collision);
+        
+        //the total number of cars
+        final int total = players + field.getCpuCount(players);
+        
+        for (int i = 0; i < total; i++)
+        {
+            //each car uses the next sprite sheet of the car type
+            final GameImages.Keys key = CAR_KEYS[type][i % CAR_KEYS[type].length];
+            
+            if (i < players)
+            {
+                //add the human cars first
+                final Human human = (Human)cars.addHuman(resources, key, field.getColor(i), field.getName(i));
+                
+                //each player has their own keys
+                human.setControls(Controls.getDefault(i));
+                
+                //only the first player plays the engine sounds
+                human.setSound(i == 0);
+            }
+            else
+            {
+                //add cpu car(s)
+                cars.addCpu(resources, key, field.getColor(i), field.getName(i), random);
+            }
+        }
+        
+        return cars;
+    }
+    
     public void setEnableDetailScreen(final boolean enableDetail)
     {
         this.enableDetail = enableDetail;
@@ -184,6 +271,15 @@ public final class Manager implements IManager
         return this.cars;
     }
     
+    /**
+     * Get the camera following the first human across the entire window
+     * @return The camera
+     */
+    public Camera getCamera()
+    {
+        return this.camera;
+    }
+    
     public Maps getMaps()
     {
         return this.maps;
@@ -210,6 +306,15 @@ public final class Manager implements IManager
         if (window != null)
             window = null;
         
+        cameras = null;
+        camera = null;
+        
+        if (results != null)
+        {
+            results.dispose();
+            results = null;
+        }
+        
         if (cars != null)
         {
             cars.dispose();
@@ -222,27 +327,9 @@ public final class Manager implements IManager
             maps = null;
         }
         
-        if (win != null)
-        {
-            win.flush();
-            win = null;
-        }
-        
-        if (lose != null)
-        {
-            lose.flush();
-            lose = null;
-        }
-        
-        try
-        {
-            //recycle objects
-            super.finalize();
-        }
-        catch (Throwable e)
-        {
-            e.printStackTrace();
-        }
+        //the images belong to the resources, so they are not flushed here
+        win = null;
+        lose = null;
     }
     
     /**
@@ -261,6 +348,15 @@ public final class Manager implements IManager
             //if no longer loading
             if (!maps.isLoading())
             {
+                //center each viewport on the player
+                if (cameras != null)
+                {
+                    for (int i = 0; i < cameras.length; i++)
+                    {
+                        cameras[i].update(maps.getMap(), engine.getMain().getTime());
+                    }
+                }
+                
                 //now update the cars
                 if (cars != null)
                 {
@@ -269,8 +365,8 @@ public final class Manager implements IManager
                         //reset cars
                         cars.reset(engine.getRandom());
                         
-                        //play race start sound
-                        engine.getResources().playGameAudio(GameAudio.Keys.RaceStart);
+                        //the race is starting
+                        cars.getEvents().publish(GameEvents.TYPE_RACE_START, -1, 0);
                         
                         //update timer
                         timers.update(Transition.Start);
@@ -293,11 +389,21 @@ public final class Manager implements IManager
                                 //update the cars as long as the race has not completed
                                 cars.update(engine);
                                 
+                                //record the rank and laps of each car once in a while
+                                if (Recorder.hasRaceStatePassed())
+                                {
+                                    for (int i = 0; i < cars.getSize(); i++)
+                                    {
+                                        Recorder.raceState(cars.getTick(), maps.getIndex(), cars.get(i).getNumber(), cars.get(i).getRank(), cars.get(i).getTracker().getLaps());
+                                    }
+                                }
+                                
                                 //if the race wasn't complete, but now is
                                 if (cars.hasRaceCompleted())
                                 {
-                                    //play race start sound
-                                    engine.getResources().playGameAudio(GameAudio.Keys.RaceFinish);
+                                    //store the result, this never waits for the disk
+                                    if (results != null)
+                                        results.add(cars.getResult(maps.getIndex(), carType, engine.getSeed()));
                                 }
                             }
                             else
@@ -311,18 +417,12 @@ public final class Manager implements IManager
                                     //if the timer has now finished
                                     if (timers.hasTimePassed(Transition.Finish))
                                     {
-                                        //play the next appropriate sound if win/lose
+                                        //announce if win/lose
+                                        cars.getEvents().publish(GameEvents.TYPE_RACE_RESULT, -1, cars.hasWin() ? 1 : 0);
+                                        
+                                        //also set the next map
                                         if (cars.hasWin())
-                                        {
-                                            engine.getResources().playGameAudio(GameAudio.Keys.RaceWin);
-                                            
-                                            //also set the next map
                                             maps.setMap(engine, maps.getIndex() + 1);
-                                        }
-                                        else
-                                        {
-                                            engine.getResources().playGameAudio(GameAudio.Keys.RaceLose);
-                                        }
                                     }
                                 }
                                 else
@@ -347,6 +447,10 @@ public final class Manager implements IManager
                 }
             }
         }
+        
+        //send the events of this update to the audio, telemetry, etc...
+        if (cars != null)
+            cars.getEvents().dispatch();
     }
     
     /**
@@ -378,7 +482,7 @@ public final class Manager implements IManager
                         final int y = getWindow().y + (getWindow().height / 2) + Maps.MINIMAP_HEIGHT;
 
                         //draw the mini-map with the cars on the map
-                        maps.renderMiniMap(graphics, null, x, y);
+                        maps.renderMiniMap(graphics, (Cars)null, x, y);
                     }
                     else
                     {
@@ -387,11 +491,19 @@ public final class Manager implements IManager
                 }
                 else
                 {
-                    //draw the map
-                    maps.render(graphics);
+                    if (cameras != null)
+                    {
+                        //draw each player's viewport
+                        renderViewports(graphics);
+                    }
+                    else
+                    {
+                        //draw the map
+                        maps.render(graphics);
 
-                    //now draw the race cars
-                    cars.render(graphics);
+                        //now draw the race cars
+                        cars.render(graphics);
+                    }
 
                     if (enableDetail)
                     {
@@ -416,4 +528,122 @@ public final class Manager implements IManager
             }
         }
     }
+    
+    /**
+     * Draw the map and cars within each player's viewport
+     * @param graphics Graphics object used for drawing
+     * @throws Exception
+     */
+    private void renderViewports(final Graphics graphics) throws Exception
+    {
+        //clear the window in case there is an empty space without a viewport
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(getWindow().x, getWindow().y, getWindow().width, getWindow().height);
+        
+        for (int i = 0; i < cameras.length; i++)
+        {
+            //draw the part of the map within the viewport
+            cameras[i].render(graphics, maps.getMap());
+            
+            //now draw the race cars within the viewport
+            cars.render(graphics, cameras[i]);
+        }
+        
+        //separate the viewports
+        graphics.setColor(Color.BLACK);
+        
+        for (int i = 0; i < cameras.length; i++)
+        {
+            final Rectangle viewport = cameras[i].getWindow();
+            graphics.drawRect(viewport.x, viewport.y, viewport.width - 1, viewport.height - 1);
+        }
+    }
+    
+    /**
+     * Copy everything needed to draw the race to the render state.<br>
+     * Only the race itself can be drawn from a render state
+     * @param state The render state
+     * @return true if the race was copied, false if the game needs to be drawn by the update thread
+     */
+    public boolean capture(final RenderState state)
+    {
+        //the map has to be loaded
+        if (maps == null || maps.isLoading())
+            return false;
+        
+        //the win/lose screens are not part of the race
+        if (cars.hasRaceCompleted() && timers.hasTimePassed(Transition.Finish))
+            return false;
+        
+        //the viewports of a shared screen are drawn by the update thread
+        if (cameras != null)
+            return false;
+        
+        //copy the map
+        state.setMap(maps.getMap(), maps.getIndex(), enableDetail);
+        
+        //copy the cars
+        cars.capture(state, maps.getMap().getLaps());
+        
+        return true;
+    }
+    
+    /**
+     * Draw the race from the render state
+     * @param graphics Graphics object used for drawing
+     * @param state The render state
+     * @throws Exception
+     */
+    public void render(final Graphics graphics, final RenderState state) throws Exception
+    {
+        render(graphics, state, maps, cars, getWindow());
+    }
+    
+    /**
+     * Draw the race from the render state.<br>
+     * This does not require the engine so the race can also be drawn offline
+     * @param graphics Graphics object used for drawing
+     * @param state The render state
+     * @param maps The maps containing the mini-map
+     * @param cars The cars in the race, used to draw the leaderboard
+     * @param window Where gameplay occurs, the info screen is drawn below
+     * @throws Exception
+     */
+    public static void render(final Graphics graphics, final RenderState state, final Maps maps, final Cars cars, final Rectangle window) throws Exception
+    {
+        //draw the map
+        state.renderMap(graphics);
+        
+        //now draw the race cars
+        state.renderCars(graphics);
+        
+        if (state.hasDetail())
+        {
+            //set background color for stats/info screen
+            graphics.setColor(Color.BLACK);
+            graphics.fillRect(window.x, window.y + window.height, INFO_WIDTH, INFO_HEIGHT);
+            
+            //where the mini-map will be drawn
+            final int x = window.x + (window.width / 2) - (Maps.MINIMAP_WIDTH / 3);
+            final int y = window.y + window.height + (INFO_HEIGHT / 2) - (Maps.MINIMAP_HEIGHT / 2);
+            
+            //draw the mini-map with the cars on the map
+            maps.renderMiniMap(graphics, state, x, y);
+            
+            //draw human car info
+            state.renderTimeInfo(graphics, window.x + 1, window.y + window.height + (INFO_HEIGHT / 5));
+            
+            //draw the leaderboard
+            cars.renderLeaderboard(graphics, x + (int)(Maps.MINIMAP_WIDTH * 1.1), window.y + window.height + (INFO_HEIGHT / 5), state.getLeaderboard(), state.getCount());
+        }
+    }
+    
+    /**
+     * Get the store containing the result of each race
+     * @return The store, null if we are not storing results
+     */
+    public ResultStore getResults()
+    {
+        return this.results;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,342 @@
+package com.gamesbykevin.rcproam.map;
+
+import com.gamesbykevin.rcproam.car.Attributes;
+import com.gamesbykevin.rcproam.car.Car;
+import com.gamesbykevin.rcproam.car.CarFrames;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.List;
+
+/**
+ * A camera that follows a car and draws the map within part of the screen (a viewport).<br>
+ * Every camera shares the same map, so the track image and scaled tiles are not duplicated for each player,
+ * and only the part of the track within the viewport is drawn.<br>
+ * The isometric projection is linear, so the constants are calculated once for each map and every car is projected
+ * onto the screen in a single pass. A car is culled only when its entire sprite is outside of the viewport.<br>
+ * The camera can follow the car smoothly, looking ahead in the direction the car is moving.
+ * The smoothing is scaled by the time of each update, so the camera follows the same at any number of updates per second.
+ * @author GOD
+ */
+public final class Camera
+{
+    //how much of the distance to where the camera should be is covered each reference update, when following smoothly
+    private static final double SMOOTHING = 0.15;
+    
+    //the camera looks ahead of the car as far as the car moves in this many seconds, when following smoothly
+    private static final double LOOK_AHEAD = 0.2;
+    
+    //the furthest the camera looks ahead of the car (in cells)
+    private static final double MAX_LOOK_AHEAD = 3;
+    
+    //the part of the screen this camera draws to
+    private final Rectangle window;
+    
+    //the car we are following
+    private final Car target;
+    
+    //do we follow the car smoothly and look ahead, otherwise the car is always in the center
+    private boolean smooth = false;
+    
+    //the location the camera is centered on
+    private double focusCol, focusRow;
+    
+    //has the camera been centered yet, if not it will move directly to the car
+    private boolean focused = false;
+    
+    //the time the smoothing was calculated for (in nanoseconds)
+    private long time = 0;
+    
+    //how much of the distance to where the camera should be is covered over the time of 1 update
+    private double smoothing = SMOOTHING;
+    
+    //the map the projection was calculated for
+    private StaticMap map;
+    
+    //where (0, 0) is on the track image
+    private double originX, originY;
+    
+    //the location of the map for this camera
+    private double x, y;
+    
+    //where each car is drawn on the screen, indexed by the number of the car
+    private double[] screenX, screenY;
+    
+    //is any part of each car within the viewport, indexed by the number of the car
+    private boolean[] visible;
+    
+    /**
+     * Create the camera
+     * @param target The car the camera will follow
+     * @param window The part of the screen the camera draws to
+     */
+    public Camera(final Car target, final Rectangle window)
+    {
+        this.target = target;
+        this.window = new Rectangle(window);
+        
+        this.screenX = new double[0];
+        this.screenY = new double[0];
+        this.visible = new boolean[0];
+    }
+    
+    /**
+     * Split the window into a viewport for each player.<br>
+     * 2 players are placed above each other, 3 or 4 players are placed in a grid
+     * @param window The window where gameplay takes place
+     * @param count The number of players
+     * @return The viewport of each player
+     */
+    public static Rectangle[] getLayout(final Rectangle window, final int count)
+    {
+        final Rectangle[] layout = new Rectangle[count];
+        
+        if (count == 1)
+        {
+            layout[0] = new Rectangle(window);
+        }
+        else if (count == 2)
+        {
+            final int height = window.height / 2;
+            
+            layout[0] = new Rectangle(window.x, window.y, window.width, height);
+            layout[1] = new Rectangle(window.x, window.y + height, window.width, height);
+        }
+        else
+        {
+            final int width = window.width / 2;
+            final int height = window.height / 2;
+            
+            for (int i = 0; i < count; i++)
+            {
+                layout[i] = new Rectangle(window.x + ((i % 2) * width), window.y + ((i / 2) * height), width, height);
+            }
+        }
+        
+        return layout;
+    }
+    
+    /**
+     * Set how the camera follows the car
+     * @param smooth true to follow smoothly and look ahead in the direction the car is moving, false to keep the car in the center
+     */
+    public void setSmooth(final boolean smooth)
+    {
+        this.smooth = smooth;
+    }
+    
+    /**
+     * Move the camera directly to the car during the next update, this is used when the car is placed at the start
+     */
+    public void reset()
+    {
+        this.focused = false;
+    }
+    
+    /**
+     * Calculate the projection constants if the map has changed
+     * @param map The map we are racing on
+     */
+    private void setMap(final StaticMap map)
+    {
+        if (this.map == map)
+            return;
+        
+        this.map = map;
+        
+        //the projection is linear, so only the location of (0, 0) is needed
+        this.originX = map.getImageX(0, 0);
+        this.originY = map.getImageY(0, 0);
+        
+        //a new map always starts centered on the car
+        this.focused = false;
+    }
+    
+    /**
+     * Calculate the smoothing for the time of 1 update.<br>
+     * The smoothing is only calculated again if the time changes
+     * @param time The number of nanoseconds per update
+     */
+    private void setTime(final long time)
+    {
+        //if the time has not changed the smoothing is still correct
+        if (this.time == time)
+            return;
+        
+        this.time = time;
+        
+        //the distance left after each reference update that has passed
+        this.smoothing = 1 - Math.pow(1 - SMOOTHING, time / Attributes.REFERENCE_TIME);
+    }
+    
+    /**
+     * Center the map on the car we are following
+     * @param map The map we are racing on
+     * @param time The number of nanoseconds per update
+     */
+    public void update(final StaticMap map, final long time)
+    {
+        setMap(map);
+        setTime(time);
+        
+        if (!smooth || !focused)
+        {
+            focusCol = target.getCol();
+            focusRow = target.getRow();
+            focused = true;
+        }
+        else
+        {
+            //look ahead in the direction the car is moving, the velocity is the distance moved each reference update
+            double aheadCol = target.getVelocityX() * Attributes.REFERENCE_UPS * LOOK_AHEAD;
+            double aheadRow = target.getVelocityY() * Attributes.REFERENCE_UPS * LOOK_AHEAD;
+            
+            final double distance = Math.sqrt((aheadCol * aheadCol) + (aheadRow * aheadRow));
+            
+            if (distance > MAX_LOOK_AHEAD)
+            {
+                aheadCol *= MAX_LOOK_AHEAD / distance;
+                aheadRow *= MAX_LOOK_AHEAD / distance;
+            }
+            
+            //move part of the way there
+            focusCol += ((target.getCol() + aheadCol) - focusCol) * smoothing;
+            focusRow += ((target.getRow() + aheadRow) - focusRow) * smoothing;
+        }
+        
+        //position the focus in the middle of the viewport
+        this.x = (window.width / 2) - getImageX(focusCol, focusRow);
+        this.y = (window.height / 2) - getImageY(focusCol, focusRow);
+    }
+    
+    /**
+     * Get the x-coordinate on the track image
+     * @param col Column
+     * @param row Row
+     * @return x-coordinate
+     */
+    private double getImageX(final double col, final double row)
+    {
+        return originX + ((col - row) * StaticMap.ISOMETRIC_TILE_WIDTH);
+    }
+    
+    /**
+     * Get the y-coordinate on the track image
+     * @param col Column
+     * @param row Row
+     * @return y-coordinate
+     */
+    private double getImageY(final double col, final double row)
+    {
+        return originY + ((col + row) * StaticMap.ISOMETRIC_TILE_HEIGHT);
+    }
+    
+    /**
+     * Project every car onto the screen in a single pass, and cull the cars that are entirely outside of the viewport.<br>
+     * The camera must be updated for the map first
+     * @param cars The cars
+     */
+    public void project(final List<Car> cars)
+    {
+        //make room for every car, the numbers of the cars start at 0
+        if (visible.length < cars.size())
+        {
+            screenX = new double[cars.size()];
+            screenY = new double[cars.size()];
+            visible = new boolean[cars.size()];
+        }
+        
+        //the viewport relative to the map
+        final double offsetX = window.x + x;
+        final double offsetY = window.y + y;
+        
+        final int right = window.x + window.width;
+        final int bottom = window.y + window.height;
+        
+        for (int i = 0; i < cars.size(); i++)
+        {
+            final Car car = cars.get(i);
+            
+            final int number = car.getNumber();
+            
+            //the top left of the sprite, so the center of the sprite is at the location of the car
+            final double drawX = offsetX + getImageX(car.getCol(), car.getRow()) - (CarFrames.WIDTH / 2);
+            final double drawY = offsetY + getImageY(car.getCol(), car.getRow()) - (CarFrames.HEIGHT / 2);
+            
+            screenX[number] = drawX;
+            screenY[number] = drawY;
+            
+            //is any part of the sprite within the viewport
+            visible[number] = (drawX + CarFrames.WIDTH > window.x && drawX < right && drawY + CarFrames.HEIGHT > window.y && drawY < bottom);
+        }
+    }
+    
+    /**
+     * Get where the car is drawn on the screen
+     * @param number The number of the car
+     * @return x-coordinate of the top left of the car
+     */
+    public double getScreenX(final int number)
+    {
+        return this.screenX[number];
+    }
+    
+    /**
+     * Get where the car is drawn on the screen
+     * @param number The number of the car
+     * @return y-coordinate of the top left of the car
+     */
+    public double getScreenY(final int number)
+    {
+        return this.screenY[number];
+    }
+    
+    /**
+     * Is any part of the car within the viewport
+     * @param number The number of the car
+     * @return true if the car should be drawn, false otherwise
+     */
+    public boolean isVisible(final int number)
+    {
+        return this.visible[number];
+    }
+    
+    /**
+     * Get the location of the map
+     * @return x-coordinate of the map, relative to the window
+     */
+    public double getX()
+    {
+        return this.x;
+    }
+    
+    /**
+     * Get the location of the map
+     * @return y-coordinate of the map, relative to the window
+     */
+    public double getY()
+    {
+        return this.y;
+    }
+    
+    public Rectangle getWindow()
+    {
+        return this.window;
+    }
+    
+    public Car getTarget()
+    {
+        return this.target;
+    }
+    
+    /**
+     * Draw the part of the map within the viewport
+     * @param graphics Graphics object
+     * @param map The map we are racing on
+     * @throws Exception
+     */
+    public void render(final Graphics graphics, final StaticMap map) throws Exception
+    {
+        map.render(graphics, x, y, window);
+    }
+}
\ No newline at end of file
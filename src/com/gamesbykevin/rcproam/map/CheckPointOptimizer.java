@@ -0,0 +1,353 @@
+package com.gamesbykevin.rcproam.map;
+
+import com.gamesbykevin.framework.base.Cell;
+
+import com.gamesbykevin.rcproam.actor.Cpu;
+import com.gamesbykevin.rcproam.shared.Shared;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline tool that searches for better check points for each track.<br>
+ * The cpu cars drive straight at each check point, so the position and number of check points determine the lap time.<br>
+ * Each candidate set of check points is scored by simulating a lap with the real car physics,
+ * and the best set found for each track is written to a file that the track will load instead of the default check points.<br><br>
+ * Usage: CheckPointOptimizer [source directory] [iterations]
+ * @author GOD
+ */
+public final class CheckPointOptimizer
+{
+    //default directory containing the resources
+    private static final String DEFAULT_SOURCE_DIR = "src";
+    
+    //default number of changes attempted by each search
+    private static final int DEFAULT_ITERATIONS = 1500;
+    
+    //nanoseconds per update, the same as the game
+    private static final long TIME = (long)(1000000000.0 / Shared.DEFAULT_UPS);
+    
+    //the most updates allowed to complete a lap before we consider the check points a failure
+    private static final int MAX_UPDATES = Shared.DEFAULT_UPS * 180;
+    
+    //the seeds used to create the cpu stats, each candidate is scored by the same cars so results are comparable
+    private static final long[] EVALUATION_SEEDS = {1L, 2L, 3L};
+    
+    //the fewest check points allowed, including the finish line
+    private static final int MIN_CHECK_POINTS = 4;
+    
+    //check points are moved in steps of half a cell, matching the precision of the default check points
+    private static final double STEP = 0.5;
+    
+    //the most steps a check point can be moved at once
+    private static final int MAX_STEPS = 3;
+    
+    //the odds of removing/inserting a check point instead of moving one
+    private static final double REMOVE_PROBABILITY = 0.1;
+    private static final double INSERT_PROBABILITY = 0.1;
+    
+    //the starting temperature for accepting a worse candidate, measured in updates
+    private static final double START_TEMPERATURE = Shared.DEFAULT_UPS / 2.0;
+    
+    private CheckPointOptimizer()
+    {
+        //utility class
+    }
+    
+    public static void main(String[] args)
+    {
+        try
+        {
+            //the directory containing the resources
+            final File source = new File(args.length > 0 ? args[0] : DEFAULT_SOURCE_DIR);
+            
+            //how many changes each search will attempt
+            final int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+            
+            //run a search on every core
+            final int cores = Runtime.getRuntime().availableProcessors();
+            
+            final ExecutorService executor = Executors.newFixedThreadPool(cores);
+            
+            try
+            {
+                for (int trackNo = 0; trackNo < Maps.TOTAL_MAPS; trackNo++)
+                {
+                    optimize(source, trackNo, iterations, cores, executor);
+                }
+            }
+            finally
+            {
+                executor.shutdown();
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Search for the best check points for a track and write them to file
+     * @param source The directory containing the resources
+     * @param trackNo The track we want to optimize
+     * @param iterations How many changes each search will attempt
+     * @param searches How many searches to run in parallel
+     * @param executor Object used to run the searches
+     * @throws Exception
+     */
+    private static void optimize(final File source, final int trackNo, final int iterations, final int searches, final ExecutorService executor) throws Exception
+    {
+        //create the map from the image, the number of laps does not matter here
+        final StaticMap map = MapLoader.loadMap(source, trackNo, 1);
+        
+        //where the car will start the lap
+        final Cell start = map.getStartingLocation(0);
+        
+        //the check points we start with
+        final List<Cell> initial = map.getTrack().getCheckPoints();
+        
+        //score the existing check points
+        final double initialCost = getCost(map.getTrack(), initial, start);
+        
+        //start each search with a different seed
+        final List<Future<Result>> futures = new ArrayList<>();
+        
+        for (int i = 0; i < searches; i++)
+        {
+            final long seed = (trackNo * searches) + i;
+            
+            futures.add(executor.submit(new Callable<Result>()
+            {
+                @Override
+                public Result call() throws Exception
+                {
+                    return search(map.getTrack(), initial, start, iterations, new Random(seed));
+                }
+            }));
+        }
+        
+        //the best result of all searches
+        Result best = new Result(initial, initialCost);
+        
+        for (Future<Result> future : futures)
+        {
+            final Result result = future.get();
+            
+            if (result.cost < best.cost)
+                best = result;
+        }
+        
+        System.out.println("Track " + (trackNo + 1) + ": " + (int)initialCost + " updates with " + initial.size() + " check points, " + (int)best.cost + " updates with " + best.checkPoints.size() + " check points");
+        
+        //only write the check points if they are an improvement
+        if (best.cost < initialCost)
+        {
+            //write the best check points so the track can load them
+            final Track track = new Track(map.getTrack(), best.checkPoints);
+            track.writeCheckPoints(new File(source, Track.getCheckPointResource(trackNo)), trackNo);
+        }
+        
+        map.dispose();
+    }
+    
+    /**
+     * Search for better check points by making random changes, occasionally accepting a worse result to escape local minimums
+     * @param original The track we are racing on
+     * @param initial The check points to start with
+     * @param start Where the car starts the lap
+     * @param iterations How many changes to attempt
+     * @param random Object used to make random decisions
+     * @return The best check points found
+     * @throws Exception
+     */
+    private static Result search(final Track original, final List<Cell> initial, final Cell start, final int iterations, final Random random) throws Exception
+    {
+        Result current = new Result(initial, getCost(original, initial, start));
+        Result best = current;
+        
+        for (int i = 0; i < iterations; i++)
+        {
+            //make a random change
+            final List<Cell> candidate = mutate(original, current.checkPoints, random);
+            
+            //if the change was not valid, try again
+            if (candidate == null)
+                continue;
+            
+            final double cost = getCost(original, candidate, start);
+            
+            //the temperature cools down as the search progresses
+            final double temperature = START_TEMPERATURE * (1.0 - ((double)i / iterations));
+            
+            //always accept an improvement, sometimes accept a worse result
+            if (cost < current.cost || temperature > 0 && random.nextDouble() < Math.exp((current.cost - cost) / temperature))
+            {
+                current = new Result(candidate, cost);
+                
+                if (current.cost < best.cost)
+                    best = current;
+            }
+        }
+        
+        return best;
+    }
+    
+    /**
+     * Make a random change to the check points.<br>
+     * The finish line is never changed and every check point has to be on the road
+     * @param track The track we are racing on
+     * @param checkPoints The current check points
+     * @param random Object used to make random decisions
+     * @return The changed check points, or null if the change was not valid
+     */
+    private static List<Cell> mutate(final Track track, final List<Cell> checkPoints, final Random random)
+    {
+        final List<Cell> result = new ArrayList<>(checkPoints);
+        
+        //the finish line is the last check point and can't be changed
+        final int finish = result.size() - 1;
+        
+        //pick a check point to change
+        final int index = random.nextInt(finish);
+        
+        final double odds = random.nextDouble();
+        
+        if (odds < REMOVE_PROBABILITY)
+        {
+            //make sure we keep enough check points
+            if (result.size() <= MIN_CHECK_POINTS)
+                return null;
+            
+            result.remove(index);
+        }
+        else if (odds < REMOVE_PROBABILITY + INSERT_PROBABILITY)
+        {
+            //the previous check point, the first one follows the finish line
+            final Cell previous = result.get((index == 0) ? finish : index - 1);
+            
+            //place a new check point half way between the 2
+            final double col = (previous.getCol() + result.get(index).getCol()) / 2;
+            final double row = (previous.getRow() + result.get(index).getRow()) / 2;
+            
+            if (!isRoad(track, col, row))
+                return null;
+            
+            result.add(index, new Cell(col, row));
+        }
+        else
+        {
+            //move the check point a small amount
+            final double col = result.get(index).getCol() + (random.nextInt((MAX_STEPS * 2) + 1) - MAX_STEPS) * STEP;
+            final double row = result.get(index).getRow() + (random.nextInt((MAX_STEPS * 2) + 1) - MAX_STEPS) * STEP;
+            
+            if (!isRoad(track, col, row))
+                return null;
+            
+            result.set(index, new Cell(col, row));
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Is the location within the track and part of the road
+     * @param track The track we are racing on
+     * @param col Column
+     * @param row Row
+     * @return true if the location is on the road, false otherwise
+     */
+    private static boolean isRoad(final Track track, final double col, final double row)
+    {
+        if (col < 0 || row < 0 || col >= track.getColumns() || row >= track.getRows())
+            return false;
+        
+        return track.isRoad(col, row);
+    }
+    
+    /**
+     * Score the check points by the average number of updates needed to complete a lap
+     * @param original The track we are racing on
+     * @param checkPoints The check points to score
+     * @param start Where the car starts the lap
+     * @return The average number of updates to complete a lap, lower is better
+     * @throws Exception
+     */
+    private static double getCost(final Track original, final List<Cell> checkPoints, final Cell start) throws Exception
+    {
+        //create a track with the check points to score
+        final Track track = new Track(original, checkPoints);
+        
+        double total = 0;
+        
+        for (int i = 0; i < EVALUATION_SEEDS.length; i++)
+        {
+            total += simulateLap(track, start, EVALUATION_SEEDS[i]);
+        }
+        
+        return (total / EVALUATION_SEEDS.length);
+    }
+    
+    /**
+     * Simulate a cpu car driving 1 lap
+     * @param track The track we are racing on
+     * @param start Where the car starts the lap
+     * @param seed The seed used to create the cpu stats
+     * @return The number of updates needed to complete the lap
+     * @throws Exception
+     */
+    private static int simulateLap(final Track track, final Cell start, final long seed) throws Exception
+    {
+        //create the cpu car
+        final Cpu cpu = new Cpu(new Random(seed));
+        
+        //place the car at the start
+        cpu.setCol(start);
+        cpu.setRow(start);
+        
+        try
+        {
+            for (int updates = 1; updates <= MAX_UPDATES; updates++)
+            {
+                track.getRecovery().begin();
+                
+                //the same steps as a race: move the car, update the race progress from where it ended up, then steer
+                cpu.update(track, TIME);
+                cpu.getTracker().updateProgress(track, cpu, TIME);
+                cpu.steer(track);
+                
+                //if the lap is complete we are done
+                if (cpu.getTracker().getLaps() > 0)
+                    return updates;
+            }
+            
+            //the lap was not completed, these check points are not valid
+            return (MAX_UPDATES * 2);
+        }
+        finally
+        {
+            cpu.dispose();
+        }
+    }
+    
+    /**
+     * The check points and their score
+     */
+    private static final class Result
+    {
+        private final List<Cell> checkPoints;
+        private final double cost;
+        
+        private Result(final List<Cell> checkPoints, final double cost)
+        {
+            this.checkPoints = checkPoints;
+            this.cost = cost;
+        }
+    }
+}
\ No newline at end of file
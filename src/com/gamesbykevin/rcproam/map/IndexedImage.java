@@ -0,0 +1,216 @@
+package com.gamesbykevin.rcproam.map;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelGrabber;
+import java.awt.image.WritableRaster;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class will convert the track images to use a palette.<br>
+ * The tracks only use a few colors, so each pixel is stored as an index into the palette instead of 32 bits.
+ * Images with up to 256 colors use 1 byte per pixel. The pixels are not packed any smaller even when there are only a few colors,
+ * Java2D has no loop to draw packed pixels directly so every draw of a packed image is converted through a temporary image,
+ * and that temporary image is created again after each garbage collection.
+ * @author GOD
+ */
+public final class IndexedImage
+{
+    //the most colors we can store in a palette
+    private static final int MAX_COLORS = 256;
+    
+    //the number of rows grabbed at once, so we never need the pixels of the entire image
+    private static final int STRIP_HEIGHT = 64;
+    
+    private IndexedImage()
+    {
+        //utility class
+    }
+    
+    /**
+     * Convert the image to use a palette
+     * @param image The image to convert
+     * @return The image with a palette, or a 32 bit copy if there are too many colors
+     * @throws Exception if the pixels of the image could not be grabbed
+     */
+    public static BufferedImage convert(final Image image) throws Exception
+    {
+        //the image already uses a palette
+        if (image instanceof BufferedImage && ((BufferedImage)image).getColorModel() instanceof IndexColorModel)
+        {
+            //the pixels are already 1 byte each
+            if (((BufferedImage)image).getType() == BufferedImage.TYPE_BYTE_INDEXED)
+                return (BufferedImage)image;
+            
+            return unpack((BufferedImage)image);
+        }
+        
+        final int width = image.getWidth(null);
+        final int height = image.getHeight(null);
+        
+        final int[] pixels = new int[width * STRIP_HEIGHT];
+        
+        //the index of each color in the palette
+        final Map<Integer, Integer> palette = new HashMap<>();
+        
+        //find every color used in the image
+        for (int y = 0; y < height; y += STRIP_HEIGHT)
+        {
+            final int rows = grab(image, y, width, height, pixels);
+            
+            for (int i = 0; i < width * rows; i++)
+            {
+                //neighboring pixels are usually the same color
+                if (i > 0 && pixels[i] == pixels[i - 1])
+                    continue;
+                
+                if (!palette.containsKey(pixels[i]))
+                {
+                    //there are too many colors to use a palette
+                    if (palette.size() == MAX_COLORS)
+                        return copy(image, width, height);
+                    
+                    palette.put(pixels[i], palette.size());
+                }
+            }
+        }
+        
+        //the colors of the palette
+        final byte[] red = new byte[palette.size()];
+        final byte[] green = new byte[palette.size()];
+        final byte[] blue = new byte[palette.size()];
+        final byte[] alpha = new byte[palette.size()];
+        
+        for (Map.Entry<Integer, Integer> entry : palette.entrySet())
+        {
+            final int color = entry.getKey();
+            final int index = entry.getValue();
+            
+            alpha[index] = (byte)(color >>> 24);
+            red[index] = (byte)(color >> 16);
+            green[index] = (byte)(color >> 8);
+            blue[index] = (byte)color;
+        }
+        
+        //1 byte per pixel, this can be drawn without creating any objects
+        final BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, new IndexColorModel(8, palette.size(), red, green, blue, alpha));
+        
+        final WritableRaster raster = result.getRaster();
+        
+        //the palette index of each pixel in a row
+        final int[] indexes = new int[width];
+        
+        //write the palette index of each pixel
+        for (int y = 0; y < height; y += STRIP_HEIGHT)
+        {
+            final int rows = grab(image, y, width, height, pixels);
+            
+            for (int row = 0; row < rows; row++)
+            {
+                for (int x = 0; x < width; x++)
+                {
+                    final int pixel = pixels[(row * width) + x];
+                    
+                    //neighboring pixels are usually the same color
+                    if (x > 0 && pixel == pixels[(row * width) + x - 1])
+                    {
+                        indexes[x] = indexes[x - 1];
+                    }
+                    else
+                    {
+                        indexes[x] = palette.get(pixel);
+                    }
+                }
+                
+                raster.setSamples(0, y + row, width, 1, 0, indexes);
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Copy an image with packed pixels to an image using the same palette with 1 byte per pixel
+     * @param image The image with a palette
+     * @return The copy of the image with 1 byte per pixel
+     */
+    private static BufferedImage unpack(final BufferedImage image)
+    {
+        final IndexColorModel model = (IndexColorModel)image.getColorModel();
+        
+        //the colors of the palette
+        final byte[] red = new byte[model.getMapSize()];
+        final byte[] green = new byte[model.getMapSize()];
+        final byte[] blue = new byte[model.getMapSize()];
+        final byte[] alpha = new byte[model.getMapSize()];
+        
+        model.getReds(red);
+        model.getGreens(green);
+        model.getBlues(blue);
+        model.getAlphas(alpha);
+        
+        final BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_INDEXED, new IndexColorModel(8, model.getMapSize(), red, green, blue, alpha));
+        
+        //the palette index of each pixel in a row
+        final int[] indexes = new int[image.getWidth()];
+        
+        //copy the palette index of each pixel
+        for (int y = 0; y < image.getHeight(); y++)
+        {
+            image.getRaster().getSamples(0, y, image.getWidth(), 1, 0, indexes);
+            result.getRaster().setSamples(0, y, image.getWidth(), 1, 0, indexes);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Grab the pixels of a strip of the image
+     * @param image The image
+     * @param y The first row of the strip
+     * @param width The width of the image
+     * @param height The height of the image
+     * @param pixels Where the pixels are stored
+     * @return The number of rows grabbed
+     * @throws Exception if the pixels could not be grabbed
+     */
+    private static int grab(final Image image, final int y, final int width, final int height, final int[] pixels) throws Exception
+    {
+        final int rows = Math.min(STRIP_HEIGHT, height - y);
+        
+        final PixelGrabber pixelGrabber = new PixelGrabber(image, 0, y, width, rows, pixels, 0, width);
+        
+        if (!pixelGrabber.grabPixels())
+            throw new Exception("Failed to grab all pixels");
+        
+        return rows;
+    }
+    
+    /**
+     * Copy the image without a palette
+     * @param image The image
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return A 32 bit copy of the image
+     */
+    private static BufferedImage copy(final Image image, final int width, final int height)
+    {
+        final BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        
+        final Graphics graphics = result.getGraphics();
+        
+        try
+        {
+            graphics.drawImage(image, 0, 0, null);
+        }
+        finally
+        {
+            graphics.dispose();
+        }
+        
+        return result;
+    }
+}
\ No newline at end of file
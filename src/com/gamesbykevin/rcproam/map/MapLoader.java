@@ -0,0 +1,67 @@
+package com.gamesbykevin.rcproam.map;
+
+import com.gamesbykevin.rcproam.resources.Resources;
+
+import java.awt.Image;
+import java.io.File;
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Load the maps directly from the resource files without the game resources,
+ * so the tracks can be used by offline tools and by a server without a window.
+ * @author GOD
+ */
+public final class MapLoader
+{
+    //the total number of maps that can be loaded
+    public static final int TOTAL_MAPS = Maps.TOTAL_MAPS;
+    
+    //the name of the image nodes in the xml file
+    private static final String IMAGE_NODE_NAME = "image";
+    
+    private MapLoader()
+    {
+        //utility class
+    }
+    
+    /**
+     * Load the image with the specified id from the image configuration file
+     * @param source The directory containing the resources
+     * @param id The id of the image in the xml file
+     * @return The image
+     * @throws Exception if the image could not be found
+     */
+    public static Image loadImage(final File source, final String id) throws Exception
+    {
+        final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(source, Resources.XML_CONFIG_GAME_IMAGE));
+        
+        final NodeList nodes = document.getElementsByTagName(IMAGE_NODE_NAME);
+        
+        for (int i = 0; i < nodes.getLength(); i++)
+        {
+            final Element element = (Element)nodes.item(i);
+            
+            if (element.getAttribute("id").equals(id))
+                return ImageIO.read(new File(source, element.getTextContent().trim()));
+        }
+        
+        throw new Exception("Image not found: " + id);
+    }
+    
+    /**
+     * Load the map for the specified track
+     * @param source The directory containing the resources
+     * @param trackNo The track we want to load
+     * @param laps The number of laps required to complete the track
+     * @return The map containing the track
+     * @throws Exception if the track is not setup or the image could not be found
+     */
+    public static StaticMap loadMap(final File source, final int trackNo, final int laps) throws Exception
+    {
+        return Maps.createMap(trackNo, loadImage(source, Maps.getImageKey(trackNo).toString()), laps);
+    }
+}
\ No newline at end of file
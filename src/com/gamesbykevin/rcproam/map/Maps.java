@@ -5,10 +5,15 @@ import com.gamesbykevin.framework.resources.Progress;
 
 import com.gamesbykevin.rcproam.car.Cars;
 import com.gamesbykevin.rcproam.engine.Engine;
+import com.gamesbykevin.rcproam.lifecycle.Lifecycle;
+import com.gamesbykevin.rcproam.lifecycle.Tracked;
 import com.gamesbykevin.rcproam.menu.CustomMenu;
+import com.gamesbykevin.rcproam.render.RenderState;
 import com.gamesbykevin.rcproam.resources.GameImages;
 import com.gamesbykevin.rcproam.resources.Resources;
 import com.gamesbykevin.rcproam.shared.IElement;
+import com.gamesbykevin.rcproam.shared.Shared;
+import com.gamesbykevin.rcproam.telemetry.Recorder;
 
 import java.awt.Graphics;
 import java.awt.Image;
@@ -16,6 +21,7 @@ import java.awt.image.BufferedImage;
 import java.awt.Graphics2D;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * This class will be the container for all maps
@@ -30,7 +36,7 @@ public class Maps implements IElement, Disposable
     private int index = 0;
     
     //the total number of maps
-    private static final int TOTAL_MAPS = 8;
+    protected static final int TOTAL_MAPS = 8;
     
     //the different tracks
     protected static final int TRACK_01 = 0;
@@ -55,6 +61,15 @@ public class Maps implements IElement, Disposable
     //graphics object for drawing the minimap
     private Graphics2D minimapGraphics;
     
+    //image of the track for the minimap, this is only drawn when the map changes
+    private BufferedImage minimapTrack;
+    
+    //the mini-map images and Graphics object registered with the lifecycle
+    private Tracked minimapTracked, minimapGraphicsTracked, minimapTrackTracked;
+    
+    //the map drawn on the minimap track image
+    private int minimapIndex = -1;
+    
     //the size of the minimap
     public static final int MINIMAP_WIDTH = StaticMap.PIXEL_WIDTH_SMALL_MAP;
     public static final int MINIMAP_HEIGHT = StaticMap.PIXEL_HEIGHT_SMALL_MAP;
@@ -72,6 +87,13 @@ public class Maps implements IElement, Disposable
         
         //get graphics object to be able to write to this image
         this.minimapGraphics = minimap.createGraphics();
+        
+        //create new image for the track
+        this.minimapTrack = new BufferedImage(StaticMap.PIXEL_WIDTH_SMALL_MAP, StaticMap.PIXEL_HEIGHT_SMALL_MAP, BufferedImage.TYPE_INT_RGB);
+        
+        this.minimapTracked = Lifecycle.register(Lifecycle.Subsystem.Maps, minimap, "Mini-map");
+        this.minimapGraphicsTracked = Lifecycle.register(Lifecycle.Subsystem.Maps, minimapGraphics, "Mini-map graphics", 0);
+        this.minimapTrackTracked = Lifecycle.register(Lifecycle.Subsystem.Maps, minimapTrack, "Mini-map track");
     }
     
     /**
@@ -142,12 +164,21 @@ public class Maps implements IElement, Disposable
         {
             minimap.flush();
             minimap = null;
+            minimapTracked.dispose();
         }
         
         if (minimapGraphics != null)
         {
             minimapGraphics.dispose();
             minimapGraphics = null;
+            minimapGraphicsTracked.dispose();
+        }
+        
+        if (minimapTrack != null)
+        {
+            minimapTrack.flush();
+            minimapTrack = null;
+            minimapTrackTracked.dispose();
         }
     }
     
@@ -174,108 +205,177 @@ public class Maps implements IElement, Disposable
         //if we are not complete continue loading maps
         if (isLoading())
         {
-            //corret offset value to place car at start
-            final double offsetCol;
-            final double offsetRow;
+            //create the next map
+            loadMap(engine.getResources(), engine.getRandom(), Shared.FINE_ROAD_MASK);
+            
+            //if the maps have now been created, set the map according to the menu setting
+            if (!isLoading())
+                setMap(engine, engine.getMenu().getOptionSelectionIndex(CustomMenu.LayerKey.Options, CustomMenu.OptionKey.Track));
+        }
+        else
+        {
+            //follow the human with the camera, and move the map with it
+            engine.getManager().getCamera().update(getMap(), engine.getMain().getTime());
+            getMap().updateLocation(engine.getManager().getCamera());
+        }
+    }
+    
+    /**
+     * Create the next map, 1 map is created each call until all of the maps are loaded.<br>
+     * This does not require the engine so the maps can also be loaded offline
+     * @param resources Object containing all resources
+     * @param random Object used to pick the number of laps
+     * @param roadMask Do we sample the edges of the road from the track image
+     * @throws Exception if the track is not setup
+     */
+    public void loadMap(final Resources resources, final Random random, final boolean roadMask) throws Exception
+    {
+        //image of the track
+        final Image image = resources.getGameImage(getImageKey(progress.getCount()));
+        
+        //pick a random number of laps required to complete the track
+        final int count = random.nextInt(MAX_LAPS - MIN_LAPS) + MIN_LAPS;
+        
+        final long start = Recorder.begin();
+        
+        //create a new static map
+        StaticMap map = createMap(progress.getCount(), image, count);
+        
+        //sample the edges of the road from the track image if enabled
+        if (roadMask)
+            map.createRoadMask();
+        
+        //a pixel of the track image is grabbed for each cell of the track
+        Recorder.trackLoad(start, progress.getCount(), (long)map.getTrack().getColumns() * map.getTrack().getRows());
+        
+        //add map to list
+        maps.add(map);
+        
+        //increase the progress
+        progress.increase();
+    }
+    
+    /**
+     * Get the key of the image for the specified track
+     * @param trackNo The track we want the image for
+     * @return The key used to access the track image from the resources
+     * @throws Exception if the track is not setup
+     */
+    public static GameImages.Keys getImageKey(final int trackNo) throws Exception
+    {
+        switch (trackNo)
+        {
+            case TRACK_01:
+                return GameImages.Keys.Track01;
             
-            //where the race starts on the mini-map
-            final double startCol;
-            final double startRow;
+            case TRACK_02:
+                return GameImages.Keys.Track02;
             
-            //image of the track
-            final Image image;
+            case TRACK_03:
+                return GameImages.Keys.Track03;
             
-            switch (progress.getCount())
-            {
-                case TRACK_01:
-                    offsetCol = 28.5;
-                    offsetRow = 3;
-                    startCol = 48.25;
-                    startRow = 34.5;
-                    image = engine.getResources().getGameImage(GameImages.Keys.Track01);
-                    break;
-                    
-                case TRACK_02:
-                    offsetCol = 31;
-                    offsetRow = 0.5;
-                    startCol = 48.75;
-                    startRow = 26;
-                    image = engine.getResources().getGameImage(GameImages.Keys.Track02);
-                    break;
-                    
-                case TRACK_03:
-                    offsetCol = 31;
-                    offsetRow = 0.5;
-                    startCol = 48.75;
-                    startRow = 34;
-                    image = engine.getResources().getGameImage(GameImages.Keys.Track03);
-                    break;
-                    
-                case TRACK_04:
-                    offsetCol = 33;
-                    offsetRow = 2.5;
-                    startCol = 40.75;
-                    startRow = 34;
-                    image = engine.getResources().getGameImage(GameImages.Keys.Track04);
-                    break;
-                    
-                case TRACK_05:
-                    offsetCol = 18;
-                    offsetRow = -3.25;
-                    startCol = 39.75;
-                    startRow = 26.25;
-                    image = engine.getResources().getGameImage(GameImages.Keys.Track05);
-                    break;
-                    
-                case TRACK_06:
-                    offsetCol = 14;
-                    offsetRow = 0.75;
-                    startCol = 23.75;
-                    startRow = 34.25;
-                    image = engine.getResources().getGameImage(GameImages.Keys.Track06);
-                    break;
-                    
-                case TRACK_07:
-                    offsetCol = 15;
-                    offsetRow = 0.75;
-                    startCol = 24.75;
-                    startRow = 34.15;
-                    image = engine.getResources().getGameImage(GameImages.Keys.Track07);
-                    break;
-                    
-                case TRACK_08:
-                    offsetCol = 14.5;
-                    offsetRow = 0.75;
-                    startCol = 56.25;
-                    startRow = 34.25;
-                    image = engine.getResources().getGameImage(GameImages.Keys.Track08);
-                    break;
-                    
-                default:
-                    throw new Exception("staticMap is not setup: " + progress.getCount());
-            }
+            case TRACK_04:
+                return GameImages.Keys.Track04;
             
-            //pick a random number of laps required to complete the track
-            final int count = engine.getRandom().nextInt(MAX_LAPS - MIN_LAPS) + MIN_LAPS;
+            case TRACK_05:
+                return GameImages.Keys.Track05;
             
-            //create a new static map
-            StaticMap map = new StaticMap(offsetCol, offsetRow, startCol, startRow, image, progress.getCount(), count);
+            case TRACK_06:
+                return GameImages.Keys.Track06;
             
-            //add map to list
-            maps.add(map);
+            case TRACK_07:
+                return GameImages.Keys.Track07;
             
-            //increase the progress
-            progress.increase();
+            case TRACK_08:
+                return GameImages.Keys.Track08;
             
-            //if the maps have now been created, set the map according to the menu setting
-            if (!isLoading())
-                setMap(engine, engine.getMenu().getOptionSelectionIndex(CustomMenu.LayerKey.Options, CustomMenu.OptionKey.Track));
+            default:
+                throw new Exception("staticMap is not setup: " + trackNo);
         }
-        else
+    }
+    
+    /**
+     * Create the map for the specified track.<br>
+     * This does not require any game resources so the track can also be created offline
+     * @param trackNo The track we want to create
+     * @param image Image of the track
+     * @param laps The number of laps required to complete the track
+     * @return The map containing the track
+     * @throws Exception if the track is not setup
+     */
+    public static StaticMap createMap(final int trackNo, final Image image, final int laps) throws Exception
+    {
+        //corret offset value to place car at start
+        final double offsetCol;
+        final double offsetRow;
+        
+        //where the race starts on the mini-map
+        final double startCol;
+        final double startRow;
+        
+        switch (trackNo)
         {
-            //update the map location based on the human location
-            getMap().updateLocation(engine.getManager().getCars().getHuman(), engine.getManager().getWindow());
+            case TRACK_01:
+                offsetCol = 28.5;
+                offsetRow = 3;
+                startCol = 48.25;
+                startRow = 34.5;
+                break;
+            
+            case TRACK_02:
+                offsetCol = 31;
+                offsetRow = 0.5;
+                startCol = 48.75;
+                startRow = 26;
+                break;
+            
+            case TRACK_03:
+                offsetCol = 31;
+                offsetRow = 0.5;
+                startCol = 48.75;
+                startRow = 34;
+                break;
+            
+            case TRACK_04:
+                offsetCol = 33;
+                offsetRow = 2.5;
+                startCol = 40.75;
+                startRow = 34;
+                break;
+            
+            case TRACK_05:
+                offsetCol = 18;
+                offsetRow = -3.25;
+                startCol = 39.75;
+                startRow = 26.25;
+                break;
+            
+            case TRACK_06:
+                offsetCol = 14;
+                offsetRow = 0.75;
+                startCol = 23.75;
+                startRow = 34.25;
+                break;
+            
+            case TRACK_07:
+                offsetCol = 15;
+                offsetRow = 0.75;
+                startCol = 24.75;
+                startRow = 34.15;
+                break;
+            
+            case TRACK_08:
+                offsetCol = 14.5;
+                offsetRow = 0.75;
+                startCol = 56.25;
+                startRow = 34.25;
+                break;
+            
+            default:
+                throw new Exception("staticMap is not setup: " + trackNo);
         }
+        
+        return new StaticMap(offsetCol, offsetRow, startCol, startRow, image, trackNo, laps);
     }
     
     /**
@@ -285,15 +385,33 @@ public class Maps implements IElement, Disposable
      * @throws Exception 
      */
     public void setMap(final Engine engine, final int index) throws Exception
+    {
+        setMap(index, engine.getManager().getCars(), engine.getManager().getCamera(), engine.getMain().getTime());
+    }
+    
+    /**
+     * Assign the map to be currently used.<br>
+     * This does not require the engine so the map can also be assigned offline
+     * @param index The track we are starting on
+     * @param cars The cars in the race
+     * @param camera The camera following the human
+     * @param time The duration of an update (in nanoseconds)
+     * @throws Exception
+     */
+    public void setMap(final int index, final Cars cars, final Camera camera, final long time) throws Exception
     {
         //assign the current map
         setIndex(index);
         
         //now place the cars at their starting location defined by the track
-        getMap().placeCars(engine.getManager().getCars());
-                    
-        //update the map location based on the human location
-        getMap().updateLocation(engine.getManager().getCars().getHuman(), engine.getManager().getWindow());
+        getMap().placeCars(cars);
+        
+        //the camera moves directly to the human at the start
+        camera.reset();
+        camera.update(getMap(), time);
+        
+        //update the map location based on the camera
+        getMap().updateLocation(camera);
     }
     
     @Override
@@ -325,8 +443,8 @@ public class Maps implements IElement, Disposable
         if (isLoading())
             return;
         
-        //render the minimap to the image
-        getMap().renderMiniMap(minimapGraphics);
+        //draw the track to the image
+        renderMiniMapTrack(getMap(), getIndex());
         
         if (cars != null)
         {
@@ -337,4 +455,48 @@ public class Maps implements IElement, Disposable
         //now draw the final image
         graphics.drawImage(minimap, startX, startY, MINIMAP_WIDTH, MINIMAP_HEIGHT, null);
     }
+    
+    /**
+     * Render the mini-map with the cars from the render state
+     * @param graphics Graphics object
+     * @param state The state containing the map and cars to draw
+     * @param startX x-coordinate
+     * @param startY y-coordinate
+     */
+    public void renderMiniMap(final Graphics graphics, final RenderState state, final int startX, final int startY)
+    {
+        //draw the track to the image
+        renderMiniMapTrack(state.getMap(), state.getMapIndex());
+        
+        //now draw the cars on top of the mini map to the image
+        state.renderMiniMapLocations(minimapGraphics);
+        
+        //now draw the final image
+        graphics.drawImage(minimap, startX, startY, MINIMAP_WIDTH, MINIMAP_HEIGHT, null);
+    }
+    
+    /**
+     * Draw the track to the mini-map image
+     * @param map The map of the track
+     * @param index The index of the map
+     */
+    private void renderMiniMapTrack(final StaticMap map, final int index)
+    {
+        //if the map has changed draw the new track
+        if (minimapIndex != index)
+        {
+            final Graphics2D trackGraphics = minimapTrack.createGraphics();
+            
+            //render the minimap to the image
+            map.renderMiniMap(trackGraphics);
+            
+            trackGraphics.dispose();
+            
+            //the track is now drawn for this map
+            minimapIndex = index;
+        }
+        
+        //draw the track to the image
+        minimapGraphics.drawImage(minimapTrack, 0, 0, null);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,478 @@
+package com.gamesbykevin.rcproam.map;
+
+import com.gamesbykevin.framework.base.Cell;
+import com.gamesbykevin.rcproam.car.Attributes;
+
+import java.util.Arrays;
+
+/**
+ * This class will plan a route for a car that has left the road back to the road.<br>
+ * The route is found with A* from the cell of the car to the nearest road cell ahead on the check point polyline.
+ * Driving off road is much slower than driving on the road, so the route leaves the grass as soon as it can instead of
+ * driving straight at the check point.<br>
+ * Each route is cached by the cell it starts at and the targeted check point, so a car that leaves the road at the same
+ * place again does not search again. The cache is a fixed size table of primitive keys, and each route is copied to the array of the car,
+ * so finding a route creates no objects.
+ * The number of cells searched each update is limited, a car that can't be given a
+ * route during an update will ask again during the next. A search that reaches the most cells allowed is not cached, so it can be searched again.
+ * @author GOD
+ */
+public final class RecoveryPlanner
+{
+    //the number of groups in the cache (a power of 2), each key can only be stored in 1 group
+    private static final int CACHE_BITS = 6;
+    private static final int CACHE_GROUPS = 1 << CACHE_BITS;
+    
+    //the number of routes in each group, the least recently used route in the group is replaced first
+    private static final int CACHE_WAYS = 4;
+    
+    //the most routes we will cache
+    private static final int CACHE_SIZE = CACHE_GROUPS * CACHE_WAYS;
+    
+    //the key of an empty place in the cache
+    private static final int EMPTY = -1;
+    
+    //used to spread the keys evenly across the groups
+    private static final int HASH = 0x9E3779B9;
+    
+    //the most cells we will search for a single route
+    private static final int MAX_NODES = 600;
+    
+    //the most cells in a route, every cell in a route was searched
+    public static final int MAX_ROUTE_LENGTH = MAX_NODES;
+    
+    //the number of cells each cached route can store before a larger array is needed
+    private static final int ROUTE_CAPACITY = 32;
+    
+    //the most cells we will search during a single update for every car combined
+    private static final int BUDGET = 1200;
+    
+    //how far ahead of the car (in cells) along the check point polyline we start looking for road
+    private static final double LOOK_AHEAD = 3;
+    
+    //the distance (in cells) between each location checked along the check point polyline
+    private static final double STEP = 0.5;
+    
+    //the cost of driving through a cell off road compared to a road cell, this is how much slower a car is off road
+    private static final double OFF_ROAD_COST = Attributes.DEFAULT_MAXIMUM_SPEED_ROAD / Attributes.DEFAULT_MAXIMUM_SPEED_OFF_ROAD;
+    
+    //the cost of moving to a diagonal cell
+    private static final double DIAGONAL = Math.sqrt(2);
+    
+    //the neighboring cells
+    private static final int[] NEIGHBOR_COL = {-1, 0, 1, -1, 1, -1, 0, 1};
+    private static final int[] NEIGHBOR_ROW = {-1, -1, -1, 0, 0, 1, 1, 1};
+    
+    //the track we are planning routes on
+    private final Track track;
+    
+    //the size of the track
+    private final int columns, rows;
+    
+    //the key of each cached route, by cell and targeted check point
+    private final int[] cacheKeys;
+    
+    //the cached routes, and the number of cells in each
+    private final int[][] cacheRoutes;
+    private final int[] cacheLengths;
+    
+    //when each cached route was last used
+    private final long[] cacheUsed;
+    
+    //the number of times the cache has been used
+    private long uses = 0;
+    
+    //the number of cells that can still be searched during this update
+    private int budget = BUDGET;
+    
+    //the search is numbered so the arrays don't need to be cleared between searches
+    private int search = 0;
+    
+    //the search that last opened/closed each cell
+    private final int[] opened, closed;
+    
+    //the cost to reach each cell from the start
+    private final double[] cost;
+    
+    //the cell we came from to reach each cell
+    private final int[] parent;
+    
+    //the route found by the last search
+    private final int[] found;
+    
+    //the open cells ordered by estimated total cost, this is a binary heap
+    private int[] heap;
+    private double[] heapCost;
+    private int heapSize;
+    
+    //the number of routes found and searches performed, used for reporting
+    private int hits = 0, searches = 0;
+    
+    /**
+     * Create the planner for the track
+     * @param track The track we are racing on
+     */
+    protected RecoveryPlanner(final Track track)
+    {
+        this.track = track;
+        this.columns = track.getColumns();
+        this.rows = track.getRows();
+        
+        //the cache starts empty
+        this.cacheKeys = new int[CACHE_SIZE];
+        this.cacheRoutes = new int[CACHE_SIZE][ROUTE_CAPACITY];
+        this.cacheLengths = new int[CACHE_SIZE];
+        this.cacheUsed = new long[CACHE_SIZE];
+        
+        Arrays.fill(cacheKeys, EMPTY);
+        
+        this.found = new int[MAX_ROUTE_LENGTH];
+        
+        this.opened = new int[columns * rows];
+        this.closed = new int[columns * rows];
+        this.cost = new double[columns * rows];
+        this.parent = new int[columns * rows];
+        
+        this.heap = new int[MAX_NODES];
+        this.heapCost = new double[MAX_NODES];
+    }
+    
+    /**
+     * Start a new update, this resets the number of cells that can be searched
+     */
+    public void begin()
+    {
+        this.budget = BUDGET;
+    }
+    
+    /**
+     * Get the route back to the road
+     * @param col The column of the car
+     * @param row The row of the car
+     * @param target The check point the car is driving towards
+     * @param route Where the index of each cell in the route (row * columns + column) is copied, starting at the cell of the car.
+     * This needs to hold MAX_ROUTE_LENGTH cells
+     * @return The number of cells in the route, or 0 if no route exists or none could be planned during this update
+     */
+    public int getRoute(final int col, final int row, final int target, final int[] route)
+    {
+        final int key = ((row * columns) + col) * track.getCheckPointCount() + target;
+        
+        //the first place in the group the key is stored in
+        final int first = ((key * HASH) >>> (Integer.SIZE - CACHE_BITS)) * CACHE_WAYS;
+        
+        //the least recently used place in the group
+        int oldest = first;
+        
+        for (int i = first; i < first + CACHE_WAYS; i++)
+        {
+            if (cacheKeys[i] == key)
+            {
+                cacheUsed[i] = ++uses;
+                hits++;
+                System.arraycopy(cacheRoutes[i], 0, route, 0, cacheLengths[i]);
+                return cacheLengths[i];
+            }
+            
+            if (cacheUsed[i] < cacheUsed[oldest])
+                oldest = i;
+        }
+        
+        //there is no budget left to search during this update
+        if (budget < MAX_NODES)
+            return 0;
+        
+        final int length = search(col, row, getGoal(col, row, target));
+        
+        //the search reached the most cells allowed, a route may still exist so don't cache this
+        if (length < 0)
+            return 0;
+        
+        //the array of the cached route is only replaced when the route is longer than any stored there before
+        if (cacheRoutes[oldest].length < length)
+            cacheRoutes[oldest] = new int[length];
+        
+        //replace the least recently used route in the group
+        System.arraycopy(found, 0, cacheRoutes[oldest], 0, length);
+        cacheKeys[oldest] = key;
+        cacheLengths[oldest] = length;
+        cacheUsed[oldest] = ++uses;
+        
+        System.arraycopy(found, 0, route, 0, length);
+        
+        return length;
+    }
+    
+    /**
+     * Get the column of a cell in a route
+     * @param index The index of the cell
+     * @return The column
+     */
+    public int getCol(final int index)
+    {
+        return (index % columns);
+    }
+    
+    /**
+     * Get the row of a cell in a route
+     * @param index The index of the cell
+     * @return The row
+     */
+    public int getRow(final int index)
+    {
+        return (index / columns);
+    }
+    
+    /**
+     * Get the number of routes that were taken from the cache
+     * @return The number of cache hits
+     */
+    public int getHits()
+    {
+        return this.hits;
+    }
+    
+    /**
+     * Get the number of routes that were searched
+     * @return The number of searches
+     */
+    public int getSearches()
+    {
+        return this.searches;
+    }
+    
+    /**
+     * Find the nearest road cell ahead of the location on the check point polyline
+     * @param col The column of the car
+     * @param row The row of the car
+     * @param target The check point the car is driving towards
+     * @return The index of the road cell, or -1 if the polyline is never on the road
+     */
+    private int getGoal(final int col, final int row, final int target)
+    {
+        //where the center of the cell is along the lap
+        final double start = track.getLapDistance(target, track.getSegmentProgress(target, col + 0.5, row + 0.5)) + LOOK_AHEAD;
+        
+        int segment = target;
+        
+        for (double distance = 0; distance < track.getLapLength(); distance += STEP)
+        {
+            final double lapDistance = (start + distance) % track.getLapLength();
+            
+            //find the segment containing the distance, this is usually the current or next segment
+            for (int i = 0; i < track.getCheckPointCount(); i++)
+            {
+                final int index = (segment + i) % track.getCheckPointCount();
+                final double offset = lapDistance - track.getLapDistance(index, 0);
+                
+                if (offset >= 0 && offset <= track.getSegmentLength(index))
+                {
+                    segment = index;
+                    break;
+                }
+            }
+            
+            //the location along the segment
+            final double progress = (track.getSegmentLength(segment) <= 0) ? 0 : (lapDistance - track.getLapDistance(segment, 0)) / track.getSegmentLength(segment);
+            final Cell end = track.getCheckPoint(segment);
+            final int goalCol = (int)(end.getCol() - (track.getSegmentCol(segment) * (1 - progress)));
+            final int goalRow = (int)(end.getRow() - (track.getSegmentRow(segment) * (1 - progress)));
+            
+            if (goalCol < 0 || goalRow < 0 || goalCol >= columns || goalRow >= rows)
+                continue;
+            
+            if (track.isRoad(goalCol, goalRow))
+                return (goalRow * columns) + goalCol;
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * Search for the cheapest route from the start to the goal
+     * @param col The column of the start
+     * @param row The row of the start
+     * @param goal The index of the goal cell
+     * @return The number of cells in the route, 0 if none exists,
+     * or -1 if the most cells allowed were searched without reaching the goal
+     */
+    private int search(final int col, final int row, final int goal)
+    {
+        if (goal < 0)
+            return 0;
+        
+        searches++;
+        search++;
+        heapSize = 0;
+        
+        final int start = (row * columns) + col;
+        
+        opened[start] = search;
+        cost[start] = 0;
+        parent[start] = -1;
+        push(start, getEstimate(start, goal));
+        
+        int nodes = 0;
+        
+        while (heapSize > 0 && nodes < MAX_NODES)
+        {
+            final int current = pop();
+            
+            //the cell was added more than once, it has already been searched
+            if (closed[current] == search)
+                continue;
+            
+            closed[current] = search;
+            nodes++;
+            
+            if (current == goal)
+            {
+                budget -= nodes;
+                return getRoute(goal);
+            }
+            
+            final int currentCol = getCol(current);
+            final int currentRow = getRow(current);
+            
+            for (int i = 0; i < NEIGHBOR_COL.length; i++)
+            {
+                final int neighborCol = currentCol + NEIGHBOR_COL[i];
+                final int neighborRow = currentRow + NEIGHBOR_ROW[i];
+                
+                if (neighborCol < 0 || neighborRow < 0 || neighborCol >= columns || neighborRow >= rows)
+                    continue;
+                
+                final int neighbor = (neighborRow * columns) + neighborCol;
+                
+                if (closed[neighbor] == search)
+                    continue;
+                
+                //the cost to drive to the neighbor
+                final double distance = (NEIGHBOR_COL[i] != 0 && NEIGHBOR_ROW[i] != 0) ? DIAGONAL : 1;
+                final double total = cost[current] + (track.isRoad(neighborCol, neighborRow) ? distance : distance * OFF_ROAD_COST);
+                
+                //we already have a cheaper way to the neighbor
+                if (opened[neighbor] == search && cost[neighbor] <= total)
+                    continue;
+                
+                opened[neighbor] = search;
+                cost[neighbor] = total;
+                parent[neighbor] = current;
+                push(neighbor, total + getEstimate(neighbor, goal));
+            }
+        }
+        
+        budget -= nodes;
+        
+        //every cell that can be reached was searched
+        if (heapSize == 0)
+            return 0;
+        
+        return -1;
+    }
+    
+    /**
+     * Estimate the cost from the cell to the goal, this is the distance if every cell was road so it is never too high
+     * @param index The index of the cell
+     * @param goal The index of the goal
+     * @return The estimated cost
+     */
+    private double getEstimate(final int index, final int goal)
+    {
+        final int columnDifference = Math.abs(getCol(index) - getCol(goal));
+        final int rowDifference = Math.abs(getRow(index) - getRow(goal));
+        
+        //move diagonally until in line with the goal, then straight
+        final int diagonal = Math.min(columnDifference, rowDifference);
+        
+        return (Math.max(columnDifference, rowDifference) - diagonal) + (diagonal * DIAGONAL);
+    }
+    
+    /**
+     * Follow the parent of each cell back to the start, the index of each cell in the route starting at the start is stored in found
+     * @param goal The index of the goal
+     * @return The number of cells in the route
+     */
+    private int getRoute(final int goal)
+    {
+        int length = 0;
+        
+        for (int index = goal; index >= 0; index = parent[index])
+        {
+            length++;
+        }
+        
+        int position = length;
+        
+        for (int index = goal; index >= 0; index = parent[index])
+        {
+            found[--position] = index;
+        }
+        
+        return length;
+    }
+    
+    /**
+     * Add a cell to the open cells
+     * @param index The index of the cell
+     * @param estimate The estimated total cost through the cell
+     */
+    private void push(final int index, final double estimate)
+    {
+        if (heapSize == heap.length)
+        {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+            heapCost = Arrays.copyOf(heapCost, heapCost.length * 2);
+        }
+        
+        int i = heapSize++;
+        
+        //move the cell up until the parent costs less
+        while (i > 0 && heapCost[(i - 1) / 2] > estimate)
+        {
+            heap[i] = heap[(i - 1) / 2];
+            heapCost[i] = heapCost[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        
+        heap[i] = index;
+        heapCost[i] = estimate;
+    }
+    
+    /**
+     * Remove the open cell with the lowest estimated total cost
+     * @return The index of the cell
+     */
+    private int pop()
+    {
+        final int result = heap[0];
+        
+        heapSize--;
+        
+        final int last = heap[heapSize];
+        final double estimate = heapCost[heapSize];
+        
+        int i = 0;
+        
+        //move the last cell down until the children cost more
+        while ((i * 2) + 1 < heapSize)
+        {
+            int child = (i * 2) + 1;
+            
+            if (child + 1 < heapSize && heapCost[child + 1] < heapCost[child])
+                child++;
+            
+            if (heapCost[child] >= estimate)
+                break;
+            
+            heap[i] = heap[child];
+            heapCost[i] = heapCost[child];
+            i = child;
+        }
+        
+        heap[i] = last;
+        heapCost[i] = estimate;
+        
+        return result;
+    }
+}
\ No newline at end of file
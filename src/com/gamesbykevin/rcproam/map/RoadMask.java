@@ -0,0 +1,161 @@
+package com.gamesbykevin.rcproam.map;
+
+import com.gamesbykevin.framework.resources.Disposable;
+
+/**
+ * A road mask sampled from the full isometric track image, at a higher resolution than the mini-map.<br>
+ * Each cell of the track is split into sub-cells, and each sub-cell is road if the pixel of the track image
+ * where it is drawn is the road color.<br>
+ * The mask is split into chunks that are only created the first time a car needs them, which is only near the edge of the road.
+ * A chunk that is entirely road or entirely off road is shared, so only the chunks containing an edge store their own bits.
+ * @author GOD
+ */
+public final class RoadMask implements Disposable
+{
+    //the number of sub-cells across each cell
+    private static final int RESOLUTION = 8;
+    
+    //the number of cells across each chunk
+    private static final int CHUNK_CELLS = 4;
+    
+    //the number of sub-cells across each chunk
+    private static final int CHUNK_SIZE = CHUNK_CELLS * RESOLUTION;
+    
+    //the number of bits in each word
+    private static final int WORD_SIZE = 64;
+    
+    //the number of words in each chunk
+    private static final int CHUNK_WORDS = (CHUNK_SIZE * CHUNK_SIZE) / WORD_SIZE;
+    
+    //the chunks that don't contain an edge all share the same bits
+    private static final long[] ALL_ROAD = new long[CHUNK_WORDS];
+    private static final long[] NO_ROAD = new long[CHUNK_WORDS];
+    
+    static
+    {
+        for (int i = 0; i < CHUNK_WORDS; i++)
+        {
+            ALL_ROAD[i] = -1L;
+        }
+    }
+    
+    //the map containing the track image
+    private StaticMap map;
+    
+    //the size of the track
+    private final int columns, rows;
+    
+    //the bits of each chunk, null until the chunk is created
+    private long[][][] chunks;
+    
+    //the number of chunks created that contain an edge
+    private int created = 0;
+    
+    /**
+     * Create the road mask, no chunks are created until they are needed
+     * @param map The map containing the track image
+     * @param columns The number of columns in the track
+     * @param rows The number of rows in the track
+     */
+    protected RoadMask(final StaticMap map, final int columns, final int rows)
+    {
+        this.map = map;
+        this.columns = columns;
+        this.rows = rows;
+        this.chunks = new long[(rows + CHUNK_CELLS - 1) / CHUNK_CELLS][(columns + CHUNK_CELLS - 1) / CHUNK_CELLS][];
+    }
+    
+    /**
+     * Is the location part of the road, the chunk containing the location will be created if needed
+     * @param column Column
+     * @param row Row
+     * @return true if part of the road, false otherwise or if the location is not on the track
+     */
+    protected boolean isRoad(final double column, final double row)
+    {
+        //the location is not on the track
+        if (column < 0 || row < 0 || column >= columns || row >= rows)
+            return false;
+        
+        final int subCol = (int)(column * RESOLUTION);
+        final int subRow = (int)(row * RESOLUTION);
+        
+        final int chunkCol = subCol / CHUNK_SIZE;
+        final int chunkRow = subRow / CHUNK_SIZE;
+        
+        long[] bits = chunks[chunkRow][chunkCol];
+        
+        if (bits == null)
+        {
+            bits = createChunk(chunkCol, chunkRow);
+            chunks[chunkRow][chunkCol] = bits;
+        }
+        
+        final int index = ((subRow % CHUNK_SIZE) * CHUNK_SIZE) + (subCol % CHUNK_SIZE);
+        
+        return ((bits[index / WORD_SIZE] & (1L << (index % WORD_SIZE))) != 0);
+    }
+    
+    /**
+     * Sample the track image for each sub-cell of the chunk
+     * @param chunkCol Column of the chunk
+     * @param chunkRow Row of the chunk
+     * @return The bits of the chunk
+     */
+    private long[] createChunk(final int chunkCol, final int chunkRow)
+    {
+        final double startCol = chunkCol * CHUNK_CELLS;
+        final double startRow = chunkRow * CHUNK_CELLS;
+        
+        final long[] bits = new long[CHUNK_WORDS];
+        
+        //count the sub-cells that are road
+        int count = 0;
+        
+        for (int subRow = 0; subRow < CHUNK_SIZE; subRow++)
+        {
+            for (int subCol = 0; subCol < CHUNK_SIZE; subCol++)
+            {
+                //the center of the sub-cell
+                final double col = startCol + ((subCol + 0.5) / RESOLUTION);
+                final double row = startRow + ((subRow + 0.5) / RESOLUTION);
+                
+                //any part of the chunk outside of the image is off road
+                if (map.isRoadPixel((int)map.getImageX(col, row), (int)map.getImageY(col, row)))
+                {
+                    final int index = (subRow * CHUNK_SIZE) + subCol;
+                    
+                    bits[index / WORD_SIZE] |= (1L << (index % WORD_SIZE));
+                    
+                    count++;
+                }
+            }
+        }
+        
+        //share the bits if the chunk does not contain an edge
+        if (count == 0)
+            return NO_ROAD;
+        if (count == CHUNK_SIZE * CHUNK_SIZE)
+            return ALL_ROAD;
+        
+        created++;
+        
+        return bits;
+    }
+    
+    /**
+     * Get the number of chunks that contain an edge and store their own bits
+     * @return The number of chunks created
+     */
+    public int getChunkCount()
+    {
+        return this.created;
+    }
+    
+    @Override
+    public void dispose()
+    {
+        map = null;
+        chunks = null;
+    }
+}
\ No newline at end of file
@@ -4,14 +4,17 @@ import com.gamesbykevin.framework.base.Cell;
 import com.gamesbykevin.framework.base.Sprite;
 import com.gamesbykevin.framework.resources.Disposable;
 
-import com.gamesbykevin.rcproam.car.Car;
 import com.gamesbykevin.rcproam.car.Cars;
+import com.gamesbykevin.rcproam.lifecycle.Lifecycle;
+import com.gamesbykevin.rcproam.lifecycle.Tracked;
+import com.gamesbykevin.rcproam.render.IntegerScaleRenderer;
 import com.gamesbykevin.rcproam.shared.Shared;
 
 import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Rectangle;
-import java.awt.image.PixelGrabber;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,11 +31,23 @@ public final class StaticMap extends Sprite implements Disposable
     protected static final int PIXEL_HEIGHT_SMALL_MAP = 50;
     
     //the dimensions of an isometric tile
-    private static final double ISOMETRIC_TILE_WIDTH = 32;
-    private static final double ISOMETRIC_TILE_HEIGHT = (ISOMETRIC_TILE_WIDTH / 2);
+    protected static final double ISOMETRIC_TILE_WIDTH = 32;
+    protected static final double ISOMETRIC_TILE_HEIGHT = (ISOMETRIC_TILE_WIDTH / 2);
     
-    //the color on the  small map that determines the road
-    private static final int PIXEL_IN_BOUNDS = -9145228;
+    //the entire screen
+    private static final Rectangle SCREEN = new Rectangle(0, 0, Shared.ORIGINAL_WIDTH, Shared.ORIGINAL_HEIGHT);
+    
+    //the color on the  small map that determines the road, the road on the track image is the same color
+    protected static final int PIXEL_IN_BOUNDS = -9145228;
+    
+    //the track image, stored with a palette when possible
+    private BufferedImage trackImage;
+    
+    //the track image registered with the lifecycle, null if the image belongs to the resources
+    private Tracked trackImageTracked;
+    
+    //the palette index of the road color, -1 if the track image does not have a palette
+    private int roadIndex = -1;
     
     //off set the location because parts of the map is missing from the .png image
     private final double offsetCol, offsetRow;
@@ -40,6 +55,20 @@ public final class StaticMap extends Sprite implements Disposable
     //the starting col, row location for the car(s)
     private List<Cell> startingLocations;
     
+    //the number of cars in each row of the starting grid
+    private static final int GRID_LANES = 2;
+    
+    //the distance between the rows of the starting grid, and between the cars in a row
+    private static final double GRID_ROW_SPACING = 1.75;
+    private static final double GRID_LANE_SPACING = 1.5;
+    
+    //how far a car can be moved across the road to find an open road cell, and the size of each move
+    private static final double GRID_MAX_SHIFT = 2.0;
+    private static final double GRID_SHIFT_STEP = 0.25;
+    
+    //the closest 2 cars can start to each other
+    private static final double GRID_MIN_DISTANCE = 1.0;
+    
     protected StaticMap(final double offsetCol, final double offsetRow, final double startCol, final double startRow, final Image image, final int trackNo, final int laps) throws Exception
     {
         this.offsetCol = offsetCol;
@@ -86,22 +115,160 @@ public final class StaticMap extends Sprite implements Disposable
     }
     
     /**
-     * Place the cars at the start position
+     * Place the cars at the start position, the starting grid will grow if there are more cars than starting locations
      * @param cars The container for the cars in play
-     * @throws Exception If the number of starting locations is not equal to the number of cars
+     * @throws Exception If there is not enough room on the track for the cars
      */
     public void placeCars(final Cars cars) throws Exception
     {
-        if (cars.getSize() != startingLocations.size())
-            throw new Exception("The # of cars is not equal to the # of starting locations");
+        //make sure there is a starting location for each car
+        if (cars.getSize() > startingLocations.size())
+            createStartingGrid(cars.getSize());
         
         for (int i = 0; i < cars.getSize(); i++)
         {
             cars.get(i).setCol(startingLocations.get(i));
             cars.get(i).setRow(startingLocations.get(i));
+            
+            //make room for the time of each lap now, so nothing is created while racing
+            cars.get(i).getTracker().setLapCapacity(getLaps());
         }
     }
     
+    /**
+     * Add starting locations behind the existing grid until there is a location for each car.<br>
+     * The grid continues back along the track from the start, following the check points in reverse.
+     * Each row is placed across the road, and each car is moved across the road if needed to start on an open road cell
+     * @param count The number of starting locations needed
+     * @throws Exception If there is not enough room on the track
+     */
+    private void createStartingGrid(final int count) throws Exception
+    {
+        //the path back along the track, the finish line is the last check point which is just ahead of the start
+        final List<Cell> path = new ArrayList<>();
+        path.add(startingLocations.get(0));
+        
+        for (int i = track.getCheckPointCount() - 2; i >= 0; i--)
+        {
+            path.add(track.getCheckPoint(i));
+        }
+        
+        //the next row after the existing grid
+        int row = (startingLocations.size() + GRID_LANES - 1) / GRID_LANES;
+        
+        //the segment of the path we are on, and the distance to the start of the segment
+        int segment = 0;
+        double start = 0;
+        
+        while (startingLocations.size() < count)
+        {
+            //how far back the row is
+            final double distance = row * GRID_ROW_SPACING;
+            
+            //find the segment containing the row
+            while (segment < path.size() - 1 && start + Cell.getDistance(path.get(segment), path.get(segment + 1)) <= distance)
+            {
+                start += Cell.getDistance(path.get(segment), path.get(segment + 1));
+                segment++;
+            }
+            
+            if (segment >= path.size() - 1)
+                throw new Exception("There is not enough room on the track for " + count + " cars");
+            
+            final Cell from = path.get(segment);
+            final Cell to = path.get(segment + 1);
+            final double length = Cell.getDistance(from, to);
+            
+            //the direction back along the track
+            final double backCol = (to.getCol() - from.getCol()) / length;
+            final double backRow = (to.getRow() - from.getRow()) / length;
+            
+            //the direction across the road, on the same side as the existing grid
+            final double acrossCol = backRow;
+            final double acrossRow = -backCol;
+            
+            //the location of the first car in the row
+            final double col = from.getCol() + (backCol * (distance - start));
+            final double rowLocation = from.getRow() + (backRow * (distance - start));
+            
+            for (int lane = 0; lane < GRID_LANES && startingLocations.size() < count; lane++)
+            {
+                final Cell cell = findOpenRoad(col + (acrossCol * lane * GRID_LANE_SPACING), rowLocation + (acrossRow * lane * GRID_LANE_SPACING), acrossCol, acrossRow);
+                
+                //if there is no room in this lane the car will be placed in the next row
+                if (cell != null)
+                    startingLocations.add(cell);
+            }
+            
+            row++;
+        }
+    }
+    
+    /**
+     * Find the nearest open road cell, moving across the road in both directions
+     * @param col Column of the desired location
+     * @param row Row of the desired location
+     * @param acrossCol The direction across the road (column)
+     * @param acrossRow The direction across the road (row)
+     * @return The location, null if there is no open road cell close enough
+     */
+    private Cell findOpenRoad(final double col, final double row, final double acrossCol, final double acrossRow)
+    {
+        for (double shift = 0; shift <= GRID_MAX_SHIFT; shift += GRID_SHIFT_STEP)
+        {
+            //check both sides of the desired location
+            for (int side = 1; side >= -1; side -= 2)
+            {
+                final double c = col + (acrossCol * shift * side);
+                final double r = row + (acrossRow * shift * side);
+                
+                if (isOpenRoad(c, r))
+                    return new Cell(c, r);
+                
+                //there is only 1 location when not shifted
+                if (shift == 0)
+                    break;
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Is the location on the road and far enough from the other starting locations
+     * @param col Column
+     * @param row Row
+     * @return true if a car can start here, false otherwise
+     */
+    private boolean isOpenRoad(final double col, final double row)
+    {
+        if (col < 0 || row < 0 || col >= track.getColumns() || row >= track.getRows())
+            return false;
+        
+        if (!track.isRoad(col, row))
+            return false;
+        
+        for (int i = 0; i < startingLocations.size(); i++)
+        {
+            final Cell cell = startingLocations.get(i);
+            
+            if (Math.hypot(cell.getCol() - col, cell.getRow() - row) < GRID_MIN_DISTANCE)
+                return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Get the starting location
+     * @param index The position on the starting grid
+     * @return The (col, row) where the car at this grid position will start the race
+     */
+    protected Cell getStartingLocation(final int index)
+    {
+        return startingLocations.get(index);
+    }
+    
     private double getOffsetCol()
     {
         return this.offsetCol;
@@ -113,20 +280,64 @@ public final class StaticMap extends Sprite implements Disposable
     }
     
     /**
-     * Assign image to staticMap and create the track
+     * Assign image to staticMap and create the track.<br>
+     * The image is converted to use a palette, which uses a fraction of the memory
      * @param image 
+     * @throws Exception if the image could not be converted
      */
-    private void assignImage(final Image image)
+    private void assignImage(final Image image) throws Exception
     {
+        //convert the image to use a palette
+        this.trackImage = IndexedImage.convert(image);
+        
+        //release the pixels of the original image, they can be recreated if the original is used elsewhere
+        if (trackImage != image)
+        {
+            image.flush();
+            
+            //this map owns the converted image
+            trackImageTracked = Lifecycle.register(Lifecycle.Subsystem.Maps, trackImage, "Track image");
+        }
+        
+        //find the road color in the palette
+        if (trackImage.getColorModel() instanceof IndexColorModel)
+        {
+            final IndexColorModel palette = (IndexColorModel)trackImage.getColorModel();
+            
+            for (int i = 0; i < palette.getMapSize(); i++)
+            {
+                if (palette.getRGB(i) == PIXEL_IN_BOUNDS)
+                    roadIndex = i;
+            }
+        }
+        
         //store the image reference
-        super.setImage(image);
+        super.setImage(trackImage);
         
         //the size of the map will be the size of the image
         super.setDimensions(super.getImage());
     }
     
     /**
-     * Analyze the Image pixels to create the track
+     * Is the pixel of the track image the road color
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @return true if the pixel is the road color, false otherwise or if the pixel is outside of the image
+     */
+    protected boolean isRoadPixel(final int x, final int y)
+    {
+        if (x < 0 || y < 0 || x >= trackImage.getWidth() || y >= trackImage.getHeight())
+            return false;
+        
+        //compare the palette index instead of the color
+        if (trackImage.getColorModel() instanceof IndexColorModel)
+            return (trackImage.getRaster().getSample(x, y, 0) == roadIndex);
+        
+        return (trackImage.getRGB(x, y) == PIXEL_IN_BOUNDS);
+    }
+    
+    /**
+     * Analyze the Image pixels of the small map to create the track
      */
     private void createTrack()
     {
@@ -155,23 +366,6 @@ public final class StaticMap extends Sprite implements Disposable
                 startY = 1057;
             }
             
-            //create pixelGrabber object
-            PixelGrabber pixelGrabber = new PixelGrabber(getImage(), startX, startY, PIXEL_WIDTH_SMALL_MAP, PIXEL_HEIGHT_SMALL_MAP, true);
-
-            //array of our pixels
-            final int[] pixels;
-
-            //grab the pixels of the specified area
-            if (!pixelGrabber.grabPixels())
-            {
-                throw new Exception("Failed to grab all pixels");
-            }
-            else
-            {
-                //get pixels from object
-                pixels = (int[])pixelGrabber.getPixels();
-            }
-
             //create the track
             track = new Track(PIXEL_WIDTH_SMALL_MAP, PIXEL_HEIGHT_SMALL_MAP, 1, 1);
 
@@ -180,11 +374,8 @@ public final class StaticMap extends Sprite implements Disposable
             {
                 for (int col = 0; col < track.getColumns(); col++)
                 {
-                    //get the pixel value of the current pixel
-                    final int pixel = pixels[(row * PIXEL_WIDTH_SMALL_MAP) + col];
-
                     //if the pixel matches the in bounds color, then this is part of the road
-                    track.setRoad(col, row, (pixel == PIXEL_IN_BOUNDS));
+                    track.setRoad(col, row, isRoadPixel(startX + col, startY + row));
                 }
             }
         }
@@ -194,6 +385,15 @@ public final class StaticMap extends Sprite implements Disposable
         }
     }
     
+    /**
+     * Sample the edges of the road from the track image, instead of only using the mini-map.<br>
+     * The road mask is created in chunks the first time a car is near each edge
+     */
+    public void createRoadMask()
+    {
+        track.setRoadMask(new RoadMask(this, track.getColumns(), track.getRows()));
+    }
+    
     /**
      * Get the track
      * @return The track containing the road for this map
@@ -204,67 +404,44 @@ public final class StaticMap extends Sprite implements Disposable
     }
     
     /**
-     * Update the location of the map based on the car's location.<br>
-     * We want to display where the car is on the map
-     * @param car The car that is in the center of the map
-     * @param screen The window in which this will be displayed
+     * Update the location of the map based on the camera.<br>
+     * We want to display where the camera is centered on the map
+     * @param camera The camera, already updated for this map
      */
-    protected void updateLocation(final Car car, final Rectangle screen)
+    public void updateLocation(final Camera camera)
     {
-        //get offset coordinates based on car location
-        final double x = this.getAdjustedX(car, screen);
-        final double y = this.getAdjustedY(car, screen);
-        
         //set location
-        this.setLocation(x, y);
+        this.setLocation(camera.getX(), camera.getY());
     }
     
     /**
-     * Get adjusted x-coordinate.<br>
-     * This will determine where the isometric coordinate is to be placed, based on the car location
-     * @param car The car we want to calculate the coordinate
-     * @param screen Screen where game play takes place
+     * Get the x-coordinate on the track image where the location is drawn
+     * @param col Column
+     * @param row Row
      * @return x-coordinate
      */
-    public double getAdjustedX(final Car car, final Rectangle screen)
+    protected double getImageX(double col, double row)
     {
-        //get the car location
-        double col = car.getCol();
-        double row = car.getRow();
-        
         //offset the (col, row) because the part of the map is missing from each image
         col -= getOffsetCol();
         row -= getOffsetRow();
         
-        //calculate the location
-        final double x = ((PIXEL_WIDTH_SMALL_MAP * ISOMETRIC_TILE_WIDTH) / 2) + (col * ISOMETRIC_TILE_WIDTH) - (row * ISOMETRIC_TILE_WIDTH);
-        
-        //position in middle of screen
-        return (-x + (screen.width / 2));
+        return ((PIXEL_WIDTH_SMALL_MAP * ISOMETRIC_TILE_WIDTH) / 2) + (col * ISOMETRIC_TILE_WIDTH) - (row * ISOMETRIC_TILE_WIDTH);
     }
-            
+    
     /**
-     * Get adjusted y-coordinate.<br>
-     * This will determine where the isometric coordinate is to be placed based on the car location
-     * @param car The car we want to calculate the coordinate
-     * @param screen Screen where game play takes place
+     * Get the y-coordinate on the track image where the location is drawn
+     * @param col Column
+     * @param row Row
      * @return y-coordinate
      */
-    public double getAdjustedY(final Car car, final Rectangle screen)
+    protected double getImageY(double col, double row)
     {
-        //get the car location
-        double col = car.getCol();
-        double row = car.getRow();
-        
         //offset the (col, row) because the part of the map is missing from each image
         col -= getOffsetCol();
         row -= getOffsetRow();
         
-        //calculate the location
-        final double y = (row * ISOMETRIC_TILE_HEIGHT) + (col * ISOMETRIC_TILE_HEIGHT);
-        
-        //position in middle of screen
-        return (-y + (screen.height / 2));
+        return (row * ISOMETRIC_TILE_HEIGHT) + (col * ISOMETRIC_TILE_HEIGHT);
     }
     
     @Override
@@ -287,22 +464,71 @@ public final class StaticMap extends Sprite implements Disposable
             track = null;
         }
         
+        if (trackImage != null)
+        {
+            //release the scaled copies of the track image as well
+            IntegerScaleRenderer.evict(trackImage);
+            
+            //only flush the image if this map converted it, otherwise it belongs to the resources and is used by the next game
+            if (trackImageTracked != null)
+            {
+                trackImage.flush();
+                trackImageTracked.dispose();
+                trackImageTracked = null;
+            }
+            
+            trackImage = null;
+        }
+        
         super.dispose();
     }
     
     public void render(final Graphics graphics) throws Exception
     {
-        int dx1 = 0;
-        int dy1 = 0;
-        int dx2 = Shared.ORIGINAL_WIDTH;
-        int dy2 = Shared.ORIGINAL_HEIGHT;
-        int sx1 = (int)(-getX());
-        int sy1 = (int)(-getY());
-        int sx2 = (int)(-getX() + Shared.ORIGINAL_WIDTH);
-        int sy2 = (int)(-getY() + Shared.ORIGINAL_HEIGHT);
+        render(graphics, getX(), getY());
+    }
+    
+    /**
+     * Draw the map at the specified location
+     * @param graphics Graphics object
+     * @param x x-coordinate of the map
+     * @param y y-coordinate of the map
+     * @throws Exception
+     */
+    public void render(final Graphics graphics, final double x, final double y) throws Exception
+    {
+        render(graphics, x, y, SCREEN);
+    }
+    
+    /**
+     * Draw the map at the specified location within part of the screen
+     * @param graphics Graphics object
+     * @param x x-coordinate of the map, relative to the window
+     * @param y y-coordinate of the map, relative to the window
+     * @param window The part of the screen to draw, only the part of the track within the window is drawn
+     * @throws Exception
+     */
+    public void render(final Graphics graphics, final double x, final double y, final Rectangle window) throws Exception
+    {
+        int dx1 = window.x;
+        int dy1 = window.y;
+        int dx2 = window.x + window.width;
+        int dy2 = window.y + window.height;
+        int sx1 = (int)(-x);
+        int sy1 = (int)(-y);
+        int sx2 = (int)(-x + window.width);
+        int sy2 = (int)(-y + window.height);
         
-        //only draw the portion of track that we need, which uses less memory
-        super.draw(graphics, getImage(), dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2);
+        if (IntegerScaleRenderer.isScaled(graphics))
+        {
+            //copy the portion of track we need from the scaled tiles
+            IntegerScaleRenderer.drawImage(graphics, getImage(), dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2);
+        }
+        else
+        {
+            //only draw the portion of track that we need, which uses less memory
+            super.draw(graphics, getImage(), dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2);
+        }
     }
     
     /**
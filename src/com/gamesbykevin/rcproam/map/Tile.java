@@ -8,6 +8,9 @@ public class Tile
     //has this tile been visited
     private boolean visited = false;
     
+    //is this tile next to a tile that is different (road/off road)
+    private boolean edge = false;
+    
     protected Tile(final boolean road)
     {
         this.road = road;
@@ -48,4 +51,22 @@ public class Tile
     {
         return this.visited;
     }
+    
+    /**
+     * Mark this tile as next to the edge of the road
+     * @param edge true if a neighboring tile is different (road/off road), false otherwise
+     */
+    protected void setEdge(final boolean edge)
+    {
+        this.edge = edge;
+    }
+    
+    /**
+     * Is this tile next to the edge of the road
+     * @return true if a neighboring tile is different (road/off road), false otherwise
+     */
+    protected boolean isEdge()
+    {
+        return this.edge;
+    }
 }
\ No newline at end of file
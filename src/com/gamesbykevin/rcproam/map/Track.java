@@ -4,6 +4,11 @@ import com.gamesbykevin.framework.base.Cell;
 import com.gamesbykevin.framework.resources.Disposable;
 import java.awt.Color;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -18,6 +23,9 @@ public final class Track implements Disposable
     //the track
     private Tile key[][];
     
+    //the road sampled from the track image near the edges of the road, null if not used
+    private RoadMask roadMask;
+    
     //the color for the road and out of bounds
     protected static final Color ROAD_COLOR = Color.GRAY;
     protected static final Color OFF_ROAD_COLOR = Color.GREEN.darker();
@@ -25,6 +33,30 @@ public final class Track implements Disposable
     //the check points in the track located at each turn
     private List<Cell> checkPoints;
     
+    //where the optimized check points are located, if they exist they will be used instead
+    private static final String CHECK_POINT_RESOURCE = "resources/checkpoints/track%02d.txt";
+    
+    //lines starting with this character in the check point file are ignored
+    private static final String CHECK_POINT_COMMENT = "#";
+    
+    /**
+     * The check points form a closed polyline, segment i goes from the previous check point to check point i.<br>
+     * The first segment starts at the finish line.
+     */
+    private double[] segmentCol, segmentRow;
+    
+    //the length of each segment
+    private double[] segmentLength;
+    
+    //the distance along the lap where each segment starts
+    private double[] segmentStart;
+    
+    //the length of the entire lap
+    private double lapLength;
+    
+    //plans routes back to the road for the cpu cars, created when first needed
+    private RecoveryPlanner recovery;
+    
     /**
      * Create a new track of the specified dimensions
      * @param columns Total number of columns in the track
@@ -46,6 +78,30 @@ public final class Track implements Disposable
         this.checkPoints = new ArrayList<>();
     }
     
+    /**
+     * Create a copy of the track with a different set of check points.<br>
+     * The road is shared with the original track, so the copy is cheap to create
+     * @param track The track we want to copy
+     * @param checkPoints The check points for the copy
+     */
+    protected Track(final Track track, final List<Cell> checkPoints)
+    {
+        this.columns = track.columns;
+        this.rows = track.rows;
+        this.width = track.width;
+        this.height = track.height;
+        
+        //share the road
+        this.key = track.key;
+        this.roadMask = track.roadMask;
+        
+        //copy the check points
+        this.checkPoints = new ArrayList<>(checkPoints);
+        
+        //index the check points
+        createIndex();
+    }
+    
     /**
      * Add a way point at the specified location
      * @param col Column
@@ -93,6 +149,10 @@ public final class Track implements Disposable
      */
     protected void createWaypoints(final int trackNo) throws Exception
     {
+        //if optimized check points exist for this track we will use them
+        if (loadCheckPoints(trackNo))
+            return;
+        
         //add the way points in the specified order
         switch (trackNo)
         {
@@ -270,6 +330,245 @@ public final class Track implements Disposable
             default:
                 throw new Exception("way points are not setup: " + trackNo);
         }
+        
+        //now that the check points are added, index them
+        createIndex();
+    }
+    
+    /**
+     * Get the location of the optimized check points for the specified track
+     * @param trackNo The track we want the check points for
+     * @return The resource location of the check point file
+     */
+    protected static String getCheckPointResource(final int trackNo)
+    {
+        return String.format(CHECK_POINT_RESOURCE, trackNo + 1);
+    }
+    
+    /**
+     * Load the optimized check points for the specified track.<br>
+     * Each line of the file contains the column and row of a check point, the last line is the finish line
+     * @param trackNo The track we need to load check points for
+     * @return true if the check points were loaded, false if none exist or the file could not be read
+     */
+    private boolean loadCheckPoints(final int trackNo)
+    {
+        //locate the check point file for this track
+        final InputStream stream = Track.class.getClassLoader().getResourceAsStream(getCheckPointResource(trackNo));
+        
+        //if no file exists we will use the default check points
+        if (stream == null)
+            return false;
+        
+        //the check points loaded from the file
+        final List<Cell> tmp = new ArrayList<>();
+        
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8")))
+        {
+            String line;
+            
+            while ((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+                
+                //skip empty lines and comments
+                if (line.length() < 1 || line.startsWith(CHECK_POINT_COMMENT))
+                    continue;
+                
+                //each line contains the column and row
+                final String[] values = line.split("\\s+");
+                
+                if (values.length != 2)
+                    throw new Exception("Check point is not formatted correctly: " + line);
+                
+                tmp.add(new Cell(Double.parseDouble(values[0]), Double.parseDouble(values[1])));
+            }
+            
+            //we need at least a check point and a finish line
+            if (tmp.size() < 2)
+                throw new Exception("Not enough check points for track: " + trackNo);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            
+            //use the default check points instead
+            return false;
+        }
+        
+        //assign the loaded check points
+        setCheckPoints(tmp);
+        
+        //check points have been loaded
+        return true;
+    }
+    
+    /**
+     * Write the check points to a file so they can be loaded for the specified track
+     * @param file The file we want to write
+     * @param trackNo The track the check points belong to
+     * @throws Exception if the file could not be written
+     */
+    protected void writeCheckPoints(final File file, final int trackNo) throws Exception
+    {
+        //make sure the directory exists
+        if (file.getParentFile() != null && !file.getParentFile().exists() && !file.getParentFile().mkdirs())
+            throw new Exception("Unable to create directory: " + file.getParentFile());
+        
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8"))
+        {
+            writer.println(CHECK_POINT_COMMENT + " optimized check points for track " + (trackNo + 1) + ", the last check point is the finish line");
+            
+            for (int i = 0; i < getCheckPointCount(); i++)
+            {
+                writer.println(getCheckPoint(i).getCol() + " " + getCheckPoint(i).getRow());
+            }
+        }
+    }
+    
+    /**
+     * Replace the check points for this track
+     * @param checkPoints The new check points, the last is the finish line
+     */
+    protected void setCheckPoints(final List<Cell> checkPoints)
+    {
+        this.checkPoints.clear();
+        this.checkPoints.addAll(checkPoints);
+        
+        //the check points have changed so index them again
+        createIndex();
+    }
+    
+    /**
+     * Create the index of the check point polyline.<br>
+     * The vector, length and starting distance of each segment are calculated once here so measuring race progress is cheap
+     */
+    private void createIndex()
+    {
+        final int count = getCheckPointCount();
+        
+        segmentCol = new double[count];
+        segmentRow = new double[count];
+        segmentLength = new double[count];
+        segmentStart = new double[count];
+        lapLength = 0;
+        
+        for (int i = 0; i < count; i++)
+        {
+            //the segment starts at the previous check point, the first segment starts at the finish line
+            final Cell previous = getCheckPoint((i == 0) ? count - 1 : i - 1);
+            final Cell current = getCheckPoint(i);
+            
+            segmentCol[i] = current.getCol() - previous.getCol();
+            segmentRow[i] = current.getRow() - previous.getRow();
+            segmentLength[i] = Math.sqrt((segmentCol[i] * segmentCol[i]) + (segmentRow[i] * segmentRow[i]));
+            segmentStart[i] = lapLength;
+            
+            lapLength += segmentLength[i];
+        }
+        
+        //the cached routes lead to the old check points
+        recovery = null;
+    }
+    
+    /**
+     * Get the progress along the segment that ends at the targeted check point.<br>
+     * The location is projected onto the segment, so the progress does not jump when the car is not driving straight at the check point
+     * @param target The check point we are driving towards
+     * @param col Column of the location
+     * @param row Row of the location
+     * @return The progress from the previous check point to the target, ranging from 0.0 - 1.0
+     */
+    public double getSegmentProgress(final int target, final double col, final double row)
+    {
+        //if the check points are in the same place there is nothing to project onto
+        if (segmentLength[target] <= 0)
+            return 0;
+        
+        //the start of the segment
+        final Cell previous = getCheckPoint((target == 0) ? getCheckPointCount() - 1 : target - 1);
+        
+        //project the location onto the segment
+        final double progress = (((col - previous.getCol()) * segmentCol[target]) + ((row - previous.getRow()) * segmentRow[target])) / (segmentLength[target] * segmentLength[target]);
+        
+        //keep the progress within the segment
+        if (progress < 0)
+            return 0;
+        if (progress > 1)
+            return 1;
+        
+        return progress;
+    }
+    
+    /**
+     * Get the distance along the lap
+     * @param target The check point we are driving towards
+     * @param progress The progress along the segment ending at the target (0.0 - 1.0)
+     * @return The distance from the finish line along the check point polyline
+     */
+    public double getLapDistance(final int target, final double progress)
+    {
+        return segmentStart[target] + (segmentLength[target] * progress);
+    }
+    
+    /**
+     * Get the length of the segment ending at the check point
+     * @param target The check point at the end of the segment
+     * @return The length of the segment
+     */
+    public double getSegmentLength(final int target)
+    {
+        return this.segmentLength[target];
+    }
+    
+    /**
+     * Get the column direction of the segment ending at the check point
+     * @param target The check point at the end of the segment
+     * @return The column difference from the previous check point
+     */
+    public double getSegmentCol(final int target)
+    {
+        return this.segmentCol[target];
+    }
+    
+    /**
+     * Get the row direction of the segment ending at the check point
+     * @param target The check point at the end of the segment
+     * @return The row difference from the previous check point
+     */
+    public double getSegmentRow(final int target)
+    {
+        return this.segmentRow[target];
+    }
+    
+    /**
+     * Get the length of a lap following the check points
+     * @return The total length of the check point polyline
+     */
+    public double getLapLength()
+    {
+        return this.lapLength;
+    }
+    
+    /**
+     * Get the planner used to find a route back to the road
+     * @return The planner for this track
+     */
+    public RecoveryPlanner getRecovery()
+    {
+        if (recovery == null)
+            recovery = new RecoveryPlanner(this);
+        
+        return this.recovery;
+    }
+    
+    /**
+     * Get a copy of the check points for this track
+     * @return List of check points, the last is the finish line
+     */
+    protected List<Cell> getCheckPoints()
+    {
+        return new ArrayList<>(this.checkPoints);
     }
     
     public int getColumns()
@@ -332,14 +631,60 @@ public final class Track implements Disposable
     }
     
     /**
-     * Is the specified location part of the road?
+     * Use the road mask sampled from the track image near the edges of the road.<br>
+     * Each tile next to a tile that is different (road/off road) is marked as an edge
+     * @param roadMask The road mask
+     */
+    protected void setRoadMask(final RoadMask roadMask)
+    {
+        this.roadMask = roadMask;
+        
+        for (int row = 0; row < rows; row++)
+        {
+            for (int col = 0; col < columns; col++)
+            {
+                boolean edge = false;
+                
+                //check the neighboring tiles
+                for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++)
+                {
+                    for (int c = Math.max(0, col - 1); c <= Math.min(columns - 1, col + 1); c++)
+                    {
+                        if (key[r][c].isRoad() != key[row][col].isRoad())
+                            edge = true;
+                    }
+                }
+                
+                key[row][col].setEdge(edge);
+            }
+        }
+    }
+    
+    /**
+     * Get the road mask
+     * @return The road mask sampled from the track image, null if not used
+     */
+    public RoadMask getRoadMask()
+    {
+        return this.roadMask;
+    }
+    
+    /**
+     * Is the specified location part of the road?<br>
+     * If there is a road mask it is used for locations near the edge of the road
      * @param column
      * @param row
      * @return true if part of the road, false otherwise
      */
     public boolean isRoad(final double column, final double row)
     {
-        return isRoad((int)column, (int)row);
+        final Tile tile = key[(int)row][(int)column];
+        
+        //only check the road mask near the edge of the road
+        if (roadMask == null || !tile.isEdge())
+            return tile.isRoad();
+        
+        return roadMask.isRoad(column, row);
     }
     
     /**
@@ -390,6 +735,9 @@ public final class Track implements Disposable
     {
         this.key = null;
         
+        //the road mask may be shared with a copy of the track
+        this.roadMask = null;
+        
         if (checkPoints != null)
         {
             for (int i = 0; i < checkPoints.size(); i++)
@@ -400,5 +748,11 @@ public final class Track implements Disposable
             checkPoints.clear();
             checkPoints = null;
         }
+        
+        segmentCol = null;
+        segmentRow = null;
+        segmentLength = null;
+        segmentStart = null;
+        recovery = null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,190 @@
+package com.gamesbykevin.rcproam.net;
+
+import com.gamesbykevin.rcproam.shared.Shared;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The packets sent between the race server and the clients over UDP.<br><br>
+ * JOIN (client): session id<br>
+ * WELCOME (server): session id, car number (-1 if the session is full), track, laps, number of cars, current update<br>
+ * INPUT (client): the last snapshot received, the input sequence, then the most recent inputs (newest first),
+ * each input is repeated in the following packets so a lost packet does not lose the input<br>
+ * SNAPSHOT (server): update, the update it was compared against (NO_TICK if complete), the last input applied,
+ * the complete state of the client car, then each car with a byte flagging which fields changed followed by only those fields.
+ * @author GOD
+ */
+public final class Protocol
+{
+    //the default port of the server
+    public static final int DEFAULT_PORT = 4550;
+    
+    //the types of packets
+    public static final byte TYPE_JOIN = 1;
+    public static final byte TYPE_WELCOME = 2;
+    public static final byte TYPE_INPUT = 3;
+    public static final byte TYPE_SNAPSHOT = 4;
+    
+    //the largest packet we will send or receive, this has room for a full snapshot of the largest field
+    public static final int MAX_PACKET_SIZE = 1024;
+    
+    //how many of the most recent inputs are sent in every input packet
+    public static final int INPUT_REDUNDANCY = 4;
+    
+    //the number of snapshots kept so we can compare against the last one a client received
+    public static final int HISTORY = 64;
+    
+    //no update
+    public static final int NO_TICK = -1;
+    
+    //the size of a join packet after the type, the session id
+    public static final int JOIN_SIZE = 4;
+    
+    //the size of an input packet after the type and before the inputs, the last snapshot received, the input sequence and the number of inputs
+    public static final int INPUT_HEADER_SIZE = 9;
+    
+    //nanoseconds per update, the server and the clients update at the same rate as the game
+    public static final long UPDATE_TIME = (long)(1000000000.0 / Shared.DEFAULT_UPS);
+    
+    //the location is stored in 1/128 of a cell
+    private static final double POSITION_SCALE = 128.0;
+    
+    //the heading is stored in 1/256 of a full turn
+    private static final double HEADING_SCALE = 256.0 / 360.0;
+    
+    //the fields of each car in a snapshot
+    private static final int FIELD_COL = 1;
+    private static final int FIELD_ROW = 2;
+    private static final int FIELD_HEADING = 4;
+    private static final int FIELD_RANK = 8;
+    private static final int FIELD_LAP = 16;
+    
+    private Protocol()
+    {
+        //utility class
+    }
+    
+    /**
+     * Store a location as an unsigned short
+     * @param position Column or row
+     * @return The quantized location
+     */
+    public static short quantizePosition(final double position)
+    {
+        return (short)Math.max(0, Math.min(0xFFFF, Math.round(position * POSITION_SCALE)));
+    }
+    
+    /**
+     * Restore a location
+     * @param value The quantized location
+     * @return Column or row
+     */
+    public static double toPosition(final short value)
+    {
+        return (value & 0xFFFF) / POSITION_SCALE;
+    }
+    
+    /**
+     * Store a heading as a byte
+     * @param degrees The heading (in degrees)
+     * @return The quantized heading
+     */
+    public static byte quantizeHeading(final double degrees)
+    {
+        return (byte)Math.round(degrees * HEADING_SCALE);
+    }
+    
+    /**
+     * Restore a heading
+     * @param value The quantized heading
+     * @return The heading (in degrees)
+     */
+    public static double toHeading(final byte value)
+    {
+        return (value & 0xFF) / HEADING_SCALE;
+    }
+    
+    /**
+     * Check an input packet holds the header and every input it says it has
+     * @param buffer The buffer positioned after the type
+     * @return true if the packet can be read, false if it is too short or the number of inputs is negative
+     */
+    public static boolean isInputValid(final ByteBuffer buffer)
+    {
+        if (buffer.remaining() < INPUT_HEADER_SIZE)
+            return false;
+        
+        //the number of inputs is the last byte of the header
+        final int count = buffer.get(buffer.position() + INPUT_HEADER_SIZE - 1);
+        
+        return (count >= 0 && count <= buffer.remaining() - INPUT_HEADER_SIZE);
+    }
+    
+    /**
+     * Write the cars of the snapshot, only the fields that changed since the base are written
+     * @param buffer The buffer to write to
+     * @param current The snapshot to send
+     * @param base The snapshot the client already has, null to send every field
+     */
+    protected static void writeCars(final ByteBuffer buffer, final Snapshot current, final Snapshot base)
+    {
+        buffer.put((byte)current.count);
+        
+        for (int i = 0; i < current.count; i++)
+        {
+            int mask = FIELD_COL | FIELD_ROW | FIELD_HEADING | FIELD_RANK | FIELD_LAP;
+            
+            //only flag the fields that changed
+            if (base != null)
+            {
+                mask = 0;
+                
+                if (current.col[i] != base.col[i])
+                    mask |= FIELD_COL;
+                if (current.row[i] != base.row[i])
+                    mask |= FIELD_ROW;
+                if (current.heading[i] != base.heading[i])
+                    mask |= FIELD_HEADING;
+                if (current.rank[i] != base.rank[i])
+                    mask |= FIELD_RANK;
+                if (current.lap[i] != base.lap[i])
+                    mask |= FIELD_LAP;
+            }
+            
+            buffer.put((byte)mask);
+            
+            if ((mask & FIELD_COL) == FIELD_COL)
+                buffer.putShort(current.col[i]);
+            if ((mask & FIELD_ROW) == FIELD_ROW)
+                buffer.putShort(current.row[i]);
+            if ((mask & FIELD_HEADING) == FIELD_HEADING)
+                buffer.put(current.heading[i]);
+            if ((mask & FIELD_RANK) == FIELD_RANK)
+                buffer.put(current.rank[i]);
+            if ((mask & FIELD_LAP) == FIELD_LAP)
+                buffer.put(current.lap[i]);
+        }
+    }
+    
+    /**
+     * Read the cars of a snapshot, any field not written is copied from the base
+     * @param buffer The buffer to read from
+     * @param result The snapshot to read into
+     * @param base The snapshot it was compared against, null if every field was written
+     */
+    protected static void readCars(final ByteBuffer buffer, final Snapshot result, final Snapshot base)
+    {
+        result.count = buffer.get();
+        
+        for (int i = 0; i < result.count; i++)
+        {
+            final int mask = buffer.get();
+            
+            result.col[i] = ((mask & FIELD_COL) == FIELD_COL) ? buffer.getShort() : base.col[i];
+            result.row[i] = ((mask & FIELD_ROW) == FIELD_ROW) ? buffer.getShort() : base.row[i];
+            result.heading[i] = ((mask & FIELD_HEADING) == FIELD_HEADING) ? buffer.get() : base.heading[i];
+            result.rank[i] = ((mask & FIELD_RANK) == FIELD_RANK) ? buffer.get() : base.rank[i];
+            result.lap[i] = ((mask & FIELD_LAP) == FIELD_LAP) ? buffer.get() : base.lap[i];
+        }
+    }
+}
\ No newline at end of file
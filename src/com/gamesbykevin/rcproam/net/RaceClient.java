@@ -0,0 +1,551 @@
+package com.gamesbykevin.rcproam.net;
+
+import com.gamesbykevin.framework.resources.Disposable;
+
+import com.gamesbykevin.rcproam.actor.Human;
+import com.gamesbykevin.rcproam.car.Car;
+import com.gamesbykevin.rcproam.map.MapLoader;
+import com.gamesbykevin.rcproam.map.StaticMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A client racing on the race server.<br>
+ * The client car is moved right away by the local input (prediction), and when a snapshot arrives
+ * the car is set to the state from the server and the inputs the server has not applied yet are applied again (reconciliation).<br>
+ * The other cars are drawn a few updates in the past so they can be smoothly moved between 2 snapshots (interpolation).<br><br>
+ * Running this class starts many clients controlled by a simple bot and reports the bandwidth used.<br>
+ * Usage: RaceClient [source directory] [port] [clients] [seconds]
+ * @author GOD
+ */
+public final class RaceClient implements Disposable
+{
+    //default directory containing the resources
+    private static final String DEFAULT_SOURCE_DIR = "src";
+    
+    //how many updates in the past the other cars are drawn
+    private static final int INTERPOLATION_DELAY = 2;
+    
+    //how often the join is sent again if there is no welcome (in updates)
+    private static final int JOIN_DELAY = 30;
+    
+    //the input bits of the bot, the bot always accelerates
+    private static final int[] BOT_INPUTS = {Human.INPUT_ACCELERATE, Human.INPUT_ACCELERATE | Human.INPUT_LEFT, Human.INPUT_ACCELERATE | Human.INPUT_RIGHT};
+    
+    //how often the bot changes the input (in updates)
+    private static final int BOT_DELAY = 20;
+    
+    //the channel used to send and receive packets
+    private DatagramChannel channel;
+    
+    //the buffers used to receive and send packets
+    private final ByteBuffer receive, send;
+    
+    //the map of each track, shared by every client
+    private StaticMap[] maps;
+    
+    //the map we are racing on
+    private StaticMap map;
+    
+    //the race we want to join
+    private int session;
+    
+    //the number of the car we control, -1 if we have not joined
+    private int number = -1;
+    
+    //the number of cars in the race
+    private int count = 0;
+    
+    //our car, moved by the local input
+    private Human car;
+    
+    //have we received the state of our car from the server
+    private boolean synced = false;
+    
+    //the snapshots received
+    private Snapshot[] received;
+    
+    //the newest snapshot received
+    private int latest = Protocol.NO_TICK;
+    
+    //the update the other cars are drawn at
+    private double renderTick = 0;
+    
+    //the inputs sent, by sequence
+    private int[] inputs;
+    
+    //the sequence of the newest input
+    private int sequence = 0;
+    
+    //the number of updates since the join was sent
+    private int updates = 0;
+    
+    //statistics
+    private long bytesSent = 0, bytesReceived = 0, snapshots = 0, corrections = 0;
+    
+    //the total distance our car was moved when correcting the prediction
+    private double correction = 0;
+    
+    /**
+     * Create the client
+     * @param server Where the server is
+     * @param maps The map of each track, maps not loaded yet are null
+     * @throws IOException if the channel can't be opened
+     */
+    public RaceClient(final InetSocketAddress server, final StaticMap[] maps) throws IOException
+    {
+        this.maps = maps;
+        
+        this.receive = ByteBuffer.allocateDirect(Protocol.MAX_PACKET_SIZE);
+        this.send = ByteBuffer.allocateDirect(Protocol.MAX_PACKET_SIZE);
+        
+        this.received = new Snapshot[Protocol.HISTORY];
+        
+        this.inputs = new int[Protocol.HISTORY];
+        
+        this.channel = DatagramChannel.open();
+        this.channel.connect(server);
+        this.channel.configureBlocking(false);
+    }
+    
+    public static void main(String[] args)
+    {
+        try
+        {
+            final File source = new File(args.length > 0 ? args[0] : DEFAULT_SOURCE_DIR);
+            final int port = (args.length > 1) ? Integer.parseInt(args[1]) : Protocol.DEFAULT_PORT;
+            final int total = (args.length > 2) ? Integer.parseInt(args[2]) : 8;
+            final int seconds = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+            
+            //load every map once, they are shared by every client
+            final StaticMap[] maps = new StaticMap[MapLoader.TOTAL_MAPS];
+            
+            for (int i = 0; i < maps.length; i++)
+            {
+                maps[i] = MapLoader.loadMap(source, i, 1);
+            }
+            
+            final InetSocketAddress server = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+            
+            final RaceClient[] clients = new RaceClient[total];
+            
+            for (int i = 0; i < total; i++)
+            {
+                clients[i] = new RaceClient(server, maps);
+                clients[i].join(i);
+            }
+            
+            final Random random = new Random(0);
+            final int[] bot = new int[total];
+            final int updates = seconds * (int)(1000000000L / Protocol.UPDATE_TIME);
+            
+            long next = System.nanoTime();
+            
+            for (int update = 0; update < updates; update++)
+            {
+                for (int i = 0; i < total; i++)
+                {
+                    //the bot picks a new input every so often
+                    if (update % BOT_DELAY == 0)
+                        bot[i] = BOT_INPUTS[random.nextInt(BOT_INPUTS.length)];
+                    
+                    clients[i].update(bot[i]);
+                }
+                
+                next += Protocol.UPDATE_TIME;
+                
+                final long delay = next - System.nanoTime();
+                
+                if (delay > 0)
+                    LockSupport.parkNanos(delay);
+            }
+            
+            long sent = 0, received = 0, snapshots = 0, corrections = 0;
+            double correction = 0;
+            
+            for (int i = 0; i < total; i++)
+            {
+                sent += clients[i].bytesSent;
+                received += clients[i].bytesReceived;
+                snapshots += clients[i].snapshots;
+                corrections += clients[i].corrections;
+                correction += clients[i].correction;
+                
+                clients[i].dispose();
+            }
+            
+            System.out.println(String.format(
+                "Clients: %d, Sent: %.0f B/s per client, Received: %.0f B/s per client, Snapshot: %.1f bytes, Corrections: %d (%.4f cells average)",
+                total,
+                (double)sent / total / seconds,
+                (double)received / total / seconds,
+                (snapshots == 0) ? 0.0 : (double)received / snapshots,
+                corrections,
+                (corrections == 0) ? 0.0 : correction / corrections));
+            
+            for (int i = 0; i < maps.length; i++)
+            {
+                maps[i].dispose();
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Ask to join a race
+     * @param session The id of the race
+     * @throws IOException
+     */
+    public void join(final int session) throws IOException
+    {
+        this.session = session;
+        this.updates = 0;
+        
+        send.clear();
+        send.put(Protocol.TYPE_JOIN);
+        send.putInt(session);
+        send.flip();
+        
+        bytesSent += channel.write(send);
+    }
+    
+    /**
+     * Have we joined the race
+     * @return true if the server gave us a car, false otherwise
+     */
+    public boolean hasJoined()
+    {
+        return (number >= 0);
+    }
+    
+    /**
+     * Receive the packets from the server, then send the input and move our car
+     * @param input The input bits (see Human.INPUT_LEFT, etc...)
+     * @throws Exception
+     */
+    public void update(final int input) throws Exception
+    {
+        receive();
+        
+        if (!hasJoined())
+        {
+            //ask again in case the packet was lost
+            if (++updates % JOIN_DELAY == 0)
+                join(session);
+            
+            return;
+        }
+        
+        sequence++;
+        inputs[sequence % Protocol.HISTORY] = input;
+        
+        sendInput();
+        
+        //move our car right away instead of waiting for the server
+        if (synced)
+            car.update(map.getTrack(), Protocol.UPDATE_TIME, input);
+        
+        //the other cars are drawn a few updates behind the newest snapshot
+        renderTick = Math.max(renderTick + 1, latest - INTERPOLATION_DELAY - 1);
+        renderTick = Math.min(renderTick, latest - INTERPOLATION_DELAY);
+    }
+    
+    /**
+     * Send the most recent inputs, each input is sent more than once in case a packet is lost
+     * @throws IOException
+     */
+    private void sendInput() throws IOException
+    {
+        final int total = Math.min(sequence, Protocol.INPUT_REDUNDANCY);
+        
+        send.clear();
+        send.put(Protocol.TYPE_INPUT);
+        send.putInt(latest);
+        send.putInt(sequence);
+        send.put((byte)total);
+        
+        for (int i = 0; i < total; i++)
+        {
+            send.put((byte)inputs[(sequence - i) % Protocol.HISTORY]);
+        }
+        
+        send.flip();
+        bytesSent += channel.write(send);
+    }
+    
+    /**
+     * Receive every packet waiting
+     * @throws Exception
+     */
+    private void receive() throws Exception
+    {
+        while (true)
+        {
+            receive.clear();
+            
+            final int bytes;
+            
+            try
+            {
+                bytes = channel.read(receive);
+            }
+            catch (PortUnreachableException e)
+            {
+                //the server is not running yet, the join will be sent again
+                break;
+            }
+            
+            //there are no more packets
+            if (bytes <= 0)
+                break;
+            
+            bytesReceived += bytes;
+            
+            receive.flip();
+            
+            switch (receive.get())
+            {
+                case Protocol.TYPE_WELCOME:
+                    welcome();
+                    break;
+                
+                case Protocol.TYPE_SNAPSHOT:
+                    if (hasJoined())
+                        snapshot();
+                    break;
+                
+                default:
+                    //ignore any unknown packets
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * We were given a car in the race
+     * @throws Exception
+     */
+    private void welcome() throws Exception
+    {
+        //ignore the welcome if it was sent again
+        if (hasJoined() || receive.getInt() != session)
+            return;
+        
+        final int car = receive.get();
+        
+        //the race is full
+        if (car < 0)
+            throw new Exception("Race " + session + " is full");
+        
+        final int trackNo = receive.get();
+        receive.get();
+        
+        this.count = receive.get();
+        this.renderTick = receive.getInt();
+        
+        //make room for every car in the race
+        for (int i = 0; i < received.length; i++)
+        {
+            received[i] = new Snapshot(count);
+        }
+        
+        this.map = maps[trackNo];
+        this.car = new Human();
+        this.number = car;
+    }
+    
+    /**
+     * Read the snapshot and correct our car
+     */
+    private void snapshot()
+    {
+        final int tick = receive.getInt();
+        final int baseTick = receive.getInt();
+        final int applied = receive.getInt();
+        
+        //the number of our car
+        receive.get();
+        
+        //ignore a snapshot older than the one we have
+        if (tick <= latest)
+            return;
+        
+        //the snapshot the server compared against
+        Snapshot base = null;
+        
+        if (baseTick != Protocol.NO_TICK)
+        {
+            base = received[baseTick % Protocol.HISTORY];
+            
+            //if we no longer have the snapshot we can't read this one
+            if (base.tick != baseTick)
+                return;
+        }
+        
+        //read the cars after our car state
+        final int state = receive.position();
+        receive.position(state + Car.STATE_SIZE);
+        
+        final Snapshot snapshot = received[tick % Protocol.HISTORY];
+        Protocol.readCars(receive, snapshot, base);
+        snapshot.tick = tick;
+        
+        latest = tick;
+        snapshots++;
+        
+        //where we predicted our car would be
+        final double col = car.getCol();
+        final double row = car.getRow();
+        
+        //start from the state of the server
+        receive.position(state);
+        car.readState(receive);
+        
+        //apply the inputs the server has not applied yet
+        for (int i = Math.max(applied + 1, sequence - Protocol.HISTORY + 1); i <= sequence; i++)
+        {
+            car.update(map.getTrack(), Protocol.UPDATE_TIME, inputs[i % Protocol.HISTORY]);
+        }
+        
+        //measure how far the prediction was off
+        if (synced)
+        {
+            final double distance = Math.hypot(car.getCol() - col, car.getRow() - row);
+            
+            if (distance > 0)
+            {
+                correction += distance;
+                corrections++;
+            }
+        }
+        
+        synced = true;
+    }
+    
+    /**
+     * Get the column of the car
+     * @param number The number of the car
+     * @return The predicted column of our car, or the column of another car between 2 snapshots
+     */
+    public double getCol(final int number)
+    {
+        if (number == this.number)
+            return car.getCol();
+        
+        return interpolate(number, true);
+    }
+    
+    /**
+     * Get the row of the car
+     * @param number The number of the car
+     * @return The predicted row of our car, or the row of another car between 2 snapshots
+     */
+    public double getRow(final int number)
+    {
+        if (number == this.number)
+            return car.getRow();
+        
+        return interpolate(number, false);
+    }
+    
+    /**
+     * Get the number of cars in the race
+     * @return The number of cars
+     */
+    public int getCount()
+    {
+        return this.count;
+    }
+    
+    /**
+     * Get the location of another car between the 2 snapshots around the render update
+     * @param number The number of the car
+     * @param column true for the column, false for the row
+     * @return The location, if a snapshot is missing the nearest snapshot is used
+     */
+    private double interpolate(final int number, final boolean column)
+    {
+        final int from = (int)Math.floor(renderTick);
+        final double fraction = renderTick - from;
+        
+        final Snapshot start = getSnapshot(from);
+        final Snapshot end = getSnapshot(from + 1);
+        
+        //if we don't have either snapshot use the newest
+        if (start == null && end == null)
+        {
+            final Snapshot newest = getSnapshot(latest);
+            
+            if (newest == null)
+                return 0;
+            
+            return Protocol.toPosition(column ? newest.col[number] : newest.row[number]);
+        }
+        
+        if (start == null)
+            return Protocol.toPosition(column ? end.col[number] : end.row[number]);
+        if (end == null)
+            return Protocol.toPosition(column ? start.col[number] : start.row[number]);
+        
+        final double a = Protocol.toPosition(column ? start.col[number] : start.row[number]);
+        final double b = Protocol.toPosition(column ? end.col[number] : end.row[number]);
+        
+        return a + ((b - a) * fraction);
+    }
+    
+    /**
+     * Get the snapshot of the specified update
+     * @param tick The update
+     * @return The snapshot, null if we don't have it
+     */
+    private Snapshot getSnapshot(final int tick)
+    {
+        if (tick < 0)
+            return null;
+        
+        final Snapshot snapshot = received[tick % Protocol.HISTORY];
+        
+        return (snapshot.tick == tick) ? snapshot : null;
+    }
+    
+    @Override
+    public void dispose()
+    {
+        if (channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+            
+            channel = null;
+        }
+        
+        if (car != null)
+        {
+            car.dispose();
+            car = null;
+        }
+        
+        //the maps are shared with other clients so only remove the references
+        maps = null;
+        map = null;
+        received = null;
+        inputs = null;
+    }
+}
\ No newline at end of file
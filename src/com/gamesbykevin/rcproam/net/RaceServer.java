@@ -0,0 +1,448 @@
+package com.gamesbykevin.rcproam.net;
+
+import com.gamesbykevin.framework.resources.Disposable;
+
+import com.gamesbykevin.rcproam.map.MapLoader;
+import com.gamesbykevin.rcproam.map.StaticMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A race server on the local machine that hosts many races at once.<br>
+ * The server is the authority for every car, it updates each race at a fixed rate using the inputs from the clients
+ * and sends each client a snapshot after every update.
+ * Packets that are too short to read are dropped and counted.
+ * The bandwidth sent to each client and the cpu time of each update are printed every second.<br><br>
+ * Usage: RaceServer [source directory] [port] [humans per race] [cars per race]
+ * @author GOD
+ */
+public final class RaceServer implements Disposable
+{
+    //default directory containing the resources
+    private static final String DEFAULT_SOURCE_DIR = "src";
+    
+    //the number of laps of each race
+    private static final int LAPS = 3;
+    
+    //remove a client we have not heard from in this long (in nanoseconds)
+    private static final long CLIENT_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+    
+    //the most races hosted at once, a join for a new race is refused once this many are running
+    private static final int MAX_SESSIONS = 64;
+    
+    //how often the statistics are printed (in nanoseconds)
+    private static final long REPORT_DELAY = TimeUnit.SECONDS.toNanos(1);
+    
+    //the channel used to send and receive packets
+    private DatagramChannel channel;
+    
+    //the directory containing the resources
+    private final File source;
+    
+    //the maps of each track, loaded when first needed and shared by every race on the track
+    private StaticMap[] maps;
+    
+    //the races by session id
+    private Map<Integer, RaceSession> sessions;
+    
+    //the clients by address
+    private Map<SocketAddress, RaceSession.Client> clients;
+    
+    //the number of cars in each race controlled by clients
+    private final int humans;
+    
+    //the number of cars in each race
+    private final int total;
+    
+    //the buffers used to receive and send packets
+    private final ByteBuffer receive, send;
+    
+    //object used to make random decisions
+    private final Random random = new Random();
+    
+    //object used to measure the cpu time of each update
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    
+    //the statistics since the last report
+    private long bytesSent = 0, bytesReceived = 0, cpuTime = 0, ticks = 0, dropped = 0;
+    
+    /**
+     * Create the server
+     * @param source The directory containing the resources
+     * @param port The port on the local machine to listen on
+     * @param humans The number of cars in each race controlled by clients
+     * @param total The number of cars in each race
+     * @throws IOException if the port can't be opened
+     */
+    public RaceServer(final File source, final int port, final int humans, final int total) throws IOException
+    {
+        this.source = source;
+        this.humans = humans;
+        this.total = total;
+        
+        this.maps = new StaticMap[MapLoader.TOTAL_MAPS];
+        this.sessions = new HashMap<>();
+        this.clients = new HashMap<>();
+        
+        this.receive = ByteBuffer.allocateDirect(Protocol.MAX_PACKET_SIZE);
+        this.send = ByteBuffer.allocateDirect(Protocol.MAX_PACKET_SIZE);
+        
+        this.channel = DatagramChannel.open();
+        this.channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.channel.configureBlocking(false);
+    }
+    
+    public static void main(String[] args)
+    {
+        try
+        {
+            final File source = new File(args.length > 0 ? args[0] : DEFAULT_SOURCE_DIR);
+            final int port = (args.length > 1) ? Integer.parseInt(args[1]) : Protocol.DEFAULT_PORT;
+            final int humans = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+            final int total = (args.length > 3) ? Integer.parseInt(args[3]) : RaceSession.DEFAULT_CARS;
+            
+            final RaceServer server = new RaceServer(source, port, humans, total);
+            
+            System.out.println("Race server listening on port " + port);
+            
+            try
+            {
+                server.run();
+            }
+            finally
+            {
+                server.dispose();
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Update the races at a fixed rate until the thread is interrupted
+     * @throws Exception
+     */
+    public void run() throws Exception
+    {
+        long next = System.nanoTime();
+        long report = next + REPORT_DELAY;
+        
+        while (!Thread.currentThread().isInterrupted())
+        {
+            update(next);
+            
+            //print the statistics
+            if (next >= report)
+            {
+                report();
+                report += REPORT_DELAY;
+            }
+            
+            //wait for the next update
+            next += Protocol.UPDATE_TIME;
+            
+            final long delay = next - System.nanoTime();
+            
+            if (delay > 0)
+                LockSupport.parkNanos(delay);
+        }
+    }
+    
+    /**
+     * Receive the packets waiting, update every race and send each client a snapshot
+     * @param time The current time (in nanoseconds)
+     * @throws Exception
+     */
+    public void update(final long time) throws Exception
+    {
+        final long start = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+        
+        receive(time);
+        
+        //update every race
+        for (RaceSession session : sessions.values())
+        {
+            session.update(Protocol.UPDATE_TIME);
+        }
+        
+        //send the snapshots
+        for (RaceSession.Client client : clients.values())
+        {
+            send.clear();
+            client.getSession().writeSnapshot(send, client);
+            send.flip();
+            
+            final int bytes = channel.send(send, client.getAddress());
+            
+            client.addSent(bytes);
+            bytesSent += bytes;
+        }
+        
+        removeClients(time);
+        
+        if (threads.isCurrentThreadCpuTimeSupported())
+            cpuTime += threads.getCurrentThreadCpuTime() - start;
+        
+        ticks++;
+    }
+    
+    /**
+     * Receive every packet waiting
+     * @param time The current time (in nanoseconds)
+     * @throws Exception
+     */
+    private void receive(final long time) throws Exception
+    {
+        while (true)
+        {
+            receive.clear();
+            
+            final SocketAddress address = channel.receive(receive);
+            
+            //there are no more packets
+            if (address == null)
+                break;
+            
+            receive.flip();
+            bytesReceived += receive.remaining();
+            
+            //ignore empty packets
+            if (!receive.hasRemaining())
+                continue;
+            
+            switch (receive.get())
+            {
+                case Protocol.TYPE_JOIN:
+                    //drop packets too short to hold the session id
+                    if (receive.remaining() < Protocol.JOIN_SIZE)
+                    {
+                        dropped++;
+                        break;
+                    }
+                    
+                    join(address, receive.getInt(), time);
+                    break;
+                
+                case Protocol.TYPE_INPUT:
+                    //drop packets too short to hold the header or the inputs they say they have
+                    if (!Protocol.isInputValid(receive))
+                    {
+                        dropped++;
+                        break;
+                    }
+                    
+                    final RaceSession.Client client = clients.get(address);
+                    
+                    //ignore input from clients that have not joined
+                    if (client != null)
+                    {
+                        final int ack = receive.getInt();
+                        final int sequence = receive.getInt();
+                        client.receive(ack, sequence, receive, time);
+                    }
+                    break;
+                
+                default:
+                    //ignore any unknown packets
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * Add the client to the race, a new race is created if it does not exist and we are not hosting the most races already.<br>
+     * If the client already joined the welcome is sent again
+     * @param address Where the client is
+     * @param id The id of the race the client wants to join
+     * @param time The current time (in nanoseconds)
+     * @throws Exception
+     */
+    private void join(final SocketAddress address, final int id, final long time) throws Exception
+    {
+        RaceSession.Client client = clients.get(address);
+        
+        if (client == null)
+        {
+            RaceSession session = sessions.get(id);
+            
+            //only create the race if we have room, otherwise the client is told the race is full
+            if (session == null && sessions.size() < MAX_SESSIONS)
+            {
+                //each race is on a different track
+                final int trackNo = Math.abs(id % MapLoader.TOTAL_MAPS);
+                
+                session = new RaceSession(id, trackNo, getMap(trackNo), humans, total, random);
+                sessions.put(id, session);
+            }
+            
+            if (session != null)
+            {
+                client = session.join(address, time);
+                
+                if (client != null)
+                    clients.put(address, client);
+            }
+        }
+        
+        send.clear();
+        send.put(Protocol.TYPE_WELCOME);
+        send.putInt(id);
+        
+        if (client == null)
+        {
+            //the race is full, or we can't host another race
+            send.put((byte)-1);
+            send.put((byte)0);
+            send.put((byte)0);
+            send.put((byte)0);
+            send.putInt(Protocol.NO_TICK);
+        }
+        else
+        {
+            send.put((byte)client.getCar());
+            send.put((byte)client.getSession().getTrackNo());
+            send.put((byte)client.getSession().getLaps());
+            send.put((byte)client.getSession().getCount());
+            send.putInt(client.getSession().getTick());
+        }
+        
+        send.flip();
+        bytesSent += channel.send(send, address);
+    }
+    
+    /**
+     * Get the map of the track, the map is loaded if needed
+     * @param trackNo The track number
+     * @return The map
+     * @throws Exception if the map could not be loaded
+     */
+    private StaticMap getMap(final int trackNo) throws Exception
+    {
+        if (maps[trackNo] == null)
+            maps[trackNo] = MapLoader.loadMap(source, trackNo, LAPS);
+        
+        return maps[trackNo];
+    }
+    
+    /**
+     * Remove the clients we have not heard from, and any race without clients
+     * @param time The current time (in nanoseconds)
+     */
+    private void removeClients(final long time)
+    {
+        //the races that lost a client
+        List<RaceSession> changed = null;
+        
+        for (Iterator<RaceSession.Client> i = clients.values().iterator(); i.hasNext();)
+        {
+            final RaceSession.Client client = i.next();
+            
+            if (time - client.getHeard() > CLIENT_TIMEOUT)
+            {
+                client.getSession().leave(client);
+                i.remove();
+                
+                if (changed == null)
+                    changed = new ArrayList<>();
+                
+                changed.add(client.getSession());
+            }
+        }
+        
+        if (changed != null)
+        {
+            for (RaceSession session : changed)
+            {
+                if (!session.hasClients() && sessions.remove(session.getId()) != null)
+                    session.dispose();
+            }
+        }
+    }
+    
+    /**
+     * Print the statistics since the last report and start counting again
+     */
+    private void report()
+    {
+        final double seconds = (ticks * Protocol.UPDATE_TIME) / 1000000000.0;
+        
+        System.out.println(String.format(
+            "Races: %d, Clients: %d, Sent: %.1f KB/s (%.0f B/s per client), Received: %.1f KB/s, Dropped: %d packets, Cpu: %.1f us per update",
+            sessions.size(),
+            clients.size(),
+            (bytesSent / seconds) / 1024.0,
+            clients.isEmpty() ? 0.0 : (bytesSent / seconds) / clients.size(),
+            (bytesReceived / seconds) / 1024.0,
+            dropped,
+            (ticks == 0) ? 0.0 : (cpuTime / 1000.0) / ticks));
+        
+        bytesSent = 0;
+        bytesReceived = 0;
+        cpuTime = 0;
+        ticks = 0;
+        dropped = 0;
+    }
+    
+    @Override
+    public void dispose()
+    {
+        if (channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+            
+            channel = null;
+        }
+        
+        if (sessions != null)
+        {
+            for (RaceSession session : sessions.values())
+            {
+                session.dispose();
+            }
+            
+            sessions.clear();
+            sessions = null;
+        }
+        
+        clients = null;
+        
+        if (maps != null)
+        {
+            for (int i = 0; i < maps.length; i++)
+            {
+                if (maps[i] != null)
+                {
+                    maps[i].dispose();
+                    maps[i] = null;
+                }
+            }
+            
+            maps = null;
+        }
+    }
+}
\ No newline at end of file
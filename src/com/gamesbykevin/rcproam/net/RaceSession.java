@@ -0,0 +1,443 @@
+package com.gamesbykevin.rcproam.net;
+
+import com.gamesbykevin.framework.resources.Disposable;
+
+import com.gamesbykevin.rcproam.car.Car;
+import com.gamesbykevin.rcproam.car.Cars;
+import com.gamesbykevin.rcproam.manager.FieldConfig;
+import com.gamesbykevin.rcproam.map.StaticMap;
+
+import java.awt.Color;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * A single race hosted by the server.<br>
+ * The server is the authority, each update the human cars are moved by the input received from their client,
+ * and the state of every car is stored so the next snapshot can be compared against the last one each client received.
+ * When the race is complete a new race starts on the same track.
+ * @author GOD
+ */
+public final class RaceSession implements Disposable
+{
+    //the default number of cars in a race
+    public static final int DEFAULT_CARS = 4;
+    
+    //the colors of the cars on the mini-map
+    private static final Color[] COLORS = {Color.RED, Color.BLUE, Color.YELLOW, Color.GREEN};
+    
+    //the most inputs waiting for a client, any more and the oldest inputs are dropped so the client does not fall too far behind
+    private static final int MAX_QUEUED_INPUTS = 8;
+    
+    //the id of this session
+    private final int id;
+    
+    //the track number
+    private final int trackNo;
+    
+    //the map we are racing on, this is shared with other sessions on the same track
+    private StaticMap map;
+    
+    //the cars in the race
+    private Cars cars;
+    
+    //each car by the car number
+    private Car[] numbered;
+    
+    //the client controlling each human car, null if no client
+    private Client[] clients;
+    
+    //the input of each car for the current update
+    private int[] inputs;
+    
+    //the most recent snapshots
+    private Snapshot[] history;
+    
+    //the current update
+    private int tick = 0;
+    
+    //object used to make random decisions
+    private final Random random;
+    
+    /**
+     * A client controlling a human car
+     */
+    public static final class Client
+    {
+        //where the client is
+        private final SocketAddress address;
+        
+        //the session the client joined
+        private final RaceSession session;
+        
+        //the number of the car the client controls
+        private final int car;
+        
+        //the inputs waiting to be applied, and the sequence of each
+        private final int[] queue = new int[MAX_QUEUED_INPUTS];
+        private final int[] sequences = new int[MAX_QUEUED_INPUTS];
+        
+        //the location of the oldest input, and the number of inputs waiting
+        private int head = 0, size = 0;
+        
+        //the sequence of the newest input received
+        private int received = 0;
+        
+        //the sequence of the last input applied
+        private int applied = 0;
+        
+        //the input applied for the current update, this is repeated if no input arrives
+        private int input = 0;
+        
+        //the last snapshot the client received
+        private int ack = Protocol.NO_TICK;
+        
+        //when we last heard from the client (in nanoseconds)
+        private long heard;
+        
+        //the number of bytes sent to the client
+        private long sent = 0;
+        
+        private Client(final SocketAddress address, final RaceSession session, final int car)
+        {
+            this.address = address;
+            this.session = session;
+            this.car = car;
+        }
+        
+        public SocketAddress getAddress()
+        {
+            return this.address;
+        }
+        
+        public RaceSession getSession()
+        {
+            return this.session;
+        }
+        
+        public int getCar()
+        {
+            return this.car;
+        }
+        
+        public long getHeard()
+        {
+            return this.heard;
+        }
+        
+        public long getSent()
+        {
+            return this.sent;
+        }
+        
+        /**
+         * Add the number of bytes sent to the client
+         * @param bytes The number of bytes sent
+         */
+        public void addSent(final int bytes)
+        {
+            this.sent += bytes;
+        }
+        
+        /**
+         * Receive the inputs from the client, inputs we already have are ignored
+         * @param ack The last snapshot the client received
+         * @param sequence The sequence of the newest input
+         * @param buffer The buffer containing the number of inputs, then each input (newest first)
+         * @param time The time the inputs were received (in nanoseconds)
+         */
+        public void receive(final int ack, final int sequence, final ByteBuffer buffer, final long time)
+        {
+            this.heard = time;
+            
+            //only keep the newest acknowledgement, packets can arrive out of order
+            if (ack > this.ack)
+                this.ack = ack;
+            
+            final int count = buffer.get();
+            
+            //the inputs are sent newest first
+            final int start = buffer.position();
+            
+            //add the oldest input we don't have first
+            for (int i = count - 1; i >= 0; i--)
+            {
+                final int current = sequence - i;
+                
+                if (current > received)
+                {
+                    add(buffer.get(start + i), current);
+                    received = current;
+                }
+            }
+            
+            buffer.position(start + count);
+        }
+        
+        /**
+         * Add an input to the queue
+         * @param input The input bits
+         * @param sequence The sequence of the input
+         */
+        private void add(final int input, final int sequence)
+        {
+            //if the queue is full drop the oldest input
+            if (size == MAX_QUEUED_INPUTS)
+            {
+                head = (head + 1) % MAX_QUEUED_INPUTS;
+                size--;
+            }
+            
+            final int index = (head + size) % MAX_QUEUED_INPUTS;
+            
+            queue[index] = input;
+            sequences[index] = sequence;
+            size++;
+        }
+        
+        /**
+         * Get the input for the next update
+         * @return The next input waiting, or the previous input if none arrived
+         */
+        private int next()
+        {
+            if (size > 0)
+            {
+                input = queue[head];
+                applied = sequences[head];
+                
+                head = (head + 1) % MAX_QUEUED_INPUTS;
+                size--;
+            }
+            
+            return input;
+        }
+    }
+    
+    /**
+     * Create a new race
+     * @param id The id of the session
+     * @param trackNo The track number
+     * @param map The map we are racing on
+     * @param humans The number of cars controlled by clients, the remaining cars are cpu
+     * @param total The number of cars in the race
+     * @param random Object used to make random decisions
+     * @throws Exception
+     */
+    public RaceSession(final int id, final int trackNo, final StaticMap map, final int humans, final int total, final Random random) throws Exception
+    {
+        if (total < 1 || total > FieldConfig.MAX_CARS)
+            throw new Exception("The number of cars has to be between 1 and " + FieldConfig.MAX_CARS);
+        
+        if (humans < 1 || humans > total)
+            throw new Exception("The number of humans has to be between 1 and " + total);
+        
+        this.id = id;
+        this.trackNo = trackNo;
+        this.map = map;
+        this.random = random;
+        
+        this.cars = new Cars();
+        this.cars.setCheckCollision(true);
+        
+        this.numbered = new Car[total];
+        this.clients = new Client[humans];
+        this.inputs = new int[total];
+        
+        //the human cars are added first so they have the lowest numbers
+        for (int i = 0; i < total; i++)
+        {
+            if (i < humans)
+            {
+                numbered[i] = cars.addHuman(COLORS[i % COLORS.length], "Player " + (i + 1));
+            }
+            else
+            {
+                numbered[i] = cars.addCpu(COLORS[i % COLORS.length], "Cpu " + (i + 1), random);
+            }
+        }
+        
+        this.history = new Snapshot[Protocol.HISTORY];
+        
+        for (int i = 0; i < history.length; i++)
+        {
+            history[i] = new Snapshot(total);
+        }
+        
+        //start the first race
+        start();
+    }
+    
+    /**
+     * Place the cars at the starting line and start the race
+     * @throws Exception
+     */
+    private void start() throws Exception
+    {
+        cars.reset(random);
+        map.placeCars(cars);
+        
+        //store the starting positions
+        history[tick % Protocol.HISTORY].capture(tick, cars);
+    }
+    
+    public int getId()
+    {
+        return this.id;
+    }
+    
+    public int getTrackNo()
+    {
+        return this.trackNo;
+    }
+    
+    public int getLaps()
+    {
+        return this.map.getLaps();
+    }
+    
+    public int getCount()
+    {
+        return this.cars.getSize();
+    }
+    
+    public int getTick()
+    {
+        return this.tick;
+    }
+    
+    /**
+     * Add a client to the race
+     * @param address Where the client is
+     * @param time The current time (in nanoseconds)
+     * @return The client, null if every human car already has a client
+     */
+    public Client join(final SocketAddress address, final long time)
+    {
+        for (int i = 0; i < clients.length; i++)
+        {
+            if (clients[i] == null)
+            {
+                clients[i] = new Client(address, this, i);
+                clients[i].heard = time;
+                return clients[i];
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Remove a client from the race, the car will stop receiving input
+     * @param client The client
+     */
+    public void leave(final Client client)
+    {
+        if (clients[client.car] == client)
+        {
+            clients[client.car] = null;
+            inputs[client.car] = 0;
+        }
+    }
+    
+    /**
+     * Does this race have any clients
+     * @return true if at least 1 client is racing, false otherwise
+     */
+    public boolean hasClients()
+    {
+        for (int i = 0; i < clients.length; i++)
+        {
+            if (clients[i] != null)
+                return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Move the race forward 1 update
+     * @param time The number of nanoseconds per update
+     * @throws Exception
+     */
+    public void update(final long time) throws Exception
+    {
+        //apply the next input of each client
+        for (int i = 0; i < clients.length; i++)
+        {
+            if (clients[i] != null)
+                inputs[i] = clients[i].next();
+        }
+        
+        cars.update(map.getTrack(), map.getLaps(), time, inputs);
+        
+        tick++;
+        
+        //start a new race once the race is complete
+        if (cars.hasRaceCompleted())
+        {
+            start();
+        }
+        else
+        {
+            history[tick % Protocol.HISTORY].capture(tick, cars);
+        }
+    }
+    
+    /**
+     * Get the snapshot of the specified update
+     * @param tick The update
+     * @return The snapshot, null if it is no longer stored
+     */
+    private Snapshot getSnapshot(final int tick)
+    {
+        if (tick == Protocol.NO_TICK)
+            return null;
+        
+        final Snapshot snapshot = history[tick % Protocol.HISTORY];
+        
+        return (snapshot.tick == tick) ? snapshot : null;
+    }
+    
+    /**
+     * Write the snapshot of the current update for a client.<br>
+     * The cars are compared against the last snapshot the client received, if it is still stored
+     * @param buffer The buffer to write to
+     * @param client The client
+     */
+    public void writeSnapshot(final ByteBuffer buffer, final Client client)
+    {
+        final Snapshot current = getSnapshot(tick);
+        final Snapshot base = getSnapshot(client.ack);
+        
+        buffer.put(Protocol.TYPE_SNAPSHOT);
+        buffer.putInt(tick);
+        buffer.putInt(base == null ? Protocol.NO_TICK : base.tick);
+        buffer.putInt(client.applied);
+        buffer.put((byte)client.car);
+        
+        //the complete state of the client car so the client can correct the prediction
+        numbered[client.car].writeState(buffer);
+        
+        Protocol.writeCars(buffer, current, base);
+    }
+    
+    @Override
+    public void dispose()
+    {
+        //the map is shared with other sessions so only remove the reference
+        map = null;
+        
+        if (cars != null)
+        {
+            cars.dispose();
+            cars = null;
+        }
+        
+        numbered = null;
+        clients = null;
+        inputs = null;
+        history = null;
+    }
+}
\ No newline at end of file
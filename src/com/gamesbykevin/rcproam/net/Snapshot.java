@@ -0,0 +1,77 @@
+package com.gamesbykevin.rcproam.net;
+
+import com.gamesbykevin.rcproam.car.Car;
+import com.gamesbykevin.rcproam.car.Cars;
+
+/**
+ * The quantized state of every car in a race for a single update.<br>
+ * Each car is stored by the car number so snapshots can be compared field by field.
+ * @author GOD
+ */
+final class Snapshot
+{
+    //the update this snapshot was taken, NO_TICK if not used yet
+    protected int tick = Protocol.NO_TICK;
+    
+    //the number of cars
+    protected int count;
+    
+    //the quantized location of each car
+    protected final short[] col, row;
+    
+    //the quantized heading of each car
+    protected final byte[] heading;
+    
+    //the rank and laps completed of each car
+    protected final byte[] rank, lap;
+    
+    protected Snapshot(final int capacity)
+    {
+        this.col = new short[capacity];
+        this.row = new short[capacity];
+        this.heading = new byte[capacity];
+        this.rank = new byte[capacity];
+        this.lap = new byte[capacity];
+    }
+    
+    /**
+     * Store the state of the cars
+     * @param tick The current update
+     * @param cars The cars in the race
+     */
+    protected void capture(final int tick, final Cars cars)
+    {
+        this.tick = tick;
+        this.count = cars.getSize();
+        
+        for (int i = 0; i < count; i++)
+        {
+            final Car car = cars.get(i);
+            
+            //the list is sorted, so store each car by the number
+            final int index = car.getNumber();
+            
+            col[index] = Protocol.quantizePosition(car.getCol());
+            row[index] = Protocol.quantizePosition(car.getRow());
+            heading[index] = Protocol.quantizeHeading(car.getFacingAngle());
+            rank[index] = (byte)car.getRank();
+            lap[index] = (byte)car.getTracker().getLaps();
+        }
+    }
+    
+    /**
+     * Copy another snapshot
+     * @param snapshot The snapshot to copy
+     */
+    protected void copy(final Snapshot snapshot)
+    {
+        this.tick = snapshot.tick;
+        this.count = snapshot.count;
+        
+        System.arraycopy(snapshot.col, 0, col, 0, count);
+        System.arraycopy(snapshot.row, 0, row, 0, count);
+        System.arraycopy(snapshot.heading, 0, heading, 0, count);
+        System.arraycopy(snapshot.rank, 0, rank, 0, count);
+        System.arraycopy(snapshot.lap, 0, lap, 0, count);
+    }
+}
\ No newline at end of file
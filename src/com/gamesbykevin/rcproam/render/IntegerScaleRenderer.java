@@ -0,0 +1,424 @@
+package com.gamesbykevin.rcproam.render;
+
+import com.gamesbykevin.framework.resources.Disposable;
+
+import com.gamesbykevin.rcproam.lifecycle.Lifecycle;
+import com.gamesbykevin.rcproam.lifecycle.Tracked;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * This class will draw images at the output resolution when the game is scaled by a whole number.<br>
+ * Each image is split into tiles that are scaled once (nearest neighbor) and cached,
+ * so drawing a part of an image is a 1:1 copy instead of scaling every frame.<br>
+ * The game is drawn to a Graphics object that is scaled, any image drawn through this class
+ * will instead be copied from the cache to a Graphics object at the output resolution.<br>
+ * The owner of an image evicts its tiles when the image is disposed.
+ * If an image is collected without being evicted its tiles are released the next time the cache is used.
+ * @author GOD
+ */
+public final class IntegerScaleRenderer implements Disposable
+{
+    //the size of each tile (in pixels of the original image)
+    private static final int TILE_SIZE = 128;
+    
+    //the most pixels we will cache before clearing the cache
+    private static final long MAX_CACHE_PIXELS = 16L * 1024L * 1024L;
+    
+    //the whole number the game is scaled by
+    private int scale = 1;
+    
+    //the graphics object the game is drawn to, this is scaled
+    private Graphics scaledGraphics;
+    
+    //the graphics object at the output resolution
+    private Graphics outputGraphics;
+    
+    //the scaled tiles for each image, images no longer in use will be removed
+    private Map<Image, Entry> cache;
+    
+    //the entries of the images that have been collected, so their tiles can be released
+    private final ReferenceQueue<Image> collected = new ReferenceQueue<>();
+    
+    //the number of pixels currently cached
+    private long cachedPixels = 0;
+    
+    //the renderer used by the game, if null we aren't scaling
+    private static IntegerScaleRenderer renderer;
+    
+    /**
+     * The scaled tile of an image
+     */
+    private static final class Tile
+    {
+        //the scaled image
+        private final BufferedImage image;
+        
+        //the scaled image registered with the lifecycle
+        private final Tracked tracked;
+        
+        private Tile(final BufferedImage image)
+        {
+            this.image = image;
+            this.tracked = Lifecycle.register(Lifecycle.Subsystem.Render, image, "Scaled tile");
+        }
+    }
+    
+    /**
+     * The scaled tiles of an image.<br>
+     * The entry only refers to the image weakly, so it is added to the queue when the image is collected
+     */
+    private static final class Entry extends WeakReference<Image>
+    {
+        //the scaled tiles
+        private final Tile[][] tiles;
+        
+        //the number of pixels of the tiles created
+        private long pixels = 0;
+        
+        private Entry(final Image image, final Tile[][] tiles, final ReferenceQueue<Image> queue)
+        {
+            super(image, queue);
+            
+            this.tiles = tiles;
+        }
+    }
+    
+    private IntegerScaleRenderer()
+    {
+        //create the cache
+        this.cache = new WeakHashMap<>();
+    }
+    
+    /**
+     * Get the renderer
+     * @return The renderer used to draw at the output resolution, this is created if it does not exist
+     */
+    public static IntegerScaleRenderer getRenderer()
+    {
+        if (renderer == null)
+            renderer = new IntegerScaleRenderer();
+        
+        return renderer;
+    }
+    
+    /**
+     * Calculate the largest whole number that we can scale the original size by and still fit in the window
+     * @param originalWidth The original width
+     * @param originalHeight The original height
+     * @param width The width of the window
+     * @param height The height of the window
+     * @return The scale, at least 1
+     */
+    public static int getScale(final int originalWidth, final int originalHeight, final int width, final int height)
+    {
+        return Math.max(1, Math.min(width / originalWidth, height / originalHeight));
+    }
+    
+    /**
+     * Assign the graphics objects the game will be drawn to
+     * @param scaledGraphics Graphics object the game is drawn to, this is scaled by the scale
+     * @param outputGraphics Graphics object at the output resolution
+     * @param scale The whole number the game is scaled by
+     */
+    public void setGraphics(final Graphics scaledGraphics, final Graphics outputGraphics, final int scale)
+    {
+        //if the scale changed the cached images are no longer the correct size
+        if (this.scale != scale)
+            clear();
+        
+        this.scaledGraphics = scaledGraphics;
+        this.outputGraphics = outputGraphics;
+        this.scale = scale;
+    }
+    
+    /**
+     * Is the graphics object the scaled game graphics
+     * @param graphics Graphics object
+     * @return true if images drawn to this graphics object will be copied from the cache, false otherwise
+     */
+    public static boolean isScaled(final Graphics graphics)
+    {
+        return (renderer != null && renderer.scaledGraphics == graphics);
+    }
+    
+    /**
+     * Draw part of an image.<br>
+     * If the graphics object is the scaled game graphics the image will be copied from the cache at the output resolution,
+     * otherwise the image is drawn normally
+     * @param graphics Graphics object
+     * @param image The image to draw
+     * @param dx1 destination x-coordinate (first corner)
+     * @param dy1 destination y-coordinate (first corner)
+     * @param dx2 destination x-coordinate (second corner)
+     * @param dy2 destination y-coordinate (second corner)
+     * @param sx1 source x-coordinate (first corner)
+     * @param sy1 source y-coordinate (first corner)
+     * @param sx2 source x-coordinate (second corner)
+     * @param sy2 source y-coordinate (second corner)
+     */
+    public static void drawImage(final Graphics graphics, final Image image, final int dx1, final int dy1, final int dx2, final int dy2, final int sx1, final int sy1, final int sx2, final int sy2)
+    {
+        //we can only copy from the cache if we are drawing to the scaled graphics without resizing the image
+        if (!isScaled(graphics) || dx2 - dx1 != sx2 - sx1 || dy2 - dy1 != sy2 - sy1)
+        {
+            graphics.drawImage(image, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null);
+        }
+        else
+        {
+            renderer.drawScaled(image, dx1, dy1, sx1, sy1, sx2, sy2);
+        }
+    }
+    
+    /**
+     * Copy part of the image from the cache at the output resolution
+     * @param image The image to draw
+     * @param dx destination x-coordinate (in original pixels)
+     * @param dy destination y-coordinate (in original pixels)
+     * @param sx1 source x-coordinate (first corner)
+     * @param sy1 source y-coordinate (first corner)
+     * @param sx2 source x-coordinate (second corner)
+     * @param sy2 source y-coordinate (second corner)
+     */
+    private void drawScaled(final Image image, final int dx, final int dy, final int sx1, final int sy1, final int sx2, final int sy2)
+    {
+        Entry entry = getEntry(image);
+        
+        //if the image is not loaded yet there is nothing to draw
+        if (entry == null)
+            return;
+        
+        final int width = image.getWidth(null);
+        final int height = image.getHeight(null);
+        
+        //only draw the part of the source that is within the image
+        final int startX = Math.max(0, sx1);
+        final int startY = Math.max(0, sy1);
+        final int endX = Math.min(width, sx2);
+        final int endY = Math.min(height, sy2);
+        
+        //check each tile the source covers
+        for (int row = startY / TILE_SIZE; row * TILE_SIZE < endY; row++)
+        {
+            for (int col = startX / TILE_SIZE; col * TILE_SIZE < endX; col++)
+            {
+                //the location of the tile in the original image
+                final int tileX = col * TILE_SIZE;
+                final int tileY = row * TILE_SIZE;
+                
+                //the part of the tile we need
+                final int x1 = Math.max(startX, tileX);
+                final int y1 = Math.max(startY, tileY);
+                final int x2 = Math.min(endX, tileX + TILE_SIZE);
+                final int y2 = Math.min(endY, tileY + TILE_SIZE);
+                
+                //where the part of the tile will be drawn (at the output resolution)
+                final int outputX = (dx + (x1 - sx1)) * scale;
+                final int outputY = (dy + (y1 - sy1)) * scale;
+                
+                //the entry is replaced if the cache was cleared to make room for the tile
+                entry = createTile(image, entry, col, row, width, height);
+                
+                outputGraphics.drawImage(
+                    entry.tiles[row][col].image,
+                    outputX, outputY, outputX + ((x2 - x1) * scale), outputY + ((y2 - y1) * scale),
+                    (x1 - tileX) * scale, (y1 - tileY) * scale, (x2 - tileX) * scale, (y2 - tileY) * scale, null);
+            }
+        }
+    }
+    
+    /**
+     * Get the tiles of the image
+     * @param image The image
+     * @return The entry containing the tiles, null if the size of the image is not known yet
+     */
+    private Entry getEntry(final Image image)
+    {
+        //release the tiles of any image collected without being evicted
+        poll();
+        
+        Entry entry = cache.get(image);
+        
+        if (entry == null)
+        {
+            final int width = image.getWidth(null);
+            final int height = image.getHeight(null);
+            
+            //the image has not loaded yet
+            if (width < 1 || height < 1)
+                return null;
+            
+            entry = new Entry(image, new Tile[(height + TILE_SIZE - 1) / TILE_SIZE][(width + TILE_SIZE - 1) / TILE_SIZE], collected);
+            
+            cache.put(image, entry);
+        }
+        
+        return entry;
+    }
+    
+    /**
+     * Create the scaled tile if it does not exist.<br>
+     * If the cache is cleared to make room for the tile the entry is released, so the image is cached again in a new entry
+     * @param image The image
+     * @param entry The entry containing the tiles of the image
+     * @param col Column of the tile
+     * @param row Row of the tile
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return The entry containing the tile, use this entry instead of the one passed in
+     */
+    private Entry createTile(final Image image, Entry entry, final int col, final int row, final int width, final int height)
+    {
+        if (entry.tiles[row][col] == null)
+        {
+            //the size of the tile, tiles at the edge of the image may be smaller
+            final int tileWidth = Math.min(TILE_SIZE, width - (col * TILE_SIZE));
+            final int tileHeight = Math.min(TILE_SIZE, height - (row * TILE_SIZE));
+            
+            final long pixels = (long)tileWidth * tileHeight * scale * scale;
+            
+            //make room in the cache if needed, the entry is released as well so cache it again
+            if (cachedPixels + pixels > MAX_CACHE_PIXELS)
+            {
+                clear();
+                
+                entry = getEntry(image);
+            }
+            
+            entry.tiles[row][col] = new Tile(createScaledImage(image, col * TILE_SIZE, row * TILE_SIZE, tileWidth, tileHeight));
+            entry.pixels += pixels;
+            
+            cachedPixels += pixels;
+        }
+        
+        return entry;
+    }
+    
+    /**
+     * Create a scaled copy of part of the image using nearest neighbor so the pixels stay crisp
+     * @param image The image
+     * @param x x-coordinate of the part
+     * @param y y-coordinate of the part
+     * @param width The width of the part
+     * @param height The height of the part
+     * @return The scaled image
+     */
+    private BufferedImage createScaledImage(final Image image, final int x, final int y, final int width, final int height)
+    {
+        //keep transparency unless we know the image is opaque
+        final int transparency = (image instanceof BufferedImage) ? ((BufferedImage)image).getTransparency() : Transparency.BITMASK;
+        
+        final BufferedImage result;
+        
+        if (GraphicsEnvironment.isHeadless())
+        {
+            result = new BufferedImage(width * scale, height * scale, (transparency == Transparency.OPAQUE) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        }
+        else
+        {
+            //create an image compatible with the display so it can be copied quickly
+            result = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().createCompatibleImage(width * scale, height * scale, transparency);
+        }
+        
+        final Graphics2D graphics = result.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        graphics.drawImage(image, 0, 0, width * scale, height * scale, x, y, x + width, y + height, null);
+        graphics.dispose();
+        
+        return result;
+    }
+    
+    /**
+     * Remove the scaled tiles of an image from the cache, this is called when the image is disposed
+     * @param image The image
+     */
+    public static void evict(final Image image)
+    {
+        if (renderer == null || image == null)
+            return;
+        
+        final Entry entry = renderer.cache.remove(image);
+        
+        if (entry != null)
+            renderer.release(entry);
+    }
+    
+    /**
+     * Release the tiles of every image that was collected without being evicted
+     */
+    private void poll()
+    {
+        Entry entry;
+        
+        while ((entry = (Entry)collected.poll()) != null)
+        {
+            release(entry);
+        }
+    }
+    
+    /**
+     * Release the scaled tiles of an entry, and stop counting its pixels
+     * @param entry The entry
+     */
+    private void release(final Entry entry)
+    {
+        //the entry will no longer be added to the queue
+        entry.clear();
+        
+        for (int row = 0; row < entry.tiles.length; row++)
+        {
+            for (int col = 0; col < entry.tiles[row].length; col++)
+            {
+                if (entry.tiles[row][col] != null)
+                {
+                    entry.tiles[row][col].image.flush();
+                    entry.tiles[row][col].tracked.dispose();
+                    entry.tiles[row][col] = null;
+                }
+            }
+        }
+        
+        cachedPixels -= entry.pixels;
+        entry.pixels = 0;
+    }
+    
+    /**
+     * Remove all scaled images from the cache
+     */
+    private void clear()
+    {
+        for (Entry entry : cache.values())
+        {
+            release(entry);
+        }
+        
+        cache.clear();
+        
+        //release anything collected that was already waiting in the queue
+        poll();
+        
+        cachedPixels = 0;
+    }
+    
+    @Override
+    public void dispose()
+    {
+        clear();
+        
+        scaledGraphics = null;
+        outputGraphics = null;
+        
+        if (renderer == this)
+            renderer = null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,199 @@
+package com.gamesbykevin.rcproam.render;
+
+import com.gamesbykevin.framework.resources.Disposable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A thread that draws the game while the update thread moves on to the next update.<br>
+ * There are 3 render states: one the update thread writes, one the render thread draws,
+ * and the most recent complete state waiting in between.
+ * The states are swapped with a single atomic operation, so neither thread ever waits for the other.<br>
+ * The states are drawn by a target, in the game this is the main object drawing to the window.
+ * @author GOD
+ */
+public final class RenderPipeline extends Thread implements Disposable
+{
+    //the number of render states
+    private static final int STATES = 3;
+    
+    //the bits containing the index of the state waiting in between
+    private static final int INDEX_MASK = 0x3;
+    
+    //this bit is set when the state waiting in between has not been drawn yet
+    private static final int FRESH = 0x4;
+    
+    //how long to wait for the render thread to finish when stopping (in milliseconds)
+    private static final long STOP_DELAY = 1000L;
+    
+    //the render states
+    private final RenderState[] states;
+    
+    //the state waiting in between the threads, and if it is fresh
+    private final AtomicInteger ready;
+    
+    //the state being written by the update thread
+    private int write = 0;
+    
+    //the state being drawn by the render thread
+    private int read = 1;
+    
+    //is the render thread currently drawing a state
+    private volatile boolean rendering = false;
+    
+    //is the render thread running
+    private volatile boolean running = true;
+    
+    //the object that will draw each state
+    private Target target;
+    
+    /**
+     * The object that draws each render state on the render thread
+     */
+    public interface Target
+    {
+        /**
+         * Draw the race from the render state
+         * @param state The render state
+         * @throws Exception
+         */
+        public void render(final RenderState state) throws Exception;
+    }
+    
+    /**
+     * Create the render pipeline, the render thread still needs to be started
+     * @param target The object that will draw each state
+     */
+    public RenderPipeline(final Target target)
+    {
+        super("Render");
+        
+        this.target = target;
+        
+        //create the states
+        this.states = new RenderState[STATES];
+        
+        for (int i = 0; i < STATES; i++)
+        {
+            this.states[i] = new RenderState();
+        }
+        
+        //the third state is waiting in between, but there is nothing to draw yet
+        this.ready = new AtomicInteger(2);
+        
+        //the render thread should not prevent the application from closing
+        setDaemon(true);
+    }
+    
+    /**
+     * Get the state to write to, this is only called by the update thread
+     * @return The render state
+     */
+    public RenderState getRenderState()
+    {
+        return this.states[write];
+    }
+    
+    /**
+     * Make the state that was written available to the render thread, this is only called by the update thread.<br>
+     * If the render thread has not drawn the previous state yet, that state will be skipped
+     */
+    public void publish()
+    {
+        //swap our state with the one waiting in between
+        write = ready.getAndSet(write | FRESH) & INDEX_MASK;
+        
+        //wake the render thread if it is waiting
+        LockSupport.unpark(this);
+    }
+    
+    /**
+     * Stop drawing states, this is only called by the update thread.<br>
+     * Any state waiting will not be drawn, and this will wait for the current state to finish drawing
+     * so the update thread can draw the game itself.
+     */
+    public void pause()
+    {
+        //mark the state waiting as already drawn
+        int value = ready.get();
+        
+        while (!ready.compareAndSet(value, value & INDEX_MASK))
+        {
+            value = ready.get();
+        }
+        
+        //wait for the current state to finish drawing
+        while (rendering)
+        {
+            Thread.yield();
+        }
+    }
+    
+    @Override
+    public void run()
+    {
+        while (running)
+        {
+            //flag that we are drawing before checking for a state, so pause() will wait for us
+            rendering = true;
+            
+            //is there a state that has not been drawn yet
+            boolean fresh = (ready.get() & FRESH) != 0;
+            
+            if (fresh)
+            {
+                //swap our state with the one waiting in between
+                final int value = ready.getAndSet(read);
+                
+                read = value & INDEX_MASK;
+                
+                //the update thread may have paused before the swap
+                fresh = (value & FRESH) != 0;
+                
+                if (fresh)
+                {
+                    try
+                    {
+                        target.render(states[read]);
+                    }
+                    catch (Exception e)
+                    {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            
+            rendering = false;
+            
+            //if there was nothing to draw, wait until the next state is published
+            if (!fresh)
+                LockSupport.park(this);
+        }
+    }
+    
+    @Override
+    public void dispose()
+    {
+        running = false;
+        
+        LockSupport.unpark(this);
+        
+        try
+        {
+            //wait for the current state to finish drawing
+            join(STOP_DELAY);
+        }
+        catch (InterruptedException e)
+        {
+            e.printStackTrace();
+        }
+        
+        for (int i = 0; i < STATES; i++)
+        {
+            states[i].dispose();
+        }
+        
+        target = null;
+    }
+}
\ No newline at end of file
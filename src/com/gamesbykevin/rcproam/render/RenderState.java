@@ -0,0 +1,278 @@
+package com.gamesbykevin.rcproam.render;
+
+import com.gamesbykevin.framework.resources.Disposable;
+
+import com.gamesbykevin.rcproam.car.TrackProgress;
+import com.gamesbykevin.rcproam.map.StaticMap;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.util.Arrays;
+
+/**
+ * A copy of everything needed to draw a single frame of the race.<br>
+ * The update thread writes the state after each update, and the render thread draws it,
+ * so the render thread never reads the game objects while they are being updated.
+ * @author GOD
+ */
+public final class RenderState implements Disposable
+{
+    //the default number of cars we can store before we need to grow the arrays
+    private static final int DEFAULT_CAPACITY = 4;
+    
+    //the map we are racing on
+    private StaticMap map;
+    
+    //the index of the map
+    private int mapIndex;
+    
+    //the location of the map
+    private double mapX, mapY;
+    
+    //do we draw the mini-map, time, leaderboard
+    private boolean detail;
+    
+    //the number of cars
+    private int count;
+    
+    //the frame to draw for each car, sorted in the order they are drawn, null if the car is not drawn
+    private Image[] frames;
+    
+    //the location of each car on the screen
+    private int[] x, y;
+    
+    //the location of each car on the mini-map
+    private int[] col, row;
+    
+    //the color of each car on the mini-map
+    private Color[] colors;
+    
+    //the description of each position on the leaderboard
+    private String[] leaderboard;
+    
+    //the progress of the human car
+    private TrackProgress progress;
+    
+    //is there a human car
+    private boolean human;
+    
+    //the number of laps required to complete the race
+    private int laps;
+    
+    //the time of the first key event applied during this update (in nanoseconds), 0 if there were none
+    private long inputTime;
+    
+    public RenderState()
+    {
+        this.frames = new Image[DEFAULT_CAPACITY];
+        this.x = new int[DEFAULT_CAPACITY];
+        this.y = new int[DEFAULT_CAPACITY];
+        this.col = new int[DEFAULT_CAPACITY];
+        this.row = new int[DEFAULT_CAPACITY];
+        this.colors = new Color[DEFAULT_CAPACITY];
+        this.leaderboard = new String[DEFAULT_CAPACITY];
+        this.progress = new TrackProgress();
+    }
+    
+    @Override
+    public void dispose()
+    {
+        map = null;
+        frames = null;
+        x = null;
+        y = null;
+        col = null;
+        row = null;
+        colors = null;
+        leaderboard = null;
+        
+        if (progress != null)
+        {
+            progress.dispose();
+            progress = null;
+        }
+    }
+    
+    /**
+     * Set the map
+     * @param map The map we are racing on
+     * @param mapIndex The index of the map
+     * @param detail Do we draw the mini-map, time, leaderboard
+     */
+    public void setMap(final StaticMap map, final int mapIndex, final boolean detail)
+    {
+        this.map = map;
+        this.mapIndex = mapIndex;
+        this.mapX = map.getX();
+        this.mapY = map.getY();
+        this.detail = detail;
+    }
+    
+    public StaticMap getMap()
+    {
+        return this.map;
+    }
+    
+    public int getMapIndex()
+    {
+        return this.mapIndex;
+    }
+    
+    public boolean hasDetail()
+    {
+        return this.detail;
+    }
+    
+    /**
+     * Set the number of cars, the arrays will grow if needed
+     * @param count The number of cars
+     */
+    public void setCount(final int count)
+    {
+        if (count > frames.length)
+        {
+            frames = Arrays.copyOf(frames, count);
+            x = Arrays.copyOf(x, count);
+            y = Arrays.copyOf(y, count);
+            col = Arrays.copyOf(col, count);
+            row = Arrays.copyOf(row, count);
+            colors = Arrays.copyOf(colors, count);
+            leaderboard = Arrays.copyOf(leaderboard, count);
+        }
+        
+        this.count = count;
+    }
+    
+    public int getCount()
+    {
+        return this.count;
+    }
+    
+    /**
+     * Set the car
+     * @param index The order the car is drawn
+     * @param frame The frame to draw, null if the car is not drawn
+     * @param x x-coordinate on the screen
+     * @param y y-coordinate on the screen
+     * @param col Column on the mini-map
+     * @param row Row on the mini-map
+     * @param color Color on the mini-map
+     */
+    public void setCar(final int index, final Image frame, final int x, final int y, final int col, final int row, final Color color)
+    {
+        this.frames[index] = frame;
+        this.x[index] = x;
+        this.y[index] = y;
+        this.col[index] = col;
+        this.row[index] = row;
+        this.colors[index] = color;
+    }
+    
+    /**
+     * Set the description of the position on the leaderboard
+     * @param index The position
+     * @param description The description
+     */
+    public void setLeaderboard(final int index, final String description)
+    {
+        this.leaderboard[index] = description;
+    }
+    
+    public String[] getLeaderboard()
+    {
+        return this.leaderboard;
+    }
+    
+    /**
+     * Get the progress of the human car, the progress of the human will be copied here
+     * @return The progress
+     */
+    public TrackProgress getProgress()
+    {
+        return this.progress;
+    }
+    
+    /**
+     * Set the human details
+     * @param human Is there a human car
+     * @param laps The number of laps required to complete the race
+     */
+    public void setHuman(final boolean human, final int laps)
+    {
+        this.human = human;
+        this.laps = laps;
+    }
+    
+    /**
+     * Set the time of the first key event applied during this update
+     * @param inputTime The time (in nanoseconds), 0 if there were none
+     */
+    public void setInputTime(final long inputTime)
+    {
+        this.inputTime = inputTime;
+    }
+    
+    public long getInputTime()
+    {
+        return this.inputTime;
+    }
+    
+    /**
+     * Draw the map
+     * @param graphics Graphics object
+     * @throws Exception
+     */
+    public void renderMap(final Graphics graphics) throws Exception
+    {
+        map.render(graphics, mapX, mapY);
+    }
+    
+    /**
+     * Draw the cars
+     * @param graphics Graphics object
+     */
+    public void renderCars(final Graphics graphics)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            //only draw the cars that are on the screen
+            if (frames[i] == null)
+                continue;
+            
+            final int width = frames[i].getWidth(null);
+            final int height = frames[i].getHeight(null);
+            
+            IntegerScaleRenderer.drawImage(graphics, frames[i], x[i], y[i], x[i] + width, y[i] + height, 0, 0, width, height);
+        }
+    }
+    
+    /**
+     * Draw the cars on the mini-map
+     * @param graphics Graphics object
+     */
+    public void renderMiniMapLocations(final Graphics graphics)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            //set the color based on the car color
+            graphics.setColor(colors[i]);
+            
+            //draw the color as a 1 x 1 pixel
+            graphics.drawRect(col[i], row[i], 1, 1);
+        }
+    }
+    
+    /**
+     * Draw the time of the human car
+     * @param graphics Graphics object
+     * @param x x-coordinate
+     * @param y y-coordinate
+     */
+    public void renderTimeInfo(final Graphics graphics, final int x, final int y)
+    {
+        //only draw if there is a human car
+        if (human)
+            progress.renderLapDescription(graphics, x, y, laps);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.gamesbykevin.rcproam.resources;
+
+import com.gamesbykevin.rcproam.actor.Human;
+import com.gamesbykevin.rcproam.car.Car;
+import com.gamesbykevin.rcproam.car.Cars;
+import com.gamesbykevin.rcproam.event.GameEventListener;
+import com.gamesbykevin.rcproam.event.GameEvents;
+
+/**
+ * This class will play the sound effects for the events published during the race
+ * @author GOD
+ */
+public final class AudioCues implements GameEventListener
+{
+    //the resources containing the audio
+    private final Resources resources;
+    
+    //the cars in the race
+    private final Cars cars;
+    
+    /**
+     * Create the audio cues
+     * @param resources The resources containing the audio
+     * @param cars The cars in the race
+     */
+    public AudioCues(final Resources resources, final Cars cars)
+    {
+        this.resources = resources;
+        this.cars = cars;
+    }
+    
+    @Override
+    public void onEvent(final int type, final long tick, final int number, final long value)
+    {
+        switch (type)
+        {
+            case GameEvents.TYPE_LAP:
+                //only play the sound effect for the human
+                if (cars.getCar(number).isHuman())
+                    resources.playGameAudio(GameAudio.Keys.Lap);
+                break;
+            
+            case GameEvents.TYPE_COLLISION:
+                //only honk for collisions that are rendered on screen
+                if (cars.getCar(number).hasRender() || cars.getCar((int)value).hasRender())
+                    resources.playGameAudio(GameAudio.Keys.Horn);
+                break;
+            
+            case GameEvents.TYPE_OFF_ROAD:
+                final Car car = cars.getCar(number);
+                
+                //only the human that plays sound effects
+                if (car.isHuman() && ((Human)car).hasSound())
+                {
+                    //stop any engine accelerating sound
+                    resources.stopGameAudio(GameAudio.Keys.Engine);
+                    resources.stopGameAudio(GameAudio.Keys.EngineLoop);
+                    
+                    //stop turn sound effect
+                    resources.stopGameAudio(GameAudio.Keys.Turn);
+                    
+                    //play engine slow down effect
+                    resources.playGameAudio(GameAudio.Keys.EngineSlow);
+                }
+                break;
+            
+            case GameEvents.TYPE_HORN:
+                resources.playGameAudio(GameAudio.Keys.Horn);
+                break;
+            
+            case GameEvents.TYPE_RACE_START:
+                resources.playGameAudio(GameAudio.Keys.RaceStart);
+                break;
+            
+            case GameEvents.TYPE_RACE_FINISH:
+                //stop all sound and play the race finish
+                resources.stopAllSound();
+                resources.playGameAudio(GameAudio.Keys.RaceFinish);
+                break;
+            
+            case GameEvents.TYPE_RACE_RESULT:
+                resources.playGameAudio((value == 1) ? GameAudio.Keys.RaceWin : GameAudio.Keys.RaceLose);
+                break;
+            
+            default:
+                break;
+        }
+    }
+}
\ No newline at end of file
@@ -24,6 +24,9 @@ public final class GameImages extends ImageManager
         GameOver, Win
     }
     
+    //the track images, these are the largest images
+    public static final Keys[] TRACKS = {Keys.Track01, Keys.Track02, Keys.Track03, Keys.Track04, Keys.Track05, Keys.Track06, Keys.Track07, Keys.Track08};
+    
     public GameImages() throws Exception
     {
         super(Resources.XML_CONFIG_GAME_IMAGE);
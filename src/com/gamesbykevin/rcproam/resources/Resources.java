@@ -2,13 +2,29 @@ package com.gamesbykevin.rcproam.resources;
 
 import com.gamesbykevin.framework.resources.*;
 
+import com.gamesbykevin.rcproam.lifecycle.Lifecycle;
+import com.gamesbykevin.rcproam.lifecycle.Tracked;
+import com.gamesbykevin.rcproam.map.IndexedImage;
+import com.gamesbykevin.rcproam.telemetry.Recorder;
+
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Rectangle;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * This class will load all resources in the collection and provide a way to access them
+ * This class will load all resources in the collection and provide a way to access them.<br>
+ * The audio, images, fonts and text are each loaded on their own worker thread as soon as loading starts,
+ * and once the images are loaded each track image is converted to use a palette on the worker threads as well,
+ * the converted image replaces the original so only the smaller image is kept.
+ * The progress is counted with a thread safe counter so it can be drawn while the workers are loading.
  * @author GOD
  */
 public final class Resources implements IResources
@@ -32,10 +48,47 @@ public final class Resources implements IResources
     private GameFont fonts;
     private GameText textFiles;
     
+    //the worker threads loading the resources, null until loading has started
+    private ExecutorService executor;
+    
+    //the number of resources loaded by the worker threads
+    private final AtomicInteger loaded = new AtomicInteger();
+    
+    //the number of worker tasks that have not finished
+    private final AtomicInteger remaining = new AtomicInteger();
+    
+    //the first error from a worker thread, null if there is none
+    private volatile Exception error;
+    
+    //the track images converted to use a palette
+    private final Map<Object, Image> tracks = new ConcurrentHashMap<>();
+    
+    //the converted track images registered with the lifecycle
+    private final Map<Object, Tracked> tracked = new ConcurrentHashMap<>();
+    
+    //the audio registered with the lifecycle
+    private Tracked audioTracked;
+    
+    //the progress drawn while loading, updated from the counter
+    private Progress progress;
+    
+    //the description of the progress
+    private static final String PROGRESS_DESCRIPTION = "Loading Resources";
+    
+    //how long to wait for the worker threads to stop (in milliseconds)
+    private static final long STOP_DELAY = 2000L;
+    
+    //each group of resources, used when recording how long the group took to load
+    private static final int GROUP_AUDIO = 0;
+    private static final int GROUP_IMAGES = 1;
+    private static final int GROUP_FONTS = 2;
+    private static final int GROUP_TEXT = 3;
+    
     public Resources() throws Exception
     {
         //object to contain audio resources
         this.audio = new GameAudio();
+        this.audioTracked = Lifecycle.register(Lifecycle.Subsystem.Audio, audio, "Audio", 0);
         
         //object to contain images resources
         this.images = new GameImages();
@@ -66,49 +119,175 @@ public final class Resources implements IResources
     }
     
     /**
-     * Here we will load the resources one by one and then marking the process finished once done
+     * Start loading the resources on the worker threads, this returns immediately.<br>
+     * If loading has already started this does nothing
      * @param source Class in root directory of project so we have a relative location so we know how to access resources
-     * @throws Exception 
      */
-    @Override
-    public void update(final Class source) throws Exception
+    public void start(final Class source)
     {
-        if (!audio.isComplete())
-        {
-            //load 1 resource at a time
-            audio.update(source);
-
-            //exit method so progress can be drawn
+        if (executor != null)
             return;
-        }
         
-        if (!images.isComplete())
+        //the total number of resources to load, and each track image to convert
+        progress = new Progress(GameAudio.Keys.values().length + GameImages.Keys.values().length + GameFont.Keys.values().length + GameText.Keys.values().length + GameImages.TRACKS.length);
+        progress.setDescription(PROGRESS_DESCRIPTION);
+        
+        //one worker for each group of resources, or more if we have the processors to convert the track images
+        executor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()), new ThreadFactory()
         {
-            //load 1 resource at a time
-            images.update(source);
-
-            //exit method so progress can be drawn
-            return;
-        }
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, "Resources");
+                
+                //the workers should not prevent the application from closing
+                thread.setDaemon(true);
+                
+                return thread;
+            }
+        });
+        
+        //count each task before any are started, so loading can't appear to be finished early
+        remaining.set(4);
         
-        if (!fonts.isComplete())
+        load(audio, GROUP_AUDIO, source, false);
+        load(images, GROUP_IMAGES, source, true);
+        load(fonts, GROUP_FONTS, source, false);
+        load(textFiles, GROUP_TEXT, source, false);
+    }
+    
+    /**
+     * Load every resource of the manager on a worker thread
+     * @param manager The object containing the resources, only this worker will use it until loading is finished
+     * @param group The group of resources, used when recording how long loading took
+     * @param source Class in root directory of project
+     * @param tracks Do we convert the track images once the manager is finished
+     */
+    private void load(final ResourceManager<?> manager, final int group, final Class source, final boolean tracks)
+    {
+        executor.execute(new Runnable()
         {
-            //load 1 resource at a time
-            fonts.update(source);
-
-            //exit method so progress can be drawn
-            return;
-        }
+            @Override
+            public void run()
+            {
+                try
+                {
+                    final long start = Recorder.begin();
+                    
+                    int count = 0;
+                    
+                    while (!manager.isComplete())
+                    {
+                        //load 1 resource at a time
+                        manager.update(source);
+                        
+                        loaded.incrementAndGet();
+                        count++;
+                    }
+                    
+                    Recorder.resourceLoad(start, group, count);
+                    
+                    //convert each track image on its own worker
+                    if (tracks)
+                    {
+                        remaining.addAndGet(GameImages.TRACKS.length);
+                        
+                        for (int i = 0; i < GameImages.TRACKS.length; i++)
+                        {
+                            convert(GameImages.TRACKS[i], i);
+                        }
+                    }
+                }
+                catch (Exception e)
+                {
+                    error = e;
+                }
+                finally
+                {
+                    remaining.decrementAndGet();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Convert the track image to use a palette on a worker thread
+     * @param key The key of the track image
+     * @param track The track, used when recording how long the conversion took
+     */
+    private void convert(final GameImages.Keys key, final int track)
+    {
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    final long start = Recorder.begin();
+                    
+                    final Image original = images.get(key);
+                    
+                    final Image image = IndexedImage.convert(original);
+                    
+                    //each pixel of the track image is grabbed to convert it
+                    Recorder.trackConvert(start, track, (long)image.getWidth(null) * image.getHeight(null));
+                    
+                    //only track the image if it is a new image
+                    if (image != original)
+                    {
+                        tracked.put(key, Lifecycle.register(Lifecycle.Subsystem.Resources, image, "Track image"));
+                        
+                        //replace the original in the manager so its 32 bit pixels are released, several workers convert at once
+                        synchronized (images)
+                        {
+                            images.set(key, image);
+                        }
+                        
+                        original.flush();
+                    }
+                    
+                    tracks.put(key, image);
+                    
+                    loaded.incrementAndGet();
+                }
+                catch (Exception e)
+                {
+                    error = e;
+                }
+                finally
+                {
+                    remaining.decrementAndGet();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Check if the worker threads have finished loading, loading will be started if it hasn't already
+     * @param source Class in root directory of project so we have a relative location so we know how to access resources
+     * @throws Exception if a resource failed to load
+     */
+    @Override
+    public void update(final Class source) throws Exception
+    {
+        //make sure loading has started
+        start(source);
+        
+        //a worker failed to load a resource
+        if (error != null)
+            throw error;
         
-        if (!textFiles.isComplete())
+        //the progress is only changed by this thread
+        while (progress.getCount() < loaded.get())
         {
-            //load 1 resource at a time
-            textFiles.update(source);
-
-            //exit method so progress can be drawn
-            return;
+            progress.increase();
         }
         
+        //wait for the workers to finish
+        if (remaining.get() > 0)
+            return;
+        
         //verify all existing keys are contained in the xml file
         audio.verifyLocations(GameAudio.Keys.values());
         
@@ -123,6 +302,9 @@ public final class Resources implements IResources
         
         //we are done loading the resources
         this.loading = false;
+        
+        //the workers are no longer needed
+        executor.shutdown();
     }
     
     /**
@@ -150,7 +332,10 @@ public final class Resources implements IResources
      */
     public Image getGameImage(final Object key)
     {
-        return images.get(key);
+        //use the track image with a palette if it was converted
+        final Image track = tracks.get(key);
+        
+        return (track != null) ? track : images.get(key);
     }
     
     public Text getGameText(final Object key)
@@ -190,10 +375,47 @@ public final class Resources implements IResources
     @Override
     public void dispose()
     {
+        if (executor != null)
+        {
+            //stop loading and wait for the workers, so they aren't using the resources when they are disposed
+            executor.shutdownNow();
+            
+            try
+            {
+                executor.awaitTermination(STOP_DELAY, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                e.printStackTrace();
+            }
+            
+            executor = null;
+        }
+        
+        for (Image image : tracks.values())
+        {
+            image.flush();
+        }
+        
+        for (Tracked track : tracked.values())
+        {
+            track.dispose();
+        }
+        
+        tracks.clear();
+        tracked.clear();
+        
+        if (progress != null)
+        {
+            progress.dispose();
+            progress = null;
+        }
+        
         if (audio != null)
         {
             audio.dispose();
             audio = null;
+            audioTracked.dispose();
         }
         
         if (images != null)
@@ -218,43 +440,13 @@ public final class Resources implements IResources
     @Override
     public void render(final Graphics graphics, final Rectangle screen)
     {
-        if (!isLoading())
+        if (!isLoading() || progress == null)
             return;
         
-        if (audio != null)
-        {
-            if (!audio.isComplete())
-            {
-                audio.render(graphics, screen);
-                return;
-            }
-        }
-        
-        if (images != null)
-        {
-            if (!images.isComplete())
-            {
-                images.render(graphics, screen);
-                return;
-            }
-        }
-        
-        if (textFiles != null)
-        {
-            if (!textFiles.isComplete())
-            {
-                textFiles.render(graphics, screen);
-                return;
-            }
-        }
+        //assign the area where we will draw the progress
+        if (progress.getScreen() == null)
+            progress.setScreen(screen);
         
-        if (fonts != null)
-        {
-            if (!fonts.isComplete())
-            {
-                fonts.render(graphics, screen);
-                return;
-            }
-        }
+        progress.render(graphics);
     }
 }
\ No newline at end of file
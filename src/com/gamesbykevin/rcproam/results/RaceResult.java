@@ -0,0 +1,244 @@
+package com.gamesbykevin.rcproam.results;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The result of a single race: the track, car type, seed and each car in finishing order with its lap times.<br>
+ * A result is created on the game thread once the race is complete and is not changed after it is added to the store.
+ * @author GOD
+ */
+public final class RaceResult
+{
+    //the size of the race fields (in bytes): time, seed, track, car type, number of cars
+    private static final int HEADER_SIZE = 8 + 8 + 2 + 1 + 1;
+    
+    //the size of the fields for each car (in bytes): number, human, laps, race time
+    private static final int CAR_SIZE = 1 + 1 + 1 + 8;
+    
+    //the index of the track
+    private final int track;
+    
+    //the type of car raced (truck, suv, race car)
+    private final int carType;
+    
+    //the seed of the Random object used during the race
+    private final long seed;
+    
+    //when the race finished (in milliseconds since 1970)
+    private final long time;
+    
+    //the number of each car in finishing order
+    private final int[] numbers;
+    
+    //is each car controlled by a human
+    private final boolean[] humans;
+    
+    //the total race time of each car (in nanoseconds)
+    private final long[] raceTimes;
+    
+    //the time of each completed lap for each car (in nanoseconds)
+    private final long[][] lapTimes;
+    
+    /**
+     * Create the result
+     * @param track The index of the track
+     * @param carType The type of car raced
+     * @param seed The seed of the Random object used during the race
+     * @param time When the race finished (in milliseconds since 1970)
+     * @param count The number of cars
+     */
+    public RaceResult(final int track, final int carType, final long seed, final long time, final int count)
+    {
+        this.track = track;
+        this.carType = carType;
+        this.seed = seed;
+        this.time = time;
+        this.numbers = new int[count];
+        this.humans = new boolean[count];
+        this.raceTimes = new long[count];
+        this.lapTimes = new long[count][];
+    }
+    
+    /**
+     * Set the result of a car
+     * @param place The finishing position of the car (starting at 0)
+     * @param number The number of the car
+     * @param human Is the car controlled by a human
+     * @param raceTime The total race time (in nanoseconds)
+     * @param lapTimes The time of each completed lap (in nanoseconds)
+     */
+    public void setCar(final int place, final int number, final boolean human, final long raceTime, final long[] lapTimes)
+    {
+        this.numbers[place] = number;
+        this.humans[place] = human;
+        this.raceTimes[place] = raceTime;
+        this.lapTimes[place] = lapTimes;
+    }
+    
+    public int getTrack()
+    {
+        return this.track;
+    }
+    
+    public int getCarType()
+    {
+        return this.carType;
+    }
+    
+    public long getSeed()
+    {
+        return this.seed;
+    }
+    
+    public long getTime()
+    {
+        return this.time;
+    }
+    
+    /**
+     * Get the number of cars in the race
+     * @return The number of cars
+     */
+    public int getCount()
+    {
+        return this.numbers.length;
+    }
+    
+    /**
+     * Get the number of the car
+     * @param place The finishing position (starting at 0)
+     * @return The number of the car
+     */
+    public int getNumber(final int place)
+    {
+        return this.numbers[place];
+    }
+    
+    /**
+     * Is the car controlled by a human
+     * @param place The finishing position (starting at 0)
+     * @return true if controlled by a human, false otherwise
+     */
+    public boolean isHuman(final int place)
+    {
+        return this.humans[place];
+    }
+    
+    /**
+     * Get the total race time of the car
+     * @param place The finishing position (starting at 0)
+     * @return The race time (in nanoseconds)
+     */
+    public long getRaceTime(final int place)
+    {
+        return this.raceTimes[place];
+    }
+    
+    /**
+     * Get the number of laps the car completed
+     * @param place The finishing position (starting at 0)
+     * @return The number of laps completed
+     */
+    public int getLaps(final int place)
+    {
+        return this.lapTimes[place].length;
+    }
+    
+    /**
+     * Get the time of a lap the car completed
+     * @param place The finishing position (starting at 0)
+     * @param lap The lap (starting at 0)
+     * @return The lap time (in nanoseconds)
+     */
+    public long getLapTime(final int place, final int lap)
+    {
+        return this.lapTimes[place][lap];
+    }
+    
+    /**
+     * Get the size of the result when written
+     * @return The size (in bytes)
+     */
+    protected int getSize()
+    {
+        int size = HEADER_SIZE;
+        
+        for (int i = 0; i < getCount(); i++)
+        {
+            size += CAR_SIZE + (getLaps(i) * 8);
+        }
+        
+        return size;
+    }
+    
+    /**
+     * Write the result
+     * @param buffer Where the result is written, there must be room for the size of the result
+     */
+    protected void write(final ByteBuffer buffer)
+    {
+        buffer.putLong(time);
+        buffer.putLong(seed);
+        buffer.putShort((short)track);
+        buffer.put((byte)carType);
+        buffer.put((byte)getCount());
+        
+        for (int i = 0; i < getCount(); i++)
+        {
+            buffer.put((byte)numbers[i]);
+            buffer.put((byte)(humans[i] ? 1 : 0));
+            buffer.put((byte)getLaps(i));
+            buffer.putLong(raceTimes[i]);
+            
+            for (int lap = 0; lap < getLaps(i); lap++)
+            {
+                buffer.putLong(lapTimes[i][lap]);
+            }
+        }
+    }
+    
+    /**
+     * Read a result
+     * @param buffer The buffer containing the result
+     * @return The result
+     * @throws Exception if the result is not valid
+     */
+    protected static RaceResult read(final ByteBuffer buffer) throws Exception
+    {
+        if (buffer.remaining() < HEADER_SIZE)
+            throw new Exception("Race result is too short");
+        
+        final long time = buffer.getLong();
+        final long seed = buffer.getLong();
+        final int track = buffer.getShort();
+        final int carType = buffer.get();
+        final int count = buffer.get() & 0xFF;
+        
+        final RaceResult result = new RaceResult(track, carType, seed, time, count);
+        
+        for (int i = 0; i < count; i++)
+        {
+            if (buffer.remaining() < CAR_SIZE)
+                throw new Exception("Race result is too short");
+            
+            final int number = buffer.get() & 0xFF;
+            final boolean human = (buffer.get() != 0);
+            final int laps = buffer.get() & 0xFF;
+            final long raceTime = buffer.getLong();
+            
+            if (buffer.remaining() < laps * 8)
+                throw new Exception("Race result is too short");
+            
+            final long[] lapTimes = new long[laps];
+            
+            for (int lap = 0; lap < laps; lap++)
+            {
+                lapTimes[lap] = buffer.getLong();
+            }
+            
+            result.setCar(i, number, human, raceTime, lapTimes);
+        }
+        
+        return result;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,603 @@
+package com.gamesbykevin.rcproam.results;
+
+import com.gamesbykevin.framework.resources.Disposable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * This class will store the result of every race.<br>
+ * Each result is appended to a binary log that is never rewritten, and a small index stores the personal bests of each track
+ * (the best lap and race time of a human car) along with how much of the log it covers.<br>
+ * The game thread adds results to a bounded queue and a background thread writes them, so the race never waits for the disk.
+ * If the queue is full the result is dropped and counted.<br>
+ * When starting only the part of the log written after the index is read, and the index is written again (compacted)
+ * after every few hundred results, so loading stays fast no matter how large the log grows.<br>
+ * Each record in the log is the size of the result, the result, and a checksum, so a record only partly written is ignored.
+ * @author GOD
+ */
+public final class ResultStore extends Thread implements Disposable
+{
+    //identifies the start of the log and the index
+    private static final int MAGIC_LOG = 0x5243504C;
+    private static final int MAGIC_INDEX = 0x52435049;
+    
+    //the version of the format
+    private static final int VERSION = 1;
+    
+    //the size of the log header, the magic number and version
+    private static final int LOG_HEADER_SIZE = 8;
+    
+    //the size of the record header and footer, the size of the result and the checksum
+    private static final int RECORD_HEADER_SIZE = 4;
+    private static final int RECORD_FOOTER_SIZE = 4;
+    
+    //the largest result we will read, anything larger means the log is damaged
+    private static final int MAX_RESULT_SIZE = 1 << 16;
+    
+    //the size of the index header: magic number, version, the size of the log covered, the number of results, the number of tracks
+    private static final int INDEX_HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    
+    //the size of each track in the index: best lap, best race, races, wins
+    private static final int INDEX_TRACK_SIZE = 8 + 8 + 4 + 4;
+    
+    //the number of results the queue can hold
+    public static final int DEFAULT_CAPACITY = 64;
+    
+    //the index is written again after this many results
+    private static final int COMPACT_RESULTS = 256;
+    
+    //how long the background thread waits for a result (in milliseconds)
+    private static final long POLL_DELAY = 250L;
+    
+    //how long to wait for the remaining results to be written when stopping (in milliseconds)
+    private static final long STOP_DELAY = 2000L;
+    
+    //the value of a best time that has not been set
+    public static final long NO_TIME = 0L;
+    
+    //the results waiting to be written
+    private final BlockingQueue<RaceResult> queue;
+    
+    //the log and index files
+    private final File logFile, indexFile;
+    
+    //the number of results dropped because the queue was full
+    private volatile long dropped = 0;
+    
+    //is the background thread running
+    private volatile boolean running = true;
+    
+    //has the index and the rest of the log been read
+    private volatile boolean loaded = false;
+    
+    //the best lap and race time of a human car on each track (in nanoseconds)
+    private long[] bestLaps = new long[0];
+    private long[] bestRaces = new long[0];
+    
+    //the number of races and wins by a human car on each track
+    private int[] races = new int[0];
+    private int[] wins = new int[0];
+    
+    //the size of the log that has been written, and the total number of results
+    private long logSize = 0;
+    private long results = 0;
+    
+    //the number of results written since the index was written
+    private int uncompacted = 0;
+    
+    //the buffer used to read and write the log, it will grow if a result is larger
+    private ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    
+    //used to calculate the checksum of each record
+    private final CRC32 crc = new CRC32();
+    
+    /**
+     * Create the store
+     * @param logFile The file containing every result
+     * @param indexFile The file containing the personal bests of each track
+     * @param capacity The number of results the queue can hold
+     */
+    public ResultStore(final File logFile, final File indexFile, final int capacity)
+    {
+        super("Results");
+        
+        this.logFile = logFile;
+        this.indexFile = indexFile;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        
+        //the background thread should not prevent the application from closing
+        setDaemon(true);
+    }
+    
+    /**
+     * Create the store and start loading the personal bests, the index is stored next to the log
+     * @param logFile The file containing every result
+     * @return The store, already started
+     */
+    public static ResultStore create(final File logFile)
+    {
+        final ResultStore store = new ResultStore(logFile, new File(logFile.getPath() + ".idx"), DEFAULT_CAPACITY);
+        store.start();
+        return store;
+    }
+    
+    /**
+     * Add a result to be written, this never waits
+     * @param result The result of the race
+     * @return true if the result was added, false if the queue was full and the result was dropped
+     */
+    public boolean add(final RaceResult result)
+    {
+        if (!queue.offer(result))
+        {
+            dropped++;
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Get the number of results dropped because the background thread fell behind
+     * @return The number of results dropped
+     */
+    public long getDropped()
+    {
+        return this.dropped;
+    }
+    
+    /**
+     * Have the personal bests been loaded
+     * @return true if the index and the rest of the log have been read, false otherwise
+     */
+    public boolean isLoaded()
+    {
+        return this.loaded;
+    }
+    
+    /**
+     * Get the best lap time of a human car
+     * @param track The index of the track
+     * @return The best lap time (in nanoseconds), NO_TIME if there is none
+     */
+    public synchronized long getBestLap(final int track)
+    {
+        return (track < bestLaps.length) ? bestLaps[track] : NO_TIME;
+    }
+    
+    /**
+     * Get the best race time of a human car that completed the race
+     * @param track The index of the track
+     * @return The best race time (in nanoseconds), NO_TIME if there is none
+     */
+    public synchronized long getBestRace(final int track)
+    {
+        return (track < bestRaces.length) ? bestRaces[track] : NO_TIME;
+    }
+    
+    /**
+     * Get the number of races on the track
+     * @param track The index of the track
+     * @return The number of races
+     */
+    public synchronized int getRaces(final int track)
+    {
+        return (track < races.length) ? races[track] : 0;
+    }
+    
+    /**
+     * Get the number of races on the track won by a human car
+     * @param track The index of the track
+     * @return The number of wins
+     */
+    public synchronized int getWins(final int track)
+    {
+        return (track < wins.length) ? wins[track] : 0;
+    }
+    
+    /**
+     * Get the total number of results stored
+     * @return The number of results
+     */
+    public synchronized long getResults()
+    {
+        return this.results;
+    }
+    
+    @Override
+    public void run()
+    {
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw"))
+        {
+            final FileChannel channel = file.getChannel();
+            
+            //read the personal bests
+            load(channel);
+            
+            loaded = true;
+            
+            while (true)
+            {
+                final RaceResult result = queue.poll(POLL_DELAY, TimeUnit.MILLISECONDS);
+                
+                if (result != null)
+                {
+                    append(channel, result);
+                    
+                    //write the index so the next load only reads the newest results
+                    if (uncompacted >= COMPACT_RESULTS)
+                        compact(channel);
+                }
+                else
+                {
+                    //only stop once every result has been written
+                    if (!running)
+                        break;
+                }
+            }
+            
+            //write the index one last time
+            if (uncompacted > 0)
+                compact(channel);
+        }
+        catch (IOException | InterruptedException e)
+        {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Load the personal bests from the index, then read every result written after it
+     * @param channel The log
+     * @throws IOException
+     */
+    private void load(final FileChannel channel) throws IOException
+    {
+        //a new log
+        if (channel.size() < LOG_HEADER_SIZE)
+        {
+            buffer.clear();
+            buffer.putInt(MAGIC_LOG);
+            buffer.putInt(VERSION);
+            buffer.flip();
+            write(channel, 0);
+            channel.truncate(LOG_HEADER_SIZE);
+            
+            logSize = LOG_HEADER_SIZE;
+        }
+        else
+        {
+            read(channel, 0, LOG_HEADER_SIZE);
+            
+            //don't change a file that is not a log
+            if (buffer.getInt() != MAGIC_LOG || buffer.getInt() != VERSION)
+                throw new IOException("Not a results log: " + logFile);
+            
+            if (!readIndex(channel.size()))
+            {
+                //the index is missing or damaged, so read the entire log
+                clear();
+                logSize = LOG_HEADER_SIZE;
+            }
+        }
+        
+        //read every result the index does not cover
+        while (logSize < channel.size())
+        {
+            final RaceResult result = readRecord(channel, logSize);
+            
+            //the rest of the log was only partly written, so it is removed
+            if (result == null)
+            {
+                channel.truncate(logSize);
+                break;
+            }
+            
+            logSize += RECORD_HEADER_SIZE + result.getSize() + RECORD_FOOTER_SIZE;
+            
+            update(result);
+        }
+        
+        //write the index so the results we just read are covered
+        if (uncompacted > 0)
+            compact(channel);
+    }
+    
+    /**
+     * Read the record from the log
+     * @param channel The log
+     * @param position Where the record starts
+     * @return The result, null if the record is not complete or is damaged
+     * @throws IOException
+     */
+    private RaceResult readRecord(final FileChannel channel, final long position) throws IOException
+    {
+        if (channel.size() - position < RECORD_HEADER_SIZE)
+            return null;
+        
+        ensure(RECORD_HEADER_SIZE);
+        read(channel, position, RECORD_HEADER_SIZE);
+        
+        final int size = buffer.getInt();
+        
+        if (size <= 0 || size > MAX_RESULT_SIZE || channel.size() - position < RECORD_HEADER_SIZE + size + RECORD_FOOTER_SIZE)
+            return null;
+        
+        ensure(size + RECORD_FOOTER_SIZE);
+        read(channel, position + RECORD_HEADER_SIZE, size + RECORD_FOOTER_SIZE);
+        
+        crc.reset();
+        crc.update(buffer.array(), 0, size);
+        
+        if ((int)crc.getValue() != buffer.getInt(size))
+            return null;
+        
+        buffer.limit(size);
+        
+        try
+        {
+            final RaceResult result = RaceResult.read(buffer);
+            
+            //the size must match exactly
+            return (buffer.hasRemaining()) ? null : result;
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+    
+    /**
+     * Append the result to the log and update the personal bests
+     * @param channel The log
+     * @param result The result
+     * @throws IOException
+     */
+    private void append(final FileChannel channel, final RaceResult result) throws IOException
+    {
+        final int size = result.getSize();
+        
+        ensure(RECORD_HEADER_SIZE + size + RECORD_FOOTER_SIZE);
+        
+        buffer.clear();
+        buffer.putInt(size);
+        result.write(buffer);
+        
+        crc.reset();
+        crc.update(buffer.array(), RECORD_HEADER_SIZE, size);
+        buffer.putInt((int)crc.getValue());
+        
+        buffer.flip();
+        write(channel, logSize);
+        
+        logSize += RECORD_HEADER_SIZE + size + RECORD_FOOTER_SIZE;
+        
+        update(result);
+    }
+    
+    /**
+     * Update the personal bests with the result
+     * @param result The result
+     */
+    private synchronized void update(final RaceResult result)
+    {
+        final int track = result.getTrack();
+        
+        if (track < 0)
+            return;
+        
+        //make room for the track
+        if (track >= races.length)
+        {
+            bestLaps = Arrays.copyOf(bestLaps, track + 1);
+            bestRaces = Arrays.copyOf(bestRaces, track + 1);
+            races = Arrays.copyOf(races, track + 1);
+            wins = Arrays.copyOf(wins, track + 1);
+        }
+        
+        races[track]++;
+        
+        for (int place = 0; place < result.getCount(); place++)
+        {
+            //only the human cars are personal bests
+            if (!result.isHuman(place))
+                continue;
+            
+            if (place == 0)
+            {
+                wins[track]++;
+                
+                //only the winner completed every lap
+                if (bestRaces[track] == NO_TIME || result.getRaceTime(place) < bestRaces[track])
+                    bestRaces[track] = result.getRaceTime(place);
+            }
+            
+            for (int lap = 0; lap < result.getLaps(place); lap++)
+            {
+                if (bestLaps[track] == NO_TIME || result.getLapTime(place, lap) < bestLaps[track])
+                    bestLaps[track] = result.getLapTime(place, lap);
+            }
+        }
+        
+        results++;
+        uncompacted++;
+    }
+    
+    /**
+     * Reset the personal bests
+     */
+    private synchronized void clear()
+    {
+        bestLaps = new long[0];
+        bestRaces = new long[0];
+        races = new int[0];
+        wins = new int[0];
+        results = 0;
+    }
+    
+    /**
+     * Read the index
+     * @param size The size of the log
+     * @return true if the index was read, false if it is missing or does not match the log
+     */
+    private boolean readIndex(final long size)
+    {
+        if (!indexFile.isFile())
+            return false;
+        
+        try
+        {
+            final ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+            
+            if (index.remaining() < INDEX_HEADER_SIZE || index.getInt() != MAGIC_INDEX || index.getInt() != VERSION)
+                return false;
+            
+            final long covered = index.getLong();
+            final long count = index.getLong();
+            final int tracks = index.getInt();
+            
+            //the log is smaller than the index expects, so it was replaced
+            if (covered < LOG_HEADER_SIZE || covered > size || tracks < 0 || index.remaining() != tracks * INDEX_TRACK_SIZE)
+                return false;
+            
+            synchronized (this)
+            {
+                bestLaps = new long[tracks];
+                bestRaces = new long[tracks];
+                races = new int[tracks];
+                wins = new int[tracks];
+                
+                for (int track = 0; track < tracks; track++)
+                {
+                    bestLaps[track] = index.getLong();
+                    bestRaces[track] = index.getLong();
+                    races[track] = index.getInt();
+                    wins[track] = index.getInt();
+                }
+                
+                results = count;
+            }
+            
+            logSize = covered;
+            
+            return true;
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    /**
+     * Write the index covering the entire log.<br>
+     * The index is written to a temporary file first, so a damaged index is never left behind
+     * @param channel The log
+     * @throws IOException
+     */
+    private void compact(final FileChannel channel) throws IOException
+    {
+        //the index must never cover results that are not on the disk
+        channel.force(false);
+        
+        final ByteBuffer index;
+        
+        synchronized (this)
+        {
+            index = ByteBuffer.allocate(INDEX_HEADER_SIZE + (races.length * INDEX_TRACK_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+            index.putInt(MAGIC_INDEX);
+            index.putInt(VERSION);
+            index.putLong(logSize);
+            index.putLong(results);
+            index.putInt(races.length);
+            
+            for (int track = 0; track < races.length; track++)
+            {
+                index.putLong(bestLaps[track]);
+                index.putLong(bestRaces[track]);
+                index.putInt(races[track]);
+                index.putInt(wins[track]);
+            }
+        }
+        
+        final File tmp = new File(indexFile.getPath() + ".tmp");
+        
+        Files.write(tmp.toPath(), index.array());
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        
+        uncompacted = 0;
+    }
+    
+    /**
+     * Make sure the buffer can hold the number of bytes
+     * @param size The number of bytes
+     */
+    private void ensure(final int size)
+    {
+        if (buffer.capacity() < size)
+            buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Read from the log into the buffer
+     * @param channel The log
+     * @param position Where to start reading
+     * @param size The number of bytes
+     * @throws IOException
+     */
+    private void read(final FileChannel channel, final long position, final int size) throws IOException
+    {
+        buffer.clear();
+        buffer.limit(size);
+        
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of results");
+        }
+        
+        buffer.flip();
+    }
+    
+    /**
+     * Write the entire buffer to the log
+     * @param channel The log
+     * @param position Where to start writing
+     * @throws IOException
+     */
+    private void write(final FileChannel channel, final long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+    
+    @Override
+    public void dispose()
+    {
+        running = false;
+        
+        try
+        {
+            //wait for the remaining results to be written
+            join(STOP_DELAY);
+        }
+        catch (InterruptedException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
\ No newline at end of file
@@ -29,7 +29,46 @@ public final class Shared
     //do we hide mouse when the menu is not visible and actual gameplay has started
     public static boolean HIDE_MOUSE = true;
     
-    //how many updates per second, controls speed of game
+    //do we scale the game by the largest whole number that fits the window, keeping the pixels square and crisp (the borders will be black)
+    public static boolean INTEGER_SCALE = false;
+    
+    //do we draw the race on a separate thread, so the next update can happen while the previous one is drawn
+    public static boolean PIPELINED_RENDER = false;
+    
+    //do we sample the edges of the road from the track image, instead of only using the mini-map (84 x 50 cells)
+    public static boolean FINE_ROAD_MASK = false;
+    
+    //does the camera follow the car smoothly and look ahead in the direction it is moving, otherwise the car is always in the center
+    public static boolean SMOOTH_CAMERA = false;
+    
+    //the number of human players sharing the screen and keyboard (1 - 4), each player has a viewport
+    public static int PLAYERS = 1;
+    
+    //the file containing the number of cpu cars and the name and color of each car, if missing the defaults are used
+    public static String FIELD_FILE = "field.properties";
+    
+    //do we record race telemetry for every car each update
+    public static boolean TELEMETRY = false;
+    
+    //the file the telemetry is written to
+    public static String TELEMETRY_FILE = "telemetry.bin";
+    
+    //do we store the result of each race and the personal bests of each track
+    public static boolean RESULTS = true;
+    
+    //the file the result of each race is appended to, the personal bests are stored next to it
+    public static String RESULTS_FILE = "results.bin";
+    
+    //if set, the telemetry is streamed to this port on the local machine (such as a dashboard) instead of the file
+    public static int TELEMETRY_PORT = 0;
+    
+    //do we record how long each update, frame and load takes, along with the race state
+    public static boolean PROFILE = false;
+    
+    //the file the profile is written to
+    public static String PROFILE_FILE = "profile.bin";
+    
+    //how many updates per second, the car physics are scaled by the time of each update so the game plays the same at any rate
     public static final int DEFAULT_UPS = 60;
     
     //what is the name of our game
@@ -0,0 +1,229 @@
+package com.gamesbykevin.rcproam.soak;
+
+import com.gamesbykevin.rcproam.car.Car;
+import com.gamesbykevin.rcproam.car.Cars;
+import com.gamesbykevin.rcproam.manager.Manager;
+import com.gamesbykevin.rcproam.map.Camera;
+import com.gamesbykevin.rcproam.map.MapLoader;
+import com.gamesbykevin.rcproam.map.Maps;
+import com.gamesbykevin.rcproam.map.StaticMap;
+import com.gamesbykevin.rcproam.render.RenderState;
+import com.gamesbykevin.rcproam.resources.GameImages;
+import com.gamesbykevin.rcproam.shared.Shared;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Offline check that a race tick does not allocate once the race is running.<br>
+ * Each track is raced without a window: every tick the cars are updated, the camera follows the human,
+ * and the frame is drawn with the detail screen into an image the size of the screen, the same as the game does.
+ * After warming up, the bytes allocated by this thread are measured over a number of ticks.
+ * The first track is raced once before anything is measured, while the code is still being compiled the JVM allocates now and then.
+ * The check fails if the bytes allocated per tick on any track are over the budget.<br><br>
+ * Usage: AllocationCheck [source directory] [ticks] [budget]
+ * @author GOD
+ */
+public final class AllocationCheck
+{
+    //default directory containing the resources
+    private static final String DEFAULT_SOURCE_DIR = "src";
+    
+    //default number of ticks measured on each track
+    private static final int DEFAULT_TICKS = 3000;
+    
+    //default bytes allowed to be allocated per tick, nothing should be allocated once the race is running
+    private static final long DEFAULT_BUDGET = 0;
+    
+    //the number of ticks raced before measuring, so the race is running and the code is compiled
+    private static final int WARM_UP_TICKS = 5000;
+    
+    //the number of ticks measured during the race before any track is checked, so the code is compiled before anything is checked
+    private static final int COMPILE_TICKS = 10000;
+    
+    //the number of laps, enough that the race does not finish while measuring
+    private static final int LAPS = 99;
+    
+    //nanoseconds per update, the same as the game
+    private static final long TIME = (long)(1000000000.0 / Shared.DEFAULT_UPS);
+    
+    //the number of cars in the race, including the human
+    private static final int CARS = 4;
+    
+    //the sprite sheet of each car
+    private static final GameImages.Keys[] CAR_KEYS = {GameImages.Keys.RaceCarRed, GameImages.Keys.RaceCarBlue, GameImages.Keys.RaceCarGreen, GameImages.Keys.RaceCarOrange};
+    
+    //the colors of the cars
+    private static final Color[] COLORS = {Color.RED, Color.BLUE, Color.GREEN, Color.ORANGE};
+    
+    private AllocationCheck()
+    {
+        //utility class
+    }
+    
+    public static void main(String[] args)
+    {
+        try
+        {
+            //the directory containing the resources
+            final File source = new File(args.length > 0 ? args[0] : DEFAULT_SOURCE_DIR);
+            
+            //how many ticks to measure
+            final int ticks = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_TICKS;
+            
+            //how many bytes each tick may allocate
+            final long budget = (args.length > 2) ? Long.parseLong(args[2]) : DEFAULT_BUDGET;
+            
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            
+            if (!(threads instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported())
+                throw new Exception("Measuring the bytes allocated by a thread is not supported");
+            
+            final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)threads;
+            allocations.setThreadAllocatedMemoryEnabled(true);
+            
+            boolean passed = true;
+            
+            //race the first track without checking it, so the code is compiled
+            measure(source, 0, COMPILE_TICKS, allocations);
+            
+            for (int trackNo = 0; trackNo < MapLoader.TOTAL_MAPS; trackNo++)
+            {
+                final long allocated = measure(source, trackNo, ticks, allocations);
+                
+                System.out.println("Track " + (trackNo + 1) + ", bytes allocated per tick = " + allocated + ", budget = " + budget);
+                
+                if (allocated > budget)
+                    passed = false;
+            }
+            
+            System.out.println(passed ? "PASS" : "FAIL");
+            
+            //exit with an error so a script running the check can tell it failed
+            if (!passed)
+                System.exit(1);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Race a track and measure the bytes allocated
+     * @param source The directory containing the resources
+     * @param trackNo The track
+     * @param ticks The number of ticks measured
+     * @param allocations Used to measure the bytes allocated by this thread
+     * @return The bytes allocated per tick
+     * @throws Exception
+     */
+    private static long measure(final File source, final int trackNo, final int ticks, final com.sun.management.ThreadMXBean allocations) throws Exception
+    {
+        final StaticMap map = MapLoader.loadMap(source, trackNo, LAPS);
+        
+        final Random random = new Random(trackNo);
+        
+        final Cars cars = new Cars();
+        cars.setCheckCollision(true);
+        
+        //the human is added first so it is the car the camera follows
+        cars.setFrames(cars.addHuman(COLORS[0], "Player"), CAR_KEYS[0], loadSheet(source, CAR_KEYS[0]));
+        
+        for (int i = 1; i < CARS; i++)
+        {
+            cars.setFrames(cars.addCpu(COLORS[i], "Cpu " + i, random), CAR_KEYS[i], loadSheet(source, CAR_KEYS[i]));
+        }
+        
+        cars.reset(random);
+        map.placeCars(cars);
+        
+        //the image the frame is drawn to, the size of the screen
+        final BufferedImage image = new BufferedImage(Shared.ORIGINAL_WIDTH, Shared.ORIGINAL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = image.createGraphics();
+        
+        //the height will be smaller to make room for the info screen, the same as the game
+        final Rectangle window = new Rectangle(0, 0, Shared.ORIGINAL_WIDTH, Shared.ORIGINAL_HEIGHT - Manager.INFO_HEIGHT);
+        
+        final Car human = cars.getHuman();
+        final Camera camera = new Camera(human, window);
+        final Maps maps = new Maps(null);
+        final RenderState state = new RenderState();
+        final int[] inputs = new int[CARS];
+        
+        for (int i = 0; i < WARM_UP_TICKS; i++)
+        {
+            tick(cars, map, trackNo, human, inputs, camera, state, maps, window, graphics);
+        }
+        
+        final long thread = Thread.currentThread().getId();
+        final long start = allocations.getThreadAllocatedBytes(thread);
+        
+        for (int i = 0; i < ticks; i++)
+        {
+            tick(cars, map, trackNo, human, inputs, camera, state, maps, window, graphics);
+        }
+        
+        final long allocated = (allocations.getThreadAllocatedBytes(thread) - start) / ticks;
+        
+        graphics.dispose();
+        image.flush();
+        state.dispose();
+        maps.dispose();
+        cars.dispose();
+        map.dispose();
+        
+        return allocated;
+    }
+    
+    /**
+     * Update the race and draw the frame, the same as the game does each tick
+     * @param cars The cars in the race
+     * @param map The map we are racing on
+     * @param trackNo The track
+     * @param human The car the camera follows
+     * @param inputs The input of each car
+     * @param camera The camera following the human
+     * @param state The render state the frame is drawn from
+     * @param maps The maps containing the mini-map
+     * @param window Where gameplay occurs
+     * @param graphics Graphics object of the image the frame is drawn to
+     * @throws Exception
+     */
+    private static void tick(final Cars cars, final StaticMap map, final int trackNo, final Car human, final int[] inputs, final Camera camera, final RenderState state, final Maps maps, final Rectangle window, final Graphics2D graphics) throws Exception
+    {
+        inputs[human.getNumber()] = Soak.getInput(human, map.getTrack());
+        
+        cars.update(map.getTrack(), map.getLaps(), TIME, inputs);
+        
+        //follow the human
+        camera.update(map, TIME);
+        map.updateLocation(camera);
+        cars.adjustCars(camera);
+        
+        //copy what is drawn and draw the frame with the detail screen
+        cars.capture(state, map.getLaps());
+        state.setMap(map, trackNo, true);
+        Manager.render(graphics, state, maps, cars, window);
+    }
+    
+    /**
+     * Load the sprite sheet of a car
+     * @param source The directory containing the resources
+     * @param key The key of the sprite sheet
+     * @return The sprite sheet
+     * @throws Exception if the sprite sheet could not be found
+     */
+    private static Image loadSheet(final File source, final GameImages.Keys key) throws Exception
+    {
+        return MapLoader.loadImage(source, key.toString());
+    }
+}
\ No newline at end of file
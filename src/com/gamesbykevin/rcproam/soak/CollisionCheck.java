@@ -0,0 +1,238 @@
+package com.gamesbykevin.rcproam.soak;
+
+import com.gamesbykevin.framework.base.Cell;
+
+import com.gamesbykevin.rcproam.actor.Human;
+import com.gamesbykevin.rcproam.car.Attributes;
+import com.gamesbykevin.rcproam.car.Car;
+import com.gamesbykevin.rcproam.car.Cars;
+import com.gamesbykevin.rcproam.event.GameEventListener;
+import com.gamesbykevin.rcproam.event.GameEvents;
+import com.gamesbykevin.rcproam.map.MapLoader;
+import com.gamesbykevin.rcproam.map.StaticMap;
+
+import java.awt.Color;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Offline check that 2 cars driving at each other never overlap or pass through each other.<br>
+ * On each track 2 cars are placed apart at a check point and driven head on, from every direction,
+ * with the cars offset to the side by less than the collision distance and at several closing speeds.
+ * After every update the cars must be at least the collision distance apart,
+ * and if one car passed the other they must have been at least the collision distance apart to the side when they did.
+ * The check fails if this happens even once.<br><br>
+ * Usage: CollisionCheck [source directory] [updates per second]
+ * @author GOD
+ */
+public final class CollisionCheck
+{
+    //default directory containing the resources
+    private static final String DEFAULT_SOURCE_DIR = "src";
+    
+    //default updates per second, the slowest rate the game runs at moves the cars the furthest each update
+    private static final int DEFAULT_UPS = 30;
+    
+    //the number of laps of each track
+    private static final int LAPS = 3;
+    
+    //the number of directions the cars drive at each other from
+    private static final int DIRECTIONS = 16;
+    
+    //how far to the side each car is offset from the other, as a fraction of the collision distance
+    private static final double[] OFFSETS = {0, 0.2, 0.5, 0.8, 0.98};
+    
+    //the velocity of each car (in columns per reference update), from top speed on the road to several times faster
+    private static final double[] VELOCITIES = {0.1, 0.2, 0.4, 0.8};
+    
+    //how far apart the cars start
+    private static final double START_DISTANCE = 4;
+    
+    //the number of seconds each pair of cars is driven
+    private static final int SECONDS = 3;
+    
+    //how far a car may be inside the collision distance, to allow for rounding
+    private static final double TOLERANCE = 0.000001;
+    
+    private CollisionCheck()
+    {
+        //utility class
+    }
+    
+    /**
+     * Counts the collisions published by the cars
+     */
+    private static final class Collisions implements GameEventListener
+    {
+        private int count = 0;
+        
+        @Override
+        public void onEvent(final int type, final long tick, final int car, final long value)
+        {
+            if (type == GameEvents.TYPE_COLLISION)
+                count++;
+        }
+    }
+    
+    public static void main(String[] args)
+    {
+        try
+        {
+            //the directory containing the resources
+            final File source = new File(args.length > 0 ? args[0] : DEFAULT_SOURCE_DIR);
+            
+            //how many updates per second
+            final int ups = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_UPS;
+            
+            int failures = 0, collisions = 0, runs = 0;
+            
+            for (int trackNo = 0; trackNo < MapLoader.TOTAL_MAPS; trackNo++)
+            {
+                final StaticMap map = MapLoader.loadMap(source, trackNo, LAPS);
+                
+                //the cars meet at the first check point
+                final Cell meet = map.getTrack().getCheckPoint(0);
+                
+                for (int direction = 0; direction < DIRECTIONS; direction++)
+                {
+                    for (double offset : OFFSETS)
+                    {
+                        for (double velocity : VELOCITIES)
+                        {
+                            final int result = run(map, meet, (2 * Math.PI * direction) / DIRECTIONS, offset * Cars.COLLISION_DISTANCE, velocity, ups);
+                            
+                            if (result < 0)
+                            {
+                                failures++;
+                                
+                                System.out.println("Track " + (trackNo + 1) + ", direction " + direction + ", offset " + offset + ", velocity " + velocity + ": overlap or pass through");
+                            }
+                            else if (result > 0)
+                            {
+                                collisions++;
+                            }
+                            
+                            runs++;
+                        }
+                    }
+                }
+                
+                map.dispose();
+            }
+            
+            System.out.println("Runs = " + runs + ", collided = " + collisions + ", failed = " + failures + ", updates per second = " + ups);
+            System.out.println((failures == 0) ? "PASS" : "FAIL");
+            
+            //exit with an error so a script running the check can tell it failed
+            if (failures > 0)
+                System.exit(1);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Drive 2 cars at each other and check they never overlap or pass through each other
+     * @param map The map we are racing on
+     * @param meet Where the cars meet
+     * @param angle The direction the first car drives (in radians)
+     * @param offset How far to the side the cars are from each other
+     * @param velocity The velocity of each car (in columns per reference update)
+     * @param ups The number of updates per second
+     * @return -1 if the cars overlapped or passed through each other, 1 if they collided, 0 if they missed
+     * @throws Exception
+     */
+    private static int run(final StaticMap map, final Cell meet, final double angle, final double offset, final double velocity, final int ups) throws Exception
+    {
+        final Cars cars = new Cars();
+        cars.setCheckCollision(true);
+        
+        final Collisions collisions = new Collisions();
+        cars.getEvents().subscribe(collisions);
+        
+        final Car car1 = cars.addHuman(Color.RED, "Player 1");
+        final Car car2 = cars.addHuman(Color.BLUE, "Player 2");
+        
+        //the direction the first car drives, and the direction to the side
+        final double dirCol = Math.cos(angle), dirRow = Math.sin(angle);
+        final double sideCol = -dirRow, sideRow = dirCol;
+        
+        //the cars start on either side of the meeting point, facing each other
+        place(car1, meet.getCol() - (dirCol * START_DISTANCE / 2), meet.getRow() - (dirRow * START_DISTANCE / 2), angle, velocity);
+        place(car2, meet.getCol() + (dirCol * START_DISTANCE / 2) + (sideCol * offset), meet.getRow() + (dirRow * START_DISTANCE / 2) + (sideRow * offset), angle + Math.PI, velocity);
+        
+        final long time = (long)(1000000000.0 / ups);
+        final int[] inputs = {Human.INPUT_ACCELERATE, Human.INPUT_ACCELERATE};
+        
+        for (int i = 0; i < ups * SECONDS; i++)
+        {
+            //where the second car is from the first before the update, along the direction and to the side
+            final double along = ((car2.getCol() - car1.getCol()) * dirCol) + ((car2.getRow() - car1.getRow()) * dirRow);
+            final double side = ((car2.getCol() - car1.getCol()) * sideCol) + ((car2.getRow() - car1.getRow()) * sideRow);
+            
+            cars.update(map.getTrack(), LAPS, time, inputs);
+            
+            //where the second car is from the first after the update
+            final double nextAlong = ((car2.getCol() - car1.getCol()) * dirCol) + ((car2.getRow() - car1.getRow()) * dirRow);
+            final double nextSide = ((car2.getCol() - car1.getCol()) * sideCol) + ((car2.getRow() - car1.getRow()) * sideRow);
+            
+            //the cars can't overlap after the update
+            if (Math.sqrt((nextAlong * nextAlong) + (nextSide * nextSide)) < Cars.COLLISION_DISTANCE - TOLERANCE)
+                return fail(cars);
+            
+            //if one car passed the other, they must have been far enough apart to the side
+            if ((along > 0) != (nextAlong > 0))
+            {
+                final double passed = side + ((nextSide - side) * (along / (along - nextAlong)));
+                
+                if (Math.abs(passed) < Cars.COLLISION_DISTANCE - TOLERANCE)
+                    return fail(cars);
+            }
+        }
+        
+        cars.dispose();
+        
+        return (collisions.count > 0 ? 1 : 0);
+    }
+    
+    /**
+     * Place a car driving at the velocity, accelerating at top speed on the road
+     * @param car The car
+     * @param col Column
+     * @param row Row
+     * @param angle The direction to drive (in radians)
+     * @param velocity The velocity (in columns per reference update)
+     */
+    private static void place(final Car car, final double col, final double row, final double angle, final double velocity)
+    {
+        final ByteBuffer state = ByteBuffer.allocate(Car.STATE_SIZE);
+        
+        state.putDouble(col);
+        state.putDouble(row);
+        state.putDouble(Math.cos(angle) * velocity);
+        state.putDouble(Math.sin(angle) * velocity);
+        
+        //the car moves 135 degrees from the angle it is facing
+        state.putDouble(angle - Math.toRadians(135));
+        state.putDouble(0);
+        state.putDouble(Attributes.DEFAULT_MAXIMUM_SPEED_ROAD);
+        state.put((byte)0);
+        state.flip();
+        
+        car.readState(state);
+    }
+    
+    /**
+     * Release the cars of a run that failed
+     * @param cars The cars
+     * @return -1
+     */
+    private static int fail(final Cars cars)
+    {
+        cars.dispose();
+        return -1;
+    }
+}
\ No newline at end of file
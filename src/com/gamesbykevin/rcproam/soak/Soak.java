@@ -0,0 +1,626 @@
+package com.gamesbykevin.rcproam.soak;
+
+import com.gamesbykevin.framework.base.Cell;
+
+import com.gamesbykevin.rcproam.actor.Human;
+import com.gamesbykevin.rcproam.car.Car;
+import com.gamesbykevin.rcproam.car.Cars;
+import com.gamesbykevin.rcproam.event.GameEvents;
+import com.gamesbykevin.rcproam.lifecycle.Lifecycle;
+import com.gamesbykevin.rcproam.manager.FieldConfig;
+import com.gamesbykevin.rcproam.manager.Manager;
+import com.gamesbykevin.rcproam.map.Camera;
+import com.gamesbykevin.rcproam.map.MapLoader;
+import com.gamesbykevin.rcproam.map.Maps;
+import com.gamesbykevin.rcproam.map.StaticMap;
+import com.gamesbykevin.rcproam.map.Track;
+import com.gamesbykevin.rcproam.render.IntegerScaleRenderer;
+import com.gamesbykevin.rcproam.render.RenderPipeline;
+import com.gamesbykevin.rcproam.render.RenderState;
+import com.gamesbykevin.rcproam.resources.Resources;
+import com.gamesbykevin.rcproam.shared.Shared;
+import com.gamesbykevin.rcproam.telemetry.Telemetry;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Offline tool that plays races without a window for a long time, to make sure nothing grows as races accumulate.<br>
+ * This follows the same flow as the game and uses the same setup: the resources are loaded once, a new game creates the cars with the car sprite sheets,
+ * audio cues and telemetry the same as the manager does and loads every map from the resources, each race is played until it finishes,
+ * a human that qualifies moves on to the next track, and a human that doesn't ends the game so everything is disposed and a new game starts.
+ * Each game races the next type of car, and the human is driven by a simple autopilot so both outcomes happen.<br>
+ * Every update is published to a render thread that draws the race, scaled by a whole number, into an image the size of a window.<br>
+ * Once a game is over and every few races have been played, the heap is measured after garbage collection, along with the live images and graphics
+ * registered with the lifecycle, the number of threads and the update time percentiles.
+ * Measuring between games means everything created for a game should have been released.
+ * The soak fails if any of them trend upward between the first and second half of the run, if a resource was collected without being disposed,
+ * or if the telemetry could not be created.<br><br>
+ * Usage: Soak [races] [field file]
+ * @author GOD
+ */
+public final class Soak implements RenderPipeline.Target
+{
+    //the class in the root directory of the project, the resources are located from it the same as the game
+    private static final String CONTAINER_CLASS = "StartDesktop";
+    
+    //default number of races to play
+    private static final int DEFAULT_RACES = 2000;
+    
+    //default file containing the number of cars, names and colors, if it does not exist the defaults are used
+    private static final String DEFAULT_FIELD_FILE = "field.properties";
+    
+    //nanoseconds per update, the same as the game
+    private static final long TIME = (long)(1000000000.0 / Shared.DEFAULT_UPS);
+    
+    //the most updates allowed for a race before we stop it
+    private static final int MAX_UPDATES = Shared.DEFAULT_UPS * 600;
+    
+    //the least number of races between each sample
+    private static final int SAMPLE_RACES = 10;
+    
+    //the samples at the start of the run that are ignored while everything warms up
+    private static final double WARM_UP = 0.2;
+    
+    //how much the heap can grow before we consider it a leak (in bytes)
+    private static final long HEAP_TOLERANCE = 4L * 1024 * 1024;
+    
+    //how much slower the updates can get before we consider it drift
+    private static final double TIME_TOLERANCE = 1.5;
+    
+    //the most update times kept for each sample, the latest are kept
+    private static final int WINDOW = 1 << 16;
+    
+    //the autopilot turns when the car faces further than this from the check point (in degrees)
+    private static final double AUTOPILOT_TURN = 10;
+    
+    //how long to wait between checking if the resources have loaded (in milliseconds)
+    private static final long LOAD_DELAY = 1L;
+    
+    //the number of types of car (truck, suv, race car)
+    private static final int CAR_TYPES = 3;
+    
+    //the number of players, the soak only drives 1 human
+    private static final int PLAYERS = 1;
+    
+    //the whole number the race is scaled by when it is drawn
+    private static final int SCALE = 2;
+    
+    //the resources used by every game
+    private final Resources resources;
+    
+    //the number of cars, names and colors
+    private final FieldConfig field;
+    
+    //the file the telemetry of each game is written to
+    private final File telemetryFile;
+    
+    //object used to make random decisions
+    private final Random random = new Random(0);
+    
+    //the maps of the current game, null between games
+    private Maps maps;
+    
+    //the cars of the current game, null between games
+    private Cars cars;
+    
+    //the camera following the human, null between games
+    private Camera camera;
+    
+    //the input of each car, only the human uses it
+    private int[] inputs;
+    
+    //where gameplay occurs, the info screen is below
+    private final Rectangle screen;
+    
+    //the image each update is drawn to, the size of a window scaled by the whole number
+    private final BufferedImage image;
+    
+    //graphics object the race is drawn to, this is scaled
+    private final Graphics2D scaledGraphics;
+    
+    //graphics object at the output resolution, scaled images are copied to it
+    private final Graphics2D outputGraphics;
+    
+    //the render thread drawing each update
+    private final RenderPipeline pipeline;
+    
+    //the time of each update since the last sample (in nanoseconds)
+    private final long[] window = new long[WINDOW];
+    private int windowCount = 0;
+    
+    //the measurements taken after every few races
+    private final List<long[]> samples = new ArrayList<>();
+    
+    //the number of games and races played
+    private int games = 0, races = 0, wins = 0;
+    
+    //the number of races played when the last sample was taken
+    private int sampled = 0;
+    
+    //the measurements in each sample
+    private static final int SAMPLE_HEAP = 0;
+    private static final int SAMPLE_RESOURCES = 1;
+    private static final int SAMPLE_THREADS = 2;
+    private static final int SAMPLE_P50 = 3;
+    private static final int SAMPLE_P99 = 4;
+    private static final int SAMPLE_SIZE = 5;
+    
+    /**
+     * Create the soak, the resources are loaded and the render thread is started
+     * @param field The number of cars, names and colors
+     * @throws Exception if the resources could not be loaded
+     */
+    private Soak(final FieldConfig field) throws Exception
+    {
+        this.field = field;
+        
+        //each game writes its telemetry to the same file
+        this.telemetryFile = File.createTempFile("soak", ".bin");
+        this.telemetryFile.deleteOnExit();
+        
+        //load the resources the same as the engine
+        this.resources = new Resources();
+        
+        final Class<?> container = Class.forName(CONTAINER_CLASS);
+        
+        while (resources.isLoading())
+        {
+            resources.update(container);
+            
+            Thread.sleep(LOAD_DELAY);
+        }
+        
+        //the audio cues are still published, but nothing is played
+        this.resources.setAudioEnabled(false);
+        
+        //the height will be smaller to make room for the info screen, the same as the game
+        this.screen = new Rectangle(0, 0, Shared.ORIGINAL_WIDTH, Shared.ORIGINAL_HEIGHT - Manager.INFO_HEIGHT);
+        
+        //draw the race scaled by a whole number, the same as the game does when the window is larger
+        this.image = new BufferedImage(Shared.ORIGINAL_WIDTH * SCALE, Shared.ORIGINAL_HEIGHT * SCALE, BufferedImage.TYPE_INT_RGB);
+        this.scaledGraphics = image.createGraphics();
+        this.scaledGraphics.scale(SCALE, SCALE);
+        this.outputGraphics = image.createGraphics();
+        
+        IntegerScaleRenderer.getRenderer().setGraphics(scaledGraphics, outputGraphics, SCALE);
+        
+        this.pipeline = new RenderPipeline(this);
+        this.pipeline.start();
+    }
+    
+    public static void main(String[] args)
+    {
+        try
+        {
+            //how many races to play
+            final int races = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_RACES;
+            
+            //the number of cars, names and colors
+            final FieldConfig field = FieldConfig.load(new File(args.length > 1 ? args[1] : DEFAULT_FIELD_FILE));
+            
+            final Soak soak = new Soak(field);
+            
+            soak.run(races);
+            soak.dispose();
+            
+            //exit with an error so a script running the soak can tell it failed
+            if (!soak.report())
+                System.exit(1);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Play the races
+     * @param total The number of races to play
+     * @throws Exception
+     */
+    private void run(final int total) throws Exception
+    {
+        while (races < total)
+        {
+            if (cars == null)
+                startGame();
+            
+            final boolean win = playRace();
+            
+            races++;
+            
+            if (win)
+            {
+                wins++;
+                
+                //if every track has been completed the game is over
+                if (maps.getIndex() + 1 >= MapLoader.TOTAL_MAPS)
+                {
+                    endGame();
+                }
+                else
+                {
+                    //move to the next track
+                    maps.setMap(maps.getIndex() + 1, cars, camera, TIME);
+                }
+            }
+            else
+            {
+                endGame();
+            }
+            
+            //measure between games
+            if (cars == null && races - sampled >= SAMPLE_RACES)
+            {
+                sample();
+                sampled = races;
+            }
+        }
+        
+        if (cars != null)
+            endGame();
+    }
+    
+    /**
+     * Start a new game, the cars are created and every map is loaded the same as the manager does
+     * @throws Exception
+     */
+    private void startGame() throws Exception
+    {
+        //each game races the next type of car
+        final int type = games % CAR_TYPES;
+        
+        games++;
+        
+        //record the telemetry of the game, if it can't be created the failure is counted
+        final Telemetry telemetry = Telemetry.create(0, telemetryFile);
+        
+        cars = Manager.createCars(resources, type, PLAYERS, field, false, true, telemetry, random);
+        
+        //set human in center of screen
+        cars.getHuman().setLocation(screen);
+        
+        //the camera for the entire window follows the human
+        camera = new Camera(cars.getHuman(), screen);
+        
+        //load every map
+        maps = new Maps(resources);
+        
+        while (maps.isLoading())
+        {
+            maps.loadMap(resources, random, false);
+        }
+        
+        //the first track
+        maps.setMap(0, cars, camera, TIME);
+        
+        inputs = new int[cars.getSize()];
+    }
+    
+    /**
+     * Dispose everything created for the game, the same as the game does when it is over
+     */
+    private void endGame()
+    {
+        //make sure the render thread is done before anything it draws is disposed
+        pipeline.pause();
+        
+        cars.dispose();
+        cars = null;
+        
+        maps.dispose();
+        maps = null;
+        
+        camera = null;
+        inputs = null;
+    }
+    
+    /**
+     * Play the current race until it finishes, each update is drawn by the render thread
+     * @return true if the human qualified for the next race, false otherwise
+     * @throws Exception
+     */
+    private boolean playRace() throws Exception
+    {
+        final StaticMap map = maps.getMap();
+        final Track track = map.getTrack();
+        
+        final Car human = cars.getHuman();
+        
+        //reset the cars and start the race
+        cars.reset(random);
+        cars.getEvents().publish(GameEvents.TYPE_RACE_START, -1, 0);
+        cars.adjustCars(camera);
+        
+        for (int updates = 0; updates < MAX_UPDATES && !cars.hasRaceCompleted(); updates++)
+        {
+            inputs[human.getNumber()] = getInput(human, track);
+            
+            final long start = System.nanoTime();
+            
+            //follow the human with the camera, and move the map with it
+            camera.update(map, TIME);
+            map.updateLocation(camera);
+            
+            //update the cars
+            cars.adjustCars(camera);
+            cars.update(track, map.getLaps(), TIME, inputs);
+            
+            //send the events of this update to the audio, telemetry, etc...
+            cars.getEvents().dispatch();
+            
+            //copy what is drawn and let the render thread draw this update
+            final RenderState state = pipeline.getRenderState();
+            state.setMap(map, maps.getIndex(), true);
+            cars.capture(state, map.getLaps());
+            pipeline.publish();
+            
+            window[windowCount % WINDOW] = System.nanoTime() - start;
+            windowCount++;
+        }
+        
+        //the race is over, the game draws the result itself
+        pipeline.pause();
+        
+        //announce if win/lose
+        cars.getEvents().publish(GameEvents.TYPE_RACE_RESULT, -1, cars.hasWin() ? 1 : 0);
+        cars.getEvents().dispatch();
+        
+        return (cars.hasRaceCompleted() && cars.hasWin());
+    }
+    
+    /**
+     * Draw the race from the render state, this is called by the render thread
+     * @param state The render state
+     * @throws Exception
+     */
+    @Override
+    public void render(final RenderState state) throws Exception
+    {
+        //background by itself will be a black rectangle
+        scaledGraphics.setColor(Color.BLACK);
+        scaledGraphics.fillRect(0, 0, Shared.ORIGINAL_WIDTH, Shared.ORIGINAL_HEIGHT);
+        
+        Manager.render(scaledGraphics, state, maps, cars, screen);
+    }
+    
+    /**
+     * Stop the render thread and release the image and resources
+     */
+    private void dispose()
+    {
+        pipeline.dispose();
+        
+        IntegerScaleRenderer.getRenderer().dispose();
+        
+        scaledGraphics.dispose();
+        outputGraphics.dispose();
+        image.flush();
+        
+        resources.dispose();
+    }
+    
+    /**
+     * Steer the human at the check point, this autopilot is also used by the other offline checks
+     * @param car The human car
+     * @param track The track we are racing on
+     * @return The input bits (see Human.INPUT_LEFT, etc...)
+     */
+    static int getInput(final Car car, final Track track)
+    {
+        final Cell goal = track.getCheckPoint(car.getTracker().getCheckPointTarget());
+        
+        //the angle we should be facing, the cars face west at 45 degrees
+        final double destination = Math.toDegrees(Math.atan2(goal.getRow() - car.getRow(), goal.getCol() - car.getCol()) + Math.PI) + 45;
+        
+        //how far we need to turn, between -180 and 180
+        double difference = (destination - car.getFacingAngle()) % 360;
+        
+        if (difference > 180)
+            difference -= 360;
+        if (difference < -180)
+            difference += 360;
+        
+        if (difference > AUTOPILOT_TURN)
+            return Human.INPUT_ACCELERATE | Human.INPUT_RIGHT;
+        if (difference < -AUTOPILOT_TURN)
+            return Human.INPUT_ACCELERATE | Human.INPUT_LEFT;
+        
+        return Human.INPUT_ACCELERATE;
+    }
+    
+    /**
+     * Measure the heap, live resources, threads and update times
+     */
+    private void sample()
+    {
+        //collect everything that is no longer used, and count any resource collected without being disposed
+        System.gc();
+        System.gc();
+        Lifecycle.poll();
+        
+        final long[] sample = new long[SAMPLE_SIZE];
+        
+        sample[SAMPLE_HEAP] = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        
+        for (Lifecycle.Subsystem subsystem : Lifecycle.Subsystem.values())
+        {
+            sample[SAMPLE_RESOURCES] += Lifecycle.getCount(subsystem);
+        }
+        
+        sample[SAMPLE_THREADS] = ManagementFactory.getThreadMXBean().getThreadCount();
+        
+        //the update times since the last sample
+        final long[] times = Arrays.copyOf(window, Math.min(windowCount, WINDOW));
+        Arrays.sort(times);
+        
+        sample[SAMPLE_P50] = getPercentile(times, 0.50);
+        sample[SAMPLE_P99] = getPercentile(times, 0.99);
+        
+        windowCount = 0;
+        
+        samples.add(sample);
+        
+        System.out.println("Races " + races + ", games " + games + ", heap " + (sample[SAMPLE_HEAP] / 1024) + " KB, resources " + sample[SAMPLE_RESOURCES] +
+            ", threads " + sample[SAMPLE_THREADS] + ", update " + (sample[SAMPLE_P50] / 1000) + " us p50, " + (sample[SAMPLE_P99] / 1000) + " us p99");
+    }
+    
+    /**
+     * Get a percentile of the sorted times
+     * @param times The sorted times
+     * @param percentile The percentile (0.0 - 1.0)
+     * @return The time, 0 if there are no times
+     */
+    private static long getPercentile(final long[] times, final double percentile)
+    {
+        if (times.length == 0)
+            return 0;
+        
+        return times[(int)Math.min(times.length - 1, Math.floor(percentile * times.length))];
+    }
+    
+    /**
+     * Compare the first and second half of the samples after warming up
+     * @return true if nothing trended upward, false otherwise
+     */
+    private boolean report()
+    {
+        System.out.println("Played " + races + " races in " + games + " games, " + wins + " qualified");
+        System.out.println("Resources: " + Lifecycle.getReport());
+        
+        boolean passed = true;
+        
+        //any resource collected without being disposed is a leak
+        for (Lifecycle.Subsystem subsystem : Lifecycle.Subsystem.values())
+        {
+            if (Lifecycle.getLeaks(subsystem) > 0)
+            {
+                System.out.println("FAIL: " + subsystem + " resources were not disposed: " + Lifecycle.getLeaks(subsystem));
+                passed = false;
+            }
+        }
+        
+        //the telemetry of every game should be recorded
+        if (Telemetry.getFailures() > 0)
+        {
+            System.out.println("FAIL: the telemetry could not be created: " + Telemetry.getFailures());
+            passed = false;
+        }
+        
+        //the samples while warming up are ignored
+        final int start = (int)(samples.size() * WARM_UP);
+        final int middle = start + ((samples.size() - start) / 2);
+        
+        if (middle - start < 2)
+        {
+            System.out.println("FAIL: not enough samples, play more races");
+            return false;
+        }
+        
+        //the heap after collection should not keep growing
+        final long firstHeap = getMin(start, middle, SAMPLE_HEAP);
+        final long secondHeap = getMin(middle, samples.size(), SAMPLE_HEAP);
+        
+        if (secondHeap - firstHeap > HEAP_TOLERANCE)
+        {
+            System.out.println("FAIL: heap grew from " + (firstHeap / 1024) + " KB to " + (secondHeap / 1024) + " KB");
+            passed = false;
+        }
+        
+        //the live resources and threads should be the same after every race
+        if (getMax(middle, samples.size(), SAMPLE_RESOURCES) > getMax(start, middle, SAMPLE_RESOURCES))
+        {
+            System.out.println("FAIL: live resources grew from " + getMax(start, middle, SAMPLE_RESOURCES) + " to " + getMax(middle, samples.size(), SAMPLE_RESOURCES));
+            passed = false;
+        }
+        
+        if (getMax(middle, samples.size(), SAMPLE_THREADS) > getMax(start, middle, SAMPLE_THREADS))
+        {
+            System.out.println("FAIL: threads grew from " + getMax(start, middle, SAMPLE_THREADS) + " to " + getMax(middle, samples.size(), SAMPLE_THREADS));
+            passed = false;
+        }
+        
+        //the updates should not get slower
+        final long firstTime = getMedian(start, middle, SAMPLE_P99);
+        final long secondTime = getMedian(middle, samples.size(), SAMPLE_P99);
+        
+        if (secondTime > firstTime * TIME_TOLERANCE)
+        {
+            System.out.println("FAIL: p99 update time grew from " + (firstTime / 1000) + " us to " + (secondTime / 1000) + " us");
+            passed = false;
+        }
+        
+        System.out.println(passed ? "PASS" : "FAIL");
+        
+        return passed;
+    }
+    
+    /**
+     * Get the lowest measurement of the samples
+     * @param start The first sample
+     * @param end The sample after the last
+     * @param measurement The measurement (SAMPLE_HEAP, etc...)
+     * @return The lowest value
+     */
+    private long getMin(final int start, final int end, final int measurement)
+    {
+        long min = Long.MAX_VALUE;
+        
+        for (int i = start; i < end; i++)
+        {
+            min = Math.min(min, samples.get(i)[measurement]);
+        }
+        
+        return min;
+    }
+    
+    /**
+     * Get the highest measurement of the samples
+     * @param start The first sample
+     * @param end The sample after the last
+     * @param measurement The measurement (SAMPLE_HEAP, etc...)
+     * @return The highest value
+     */
+    private long getMax(final int start, final int end, final int measurement)
+    {
+        long max = Long.MIN_VALUE;
+        
+        for (int i = start; i < end; i++)
+        {
+            max = Math.max(max, samples.get(i)[measurement]);
+        }
+        
+        return max;
+    }
+    
+    /**
+     * Get the median measurement of the samples
+     * @param start The first sample
+     * @param end The sample after the last
+     * @param measurement The measurement (SAMPLE_HEAP, etc...)
+     * @return The median value
+     */
+    private long getMedian(final int start, final int end, final int measurement)
+    {
+        final long[] values = new long[end - start];
+        
+        for (int i = start; i < end; i++)
+        {
+            values[i - start] = samples.get(i)[measurement];
+        }
+        
+        Arrays.sort(values);
+        
+        return values[values.length / 2];
+    }
+}
\ No newline at end of file
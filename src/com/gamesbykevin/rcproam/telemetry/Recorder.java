@@ -0,0 +1,185 @@
+package com.gamesbykevin.rcproam.telemetry;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This class will record how long each phase of the game takes, so a profile can be read with the race context.<br>
+ * Each phase is recorded like a flight recorder event: begin() is called when the phase starts, and the phase is
+ * committed with its duration and details when it ends. The records are written by a Telemetry object to their own file:
+ * an update of the race, a frame drawn, a track created or converted, a group of resources loaded, and the state of
+ * each car once every second.<br>
+ * The recorder is disabled unless started, and while disabled each call only checks a single field,
+ * so the calls are left in place. Phases are recorded from the game, render and resource threads, so each record is synchronized.
+ * @author GOD
+ */
+public final class Recorder
+{
+    //how often the race state is recorded (in nanoseconds)
+    private static final long RACE_STATE_PERIOD = 1000000000L;
+    
+    //where the records are written, null if the recorder is disabled
+    private static volatile Telemetry telemetry;
+    
+    //when the race state was last recorded (in nanoseconds)
+    private static long raceState = 0;
+    
+    private Recorder()
+    {
+        //utility class
+    }
+    
+    /**
+     * Start recording to a file
+     * @param file The file
+     * @throws IOException if the file can't be created
+     */
+    public static synchronized void start(final File file) throws IOException
+    {
+        if (telemetry != null)
+            return;
+        
+        telemetry = Telemetry.createFile(file);
+    }
+    
+    /**
+     * Stop recording, the remaining records are written before this returns
+     */
+    public static synchronized void stop()
+    {
+        if (telemetry == null)
+            return;
+        
+        telemetry.dispose();
+        telemetry = null;
+    }
+    
+    /**
+     * Is the recorder enabled
+     * @return true if phases are being recorded, false otherwise
+     */
+    public static boolean isEnabled()
+    {
+        return (telemetry != null);
+    }
+    
+    /**
+     * Begin a phase
+     * @return The time the phase started (in nanoseconds), 0 if the recorder is disabled
+     */
+    public static long begin()
+    {
+        return (telemetry != null) ? System.nanoTime() : 0;
+    }
+    
+    /**
+     * Commit an update of the race
+     * @param start The time returned from begin()
+     * @param tick The update number
+     * @param cars The number of cars
+     * @param collisions The number of pairs of cars checked for collision
+     */
+    public static void tick(final long start, final long tick, final int cars, final int collisions)
+    {
+        commit(Telemetry.TYPE_TICK, start, tick, cars, collisions, 0);
+    }
+    
+    /**
+     * Commit a frame drawn
+     * @param start The time returned from begin()
+     * @param pipelined Was the frame drawn by the render thread
+     */
+    public static void frame(final long start, final boolean pipelined)
+    {
+        commit(Telemetry.TYPE_FRAME, start, 0, pipelined ? 1 : 0, 0, 0);
+    }
+    
+    /**
+     * Commit a track created from the mini-map
+     * @param start The time returned from begin()
+     * @param track The track
+     * @param pixels The number of pixels grabbed
+     */
+    public static void trackLoad(final long start, final int track, final long pixels)
+    {
+        commit(Telemetry.TYPE_TRACK_LOAD, start, 0, track, 0, pixels);
+    }
+    
+    /**
+     * Commit a track image converted to use a palette
+     * @param start The time returned from begin()
+     * @param track The track
+     * @param pixels The number of pixels grabbed
+     */
+    public static void trackConvert(final long start, final int track, final long pixels)
+    {
+        commit(Telemetry.TYPE_TRACK_CONVERT, start, 0, track, 0, pixels);
+    }
+    
+    /**
+     * Commit a group of resources loaded
+     * @param start The time returned from begin()
+     * @param group The group of resources (audio, images, etc...)
+     * @param count The number of resources loaded
+     */
+    public static void resourceLoad(final long start, final int group, final int count)
+    {
+        commit(Telemetry.TYPE_RESOURCE_LOAD, start, 0, group, count, 0);
+    }
+    
+    /**
+     * Has it been long enough to record the race state again, this is only called by the game thread
+     * @return true if the state of each car should be recorded now, false otherwise
+     */
+    public static boolean hasRaceStatePassed()
+    {
+        if (telemetry == null)
+            return false;
+        
+        final long now = System.nanoTime();
+        
+        if (now - raceState < RACE_STATE_PERIOD)
+            return false;
+        
+        raceState = now;
+        return true;
+    }
+    
+    /**
+     * Record the state of a car in the race
+     * @param tick The update number
+     * @param track The track we are racing on
+     * @param car The number of the car
+     * @param rank The rank of the car
+     * @param lap The number of laps completed
+     */
+    public static synchronized void raceState(final long tick, final int track, final int car, final int rank, final int lap)
+    {
+        if (telemetry != null)
+            telemetry.raceState(tick, track, car, rank, lap);
+    }
+    
+    /**
+     * Commit a phase
+     * @param type The type of phase
+     * @param start The time returned from begin(), 0 if the recorder was disabled when the phase began
+     * @param tick The update number
+     * @param id What the phase is for
+     * @param count A count for the phase
+     * @param amount An amount for the phase
+     */
+    private static void commit(final byte type, final long start, final long tick, final int id, final int count, final long amount)
+    {
+        //the recorder was disabled when the phase began
+        if (start == 0)
+            return;
+        
+        final long duration = System.nanoTime() - start;
+        
+        synchronized (Recorder.class)
+        {
+            if (telemetry != null)
+                telemetry.phase(type, tick, id, count, amount, duration);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,473 @@
+package com.gamesbykevin.rcproam.telemetry;
+
+import com.gamesbykevin.framework.resources.Disposable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class will record race telemetry.<br>
+ * The game thread writes fixed size records into a ring buffer that is allocated once,
+ * and a background thread writes the records in batches to a file or a socket on the local machine.<br>
+ * Each batch is written in columns: the number of records, the number of records dropped so far,
+ * and then each field for every record in the batch (tick, type, car, rank, lap, col, row, heading, speed, value).<br>
+ * If the background thread falls behind, new records are dropped and counted so the race never waits.
+ * @author GOD
+ */
+public final class Telemetry extends Thread implements Disposable
+{
+    //the types of records
+    public static final byte TYPE_SAMPLE = 0;
+    public static final byte TYPE_LAP = 1;
+    public static final byte TYPE_COLLISION = 2;
+    
+    //the types of records written by the recorder, see Recorder
+    public static final byte TYPE_TICK = 3;
+    public static final byte TYPE_FRAME = 4;
+    public static final byte TYPE_TRACK_LOAD = 5;
+    public static final byte TYPE_TRACK_CONVERT = 6;
+    public static final byte TYPE_RESOURCE_LOAD = 7;
+    public static final byte TYPE_RACE_STATE = 8;
+    
+    //identifies the start of the telemetry data
+    private static final int MAGIC = 0x52435054;
+    
+    //the version of the format
+    private static final int VERSION = 1;
+    
+    //the location of each field within a record (in bytes)
+    private static final int OFFSET_TICK = 0;
+    private static final int OFFSET_TYPE = 8;
+    private static final int OFFSET_CAR = 9;
+    private static final int OFFSET_RANK = 10;
+    private static final int OFFSET_LAP = 12;
+    private static final int OFFSET_COL = 16;
+    private static final int OFFSET_ROW = 20;
+    private static final int OFFSET_HEADING = 24;
+    private static final int OFFSET_SPEED = 28;
+    private static final int OFFSET_VALUE = 32;
+    
+    //the location and size of each field in the order the columns are written
+    private static final int[] COLUMN_OFFSETS = {OFFSET_TICK, OFFSET_TYPE, OFFSET_CAR, OFFSET_RANK, OFFSET_LAP, OFFSET_COL, OFFSET_ROW, OFFSET_HEADING, OFFSET_SPEED, OFFSET_VALUE};
+    private static final int[] COLUMN_SIZES = {8, 1, 1, 2, 2, 4, 4, 4, 4, 8};
+    
+    //the size of each record (in bytes)
+    private static final int RECORD_SIZE = 40;
+    
+    //the default number of records the ring buffer can hold
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+    
+    //the most records written in a single batch
+    private static final int BATCH_SIZE = 1024;
+    
+    //the size of the batch header, the number of records and the number of records dropped
+    private static final int BATCH_HEADER_SIZE = 12;
+    
+    //how long the background thread waits when there are no records (in nanoseconds)
+    private static final long FLUSH_DELAY = 5000000L;
+    
+    //how long to wait for the remaining records to be written when stopping (in milliseconds)
+    private static final long STOP_DELAY = 2000L;
+    
+    //the records waiting to be written
+    private final ByteBuffer ring;
+    
+    //the number of records the ring can hold
+    private final int capacity;
+    
+    //the number of records added by the game thread
+    private final AtomicLong head = new AtomicLong();
+    
+    //the number of records written by the background thread
+    private final AtomicLong tail = new AtomicLong();
+    
+    //the last known tail, so the game thread doesn't have to read the tail for every record
+    private long tailCache = 0;
+    
+    //the number of records dropped because the ring was full
+    private volatile long dropped = 0;
+    
+    //the batch written to the output
+    private final ByteBuffer batch;
+    
+    //where the records are written
+    private WritableByteChannel channel;
+    
+    //is the background thread running
+    private volatile boolean running = true;
+    
+    //the number of times the telemetry could not be created
+    private static final AtomicLong FAILURES = new AtomicLong();
+    
+    /**
+     * Create the telemetry
+     * @param channel Where the records will be written
+     * @param capacity The number of records the ring buffer can hold
+     */
+    public Telemetry(final WritableByteChannel channel, final int capacity)
+    {
+        super("Telemetry");
+        
+        this.channel = channel;
+        this.capacity = capacity;
+        
+        //the ring is only ever allocated once
+        this.ring = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.batch = ByteBuffer.allocateDirect(BATCH_HEADER_SIZE + (BATCH_SIZE * RECORD_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+        
+        //the background thread should not prevent the application from closing
+        setDaemon(true);
+    }
+    
+    /**
+     * Create telemetry that is written to a file
+     * @param file The file
+     * @return The telemetry, already started
+     * @throws IOException if the file can't be created
+     */
+    public static Telemetry createFile(final File file) throws IOException
+    {
+        final Telemetry telemetry = new Telemetry(new FileOutputStream(file).getChannel(), DEFAULT_CAPACITY);
+        telemetry.start();
+        return telemetry;
+    }
+    
+    /**
+     * Create telemetry that is streamed to a socket on the local machine, such as a dashboard
+     * @param port The port the dashboard is listening on
+     * @return The telemetry, already started
+     * @throws IOException if we can't connect
+     */
+    public static Telemetry createSocket(final int port) throws IOException
+    {
+        final Telemetry telemetry = new Telemetry(SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)), DEFAULT_CAPACITY);
+        telemetry.start();
+        return telemetry;
+    }
+    
+    /**
+     * Create telemetry that is streamed to a socket, or written to a file if there is no port.<br>
+     * The race does not need telemetry, so if it can't be created the failure is logged and counted and the race continues without it
+     * @param port The port the dashboard is listening on, 0 to write to the file instead
+     * @param file The file
+     * @return The telemetry, already started, null if it could not be created
+     */
+    public static Telemetry create(final int port, final File file)
+    {
+        try
+        {
+            return (port > 0) ? createSocket(port) : createFile(file);
+        }
+        catch (IOException e)
+        {
+            FAILURES.incrementAndGet();
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Get the number of times the telemetry could not be created
+     * @return The number of failures
+     */
+    public static long getFailures()
+    {
+        return FAILURES.get();
+    }
+    
+    /**
+     * Record a car sample, this is only called by the game thread
+     * @param tick The update number
+     * @param car The number of the car
+     * @param col Column of the car
+     * @param row Row of the car
+     * @param heading The angle the car is facing (in degrees)
+     * @param speed The speed of the car
+     * @param rank The rank of the car
+     * @param lap The number of laps completed
+     */
+    public void sample(final long tick, final int car, final double col, final double row, final double heading, final double speed, final int rank, final int lap)
+    {
+        final int index = next();
+        
+        //the ring is full
+        if (index < 0)
+            return;
+        
+        ring.putLong(index + OFFSET_TICK, tick);
+        ring.put(index + OFFSET_TYPE, TYPE_SAMPLE);
+        ring.put(index + OFFSET_CAR, (byte)car);
+        ring.putShort(index + OFFSET_RANK, (short)rank);
+        ring.putShort(index + OFFSET_LAP, (short)lap);
+        ring.putFloat(index + OFFSET_COL, (float)col);
+        ring.putFloat(index + OFFSET_ROW, (float)row);
+        ring.putFloat(index + OFFSET_HEADING, (float)heading);
+        ring.putFloat(index + OFFSET_SPEED, (float)speed);
+        ring.putLong(index + OFFSET_VALUE, 0L);
+        
+        publish();
+    }
+    
+    /**
+     * Record an event, this is only called by the game thread
+     * @param type The type of event
+     * @param tick The update number
+     * @param car The number of the car
+     * @param col Column of the car
+     * @param row Row of the car
+     * @param lap The number of laps completed
+     * @param value The value of the event: the lap time (in nanoseconds) for a lap, the number of the other car for a collision
+     */
+    public void event(final byte type, final long tick, final int car, final double col, final double row, final int lap, final long value)
+    {
+        final int index = next();
+        
+        //the ring is full
+        if (index < 0)
+            return;
+        
+        ring.putLong(index + OFFSET_TICK, tick);
+        ring.put(index + OFFSET_TYPE, type);
+        ring.put(index + OFFSET_CAR, (byte)car);
+        ring.putShort(index + OFFSET_RANK, (short)0);
+        ring.putShort(index + OFFSET_LAP, (short)lap);
+        ring.putFloat(index + OFFSET_COL, (float)col);
+        ring.putFloat(index + OFFSET_ROW, (float)row);
+        ring.putFloat(index + OFFSET_HEADING, 0f);
+        ring.putFloat(index + OFFSET_SPEED, 0f);
+        ring.putLong(index + OFFSET_VALUE, value);
+        
+        publish();
+    }
+    
+    /**
+     * Record a timed phase, such as an update, a frame or loading a track, this is only called by one thread at a time
+     * @param type The type of phase
+     * @param tick The update number
+     * @param id What the phase is for: the number of cars for an update, the track, the group of resources
+     * @param count A count for the phase: the pairs of cars checked for collision, the number of resources loaded
+     * @param amount An amount for the phase: the pixels grabbed
+     * @param duration How long the phase took (in nanoseconds)
+     */
+    public void phase(final byte type, final long tick, final int id, final int count, final double amount, final long duration)
+    {
+        final int index = next();
+        
+        //the ring is full
+        if (index < 0)
+            return;
+        
+        ring.putLong(index + OFFSET_TICK, tick);
+        ring.put(index + OFFSET_TYPE, type);
+        ring.put(index + OFFSET_CAR, (byte)id);
+        ring.putShort(index + OFFSET_RANK, (short)0);
+        ring.putShort(index + OFFSET_LAP, (short)Math.min(count, Short.MAX_VALUE));
+        ring.putFloat(index + OFFSET_COL, (float)amount);
+        ring.putFloat(index + OFFSET_ROW, 0f);
+        ring.putFloat(index + OFFSET_HEADING, 0f);
+        ring.putFloat(index + OFFSET_SPEED, 0f);
+        ring.putLong(index + OFFSET_VALUE, duration);
+        
+        publish();
+    }
+    
+    /**
+     * Record the state of a car in the race, this is only called by one thread at a time
+     * @param tick The update number
+     * @param track The track we are racing on
+     * @param car The number of the car
+     * @param rank The rank of the car
+     * @param lap The number of laps completed
+     */
+    public void raceState(final long tick, final int track, final int car, final int rank, final int lap)
+    {
+        final int index = next();
+        
+        //the ring is full
+        if (index < 0)
+            return;
+        
+        ring.putLong(index + OFFSET_TICK, tick);
+        ring.put(index + OFFSET_TYPE, TYPE_RACE_STATE);
+        ring.put(index + OFFSET_CAR, (byte)car);
+        ring.putShort(index + OFFSET_RANK, (short)rank);
+        ring.putShort(index + OFFSET_LAP, (short)lap);
+        ring.putFloat(index + OFFSET_COL, 0f);
+        ring.putFloat(index + OFFSET_ROW, 0f);
+        ring.putFloat(index + OFFSET_HEADING, 0f);
+        ring.putFloat(index + OFFSET_SPEED, 0f);
+        ring.putLong(index + OFFSET_VALUE, track);
+        
+        publish();
+    }
+    
+    /**
+     * Get the location of the next record in the ring
+     * @return The location (in bytes), -1 if the ring is full and the record was dropped
+     */
+    private int next()
+    {
+        final long current = head.get();
+        
+        //only check where the background thread is when the ring looks full
+        if (current - tailCache >= capacity)
+        {
+            tailCache = tail.get();
+            
+            if (current - tailCache >= capacity)
+            {
+                dropped++;
+                return -1;
+            }
+        }
+        
+        return (int)(current % capacity) * RECORD_SIZE;
+    }
+    
+    /**
+     * Make the record available to the background thread
+     */
+    private void publish()
+    {
+        head.lazySet(head.get() + 1);
+    }
+    
+    /**
+     * Get the number of records dropped because the background thread fell behind
+     * @return The number of records dropped
+     */
+    public long getDropped()
+    {
+        return this.dropped;
+    }
+    
+    @Override
+    public void run()
+    {
+        try
+        {
+            //write the header
+            batch.clear();
+            batch.putInt(MAGIC);
+            batch.putInt(VERSION);
+            batch.flip();
+            write();
+            
+            while (true)
+            {
+                //the number of records waiting
+                final long available = head.get() - tail.get();
+                
+                if (available > 0)
+                {
+                    writeBatch((int)Math.min(available, BATCH_SIZE));
+                }
+                else
+                {
+                    //only stop once every record has been written
+                    if (!running)
+                        break;
+                    
+                    LockSupport.parkNanos(FLUSH_DELAY);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * Write the records to the output, each field is written for every record before the next field
+     * @param count The number of records
+     * @throws IOException
+     */
+    private void writeBatch(final int count) throws IOException
+    {
+        final long start = tail.get();
+        
+        batch.clear();
+        batch.putInt(count);
+        batch.putLong(dropped);
+        
+        for (int column = 0; column < COLUMN_OFFSETS.length; column++)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                //the location of the field for this record
+                final int index = getIndex(start + i) + COLUMN_OFFSETS[column];
+                
+                //copy the bytes of the field
+                for (int b = 0; b < COLUMN_SIZES[column]; b++)
+                {
+                    batch.put(ring.get(index + b));
+                }
+            }
+        }
+        
+        //the records have been copied, so the game thread can reuse them
+        tail.lazySet(start + count);
+        
+        batch.flip();
+        write();
+    }
+    
+    /**
+     * Get the location of the record in the ring
+     * @param record The record number
+     * @return The location (in bytes)
+     */
+    private int getIndex(final long record)
+    {
+        return (int)(record % capacity) * RECORD_SIZE;
+    }
+    
+    /**
+     * Write the entire batch to the output
+     * @throws IOException
+     */
+    private void write() throws IOException
+    {
+        while (batch.hasRemaining())
+        {
+            channel.write(batch);
+        }
+    }
+    
+    @Override
+    public void dispose()
+    {
+        running = false;
+        
+        try
+        {
+            //wait for the remaining records to be written
+            join(STOP_DELAY);
+        }
+        catch (InterruptedException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
\ No newline at end of file